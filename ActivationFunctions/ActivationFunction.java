@@ -17,17 +17,63 @@ public class ActivationFunction implements Serializable {
 
     public double[] fArray(double[] x) {
         double[] array = new double[x.length];
-        for (int i = 0; i < x.length; i++) {
-            array[i] = f(x[i]);
-        }
+        fArray(x, array);
         return array;
     }
 
     public double[] dfArray(double[] x) {
         double[] array = new double[x.length];
-        for (int i = 0; i < x.length; i++) {
-            array[i] = df(x[i]);
-        }
+        dfArray(x, array);
         return array;
     }
+
+    // Activate x into dest without allocating; dest may be x itself
+    public void fArray(double[] x, double[] dest) {
+        fBatch(x, dest, 1, x.length);
+    }
+
+    public void dfArray(double[] x, double[] dest) {
+        dfBatch(x, dest, 1, x.length);
+    }
+
+    // Derivatives at x given the activations y = f(x) from the forward pass
+    public void dfArray(double[] x, double[] y, double[] dest) {
+        dfBatch(x, y, dest, 1, x.length);
+    }
+
+    // Replace every value of x with its activation
+    public void fArrayInPlace(double[] x) {
+        fArray(x, x);
+    }
+
+    public void dfArrayInPlace(double[] x) {
+        dfArray(x, x);
+    }
+
+    // Activate a batch of rows stored one after another, writing into dest
+    // dest may be x itself, and subclasses keep that working
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = f(x[i]);
+        }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = df(x[i]);
+        }
+    }
+
+    // Activate with a fast approximation, within the bounds documented in FastMath
+    // Activations without one use fBatch
+    public void fBatchFast(double[] x, double[] dest, int batchSize, int length) {
+        fBatch(x, dest, batchSize, length);
+    }
+
+    // Derivatives at x given the activations y = f(x) from the forward pass, so activations whose
+    // derivative follows from their output don't evaluate the function again
+    // dest may be x or y
+    public void dfBatch(double[] x, double[] y, double[] dest, int batchSize, int length) {
+        dfBatch(x, dest, batchSize, length);
+    }
 }
\ No newline at end of file
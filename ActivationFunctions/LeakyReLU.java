@@ -1,8 +1,17 @@
 package ActivationFunctions;
 
 public class LeakyReLU extends ActivationFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = -722996463971485057L;
+
     private final double a = 0.01;
 
+    // Slope for negative inputs
+    public double getSlope() {
+        return a;
+    }
+
     public double f(double x) {
         return (x > 0) ? x : x * a;
     }
@@ -10,4 +19,17 @@ public class LeakyReLU extends ActivationFunction {
     public double df(double x) {
         return (x > 0) ? 1 : a;
     }
+
+    // Batch kernels with the activation inlined instead of calling f and df per value
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = (x[i] > 0) ? x[i] : x[i] * a;
+        }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = (x[i] > 0) ? 1 : a;
+        }
+    }
 }
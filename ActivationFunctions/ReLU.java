@@ -1,6 +1,10 @@
 package ActivationFunctions;
 
 public class ReLU extends ActivationFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = 3312475206359095603L;
+
     public double f(double x) {
         return (x > 0) ? x : 0;
     }
@@ -8,4 +12,17 @@ public class ReLU extends ActivationFunction {
     public double df(double x) {
         return (x > 0) ? 1 : 0;
     }
+
+    // Batch kernels with the activation inlined instead of calling f and df per value
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = (x[i] > 0) ? x[i] : 0;
+        }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = (x[i] > 0) ? 1 : 0;
+        }
+    }
 }
@@ -1,6 +1,10 @@
 package ActivationFunctions;
 
 public class SiLU extends ActivationFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = -847588008614716957L;
+
     public double f(double x) {
         double sigmoid = 1 / (1 + Math.exp(-x));
         return x * sigmoid;
@@ -10,4 +14,35 @@ public class SiLU extends ActivationFunction {
         double sigmoid = 1 / (1 + Math.exp(-x));
         return sigmoid + x * sigmoid * (1 - sigmoid);
     }
-}
\ No newline at end of file
+
+    // Batch kernels with the activation inlined instead of calling f and df per value
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            double sigmoid = 1 / (1 + Math.exp(-x[i]));
+            dest[i] = x[i] * sigmoid;
+        }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            double sigmoid = 1 / (1 + Math.exp(-x[i]));
+            dest[i] = sigmoid + x[i] * sigmoid * (1 - sigmoid);
+        }
+    }
+
+    public void fBatchFast(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = FastMath.silu(x[i]);
+        }
+    }
+
+    // silu'(x) = s + x * s * (1 - s) with s = sigmoid(x) = y / x
+    // Near 0, where y / x loses precision, s is 1/2 + x/4 to within x^3 / 48
+    public void dfBatch(double[] x, double[] y, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            double xi = x[i];
+            double sigmoid = (Math.abs(xi) > 1e-6) ? y[i] / xi : 0.5 + xi * 0.25;
+            dest[i] = sigmoid + xi * sigmoid * (1 - sigmoid);
+        }
+    }
+}
@@ -1,11 +1,43 @@
 package ActivationFunctions;
 
 public class Sigmoid extends ActivationFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = -6828038327414878721L;
+
     public double f(double x) {
         return 1 / (1 + Math.exp(-x));
     }
 
     public double df(double x) {
-        return this.f(x) * (1 - this.f(x));
+        double sigmoid = f(x);
+        return sigmoid * (1 - sigmoid);
+    }
+
+    // Batch kernels with the activation inlined instead of calling f and df per value
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = 1 / (1 + Math.exp(-x[i]));
+        }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            double sigmoid = 1 / (1 + Math.exp(-x[i]));
+            dest[i] = sigmoid * (1 - sigmoid);
+        }
+    }
+
+    public void fBatchFast(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = FastMath.sigmoid(x[i]);
+        }
+    }
+
+    // sigmoid'(x) = y * (1 - y)
+    public void dfBatch(double[] x, double[] y, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = y[i] * (1 - y[i]);
+        }
     }
-}
\ No newline at end of file
+}
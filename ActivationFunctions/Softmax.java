@@ -1,33 +1,81 @@
 package ActivationFunctions;
 
 public class Softmax extends ActivationFunction {
-    public double[] fArray(double[] x) {
-        double expSum = 0;
-        for (int i = 0; i < x.length; i++) {
-            expSum += Math.exp(x[i]);
-        }
 
-        double[] returnArray = new double[x.length];
-        for (int i = 0; i < returnArray.length; i++) {
-            returnArray[i] = Math.exp(x[i]) / expSum;
+    // Serial ID
+    private static final long serialVersionUID = 753606361241759290L;
+
+    // Softmax is normalized over each row of the batch separately
+    // The row maximum is subtracted before exponentiating so large values can't overflow;
+    // this cancels out in the division
+    // Exponentials are stored in dest and reused, and each value of x is read
+    // before its slot is written, so dest may be x itself
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int row = 0; row < batchSize; row++) {
+            int offset = row * length;
+            double max = rowMax(x, offset, length);
+
+            double expSum = 0;
+            for (int i = offset; i < offset + length; i++) {
+                dest[i] = Math.exp(x[i] - max);
+                expSum += dest[i];
+            }
+
+            for (int i = offset; i < offset + length; i++) {
+                dest[i] /= expSum;
+            }
         }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int row = 0; row < batchSize; row++) {
+            int offset = row * length;
+            double max = rowMax(x, offset, length);
+
+            double expSum = 0;
+            for (int i = offset; i < offset + length; i++) {
+                dest[i] = Math.exp(x[i] - max);
+                expSum += dest[i];
+            }
 
-        return returnArray;
+            for (int i = offset; i < offset + length; i++) {
+                double ex = dest[i];
+                dest[i] = (ex * expSum - ex * ex) / (expSum * expSum);
+            }
+        }
     }
 
-    public double[] dfArray(double[] x) {
-        double expSum = 0;
-        for (int i = 0; i < x.length; i++)
-        {
-            expSum += Math.exp(x[i]);
+    // Same as fBatch with the fast exponential, and one division per row
+    public void fBatchFast(double[] x, double[] dest, int batchSize, int length) {
+        for (int row = 0; row < batchSize; row++) {
+            int offset = row * length;
+            double max = rowMax(x, offset, length);
+
+            double expSum = 0;
+            for (int i = offset; i < offset + length; i++) {
+                dest[i] = FastMath.exp(x[i] - max);
+                expSum += dest[i];
+            }
+
+            double inverse = 1 / expSum;
+            for (int i = offset; i < offset + length; i++) {
+                dest[i] *= inverse;
+            }
         }
+    }
 
-        double[] returnArray = new double[x.length];
-        for (int i = 0; i < returnArray.length; i++) {
-            double ex = Math.exp(x[i]);
-            returnArray[i] = (ex * expSum - ex * ex) / (expSum * expSum);
+    // The diagonal of the softmax Jacobian, y * (1 - y), like dfBatch
+    public void dfBatch(double[] x, double[] y, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = y[i] * (1 - y[i]);
         }
+    }
 
-        return returnArray;
+    private static double rowMax(double[] x, int offset, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + length; i++) {
+            max = Math.max(max, x[i]);
+        }
+        return max;
     }
-}
\ No newline at end of file
+}
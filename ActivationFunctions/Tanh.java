@@ -1,11 +1,49 @@
 package ActivationFunctions;
 
 public class Tanh extends ActivationFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = -5699229640219602273L;
+
     public double f(double x) {
-        return (Math.exp(x) - Math.exp(-x)) / (Math.exp(x) + Math.exp(-x));
+        double ex = Math.exp(x);
+        double emx = Math.exp(-x);
+        return (ex - emx) / (ex + emx);
     }
 
     public double df(double x) {
-        return 1 - Math.pow(f(x), 2);
+        double tanh = f(x);
+        return 1 - tanh * tanh;
+    }
+
+    // Batch kernels with the activation inlined instead of calling f and df per value
+    public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            double ex = Math.exp(x[i]);
+            double emx = Math.exp(-x[i]);
+            dest[i] = (ex - emx) / (ex + emx);
+        }
+    }
+
+    public void dfBatch(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            double ex = Math.exp(x[i]);
+            double emx = Math.exp(-x[i]);
+            double tanh = (ex - emx) / (ex + emx);
+            dest[i] = 1 - tanh * tanh;
+        }
+    }
+
+    public void fBatchFast(double[] x, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = FastMath.tanh(x[i]);
+        }
+    }
+
+    // tanh'(x) = 1 - y^2
+    public void dfBatch(double[] x, double[] y, double[] dest, int batchSize, int length) {
+        for (int i = 0; i < batchSize * length; i++) {
+            dest[i] = 1 - y[i] * y[i];
+        }
     }
 }
@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ActivationFunctions.*;
+
+// Exact and fast activations on a batch of wide layer outputs, and derivatives evaluated again
+// against derivatives from the activations
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class ActivationBenchmarks {
+
+    private static final int WIDTH = 2048;
+
+    @Param({ "Sigmoid", "Tanh", "SiLU", "Softmax" })
+    public String name;
+
+    private ActivationFunction activation;
+    private double[] values;
+    private double[] outputs;
+    private double[] dest;
+
+    @Setup
+    public void setup() {
+        switch (name) {
+            case "Sigmoid": activation = new Sigmoid(); break;
+            case "Tanh": activation = new Tanh(); break;
+            case "SiLU": activation = new SiLU(); break;
+            default: activation = new Softmax();
+        }
+        values = BenchmarkData.randomArray(BenchmarkData.BATCH_SIZE * WIDTH, new Random(42));
+        outputs = new double[values.length];
+        dest = new double[values.length];
+        activation.fBatch(values, outputs, BenchmarkData.BATCH_SIZE, WIDTH);
+    }
+
+    @Benchmark
+    public double[] fBatch() {
+        activation.fBatch(values, dest, BenchmarkData.BATCH_SIZE, WIDTH);
+        return dest;
+    }
+
+    @Benchmark
+    public double[] fBatchFast() {
+        activation.fBatchFast(values, dest, BenchmarkData.BATCH_SIZE, WIDTH);
+        return dest;
+    }
+
+    @Benchmark
+    public double[] dfBatch() {
+        activation.dfBatch(values, dest, BenchmarkData.BATCH_SIZE, WIDTH);
+        return dest;
+    }
+
+    @Benchmark
+    public double[] dfBatchFromOutputs() {
+        activation.dfBatch(values, outputs, dest, BenchmarkData.BATCH_SIZE, WIDTH);
+        return dest;
+    }
+}
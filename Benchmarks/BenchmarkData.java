@@ -0,0 +1,83 @@
+package Benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+// Inputs shared by the benchmarks
+final class BenchmarkData {
+
+    // Rows per batch in the batched benchmarks
+    static final int BATCH_SIZE = 50;
+
+    private BenchmarkData() {
+    }
+
+    // Layer or network sizes written as "784x512x10"
+    static int[] parseShape(String shape) {
+        String[] parts = shape.split("x");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i]);
+        }
+        return sizes;
+    }
+
+    static double[] randomArray(int length, Random random) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = random.nextDouble();
+        }
+        return array;
+    }
+
+    // Random values with about density of them nonzero
+    static double[] sparseArray(int length, double density, Random random) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) {
+            if (random.nextDouble() < density) {
+                array[i] = random.nextDouble();
+            }
+        }
+        return array;
+    }
+
+    static int[] randomLabels(int count, int numClasses, Random random) {
+        int[] labels = new int[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = random.nextInt(numClasses);
+        }
+        return labels;
+    }
+
+    // Write random images and labels in the IDX format MnistReader expects, as temporary files deleted on exit
+    // Returns the image file and the label file
+    static File[] writeIdxFiles(int count, int rows, int cols, Random random) throws IOException {
+        File imageFile = File.createTempFile("benchmark-images", ".idx3-ubyte");
+        File labelFile = File.createTempFile("benchmark-labels", ".idx1-ubyte");
+        imageFile.deleteOnExit();
+        labelFile.deleteOnExit();
+
+        try (DataOutputStream images = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(imageFile)));
+             DataOutputStream labels = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(labelFile)))) {
+            images.writeInt(2051);
+            images.writeInt(count);
+            images.writeInt(rows);
+            images.writeInt(cols);
+
+            labels.writeInt(2049);
+            labels.writeInt(count);
+
+            byte[] pixels = new byte[rows * cols];
+            for (int i = 0; i < count; i++) {
+                random.nextBytes(pixels);
+                images.write(pixels);
+                labels.writeByte(random.nextInt(10));
+            }
+        }
+        return new File[] { imageFile, labelFile };
+    }
+}
@@ -0,0 +1,86 @@
+package Benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import Models.FeedForward_Layer;
+import Optimizers.*;
+
+// Single layer forward pass, hidden layer backward pass, gradient accumulation and optimizer updates
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class LayerBenchmarks {
+
+    // inDim x outDim: the MNIST network's layers plus wider ones
+    @Param({ "784x512", "512x10", "784x2048", "2048x2048" })
+    public String size;
+
+    private FeedForward_Layer layer;
+    private FeedForward_Layer nextLayer;
+    private double[] inputs;
+    private double[] nextError;
+
+    @Setup
+    public void setup() {
+        int[] dims = BenchmarkData.parseShape(size);
+        Random random = new Random(42);
+        layer = new FeedForward_Layer(dims[0], dims[1], new LeakyReLU());
+        nextLayer = new FeedForward_Layer(dims[1], 10, new Softmax());
+        inputs = BenchmarkData.randomArray(dims[0], random);
+        nextError = BenchmarkData.randomArray(10, random);
+
+        layer.forwardPropagate(inputs, true, 0);
+        layer.backPropagateHiddenLayer(nextError, nextLayer);
+    }
+
+    @Benchmark
+    public double[] forwardPropagate() {
+        return layer.forwardPropagate(inputs, false, 0);
+    }
+
+    @Benchmark
+    public double[] backPropagateHiddenLayer() {
+        return layer.backPropagateHiddenLayer(nextError, nextLayer);
+    }
+
+    @Benchmark
+    public void updateGradients() {
+        layer.updateGradients(inputs);
+    }
+
+    @Benchmark
+    public void updateWeightsAndBiases(OptimizerState state) {
+        state.optimizer.startStep(++state.step, BenchmarkData.BATCH_SIZE);
+        layer.updateWeightsAndBiases(state.optimizer);
+    }
+
+    // Optimizer for the update benchmark, so the other benchmarks don't run once per optimizer
+    @State(Scope.Thread)
+    public static class OptimizerState {
+
+        @Param({ "SGD", "Momentum", "Adam", "AdamW" })
+        public String name;
+
+        Optimizer optimizer;
+        int step;
+
+        @Setup
+        public void setup() {
+            switch (name) {
+                case "SGD": optimizer = new SGD(); break;
+                case "Momentum": optimizer = new Momentum(); break;
+                case "Adam": optimizer = new Adam(); break;
+                default: optimizer = new AdamW();
+            }
+            step = 0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import Data.ImageAugmentation;
+import Data.ImageDataPoint;
+import Data.MNIST.IdxDataset;
+import Data.MNIST.MnistReader;
+
+// Reading IDX files and augmenting images, using generated MNIST shaped files
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class MnistBenchmarks {
+
+    private static final int NUM_IMAGES = 1000;
+
+    private File imageFile;
+    private File labelFile;
+    private PrintStream out;
+
+    private IdxDataset dataset;
+    private int[] indices;
+    private double[] batchInputs;
+    private int[] batchLabels;
+    private int from;
+
+    private ImageDataPoint point;
+    private double[] images;
+    private double[] augmented;
+    private ImageAugmentation augmentation;
+    private SplittableRandom augmentRandom;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        File[] files = BenchmarkData.writeIdxFiles(NUM_IMAGES, 28, 28, random);
+        imageFile = files[0];
+        labelFile = files[1];
+
+        // The reader prints its headers, so silence it while measuring
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        dataset = MnistReader.openDataset(imageFile.getPath(), labelFile.getPath(), 10);
+        indices = new int[NUM_IMAGES];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(NUM_IMAGES);
+        }
+        batchInputs = new double[BenchmarkData.BATCH_SIZE * dataset.getInputSize()];
+        batchLabels = new int[BenchmarkData.BATCH_SIZE];
+        from = 0;
+
+        point = new ImageDataPoint(28, 28, BenchmarkData.randomArray(28 * 28, random), new double[10]);
+        images = BenchmarkData.randomArray(BenchmarkData.BATCH_SIZE * 28 * 28, random);
+        augmented = new double[images.length];
+        augmentation = new ImageAugmentation(28, 28);
+        augmentRandom = new SplittableRandom(42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    // The whole file decoded into data points
+    @Benchmark
+    public ImageDataPoint[] readData() throws IOException {
+        return MnistReader.readData(imageFile.getPath(), labelFile.getPath(), 10);
+    }
+
+    // The file read as one block of bytes
+    @Benchmark
+    public IdxDataset openDataset() throws IOException {
+        return MnistReader.openDataset(imageFile.getPath(), labelFile.getPath(), 10);
+    }
+
+    // One batch of shuffled images and labels gathered from an open dataset
+    @Benchmark
+    public double[] gatherBatch() {
+        dataset.gatherInputs(indices, from, BenchmarkData.BATCH_SIZE, batchInputs, 0);
+        dataset.gatherLabels(indices, from, BenchmarkData.BATCH_SIZE, batchLabels, 0);
+        from = (from + BenchmarkData.BATCH_SIZE) % (NUM_IMAGES - BenchmarkData.BATCH_SIZE);
+        return batchInputs;
+    }
+
+    @Benchmark
+    public ImageDataPoint transformDrawingRandom() {
+        point.transformDrawingRandom();
+        return point;
+    }
+
+    @Benchmark
+    public double[] augmentBatch() {
+        augmentation.augmentBatch(images, 0, augmented, 0, BenchmarkData.BATCH_SIZE, 28 * 28, augmentRandom);
+        return augmented;
+    }
+}
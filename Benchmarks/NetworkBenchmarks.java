@@ -0,0 +1,103 @@
+package Benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Models.*;
+import Optimizers.Adam;
+
+// Full training steps and inference on a whole network
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class NetworkBenchmarks {
+
+    @Param({ "784x512x10", "784x2048x2048x10" })
+    public String shape;
+
+    private NeuralNetwork model;
+    private int inputSize;
+    private double[] inputs;
+    private int[] labels;
+    private double[] sample;
+    private int step;
+
+    private InferenceSession session;
+    private InferenceSession batchSession;
+    private FrozenSession frozenSession;
+    private FrozenSession frozenBatchSession;
+    private QuantizedSession quantizedSession;
+
+    @Setup
+    public void setup() {
+        int[] layerSizes = BenchmarkData.parseShape(shape);
+        inputSize = layerSizes[0];
+        int outputSize = layerSizes[layerSizes.length - 1];
+        Random random = new Random(42);
+
+        model = new NeuralNetwork(layerSizes, new LeakyReLU(), new Softmax(), new CrossEntropy(), new Adam(0.0001, 0.9, 0.999), 0.2);
+        inputs = BenchmarkData.randomArray(inputSize * BenchmarkData.BATCH_SIZE, random);
+        labels = BenchmarkData.randomLabels(BenchmarkData.BATCH_SIZE, outputSize, random);
+        sample = new double[inputSize];
+        System.arraycopy(inputs, 0, sample, 0, inputSize);
+        step = 0;
+
+        session = model.createSession();
+        batchSession = new InferenceSession(model, BenchmarkData.BATCH_SIZE);
+        frozenSession = model.freeze().createSession();
+        frozenBatchSession = new FrozenSession(model.freeze(), BenchmarkData.BATCH_SIZE);
+        quantizedSession = new QuantizedSession(Quantizer.quantize(model), BenchmarkData.BATCH_SIZE);
+    }
+
+    // One mini batch trained one data point at a time
+    @Benchmark
+    public void trainPointByPoint() {
+        for (int i = 0; i < BenchmarkData.BATCH_SIZE; i++) {
+            System.arraycopy(inputs, i * inputSize, sample, 0, inputSize);
+            model.forwardPropagate(sample, true);
+            model.backPropagate(sample, labels[i]);
+        }
+        model.updateWeightsAndBiases(BenchmarkData.BATCH_SIZE, ++step);
+    }
+
+    // One mini batch trained as a matrix
+    @Benchmark
+    public void trainBatch() {
+        model.forwardBatch(inputs, BenchmarkData.BATCH_SIZE, true);
+        model.backwardBatch(inputs, labels, BenchmarkData.BATCH_SIZE);
+        model.updateWeightsAndBiases(BenchmarkData.BATCH_SIZE, ++step);
+    }
+
+    @Benchmark
+    public double[] predict() {
+        return session.predict(sample);
+    }
+
+    @Benchmark
+    public double[] predictBatch() {
+        return batchSession.predictBatch(inputs, 0, BenchmarkData.BATCH_SIZE);
+    }
+
+    @Benchmark
+    public double[] predictFrozen() {
+        return frozenSession.predict(sample);
+    }
+
+    @Benchmark
+    public double[] predictBatchFrozen() {
+        return frozenBatchSession.predictBatch(inputs, 0, BenchmarkData.BATCH_SIZE);
+    }
+
+    @Benchmark
+    public double[] predictBatchInt8() {
+        return quantizedSession.predictBatch(inputs, 0, BenchmarkData.BATCH_SIZE);
+    }
+}
@@ -0,0 +1,65 @@
+package Benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Data.MNIST.IdxDataset;
+import Data.MNIST.MnistReader;
+import Models.ModelTrainer;
+import Models.NeuralNetwork;
+import Optimizers.Adam;
+
+// Training epochs of the 784-512-10 network with each mini batch split across a number of threads
+// Scores are images trained per second, including the evaluation on the held out 5% after each epoch
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ParallelTrainingBenchmarks.NUM_IMAGES)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class ParallelTrainingBenchmarks {
+
+    static final int NUM_IMAGES = 6000;
+    private static final int BATCH_SIZE = 256;
+
+    @Param({ "1", "2", "4", "8", "16" })
+    public int threads;
+
+    private IdxDataset dataset;
+    private ModelTrainer trainer;
+    private PrintStream out;
+
+    @Setup
+    public void setup() throws IOException {
+        File[] files = BenchmarkData.writeIdxFiles(NUM_IMAGES, 28, 28, new Random(42));
+        dataset = MnistReader.openDataset(files[0].getPath(), files[1].getPath(), 10);
+
+        NeuralNetwork model = new NeuralNetwork(new int[] { 784, 512, 10 }, new LeakyReLU(), new Softmax(), new CrossEntropy(), new Adam(0.0001, 0.9, 0.999), 0.2);
+        trainer = new ModelTrainer(model, null, false);
+        trainer.setParallelism(threads);
+
+        // The trainer prints every epoch's costs, so silence it while measuring
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public Object trainEpoch() {
+        return trainer.train(dataset, BATCH_SIZE, 1, 0.05);
+    }
+}
@@ -0,0 +1,129 @@
+package Benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Models.FeedForward_Layer;
+import Models.LayerBuffers;
+import Models.NeuralNetwork;
+import Optimizers.Adam;
+
+// The sparse kernels against the dense ones at the MNIST first layer size: sparse inputs in the forward pass,
+// gradients and whole training steps, and the prediction forward pass of pruned layers
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class SparseBenchmarks {
+
+    private static final int IN_DIM = 784;
+    private static final int OUT_DIM = 512;
+
+    // MNIST images are about 19% nonzero
+    private static final double MNIST_DENSITY = 0.19;
+
+    // First layer on batches of inputs at several densities, to see where the sparse input threshold should be
+    @State(Scope.Thread)
+    public static class InputState {
+
+        @Param({ "0.05", "0.1", "0.2", "0.3", "0.4", "0.5" })
+        public double density;
+
+        @Param({ "dense", "sparse" })
+        public String kernels;
+
+        FeedForward_Layer layer;
+        LayerBuffers buffers;
+        double[] inputs;
+        Random random;
+
+        @Setup
+        public void setup() {
+            random = new Random(42);
+            layer = new FeedForward_Layer(IN_DIM, OUT_DIM, new LeakyReLU());
+            buffers = new LayerBuffers(IN_DIM, OUT_DIM, BenchmarkData.BATCH_SIZE, false);
+            inputs = BenchmarkData.sparseArray(IN_DIM * BenchmarkData.BATCH_SIZE, density, random);
+
+            // A threshold of 1 sends every row through the sparse kernels
+            layer.setSparseInputThreshold(kernels.equals("sparse") ? 1 : 0);
+
+            double[] nodeError = buffers.getNodeError();
+            for (int i = 0; i < BenchmarkData.BATCH_SIZE * OUT_DIM; i++) {
+                nodeError[i] = random.nextGaussian();
+            }
+        }
+    }
+
+    // Prediction of a layer pruned to a sparsity; the sparse weight kernels take over once few enough weights are left
+    @State(Scope.Thread)
+    public static class PrunedState {
+
+        @Param({ "0.5", "0.8", "0.9", "0.95" })
+        public double sparsity;
+
+        FeedForward_Layer layer;
+        LayerBuffers buffers;
+        double[] inputs;
+        Random random;
+
+        @Setup
+        public void setup() {
+            random = new Random(42);
+            layer = new FeedForward_Layer(IN_DIM, OUT_DIM, new LeakyReLU());
+            layer.pruneMagnitude(sparsity);
+            buffers = new LayerBuffers(IN_DIM, OUT_DIM, BenchmarkData.BATCH_SIZE, false);
+            inputs = BenchmarkData.randomArray(IN_DIM * BenchmarkData.BATCH_SIZE, random);
+        }
+    }
+
+    // Whole training steps on inputs as sparse as MNIST images, with the default threshold and without
+    @State(Scope.Thread)
+    public static class TrainState {
+
+        @Param({ "dense", "sparse" })
+        public String kernels;
+
+        NeuralNetwork model;
+        double[] images;
+        int[] labels;
+        int step;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(42);
+            model = new NeuralNetwork(new int[] { IN_DIM, OUT_DIM, 10 }, new LeakyReLU(), new Softmax(), new CrossEntropy(), new Adam(0.0001, 0.9, 0.999), 0.2);
+            model.setSparseInputThreshold(kernels.equals("sparse") ? NeuralNetwork.DEFAULT_SPARSE_INPUT_THRESHOLD : 0);
+            images = BenchmarkData.sparseArray(IN_DIM * BenchmarkData.BATCH_SIZE, MNIST_DENSITY, random);
+            labels = BenchmarkData.randomLabels(BenchmarkData.BATCH_SIZE, 10, random);
+            step = 0;
+        }
+    }
+
+    @Benchmark
+    public double[] forwardBatch(InputState state) {
+        return state.layer.forwardBatch(state.inputs, 0, BenchmarkData.BATCH_SIZE, false, 0, state.buffers, state.random);
+    }
+
+    @Benchmark
+    public void updateGradientsBatch(InputState state) {
+        state.layer.updateGradientsBatch(state.inputs, 0, BenchmarkData.BATCH_SIZE, state.buffers);
+    }
+
+    @Benchmark
+    public double[] forwardBatchPruned(PrunedState state) {
+        return state.layer.forwardBatch(state.inputs, 0, BenchmarkData.BATCH_SIZE, false, 0, state.buffers, state.random);
+    }
+
+    @Benchmark
+    public void trainBatch(TrainState state) {
+        state.model.forwardBatch(state.images, BenchmarkData.BATCH_SIZE, true);
+        state.model.backwardBatch(state.images, state.labels, BenchmarkData.BATCH_SIZE);
+        state.model.updateWeightsAndBiases(BenchmarkData.BATCH_SIZE, ++state.step);
+    }
+}
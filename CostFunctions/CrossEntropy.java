@@ -34,6 +34,10 @@ public class CrossEntropy extends CostFunction {
 */
 
 public class CrossEntropy extends CostFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = -5052366518206099777L;
+
     public double cost(double[] expectedOutputs, double[] calculatedOutputs) {
         
         double cost = 0;
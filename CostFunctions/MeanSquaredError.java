@@ -1,6 +1,10 @@
 package CostFunctions;
 
 public class MeanSquaredError extends CostFunction {
+
+    // Serial ID
+    private static final long serialVersionUID = 9168187345767681968L;
+
     public double cost(double[] expectedOutputs, double[] calculatedOutputs) {
         double sum = 0;
         for (int i = 0; i < expectedOutputs.length; i++) {
@@ -0,0 +1,129 @@
+package Data;
+
+// Dataset stored in contiguous primitive arrays: one row of inputs per point, and
+// either a class label per point or one row of expected outputs per point
+public class ArrayDataset extends Dataset {
+
+    private final double[] inputs;
+    private final int[] labels;
+    private final double[] outputs;
+
+    private final int inputSize;
+    private final int outputSize;
+
+    // First point of this dataset in the arrays, and number of points
+    private final int start;
+    private final int size;
+
+    // Dataset with class labels from 0 to numCategories - 1
+    public ArrayDataset(double[] inputs, int inputSize, int[] labels, int numCategories) {
+        this(inputs, labels, null, inputSize, numCategories, 0, labels.length);
+        if (inputs.length != labels.length * inputSize) {
+            throw new IllegalArgumentException(inputs.length + " inputs for " + labels.length + " points of size " + inputSize);
+        }
+    }
+
+    // Dataset with expected outputs given as rows of outputSize values
+    public ArrayDataset(double[] inputs, int inputSize, double[] outputs, int outputSize) {
+        this(inputs, null, outputs, inputSize, outputSize, 0, inputs.length / inputSize);
+        if (inputs.length % inputSize != 0 || outputs.length != size * outputSize) {
+            throw new IllegalArgumentException(inputs.length + " inputs and " + outputs.length + " outputs don't form whole points");
+        }
+    }
+
+    private ArrayDataset(double[] inputs, int[] labels, double[] outputs, int inputSize, int outputSize, int start, int size) {
+        this.inputs = inputs;
+        this.labels = labels;
+        this.outputs = outputs;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.start = start;
+        this.size = size;
+    }
+
+    // Copy data points into contiguous arrays, storing class labels if every output is one hot
+    public static ArrayDataset fromDataPoints(DataPoint[] data) {
+        int inputSize = data[0].getInputSize();
+        int outputSize = data[0].getOutputSize();
+
+        double[] inputs = new double[data.length * inputSize];
+        double[] outputs = new double[data.length * outputSize];
+        for (int i = 0; i < data.length; i++) {
+            data[i].copyInputsTo(inputs, i * inputSize);
+            data[i].copyOutputsTo(outputs, i * outputSize);
+        }
+
+        int[] labels = toLabels(outputs, data.length, outputSize);
+        if (labels != null) {
+            return new ArrayDataset(inputs, inputSize, labels, outputSize);
+        }
+        return new ArrayDataset(inputs, inputSize, outputs, outputSize);
+    }
+
+    // Labels of one hot output rows, or null if any row isn't one hot
+    private static int[] toLabels(double[] outputs, int size, int outputSize) {
+        int[] labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            int label = -1;
+            for (int k = 0; k < outputSize; k++) {
+                double value = outputs[i * outputSize + k];
+                if (value == 1 && label == -1) {
+                    label = k;
+                } else if (value != 0) {
+                    return null;
+                }
+            }
+            if (label == -1) {
+                return null;
+            }
+            labels[i] = label;
+        }
+        return labels;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public void copyInputsTo(int index, double[] dest, int offset) {
+        System.arraycopy(inputs, (start + index) * inputSize, dest, offset, inputSize);
+    }
+
+    public void copyOutputsTo(int index, double[] dest, int offset) {
+        if (labels != null) {
+            for (int k = 0; k < outputSize; k++) {
+                dest[offset + k] = 0;
+            }
+            dest[offset + labels[start + index]] = 1;
+        } else {
+            System.arraycopy(outputs, (start + index) * outputSize, dest, offset, outputSize);
+        }
+    }
+
+    public boolean hasLabels() {
+        return labels != null;
+    }
+
+    public int getLabel(int index) {
+        if (labels == null) {
+            return super.getLabel(index);
+        }
+        return labels[start + index];
+    }
+
+    // Views share the arrays, only the start and size change
+    public Dataset subset(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Subset " + from + " to " + to + " of " + size + " points");
+        }
+        return new ArrayDataset(inputs, labels, outputs, inputSize, outputSize, start + from, to - from);
+    }
+}
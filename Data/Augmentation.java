@@ -0,0 +1,19 @@
+package Data;
+
+import java.util.SplittableRandom;
+
+// A random transformation of one point's inputs, written into another buffer
+// Implementations must only use the given random so results depend on its seed alone,
+// and must be safe to call from several threads with different randoms
+public interface Augmentation {
+
+    // Transform inputs[inputOffset..] and write the result to dest[destOffset..]
+    void augment(double[] inputs, int inputOffset, double[] dest, int destOffset, SplittableRandom random);
+
+    // Augment count points of inputSize values stored one after another
+    default void augmentBatch(double[] inputs, int inputOffset, double[] dest, int destOffset, int count, int inputSize, SplittableRandom random) {
+        for (int i = 0; i < count; i++) {
+            augment(inputs, inputOffset + i * inputSize, dest, destOffset + i * inputSize, random);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package Data;
+
+// Reusable buffers for one mini batch: a row of inputs per point, and either
+// class labels or a row of expected outputs per point depending on the dataset
+public class Batch {
+
+    private final double[] inputs;
+    private final double[] expected;
+    private final int[] labels;
+
+    private final int inputSize;
+    private final int outputSize;
+
+    private int size;
+    private boolean hasLabels;
+
+    public Batch(int capacity, int inputSize, int outputSize) {
+        this.inputs = new double[capacity * inputSize];
+        this.expected = new double[capacity * outputSize];
+        this.labels = new int[capacity];
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+    }
+
+    // Gather rows from until to of the batch made of the points order[start..]
+    // Different row ranges can be gathered by different threads
+    public void gather(Dataset data, int[] order, int start, int from, int to) {
+        int count = to - from;
+        data.gatherInputs(order, start + from, count, inputs, from * inputSize);
+        gatherExpected(data, order, start, from, to);
+    }
+
+    // Gather only the labels or expected outputs, for when the inputs are written separately
+    public void gatherExpected(Dataset data, int[] order, int start, int from, int to) {
+        int count = to - from;
+        hasLabels = data.hasLabels();
+        if (hasLabels) {
+            data.gatherLabels(order, start + from, count, labels, from);
+        } else {
+            data.gatherOutputs(order, start + from, count, expected, from * outputSize);
+        }
+    }
+
+    // Whether the batch holds enough room for size points of the given shape
+    public boolean fits(int size, int inputSize, int outputSize) {
+        return size <= labels.length && inputSize == this.inputSize && outputSize == this.outputSize;
+    }
+
+    // Getters and setters
+    public double[] getInputs() {
+        return inputs;
+    }
+
+    public double[] getExpected() {
+        return expected;
+    }
+
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public boolean hasLabels() {
+        return hasLabels;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public int getCapacity() {
+        return labels.length;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
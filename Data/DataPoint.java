@@ -21,6 +21,10 @@ public class DataPoint {
     public double[] getInputs() {
         return inputs.clone();
     }
+    // The inputs array itself, for subclasses that read it without copying
+    protected double[] getInputArray() {
+        return inputs;
+    }
     public void setInputs(double[] inputs) {
         this.inputs = inputs;
     }
@@ -28,6 +32,15 @@ public class DataPoint {
         inputs[index] = value;
     }
 
+    // Copy the inputs into dest starting at offset, without allocating
+    public void copyInputsTo(double[] dest, int offset) {
+        System.arraycopy(inputs, 0, dest, offset, inputs.length);
+    }
+
+    public int getInputSize() {
+        return inputs.length;
+    }
+
     public double[] getOutputs() {
         return outputs.clone();
     }
@@ -37,4 +50,13 @@ public class DataPoint {
     public void setOutput(int index, double value) {
         outputs[index] = value;
     }
+
+    // Copy the expected outputs into dest starting at offset, without allocating
+    public void copyOutputsTo(double[] dest, int offset) {
+        System.arraycopy(outputs, 0, dest, offset, outputs.length);
+    }
+
+    public int getOutputSize() {
+        return outputs.length;
+    }
 }
@@ -0,0 +1,59 @@
+package Data;
+
+// Dataset view of a DataPoint array, so code written for DataPoint[] keeps working
+// The points aren't copied, so changes to them (such as transformations) are seen by the dataset
+public class DataPointDataset extends Dataset {
+
+    private final DataPoint[] data;
+
+    // First point of this dataset in data, and number of points
+    private final int start;
+    private final int size;
+
+    private final int inputSize;
+    private final int outputSize;
+
+    public DataPointDataset(DataPoint[] data) {
+        this(data, 0, data.length);
+    }
+
+    private DataPointDataset(DataPoint[] data, int start, int size) {
+        this.data = data;
+        this.start = start;
+        this.size = size;
+        this.inputSize = (data.length > 0) ? data[0].getInputSize() : 0;
+        this.outputSize = (data.length > 0) ? data[0].getOutputSize() : 0;
+    }
+
+    public DataPoint getDataPoint(int index) {
+        return data[start + index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    public void copyInputsTo(int index, double[] dest, int offset) {
+        data[start + index].copyInputsTo(dest, offset);
+    }
+
+    public void copyOutputsTo(int index, double[] dest, int offset) {
+        data[start + index].copyOutputsTo(dest, offset);
+    }
+
+    // Views share the array, only the start and size change
+    public Dataset subset(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Subset " + from + " to " + to + " of " + size + " points");
+        }
+        return new DataPointDataset(data, start + from, to - from);
+    }
+}
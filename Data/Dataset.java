@@ -0,0 +1,107 @@
+package Data;
+
+// A fixed set of data points addressed by index
+// Subclasses decide how points are stored; subsets are views that share that storage
+// Reading points must be safe from several threads at once
+public abstract class Dataset {
+
+    public abstract int size();
+
+    public abstract int getInputSize();
+
+    public abstract int getOutputSize();
+
+    // Copy the inputs of point index into dest starting at offset
+    public abstract void copyInputsTo(int index, double[] dest, int offset);
+
+    // Copy the expected outputs of point index into dest starting at offset
+    public abstract void copyOutputsTo(int index, double[] dest, int offset);
+
+    // Whether every point's expected outputs are one hot, so they can be given as a class label
+    public boolean hasLabels() {
+        return false;
+    }
+
+    // Class label of point index, only valid if hasLabels() is true
+    public int getLabel(int index) {
+        throw new UnsupportedOperationException("Dataset has no class labels");
+    }
+
+    // Points from until to, without copying them
+    public Dataset subset(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Subset " + from + " to " + to + " of " + size() + " points");
+        }
+        return new Subset(this, from, to);
+    }
+
+    // Copy the inputs of points indices[from..from + count) into consecutive rows of dest starting at offset
+    public void gatherInputs(int[] indices, int from, int count, double[] dest, int offset) {
+        int inputSize = getInputSize();
+        for (int row = 0; row < count; row++) {
+            copyInputsTo(indices[from + row], dest, offset + row * inputSize);
+        }
+    }
+
+    // Copy the expected outputs of points indices[from..from + count) into consecutive rows of dest starting at offset
+    public void gatherOutputs(int[] indices, int from, int count, double[] dest, int offset) {
+        int outputSize = getOutputSize();
+        for (int row = 0; row < count; row++) {
+            copyOutputsTo(indices[from + row], dest, offset + row * outputSize);
+        }
+    }
+
+    // Copy the labels of points indices[from..from + count) into dest starting at offset
+    public void gatherLabels(int[] indices, int from, int count, int[] dest, int offset) {
+        for (int row = 0; row < count; row++) {
+            dest[offset + row] = getLabel(indices[from + row]);
+        }
+    }
+
+    // View of a range of another dataset's points
+    private static class Subset extends Dataset {
+        private final Dataset parent;
+        private final int from, size;
+
+        Subset(Dataset parent, int from, int to) {
+            this.parent = parent;
+            this.from = from;
+            this.size = to - from;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getInputSize() {
+            return parent.getInputSize();
+        }
+
+        public int getOutputSize() {
+            return parent.getOutputSize();
+        }
+
+        public void copyInputsTo(int index, double[] dest, int offset) {
+            parent.copyInputsTo(from + index, dest, offset);
+        }
+
+        public void copyOutputsTo(int index, double[] dest, int offset) {
+            parent.copyOutputsTo(from + index, dest, offset);
+        }
+
+        public boolean hasLabels() {
+            return parent.hasLabels();
+        }
+
+        public int getLabel(int index) {
+            return parent.getLabel(from + index);
+        }
+
+        public Dataset subset(int from, int to) {
+            if (from < 0 || to > size || from > to) {
+                throw new IndexOutOfBoundsException("Subset " + from + " to " + to + " of " + size + " points");
+            }
+            return new Subset(parent, this.from + from, this.from + to);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package Data;
+
+import java.util.SplittableRandom;
+
+// Random rotation, scaling, offset and noise for greyscale images, written into a caller's buffer
+// The transform is reduced to affine coefficients once, so each pixel's sample position is two
+// multiply-adds; noisy pixels are found by skipping ahead rather than drawing a random per pixel
+// Nothing is allocated and all randomness comes from the given SplittableRandom
+public class ImageAugmentation implements Augmentation {
+
+    // Number of x and y values
+    private final int xDim, yDim;
+
+    // Spread of the random parameters
+    private double angleRange = 2;
+    private double scaleRange = 0.05;
+    private double offsetReductionFactor = 0.6;
+    private double maxNoiseProbability = 0.05;
+
+    public ImageAugmentation(int xDim, int yDim) {
+        if (xDim < 2 || yDim < 2) {
+            throw new IllegalArgumentException("Images must be at least 2x2, got " + xDim + "x" + yDim);
+        }
+        this.xDim = xDim;
+        this.yDim = yDim;
+    }
+
+    public void augment(double[] inputs, int inputOffset, double[] dest, int destOffset, SplittableRandom random) {
+
+        // Angle and scale
+        double angleInDegrees = nextGaussian(random) * angleRange;
+        double scale = 1 + nextGaussian(random) * scaleRange;
+
+        // Offset keeps the drawing's bounding box roughly inside the image
+        long bounds = findBounds(inputs, inputOffset);
+        int boundsMinX = (int)(bounds >>> 48);
+        int boundsMaxX = (int)(bounds >>> 32) & 0xFFFF;
+        int boundsMinY = (int)(bounds >>> 16) & 0xFFFF;
+        int boundsMaxY = (int)bounds & 0xFFFF;
+
+        double xOffset = lerp(-boundsMinX, xDim - boundsMaxX, random.nextDouble()) * offsetReductionFactor;
+        double yOffset = lerp(-boundsMinY, yDim - boundsMaxY, random.nextDouble()) * offsetReductionFactor;
+
+        // Noise settings
+        double noiseProbability = Math.min(random.nextDouble(), random.nextDouble()) * maxNoiseProbability;
+        double noiseStrength = Math.min(random.nextDouble(), random.nextDouble());
+
+        transform(inputs, inputOffset, dest, destOffset, angleInDegrees, scale, xOffset, yOffset, noiseProbability, noiseStrength, random);
+    }
+
+    // Rotate, scale and offset the image with bilinear sampling, then add noise
+    public void transform(double[] inputs, int inputOffset, double[] dest, int destOffset,
+                          double angleInDegrees, double scale, double xOffset, double yOffset,
+                          double noiseProbability, double noiseStrength, SplittableRandom random) {
+
+        // Convert angle and get iHat and jHat
+        double angle = Math.toRadians(angleInDegrees);
+
+        double iHatX = Math.cos(angle) / scale;
+        double iHatY = Math.sin(angle) / scale;
+
+        double jHatX = -iHatY;
+        double jHatY = iHatX;
+
+        // Texture coordinates as affine functions of the pixel: tex = dx * x + dy * y + base
+        // Equivalent to mapping through uv space, (u - 0.5) rotated and scaled then shifted back
+        double maxX = xDim - 1;
+        double maxY = yDim - 1;
+        double texXdx = iHatX;
+        double texXdy = jHatX * maxX / maxY;
+        double texXbase = maxX * (0.5 - 0.5 * iHatX - 0.5 * jHatX - xOffset / xDim);
+        double texYdx = iHatY * maxY / maxX;
+        double texYdy = jHatY;
+        double texYbase = maxY * (0.5 - 0.5 * iHatY - 0.5 * jHatY - yOffset / yDim);
+
+        // Index of the first noisy pixel
+        int size = xDim * yDim;
+        int nextNoise = nextNoisyPixel(-1, noiseProbability, random, size);
+
+        for (int y = 0; y < yDim; y++) {
+            double rowX = texXbase + texXdy * y;
+            double rowY = texYbase + texYdy * y;
+            int destRow = destOffset + y * xDim;
+
+            for (int x = 0; x < xDim; x++) {
+                double texX = clamp(rowX + texXdx * x, maxX);
+                double texY = clamp(rowY + texYdx * x, maxY);
+
+                // Integer and fractional parts, sampling the last pixel from the one before it
+                int xi = Math.min((int)texX, xDim - 2);
+                int yi = Math.min((int)texY, yDim - 2);
+                double xf = texX - xi;
+                double yf = texY - yi;
+
+                int source = inputOffset + yi * xDim + xi;
+                double top = inputs[source] + xf * (inputs[source + 1] - inputs[source]);
+                double bottom = inputs[source + xDim] + xf * (inputs[source + xDim + 1] - inputs[source + xDim]);
+                double value = top + yf * (bottom - top);
+
+                // Noise
+                int pixel = y * xDim + x;
+                if (pixel == nextNoise) {
+                    value += (random.nextDouble() - 0.5) * 2 * noiseStrength;
+                    nextNoise = nextNoisyPixel(pixel, noiseProbability, random, size);
+                }
+
+                // Clamp between 0 and 1
+                dest[destRow + x] = clamp(value, 1);
+            }
+        }
+    }
+
+    // Index of the next pixel after pixel that gets noise, each pixel independently with the given probability
+    // Returns size if there is none
+    private static int nextNoisyPixel(int pixel, double probability, SplittableRandom random, int size) {
+        if (probability <= 0) {
+            return size;
+        }
+        if (probability >= 1) {
+            return pixel + 1;
+        }
+
+        // Number of pixels skipped is geometrically distributed
+        double skip = Math.floor(Math.log(1 - random.nextDouble()) / Math.log1p(-probability));
+        return (skip >= size - pixel - 1) ? size : pixel + 1 + (int)skip;
+    }
+
+    // Bounding box of the non zero pixels packed as minX, maxX, minY, maxY in 16 bits each
+    // Scans rows in from the top and bottom and columns in from the sides, stopping at the drawing
+    // An empty image gives the same inverted box as a full scan would
+    private long findBounds(double[] inputs, int offset) {
+        int minY = 0;
+        while (minY < yDim && rowIsEmpty(inputs, offset, minY)) {
+            minY++;
+        }
+        if (minY == yDim) {
+            return pack(xDim, 0, yDim, 0);
+        }
+        int maxY = yDim - 1;
+        while (rowIsEmpty(inputs, offset, maxY)) {
+            maxY--;
+        }
+
+        int minX = 0;
+        while (columnIsEmpty(inputs, offset, minX, minY, maxY)) {
+            minX++;
+        }
+        int maxX = xDim - 1;
+        while (columnIsEmpty(inputs, offset, maxX, minY, maxY)) {
+            maxX--;
+        }
+        return pack(minX, maxX, minY, maxY);
+    }
+
+    private boolean rowIsEmpty(double[] inputs, int offset, int y) {
+        int row = offset + y * xDim;
+        for (int x = 0; x < xDim; x++) {
+            if (inputs[row + x] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private boolean columnIsEmpty(double[] inputs, int offset, int x, int minY, int maxY) {
+        for (int y = minY; y <= maxY; y++) {
+            if (inputs[offset + y * xDim + x] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static long pack(int minX, int maxX, int minY, int maxY) {
+        return ((long)minX << 48) | ((long)maxX << 32) | ((long)minY << 16) | maxY;
+    }
+
+    // Clamp value between 0 and max
+    private static double clamp(double value, double max) {
+        return (value < 0) ? 0 : (value > max) ? max : value;
+    }
+
+    private static double lerp(double a, double b, double f) {
+        return (a * (1.0 - f)) + (b * f);
+    }
+
+    // Standard normal sample (Marsaglia polar method)
+    private static double nextGaussian(SplittableRandom random) {
+        double v1, v2, s;
+        do {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        return v1 * Math.sqrt(-2 * Math.log(s) / s);
+    }
+
+    // Getters and setters
+    public int getXDim() {
+        return xDim;
+    }
+
+    public int getYDim() {
+        return yDim;
+    }
+
+    public double getAngleRange() {
+        return angleRange;
+    }
+
+    public void setAngleRange(double angleRange) {
+        this.angleRange = angleRange;
+    }
+
+    public double getScaleRange() {
+        return scaleRange;
+    }
+
+    public void setScaleRange(double scaleRange) {
+        this.scaleRange = scaleRange;
+    }
+
+    public double getOffsetReductionFactor() {
+        return offsetReductionFactor;
+    }
+
+    public void setOffsetReductionFactor(double offsetReductionFactor) {
+        this.offsetReductionFactor = offsetReductionFactor;
+    }
+
+    public double getMaxNoiseProbability() {
+        return maxNoiseProbability;
+    }
+
+    public void setMaxNoiseProbability(double maxNoiseProbability) {
+        this.maxNoiseProbability = maxNoiseProbability;
+    }
+}
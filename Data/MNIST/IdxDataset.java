@@ -0,0 +1,174 @@
+package Data.MNIST;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import Data.Dataset;
+import Data.ImageDataPoint;
+
+// Images and labels from a pair of IDX files, memory mapped and kept as raw bytes
+// Pixels are only converted to doubles between 0 and 1 when they are copied out
+public class IdxDataset extends Dataset {
+
+    // Magic numbers of unsigned byte IDX files with 3 (images) and 1 (labels) dimensions
+    public static final int IMAGE_MAGIC_NUMBER = 2051;
+    public static final int LABEL_MAGIC_NUMBER = 2049;
+
+    private static final int IMAGE_HEADER_SIZE = 16;
+    private static final int LABEL_HEADER_SIZE = 8;
+
+    // Pixel value for each possible byte, the same as dividing by 255
+    private static final double[] PIXEL_VALUES = new double[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            PIXEL_VALUES[i] = (double)i / 255;
+        }
+    }
+
+    private final ByteBuffer images;
+    private final ByteBuffer labels;
+
+    private final int size;
+    private final int nRows;
+    private final int nCols;
+    private final int numCategories;
+
+    private IdxDataset(ByteBuffer images, ByteBuffer labels, int size, int nRows, int nCols, int numCategories) {
+        this.images = images;
+        this.labels = labels;
+        this.size = size;
+        this.nRows = nRows;
+        this.nCols = nCols;
+        this.numCategories = numCategories;
+    }
+
+    // Map an image file and its label file, checking that their headers and sizes agree
+    public static IdxDataset open(String imageFilePath, String labelFilePath, int numCategories) throws IOException {
+        MappedByteBuffer images = map(imageFilePath);
+        MappedByteBuffer labels = map(labelFilePath);
+
+        // Images
+        if (images.capacity() < IMAGE_HEADER_SIZE) {
+            throw new IOException(imageFilePath + " is too short to be an IDX image file");
+        }
+        int imageMagicNumber = images.getInt(0);
+        if (imageMagicNumber != IMAGE_MAGIC_NUMBER) {
+            throw new IOException(imageFilePath + " has magic number " + imageMagicNumber + ", expected " + IMAGE_MAGIC_NUMBER);
+        }
+        int numberOfImages = images.getInt(4);
+        int nRows = images.getInt(8);
+        int nCols = images.getInt(12);
+        long expectedImageBytes = IMAGE_HEADER_SIZE + (long)numberOfImages * nRows * nCols;
+        if (numberOfImages < 0 || nRows <= 0 || nCols <= 0 || images.capacity() != expectedImageBytes) {
+            throw new IOException(imageFilePath + " holds " + images.capacity() + " bytes, header describes " + expectedImageBytes);
+        }
+
+        // Labels
+        if (labels.capacity() < LABEL_HEADER_SIZE) {
+            throw new IOException(labelFilePath + " is too short to be an IDX label file");
+        }
+        int labelMagicNumber = labels.getInt(0);
+        if (labelMagicNumber != LABEL_MAGIC_NUMBER) {
+            throw new IOException(labelFilePath + " has magic number " + labelMagicNumber + ", expected " + LABEL_MAGIC_NUMBER);
+        }
+        int numberOfLabels = labels.getInt(4);
+        if (numberOfLabels != numberOfImages) {
+            throw new IOException(labelFilePath + " has " + numberOfLabels + " labels for " + numberOfImages + " images");
+        }
+        if (labels.capacity() != LABEL_HEADER_SIZE + (long)numberOfLabels) {
+            throw new IOException(labelFilePath + " holds " + labels.capacity() + " bytes, header describes " + (LABEL_HEADER_SIZE + numberOfLabels));
+        }
+        for (int i = 0; i < numberOfLabels; i++) {
+            int label = labels.get(LABEL_HEADER_SIZE + i) & 0xFF;
+            if (label >= numCategories) {
+                throw new IOException(labelFilePath + " has label " + label + " at " + i + ", only " + numCategories + " categories");
+            }
+        }
+
+        return new IdxDataset(images, labels, numberOfImages, nRows, nCols, numCategories);
+    }
+
+    private static MappedByteBuffer map(String filePath) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " is too large to map");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Copy image index as doubles between 0 and 1 into dest starting at offset
+    public void copyInputsTo(int index, double[] dest, int offset) {
+        int inputSize = getInputSize();
+        int start = IMAGE_HEADER_SIZE + index * inputSize;
+        for (int j = 0; j < inputSize; j++) {
+            dest[offset + j] = PIXEL_VALUES[images.get(start + j) & 0xFF];
+        }
+    }
+
+    // Copy the raw pixel bytes of image index into dest starting at offset
+    public void copyPixelsTo(int index, byte[] dest, int offset) {
+        int inputSize = getInputSize();
+        images.get(IMAGE_HEADER_SIZE + index * inputSize, dest, offset, inputSize);
+    }
+
+    // Write the one hot expected outputs of image index into dest starting at offset
+    public void copyOutputsTo(int index, double[] dest, int offset) {
+        for (int k = 0; k < numCategories; k++) {
+            dest[offset + k] = 0;
+        }
+        dest[offset + getLabel(index)] = 1;
+    }
+
+    public boolean hasLabels() {
+        return true;
+    }
+
+    public int getLabel(int index) {
+        return labels.get(LABEL_HEADER_SIZE + index) & 0xFF;
+    }
+
+    // Expand every image into an ImageDataPoint for code that works on DataPoint arrays
+    public ImageDataPoint[] toImageDataPoints() {
+        ImageDataPoint[] dataPoints = new ImageDataPoint[size];
+        int inputSize = getInputSize();
+        for (int i = 0; i < size; i++) {
+            double[] inputs = new double[inputSize];
+            double[] outputs = new double[numCategories];
+            copyInputsTo(i, inputs, 0);
+            outputs[getLabel(i)] = 1;
+            dataPoints[i] = new ImageDataPoint(nCols, nRows, inputs, outputs);
+        }
+        return dataPoints;
+    }
+
+    // Getters
+    public int size() {
+        return size;
+    }
+
+    public int getInputSize() {
+        return nRows * nCols;
+    }
+
+    public int getOutputSize() {
+        return numCategories;
+    }
+
+    public int getNumCategories() {
+        return numCategories;
+    }
+
+    public int getRows() {
+        return nRows;
+    }
+
+    public int getCols() {
+        return nCols;
+    }
+}
@@ -6,6 +6,7 @@ import java.awt.event.MouseEvent;
 
 import javax.swing.*;
 
+import Models.InferenceSession;
 import Models.NeuralNetwork;
 
 import java.util.Timer;
@@ -23,9 +24,11 @@ public class MnistDrawer extends JPanel {
     private TimerTask task;
 
     private NeuralNetwork model;
+    private InferenceSession session;
 
     public MnistDrawer(NeuralNetwork model) {
         this.model = model;
+        session = model.createSession();
 
         // Initialize pixel array
         pixelArray = new double[28 * 28];
@@ -126,7 +129,7 @@ public class MnistDrawer extends JPanel {
         }
 
         // Draw model predictions on the left
-        double[] modelPredictions = model.forwardPropagate(pixelArray, false);
+        double[] modelPredictions = session.predict(pixelArray);
 
         FontMetrics metrics = g.getFontMetrics(getFont());
         double stringHeight = metrics.getAscent();
@@ -0,0 +1,257 @@
+package Data;
+
+import Metrics.Phase;
+import Metrics.TrainingMetrics;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Assembles upcoming mini batches on background threads while the current one is trained on
+// Batches live in a fixed ring of depth buffers: batch b is built in slot b % depth once the
+// consumer has released batch b - depth, so at most depth batches exist at any time
+// Augmented inputs are written straight into the batch buffers and never kept per point
+public class PrefetchingBatchLoader implements AutoCloseable {
+
+    private final Dataset data;
+    private final int batchSize;
+    private final int depth;
+    private final Augmentation augmentation;
+    private final Function<DataPoint, Void> processFunction;
+    private final long seed;
+
+    private final Batch[] slots;
+    private final boolean[] ready;
+    private final Thread[] workers;
+
+    // Augmentation latencies and worker allocation are recorded here when set
+    private volatile TrainingMetrics metrics;
+
+    // Guards everything below
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Order of the current epoch, and the global numbers of its first batch and the one after its last
+    private final int[] order;
+    private int epoch;
+    private int epochStart;
+    private int epochEnd;
+    private int epochFirstBatch;
+    private SplittableRandom epochRandom;
+
+    private int nextToFill;
+    private int nextToTake;
+    private int released;
+    private boolean closed;
+    private RuntimeException failure;
+
+    // augmentation and processFunction may be null; processFunction needs a DataPointDataset
+    public PrefetchingBatchLoader(Dataset data, int batchSize, int depth, int numWorkers, Augmentation augmentation, Function<DataPoint, Void> processFunction, long seed) {
+        if (depth < 1 || numWorkers < 1) {
+            throw new IllegalArgumentException("Need at least one buffer and one worker, got " + depth + " and " + numWorkers);
+        }
+        if (processFunction != null && !(data instanceof DataPointDataset)) {
+            throw new IllegalArgumentException("A process function needs a DataPointDataset, got " + data.getClass().getSimpleName());
+        }
+        this.data = data;
+        this.batchSize = batchSize;
+        this.depth = depth;
+        this.augmentation = augmentation;
+        this.processFunction = processFunction;
+        this.seed = seed;
+
+        order = new int[data.size()];
+        slots = new Batch[depth];
+        ready = new boolean[depth];
+        for (int i = 0; i < depth; i++) {
+            slots[i] = new Batch(batchSize, data.getInputSize(), data.getOutputSize());
+        }
+
+        workers = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Thread(this::work, "batch-loader-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // Start building the batches of an epoch, visiting points in the given order
+    // Every batch of the previous epoch must have been taken first
+    public void startEpoch(int[] order, int epoch) {
+        startEpoch(order, epoch, 0);
+    }
+
+    // Start an epoch part way through, at batch firstBatch, as when resuming from a checkpoint
+    // The batches are the same as the ones a full epoch would have built from there
+    public void startEpoch(int[] order, int epoch, int firstBatch) {
+        lock.lock();
+        try {
+            if (nextToTake != epochEnd) {
+                throw new IllegalStateException((epochEnd - nextToTake) + " batches of the previous epoch weren't taken");
+            }
+            System.arraycopy(order, 0, this.order, 0, this.order.length);
+            this.epoch = epoch;
+            epochStart = epochEnd;
+            epochEnd = epochStart + getNumBatches() - firstBatch;
+            epochFirstBatch = firstBatch;
+
+            // Each batch splits its random off this one in batch order, so results don't depend on the workers
+            epochRandom = new SplittableRandom(seed + epoch);
+            for (int batch = 0; batch < firstBatch; batch++) {
+                epochRandom.split();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Wait for the next batch of the epoch
+    public Batch next() throws InterruptedException {
+        lock.lock();
+        try {
+            if (nextToTake >= epochEnd) {
+                throw new IllegalStateException("No batches left in epoch " + epoch);
+            }
+            int slot = nextToTake % depth;
+            while (!ready[slot] && failure == null && !closed) {
+                changed.await();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IllegalStateException("Loader is closed");
+            }
+            ready[slot] = false;
+            nextToTake++;
+            return slots[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Give a taken batch's buffers back to be refilled; batches must be released in the order they were taken
+    public void release(Batch batch) {
+        lock.lock();
+        try {
+            if (slots[released % depth] != batch || released >= nextToTake) {
+                throw new IllegalStateException("Batches must be released in the order they were taken");
+            }
+            released++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stop the workers; batches being built are abandoned
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void work() {
+        double[] source = (augmentation != null) ? new double[batchSize * data.getInputSize()] : null;
+        try {
+            while (true) {
+                int batch;
+                int start;
+                SplittableRandom random;
+
+                // Claim the next batch once it belongs to a started epoch and its slot is free
+                lock.lock();
+                try {
+                    while (!closed && (nextToFill >= epochEnd || nextToFill >= released + depth)) {
+                        changed.await();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    batch = nextToFill++;
+                    start = (batch - epochStart + epochFirstBatch) * batchSize;
+                    random = epochRandom.split();
+                } finally {
+                    lock.unlock();
+                }
+
+                TrainingMetrics batchMetrics = metrics;
+                long fillStart = System.nanoTime();
+                long allocatedStart = (batchMetrics != null) ? TrainingMetrics.threadAllocatedBytes() : 0;
+                fill(slots[batch % depth], start, Math.min(batchSize, order.length - start), random, source);
+                if (batchMetrics != null) {
+                    batchMetrics.addAllocatedBytes(TrainingMetrics.threadAllocatedBytes() - allocatedStart);
+                    if (augmentation != null) {
+                        batchMetrics.record(Phase.AUGMENTATION, System.nanoTime() - fillStart);
+                    }
+                }
+
+                lock.lock();
+                try {
+                    ready[batch % depth] = true;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting
+        } catch (RuntimeException | Error e) {
+            lock.lock();
+            try {
+                failure = (e instanceof RuntimeException) ? (RuntimeException)e : new RuntimeException(e);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Build the batch of points order[start..start + count)
+    private void fill(Batch batch, int start, int count, SplittableRandom random, double[] source) {
+        if (processFunction != null) {
+            DataPointDataset points = (DataPointDataset)data;
+            for (int i = start; i < start + count; i++) {
+                processFunction.apply(points.getDataPoint(order[i]));
+            }
+        }
+
+        if (augmentation == null) {
+            batch.gather(data, order, start, 0, count);
+        } else {
+            data.gatherInputs(order, start, count, source, 0);
+            augmentation.augmentBatch(source, 0, batch.getInputs(), 0, count, data.getInputSize(), random);
+            batch.gatherExpected(data, order, start, 0, count);
+        }
+        batch.setSize(count);
+    }
+
+    // Number of batches per epoch, the last one may not be full
+    public int getNumBatches() {
+        return (order.length + batchSize - 1) / batchSize;
+    }
+
+    public TrainingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(TrainingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
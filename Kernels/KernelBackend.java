@@ -0,0 +1,53 @@
+package Kernels;
+
+// Inner loops the matrix kernels and the ADAM update are built from
+// Implementations must add elementwise terms in the order given so that axpy4 matches
+// four axpy calls, and dot4 must sum each row exactly like dot
+public interface KernelBackend {
+
+    // Name shown when reporting which backend is in use
+    String getName();
+
+    // Sum of a[aOffset..] * b[bOffset..] over length elements
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    double dot(double[] a, int aOffset, float[] b, int bOffset, int length);
+
+    // c[cOffset + r] = dot(a, aOffset, b, bOffset + r * bStride, length) for r = 0..3
+    void dot4(double[] a, int aOffset, double[] b, int bOffset, int bStride, int length, double[] c, int cOffset);
+
+    void dot4(double[] a, int aOffset, float[] b, int bOffset, int bStride, int length, double[] c, int cOffset);
+
+    // y[yOffset..] += alpha * x[xOffset..] over length elements
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length);
+
+    // y += alpha0 * x0 + alpha1 * x1 + alpha2 * x2 + alpha3 * x3 where x0..x3 are rows of x xStride apart
+    void axpy4(double alpha0, double alpha1, double alpha2, double alpha3, double[] x, int xOffset, int xStride, double[] y, int yOffset, int length);
+
+    void axpy4(double alpha0, double alpha1, double alpha2, double alpha3, float[] x, int xOffset, int xStride, double[] y, int yOffset, int length);
+
+    // Sum of (a[aOffset..] & 0xFF) * b[bOffset..] over length elements in 32-bit integers:
+    // a holds unsigned 8-bit activations and b signed 8-bit weights
+    // Integer sums are exact, so every backend gives the same result; length must stay below 66,000
+    // so the sum of 255 * 127 products can't overflow
+    int dotInt8(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+    // c[cOffset + r] = dotInt8(a, aOffset, b, bOffset + r * bStride, length) for r = 0..3
+    void dot4Int8(byte[] a, int aOffset, byte[] b, int bOffset, int bStride, int length, int[] c, int cOffset);
+
+    // One ADAM step over length weights, clearing the gradients afterwards
+    // With g = gradient * gradientScale + lambda * w:
+    //   m = beta1 * m + (1 - beta1) * g, v = beta2 * v + (1 - beta2) * g * g
+    //   w = w - stepSize * m / (sqrt(v) * inverseRootCorrection2 + epsilon) - decay * w
+    // where stepSize and inverseRootCorrection2 hold the bias corrections of the step
+    void adam(double[] weights, double[] m, double[] v, double[] gradients, int length,
+              double gradientScale, double lambda, double beta1, double beta2,
+              double stepSize, double inverseRootCorrection2, double epsilon, double decay);
+
+    // Same step with weights and moments stored in single precision, computed in double
+    void adam(float[] weights, float[] m, float[] v, double[] gradients, int length,
+              double gradientScale, double lambda, double beta1, double beta2,
+              double stepSize, double inverseRootCorrection2, double epsilon, double decay);
+}
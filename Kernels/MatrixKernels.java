@@ -0,0 +1,459 @@
+package Kernels;
+
+import java.util.Arrays;
+
+// Cache-blocked matrix kernels for row-major matrices stored in flat arrays
+// Every kernel sums each output element in the same order as the equivalent
+// per-sample loop, so batched results match sample-by-sample results exactly
+// Overloads taking a float[] matrix read single precision weights but accumulate in double
+// The inner loops run on a KernelBackend: the Vector API one when available, otherwise plain loops
+public class MatrixKernels {
+
+    // Number of rows of the shared matrix kept hot in cache while the batch streams past
+    private static final int ROW_BLOCK = 32;
+
+    // Rows of the shared matrix per block in the sparse kernels, whose scattered accesses
+    // need them to stay in the first level cache
+    private static final int SPARSE_ROW_BLOCK = 8;
+
+    private static final KernelBackend BACKEND = selectBackend();
+
+    // Use the Vector API backend if the jdk.incubator.vector module is present
+    // Run with -Dkernels.backend=scalar to force the plain loops
+    private static KernelBackend selectBackend() {
+        if (!"scalar".equals(System.getProperty("kernels.backend"))) {
+            try {
+                return (KernelBackend)Class.forName("Kernels.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Module not resolved, use the scalar backend
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    // The backend in use
+    public static KernelBackend getBackend() {
+        return BACKEND;
+    }
+
+    // c[m x n] = a[m x k] * b[n x k]^T
+    // Used for the forward pass: values = inputs * weights^T
+    public static void multiplyTransposed(double[] a, int aOffset, double[] b, double[] c, int cOffset, int m, int n, int k) {
+        for (int j0 = 0; j0 < n; j0 += ROW_BLOCK) {
+            int jEnd = Math.min(j0 + ROW_BLOCK, n);
+            for (int i = 0; i < m; i++) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+
+                // Four rows of b at a time so each element of a is loaded once
+                int j = j0;
+                for (; j + 3 < jEnd; j += 4) {
+                    BACKEND.dot4(a, aRow, b, j * k, k, k, c, cRow + j);
+                }
+                for (; j < jEnd; j++) {
+                    c[cRow + j] = dot(a, aRow, b, j * k, k);
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a[m x k] * b[n x k]^T in 32-bit integers, with a unsigned 8-bit and b signed 8-bit
+    // Used for the int8 forward pass: sums = quantized inputs * quantized weights^T
+    public static void multiplyTransposed(byte[] a, int aOffset, byte[] b, int[] c, int cOffset, int m, int n, int k) {
+        for (int j0 = 0; j0 < n; j0 += ROW_BLOCK) {
+            int jEnd = Math.min(j0 + ROW_BLOCK, n);
+            for (int i = 0; i < m; i++) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+                int j = j0;
+                for (; j + 3 < jEnd; j += 4) {
+                    BACKEND.dot4Int8(a, aRow, b, j * k, k, k, c, cRow + j);
+                }
+                for (; j < jEnd; j++) {
+                    c[cRow + j] = BACKEND.dotInt8(a, aRow, b, j * k, k);
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a[m x k] * b[k x n]
+    // Used to back propagate error: error = nextError * nextWeights
+    public static void multiply(double[] a, int aOffset, double[] b, double[] c, int cOffset, int m, int n, int k) {
+        Arrays.fill(c, cOffset, cOffset + m * n, 0);
+        for (int p0 = 0; p0 < k; p0 += ROW_BLOCK) {
+            int pEnd = Math.min(p0 + ROW_BLOCK, k);
+            for (int i = 0; i < m; i++) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+
+                // Four rows of b per pass so each element of c is loaded and stored once
+                int p = p0;
+                for (; p + 3 < pEnd; p += 4) {
+                    BACKEND.axpy4(a[aRow + p], a[aRow + p + 1], a[aRow + p + 2], a[aRow + p + 3], b, p * n, n, c, cRow, n);
+                }
+                for (; p < pEnd; p++) {
+                    axpy(a[aRow + p], b, p * n, c, cRow, n);
+                }
+            }
+        }
+    }
+
+    // c[m x n] += a[k x m]^T * b[k x n]
+    // Used to accumulate weight gradients: gradient += error^T * inputs
+    public static void multiplyTransposedAdd(double[] a, int aOffset, double[] b, int bOffset, double[] c, int m, int n, int k) {
+        for (int i0 = 0; i0 < m; i0 += ROW_BLOCK) {
+            int iEnd = Math.min(i0 + ROW_BLOCK, m);
+
+            // Four rows of b per pass so each element of c is loaded and stored once
+            int p = 0;
+            for (; p + 3 < k; p += 4) {
+                int aRow = aOffset + p * m;
+                int bRow = bOffset + p * n;
+                for (int i = i0; i < iEnd; i++) {
+                    BACKEND.axpy4(a[aRow + i], a[aRow + m + i], a[aRow + 2 * m + i], a[aRow + 3 * m + i], b, bRow, n, c, i * n, n);
+                }
+            }
+            for (; p < k; p++) {
+                int aRow = aOffset + p * m;
+                int bRow = bOffset + p * n;
+                for (int i = i0; i < iEnd; i++) {
+                    axpy(a[aRow + i], b, bRow, c, i * n, n);
+                }
+            }
+        }
+    }
+
+    // Sum of a[aOffset..] * b[bOffset..] over length elements
+    public static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return BACKEND.dot(a, aOffset, b, bOffset, length);
+    }
+
+    // y[yOffset..] += alpha * x[xOffset..] over length elements
+    public static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        BACKEND.axpy(alpha, x, xOffset, y, yOffset, length);
+    }
+
+    // Single precision weight variants
+
+    // c[m x n] = a[m x k] * b[n x k]^T with b in single precision
+    public static void multiplyTransposed(double[] a, int aOffset, float[] b, double[] c, int cOffset, int m, int n, int k) {
+        for (int j0 = 0; j0 < n; j0 += ROW_BLOCK) {
+            int jEnd = Math.min(j0 + ROW_BLOCK, n);
+            for (int i = 0; i < m; i++) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+
+                int j = j0;
+                for (; j + 3 < jEnd; j += 4) {
+                    BACKEND.dot4(a, aRow, b, j * k, k, k, c, cRow + j);
+                }
+                for (; j < jEnd; j++) {
+                    c[cRow + j] = dot(a, aRow, b, j * k, k);
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a[m x k] * b[k x n] with b in single precision
+    public static void multiply(double[] a, int aOffset, float[] b, double[] c, int cOffset, int m, int n, int k) {
+        Arrays.fill(c, cOffset, cOffset + m * n, 0);
+        for (int p0 = 0; p0 < k; p0 += ROW_BLOCK) {
+            int pEnd = Math.min(p0 + ROW_BLOCK, k);
+            for (int i = 0; i < m; i++) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+
+                int p = p0;
+                for (; p + 3 < pEnd; p += 4) {
+                    BACKEND.axpy4(a[aRow + p], a[aRow + p + 1], a[aRow + p + 2], a[aRow + p + 3], b, p * n, n, c, cRow, n);
+                }
+                for (; p < pEnd; p++) {
+                    axpy(a[aRow + p], b, p * n, c, cRow, n);
+                }
+            }
+        }
+    }
+
+    public static double dot(double[] a, int aOffset, float[] b, int bOffset, int length) {
+        return BACKEND.dot(a, aOffset, b, bOffset, length);
+    }
+
+    public static void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length) {
+        BACKEND.axpy(alpha, x, xOffset, y, yOffset, length);
+    }
+
+    // Sparse input variants
+    // Rows given as SparseRows only multiply their nonzero inputs; rows left dense use the kernels above
+    // A sparse row is summed in column order, which matches the scalar backend's dot exactly,
+    // but can round differently from the Vector API backend in the last bits
+
+    // c[m x n] = a * b[n x k]^T with the m rows of a given sparsely
+    public static void multiplyTransposed(SparseRows a, double[] b, double[] c, int cOffset, int n) {
+        int k = a.getNumColumns();
+        int[] rowStart = a.getRowStart();
+        int[] indices = a.getIndices();
+        double[] values = a.getValues();
+
+        for (int j0 = 0; j0 < n; j0 += SPARSE_ROW_BLOCK) {
+            int jEnd = Math.min(j0 + SPARSE_ROW_BLOCK, n);
+            for (int i = 0; i < a.getNumRows(); i++) {
+                int cRow = cOffset + i * n;
+                int j = j0;
+                if (a.isDenseRow(i)) {
+                    int aRow = a.getSourceOffset(i);
+                    for (; j + 3 < jEnd; j += 4) {
+                        BACKEND.dot4(a.getSource(), aRow, b, j * k, k, k, c, cRow + j);
+                    }
+                    for (; j < jEnd; j++) {
+                        c[cRow + j] = dot(a.getSource(), aRow, b, j * k, k);
+                    }
+                } else {
+                    int start = rowStart[i];
+                    int end = rowStart[i + 1];
+                    for (; j + 3 < jEnd; j += 4) {
+                        sparseDot4(indices, values, start, end, b, j * k, k, c, cRow + j);
+                    }
+                    for (; j < jEnd; j++) {
+                        c[cRow + j] = sparseDot(indices, values, start, end, b, j * k);
+                    }
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a * b[n x k]^T with the m rows of a given sparsely and b in single precision
+    public static void multiplyTransposed(SparseRows a, float[] b, double[] c, int cOffset, int n) {
+        int k = a.getNumColumns();
+        int[] rowStart = a.getRowStart();
+        int[] indices = a.getIndices();
+        double[] values = a.getValues();
+
+        for (int j0 = 0; j0 < n; j0 += SPARSE_ROW_BLOCK) {
+            int jEnd = Math.min(j0 + SPARSE_ROW_BLOCK, n);
+            for (int i = 0; i < a.getNumRows(); i++) {
+                int cRow = cOffset + i * n;
+                int j = j0;
+                if (a.isDenseRow(i)) {
+                    int aRow = a.getSourceOffset(i);
+                    for (; j + 3 < jEnd; j += 4) {
+                        BACKEND.dot4(a.getSource(), aRow, b, j * k, k, k, c, cRow + j);
+                    }
+                    for (; j < jEnd; j++) {
+                        c[cRow + j] = dot(a.getSource(), aRow, b, j * k, k);
+                    }
+                } else {
+                    int start = rowStart[i];
+                    int end = rowStart[i + 1];
+                    for (; j + 3 < jEnd; j += 4) {
+                        sparseDot4(indices, values, start, end, b, j * k, k, c, cRow + j);
+                    }
+                    for (; j < jEnd; j++) {
+                        c[cRow + j] = sparseDot(indices, values, start, end, b, j * k);
+                    }
+                }
+            }
+        }
+    }
+
+    // c[m x n] = a[m x k] * b^T with the n rows of b given sparsely
+    // Used for the forward pass of pruned layers, whose weights keep only their nonzeros: values = inputs * weights^T
+    public static void multiplyTransposed(double[] a, int aOffset, SparseRows b, double[] c, int cOffset, int m) {
+        int n = b.getNumRows();
+        int k = b.getNumColumns();
+        int[] rowStart = b.getRowStart();
+        int[] indices = b.getIndices();
+        double[] values = b.getValues();
+
+        for (int j0 = 0; j0 < n; j0 += ROW_BLOCK) {
+            int jEnd = Math.min(j0 + ROW_BLOCK, n);
+            int i = 0;
+
+            // Four rows of a at a time so each index and value of b is loaded once
+            for (; i + 3 < m; i += 4) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+                for (int j = j0; j < jEnd; j++) {
+                    sparseDot4(indices, values, rowStart[j], rowStart[j + 1], a, aRow, k, c, cRow + j, n);
+                }
+            }
+            for (; i < m; i++) {
+                int aRow = aOffset + i * k;
+                int cRow = cOffset + i * n;
+                for (int j = j0; j < jEnd; j++) {
+                    c[cRow + j] = sparseDot(indices, values, rowStart[j], rowStart[j + 1], a, aRow);
+                }
+            }
+        }
+    }
+
+    // c[m x n] += a[k x m]^T * b with the k rows of b given sparsely
+    // Used to accumulate the first layer's weight gradients; zero errors are skipped as well
+    public static void multiplyTransposedAdd(double[] a, int aOffset, SparseRows b, double[] c, int m) {
+        int n = b.getNumColumns();
+        int[] rowStart = b.getRowStart();
+        int[] indices = b.getIndices();
+        double[] values = b.getValues();
+
+        for (int i0 = 0; i0 < m; i0 += SPARSE_ROW_BLOCK) {
+            int iEnd = Math.min(i0 + SPARSE_ROW_BLOCK, m);
+            for (int p = 0; p < b.getNumRows(); p++) {
+                int aRow = aOffset + p * m;
+                if (b.isDenseRow(p)) {
+                    for (int i = i0; i < iEnd; i++) {
+                        axpy(a[aRow + i], b.getSource(), b.getSourceOffset(p), c, i * n, n);
+                    }
+                } else {
+                    int start = rowStart[p];
+                    int end = rowStart[p + 1];
+                    int i = i0;
+                    for (; i + 3 < iEnd; i += 4) {
+                        sparseAxpy4(a[aRow + i], a[aRow + i + 1], a[aRow + i + 2], a[aRow + i + 3], indices, values, start, end, c, i * n, n);
+                    }
+                    for (; i < iEnd; i++) {
+                        double alpha = a[aRow + i];
+                        if (alpha != 0) {
+                            sparseAxpy(alpha, indices, values, start, end, c, i * n);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Sum of row of a * b[bOffset..]
+    public static double dot(SparseRows a, int row, double[] b, int bOffset) {
+        if (a.isDenseRow(row)) {
+            return dot(a.getSource(), a.getSourceOffset(row), b, bOffset, a.getNumColumns());
+        }
+        return sparseDot(a.getIndices(), a.getValues(), a.getRowStart()[row], a.getRowStart()[row + 1], b, bOffset);
+    }
+
+    public static double dot(SparseRows a, int row, float[] b, int bOffset) {
+        if (a.isDenseRow(row)) {
+            return dot(a.getSource(), a.getSourceOffset(row), b, bOffset, a.getNumColumns());
+        }
+        return sparseDot(a.getIndices(), a.getValues(), a.getRowStart()[row], a.getRowStart()[row + 1], b, bOffset);
+    }
+
+    // y[yOffset..] += alpha * row of x
+    public static void axpy(double alpha, SparseRows x, int row, double[] y, int yOffset) {
+        if (x.isDenseRow(row)) {
+            axpy(alpha, x.getSource(), x.getSourceOffset(row), y, yOffset, x.getNumColumns());
+        } else if (alpha != 0) {
+            sparseAxpy(alpha, x.getIndices(), x.getValues(), x.getRowStart()[row], x.getRowStart()[row + 1], y, yOffset);
+        }
+    }
+
+    private static double sparseDot(int[] indices, double[] values, int start, int end, double[] b, int bOffset) {
+        double sum = 0;
+        for (int e = start; e < end; e++) {
+            sum += values[e] * b[bOffset + indices[e]];
+        }
+        return sum;
+    }
+
+    private static double sparseDot(int[] indices, double[] values, int start, int end, float[] b, int bOffset) {
+        double sum = 0;
+        for (int e = start; e < end; e++) {
+            sum += values[e] * b[bOffset + indices[e]];
+        }
+        return sum;
+    }
+
+    // Four rows of b at a time so each index and value is loaded once
+    private static void sparseDot4(int[] indices, double[] values, int start, int end, double[] b, int bOffset, int bStride, double[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int e = start; e < end; e++) {
+            int column = indices[e];
+            double x = values[e];
+            sum0 += x * b[b0 + column];
+            sum1 += x * b[b1 + column];
+            sum2 += x * b[b2 + column];
+            sum3 += x * b[b3 + column];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    private static void sparseDot4(int[] indices, double[] values, int start, int end, float[] b, int bOffset, int bStride, double[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int e = start; e < end; e++) {
+            int column = indices[e];
+            double x = values[e];
+            sum0 += x * b[b0 + column];
+            sum1 += x * b[b1 + column];
+            sum2 += x * b[b2 + column];
+            sum3 += x * b[b3 + column];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    // Four rows of b at a time, writing c[cOffset + r * cStride] for r = 0..3
+    private static void sparseDot4(int[] indices, double[] values, int start, int end, double[] b, int bOffset, int bStride, double[] c, int cOffset, int cStride) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int e = start; e < end; e++) {
+            int column = indices[e];
+            double x = values[e];
+            sum0 += x * b[b0 + column];
+            sum1 += x * b[b1 + column];
+            sum2 += x * b[b2 + column];
+            sum3 += x * b[b3 + column];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + cStride] = sum1;
+        c[cOffset + 2 * cStride] = sum2;
+        c[cOffset + 3 * cStride] = sum3;
+    }
+
+    // Four rows of y at a time so each index and value is loaded once
+    private static void sparseAxpy4(double alpha0, double alpha1, double alpha2, double alpha3, int[] indices, double[] values, int start, int end, double[] y, int yOffset, int yStride) {
+        int y0 = yOffset;
+        int y1 = y0 + yStride;
+        int y2 = y1 + yStride;
+        int y3 = y2 + yStride;
+        for (int e = start; e < end; e++) {
+            int column = indices[e];
+            double x = values[e];
+            y[y0 + column] += alpha0 * x;
+            y[y1 + column] += alpha1 * x;
+            y[y2 + column] += alpha2 * x;
+            y[y3 + column] += alpha3 * x;
+        }
+    }
+
+    private static void sparseAxpy(double alpha, int[] indices, double[] values, int start, int end, double[] y, int yOffset) {
+        for (int e = start; e < end; e++) {
+            y[yOffset + indices[e]] += alpha * values[e];
+        }
+    }
+
+    // One ADAM step over a flat parameter buffer, clearing the gradients
+    public static void adam(double[] weights, double[] m, double[] v, double[] gradients, int length,
+                            double gradientScale, double lambda, double beta1, double beta2,
+                            double stepSize, double inverseRootCorrection2, double epsilon, double decay) {
+        BACKEND.adam(weights, m, v, gradients, length, gradientScale, lambda, beta1, beta2, stepSize, inverseRootCorrection2, epsilon, decay);
+    }
+
+    public static void adam(float[] weights, float[] m, float[] v, double[] gradients, int length,
+                            double gradientScale, double lambda, double beta1, double beta2,
+                            double stepSize, double inverseRootCorrection2, double epsilon, double decay) {
+        BACKEND.adam(weights, m, v, gradients, length, gradientScale, lambda, beta1, beta2, stepSize, inverseRootCorrection2, epsilon, decay);
+    }
+}
@@ -0,0 +1,177 @@
+package Kernels;
+
+// Plain loop implementation of the kernel backend, used when the Vector API isn't available
+public class ScalarKernels implements KernelBackend {
+
+    public String getName() {
+        return "scalar";
+    }
+
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    public double dot(double[] a, int aOffset, float[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    // Four rows of b at a time so each element of a is loaded once
+    public void dot4(double[] a, int aOffset, double[] b, int bOffset, int bStride, int length, double[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int p = 0; p < length; p++) {
+            double x = a[aOffset + p];
+            sum0 += x * b[b0 + p];
+            sum1 += x * b[b1 + p];
+            sum2 += x * b[b2 + p];
+            sum3 += x * b[b3 + p];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    public void dot4(double[] a, int aOffset, float[] b, int bOffset, int bStride, int length, double[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int p = 0; p < length; p++) {
+            double x = a[aOffset + p];
+            sum0 += x * b[b0 + p];
+            sum1 += x * b[b1 + p];
+            sum2 += x * b[b2 + p];
+            sum3 += x * b[b3 + p];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    public int dotInt8(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += (a[aOffset + i] & 0xFF) * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    public void dot4Int8(byte[] a, int aOffset, byte[] b, int bOffset, int bStride, int length, int[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        for (int p = 0; p < length; p++) {
+            int x = a[aOffset + p] & 0xFF;
+            sum0 += x * b[b0 + p];
+            sum1 += x * b[b1 + p];
+            sum2 += x * b[b2 + p];
+            sum3 += x * b[b3 + p];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    public void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    // Adds the terms one at a time, so the result matches four separate axpy calls
+    public void axpy4(double alpha0, double alpha1, double alpha2, double alpha3, double[] x, int xOffset, int xStride, double[] y, int yOffset, int length) {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        for (int i = 0; i < length; i++) {
+            double sum = y[yOffset + i];
+            sum += alpha0 * x[x0 + i];
+            sum += alpha1 * x[x1 + i];
+            sum += alpha2 * x[x2 + i];
+            sum += alpha3 * x[x3 + i];
+            y[yOffset + i] = sum;
+        }
+    }
+
+    public void axpy4(double alpha0, double alpha1, double alpha2, double alpha3, float[] x, int xOffset, int xStride, double[] y, int yOffset, int length) {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        for (int i = 0; i < length; i++) {
+            double sum = y[yOffset + i];
+            sum += alpha0 * x[x0 + i];
+            sum += alpha1 * x[x1 + i];
+            sum += alpha2 * x[x2 + i];
+            sum += alpha3 * x[x3 + i];
+            y[yOffset + i] = sum;
+        }
+    }
+
+    public void adam(double[] weights, double[] m, double[] v, double[] gradients, int length,
+                     double gradientScale, double lambda, double beta1, double beta2,
+                     double stepSize, double inverseRootCorrection2, double epsilon, double decay) {
+        double oneMinusBeta1 = 1 - beta1;
+        double oneMinusBeta2 = 1 - beta2;
+        for (int i = 0; i < length; i++) {
+            double weight = weights[i];
+            double gradient = gradients[i] * gradientScale + lambda * weight;
+
+            // Update the moment estimates
+            double mW = beta1 * m[i] + oneMinusBeta1 * gradient;
+            double vW = beta2 * v[i] + oneMinusBeta2 * gradient * gradient;
+            m[i] = mW;
+            v[i] = vW;
+
+            // Update weights with the bias corrected moments
+            weights[i] = weight - stepSize * mW / (Math.sqrt(vW) * inverseRootCorrection2 + epsilon) - decay * weight;
+
+            // Reset gradient
+            gradients[i] = 0;
+        }
+    }
+
+    public void adam(float[] weights, float[] m, float[] v, double[] gradients, int length,
+                     double gradientScale, double lambda, double beta1, double beta2,
+                     double stepSize, double inverseRootCorrection2, double epsilon, double decay) {
+        double oneMinusBeta1 = 1 - beta1;
+        double oneMinusBeta2 = 1 - beta2;
+        for (int i = 0; i < length; i++) {
+            double weight = weights[i];
+            double gradient = gradients[i] * gradientScale + lambda * weight;
+
+            double mW = beta1 * m[i] + oneMinusBeta1 * gradient;
+            double vW = beta2 * v[i] + oneMinusBeta2 * gradient * gradient;
+            m[i] = (float)mW;
+            v[i] = (float)vW;
+
+            weights[i] = (float)(weight - stepSize * mW / (Math.sqrt(vW) * inverseRootCorrection2 + epsilon) - decay * weight);
+
+            gradients[i] = 0;
+        }
+    }
+}
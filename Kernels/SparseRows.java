@@ -0,0 +1,191 @@
+package Kernels;
+
+import java.util.Arrays;
+
+// Rows of a matrix with only the nonzero entries kept, as index/value lists
+// Row r holds indices[rowStart[r]..rowStart[r + 1]) and the matching values, in increasing column order
+// Rows compressed from dense inputs with too many nonzeros are marked dense instead, and the
+// kernels read them from the dense source
+// The arrays grow as needed and are reused, so refilling an instance doesn't allocate
+public class SparseRows {
+
+    private final int numColumns;
+    private int numRows;
+    private int numSparseRows;
+
+    private int[] rowStart = new int[1];
+    private int[] indices = new int[0];
+    private double[] values = new double[0];
+    private boolean[] denseRows = new boolean[0];
+
+    // Dense matrix the rows were compressed from, null for rows added as index/value lists
+    private double[] source;
+    private int sourceOffset;
+
+    public SparseRows(int numColumns) {
+        this.numColumns = numColumns;
+    }
+
+    // Remove every row
+    public void clear() {
+        numRows = 0;
+        numSparseRows = 0;
+        source = null;
+    }
+
+    // Add a row from a list of count column indices and their values
+    // Indices must be increasing; zero values may be left out
+    public void addRow(int[] rowIndices, double[] rowValues, int count) {
+        if (source != null) {
+            throw new IllegalStateException("Cannot add index lists to rows compressed from a dense matrix");
+        }
+        growRows(numRows + 1);
+        int start = rowStart[numRows];
+        growEntries(start + count);
+
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            int column = rowIndices[i];
+            if (column <= previous || column >= numColumns) {
+                throw new IllegalArgumentException("Column index " + column + " out of order or outside 0.." + (numColumns - 1));
+            }
+            previous = column;
+            indices[start + i] = column;
+            values[start + i] = rowValues[i];
+        }
+
+        denseRows[numRows] = false;
+        numRows++;
+        numSparseRows++;
+        rowStart[numRows] = start + count;
+    }
+
+    // Replace the contents with numRows rows of numColumns values starting at offset
+    // Rows with more than maxDensity * numColumns nonzeros are marked dense and left in the source
+    public void compress(double[] dense, int offset, int numRows, double maxDensity) {
+        clear();
+        growRows(numRows);
+        growEntries(numRows * (int)Math.min(numColumns, maxDensity * numColumns + 1));
+        source = dense;
+        sourceOffset = offset;
+
+        int maxNonZeros = (int)(maxDensity * numColumns);
+        int entry = 0;
+        for (int row = 0; row < numRows; row++) {
+            int rowOffset = offset + row * numColumns;
+            int start = entry;
+            boolean isDense = false;
+            for (int column = 0; column < numColumns; column++) {
+                double value = dense[rowOffset + column];
+                if (value != 0) {
+                    if (entry - start == maxNonZeros) {
+                        isDense = true;
+                        break;
+                    }
+                    indices[entry] = column;
+                    values[entry] = value;
+                    entry++;
+                }
+            }
+
+            // Dense rows keep no entries
+            if (isDense) {
+                entry = start;
+            } else {
+                numSparseRows++;
+            }
+            denseRows[row] = isDense;
+            rowStart[row + 1] = entry;
+        }
+        this.numRows = numRows;
+    }
+
+    // Count the nonzeros among length values starting at offset, stopping once there are more than limit
+    // Returns limit + 1 if there are more, so dense inputs are rejected without reading all of them
+    public static long countNonZeros(double[] dense, int offset, int length, long limit) {
+        long count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (dense[i] != 0 && ++count > limit) {
+                return count;
+            }
+        }
+        return count;
+    }
+
+    // Whether the rows were compressed from numRows rows of dense starting at offset
+    public boolean isCompressedFrom(double[] dense, int offset, int numRows) {
+        return source == dense && sourceOffset == offset && this.numRows == numRows;
+    }
+
+    private void growRows(int capacity) {
+        if (capacity + 1 > rowStart.length) {
+            int newCapacity = Math.max(capacity, rowStart.length * 2);
+            rowStart = Arrays.copyOf(rowStart, newCapacity + 1);
+            denseRows = Arrays.copyOf(denseRows, newCapacity);
+        }
+    }
+
+    private void growEntries(int capacity) {
+        if (capacity > indices.length) {
+            int newCapacity = Math.max(capacity, indices.length * 2);
+            indices = Arrays.copyOf(indices, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    // Write a row into dest as numColumns dense values
+    public void toDense(int row, double[] dest, int destOffset) {
+        if (denseRows[row]) {
+            System.arraycopy(source, sourceOffset + row * numColumns, dest, destOffset, numColumns);
+            return;
+        }
+        Arrays.fill(dest, destOffset, destOffset + numColumns, 0);
+        for (int entry = rowStart[row]; entry < rowStart[row + 1]; entry++) {
+            dest[destOffset + indices[entry]] = values[entry];
+        }
+    }
+
+    // Getters
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    // Rows stored as index/value lists rather than left dense
+    public int getNumSparseRows() {
+        return numSparseRows;
+    }
+
+    // Entries kept in the index/value lists
+    public int getNumNonZeros() {
+        return rowStart[numRows];
+    }
+
+    public boolean isDenseRow(int row) {
+        return denseRows[row];
+    }
+
+    // Offset of a dense row's values in getSource
+    public int getSourceOffset(int row) {
+        return sourceOffset + row * numColumns;
+    }
+
+    public double[] getSource() {
+        return source;
+    }
+
+    public int[] getRowStart() {
+        return rowStart;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+}
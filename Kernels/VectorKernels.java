@@ -0,0 +1,351 @@
+package Kernels;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// Kernel backend using the jdk.incubator.vector module
+// Needs --add-modules jdk.incubator.vector when compiling and running; MatrixKernels
+// loads this class reflectively and falls back to ScalarKernels when the module is missing
+// Elementwise kernels (axpy, adam) round exactly like the scalar loops; dot products
+// keep one partial sum per lane, so they differ from the scalar order by rounding only
+public class VectorKernels implements KernelBackend {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = DOUBLES.length();
+
+    // Float species with the same lane count, so a float load converts to one double vector
+    private static final VectorSpecies<Float> FLOATS = VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    // Int species for the 8-bit kernels, and the byte species loaded for them: at least 64 bits, so
+    // narrow int vectors take a byte vector in several parts
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INTS.vectorBitSize() / 4)));
+    private static final int BYTE_PARTS = BYTES.length() / INTS.length();
+
+    public String getName() {
+        return "vector (" + LANES + " x double)";
+    }
+
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(DOUBLES);
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            acc = acc.add(x.mul(DoubleVector.fromArray(DOUBLES, b, bOffset + i)));
+        }
+        double sum = sumLanes(acc);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    public double dot(double[] a, int aOffset, float[] b, int bOffset, int length) {
+        DoubleVector acc = DoubleVector.zero(DOUBLES);
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            acc = acc.add(x.mul(load(b, bOffset + i)));
+        }
+        double sum = sumLanes(acc);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    // Each row is summed exactly like dot, so batched and per-sample results still match
+    public void dot4(double[] a, int aOffset, double[] b, int bOffset, int bStride, int length, double[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        DoubleVector acc0 = DoubleVector.zero(DOUBLES);
+        DoubleVector acc1 = acc0, acc2 = acc0, acc3 = acc0;
+        int bound = DOUBLES.loopBound(length);
+        int p = 0;
+        for (; p < bound; p += LANES) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + p);
+            acc0 = acc0.add(x.mul(DoubleVector.fromArray(DOUBLES, b, b0 + p)));
+            acc1 = acc1.add(x.mul(DoubleVector.fromArray(DOUBLES, b, b1 + p)));
+            acc2 = acc2.add(x.mul(DoubleVector.fromArray(DOUBLES, b, b2 + p)));
+            acc3 = acc3.add(x.mul(DoubleVector.fromArray(DOUBLES, b, b3 + p)));
+        }
+        double sum0 = sumLanes(acc0), sum1 = sumLanes(acc1), sum2 = sumLanes(acc2), sum3 = sumLanes(acc3);
+        for (; p < length; p++) {
+            double x = a[aOffset + p];
+            sum0 += x * b[b0 + p];
+            sum1 += x * b[b1 + p];
+            sum2 += x * b[b2 + p];
+            sum3 += x * b[b3 + p];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    public void dot4(double[] a, int aOffset, float[] b, int bOffset, int bStride, int length, double[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        DoubleVector acc0 = DoubleVector.zero(DOUBLES);
+        DoubleVector acc1 = acc0, acc2 = acc0, acc3 = acc0;
+        int bound = DOUBLES.loopBound(length);
+        int p = 0;
+        for (; p < bound; p += LANES) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + p);
+            acc0 = acc0.add(x.mul(load(b, b0 + p)));
+            acc1 = acc1.add(x.mul(load(b, b1 + p)));
+            acc2 = acc2.add(x.mul(load(b, b2 + p)));
+            acc3 = acc3.add(x.mul(load(b, b3 + p)));
+        }
+        double sum0 = sumLanes(acc0), sum1 = sumLanes(acc1), sum2 = sumLanes(acc2), sum3 = sumLanes(acc3);
+        for (; p < length; p++) {
+            double x = a[aOffset + p];
+            sum0 += x * b[b0 + p];
+            sum1 += x * b[b1 + p];
+            sum2 += x * b[b2 + p];
+            sum3 += x * b[b3 + p];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    public int dotInt8(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        IntVector acc = IntVector.zero(INTS);
+        int bound = BYTES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += BYTES.length()) {
+            ByteVector x = ByteVector.fromArray(BYTES, a, aOffset + i);
+            ByteVector w = ByteVector.fromArray(BYTES, b, bOffset + i);
+            for (int part = 0; part < BYTE_PARTS; part++) {
+                acc = acc.add(unsigned(x, part).mul(signed(w, part)));
+            }
+        }
+        int sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += (a[aOffset + i] & 0xFF) * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    public void dot4Int8(byte[] a, int aOffset, byte[] b, int bOffset, int bStride, int length, int[] c, int cOffset) {
+        int b0 = bOffset;
+        int b1 = b0 + bStride;
+        int b2 = b1 + bStride;
+        int b3 = b2 + bStride;
+        IntVector acc0 = IntVector.zero(INTS);
+        IntVector acc1 = acc0, acc2 = acc0, acc3 = acc0;
+        int bound = BYTES.loopBound(length);
+        int p = 0;
+        for (; p < bound; p += BYTES.length()) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, a, aOffset + p);
+            ByteVector w0 = ByteVector.fromArray(BYTES, b, b0 + p);
+            ByteVector w1 = ByteVector.fromArray(BYTES, b, b1 + p);
+            ByteVector w2 = ByteVector.fromArray(BYTES, b, b2 + p);
+            ByteVector w3 = ByteVector.fromArray(BYTES, b, b3 + p);
+            for (int part = 0; part < BYTE_PARTS; part++) {
+                IntVector x = unsigned(bytes, part);
+                acc0 = acc0.add(x.mul(signed(w0, part)));
+                acc1 = acc1.add(x.mul(signed(w1, part)));
+                acc2 = acc2.add(x.mul(signed(w2, part)));
+                acc3 = acc3.add(x.mul(signed(w3, part)));
+            }
+        }
+        int sum0 = acc0.reduceLanes(VectorOperators.ADD), sum1 = acc1.reduceLanes(VectorOperators.ADD);
+        int sum2 = acc2.reduceLanes(VectorOperators.ADD), sum3 = acc3.reduceLanes(VectorOperators.ADD);
+        for (; p < length; p++) {
+            int x = a[aOffset + p] & 0xFF;
+            sum0 += x * b[b0 + p];
+            sum1 += x * b[b1 + p];
+            sum2 += x * b[b2 + p];
+            sum3 += x * b[b3 + p];
+        }
+        c[cOffset] = sum0;
+        c[cOffset + 1] = sum1;
+        c[cOffset + 2] = sum2;
+        c[cOffset + 3] = sum3;
+    }
+
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, y, yOffset + i);
+            sum.add(DoubleVector.fromArray(DOUBLES, x, xOffset + i).mul(alpha)).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    public void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length) {
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, y, yOffset + i);
+            sum.add(load(x, xOffset + i).mul(alpha)).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    public void axpy4(double alpha0, double alpha1, double alpha2, double alpha3, double[] x, int xOffset, int xStride, double[] y, int yOffset, int length) {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, y, yOffset + i);
+            sum = sum.add(DoubleVector.fromArray(DOUBLES, x, x0 + i).mul(alpha0));
+            sum = sum.add(DoubleVector.fromArray(DOUBLES, x, x1 + i).mul(alpha1));
+            sum = sum.add(DoubleVector.fromArray(DOUBLES, x, x2 + i).mul(alpha2));
+            sum = sum.add(DoubleVector.fromArray(DOUBLES, x, x3 + i).mul(alpha3));
+            sum.intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            double sum = y[yOffset + i];
+            sum += alpha0 * x[x0 + i];
+            sum += alpha1 * x[x1 + i];
+            sum += alpha2 * x[x2 + i];
+            sum += alpha3 * x[x3 + i];
+            y[yOffset + i] = sum;
+        }
+    }
+
+    public void axpy4(double alpha0, double alpha1, double alpha2, double alpha3, float[] x, int xOffset, int xStride, double[] y, int yOffset, int length) {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector sum = DoubleVector.fromArray(DOUBLES, y, yOffset + i);
+            sum = sum.add(load(x, x0 + i).mul(alpha0));
+            sum = sum.add(load(x, x1 + i).mul(alpha1));
+            sum = sum.add(load(x, x2 + i).mul(alpha2));
+            sum = sum.add(load(x, x3 + i).mul(alpha3));
+            sum.intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            double sum = y[yOffset + i];
+            sum += alpha0 * x[x0 + i];
+            sum += alpha1 * x[x1 + i];
+            sum += alpha2 * x[x2 + i];
+            sum += alpha3 * x[x3 + i];
+            y[yOffset + i] = sum;
+        }
+    }
+
+    // Same operations in the same order as ScalarKernels.adam, a vector at a time
+    public void adam(double[] weights, double[] m, double[] v, double[] gradients, int length,
+                     double gradientScale, double lambda, double beta1, double beta2,
+                     double stepSize, double inverseRootCorrection2, double epsilon, double decay) {
+        double oneMinusBeta1 = 1 - beta1;
+        double oneMinusBeta2 = 1 - beta2;
+        DoubleVector zero = DoubleVector.zero(DOUBLES);
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector weight = DoubleVector.fromArray(DOUBLES, weights, i);
+            DoubleVector gradient = DoubleVector.fromArray(DOUBLES, gradients, i).mul(gradientScale).add(weight.mul(lambda));
+
+            DoubleVector mW = DoubleVector.fromArray(DOUBLES, m, i).mul(beta1).add(gradient.mul(oneMinusBeta1));
+            DoubleVector vW = DoubleVector.fromArray(DOUBLES, v, i).mul(beta2).add(gradient.mul(oneMinusBeta2).mul(gradient));
+            mW.intoArray(m, i);
+            vW.intoArray(v, i);
+
+            DoubleVector step = mW.mul(stepSize).div(vW.sqrt().mul(inverseRootCorrection2).add(epsilon));
+            weight.sub(step).sub(weight.mul(decay)).intoArray(weights, i);
+
+            zero.intoArray(gradients, i);
+        }
+        for (; i < length; i++) {
+            double weight = weights[i];
+            double gradient = gradients[i] * gradientScale + lambda * weight;
+            double mW = beta1 * m[i] + oneMinusBeta1 * gradient;
+            double vW = beta2 * v[i] + oneMinusBeta2 * gradient * gradient;
+            m[i] = mW;
+            v[i] = vW;
+            weights[i] = weight - stepSize * mW / (Math.sqrt(vW) * inverseRootCorrection2 + epsilon) - decay * weight;
+            gradients[i] = 0;
+        }
+    }
+
+    public void adam(float[] weights, float[] m, float[] v, double[] gradients, int length,
+                     double gradientScale, double lambda, double beta1, double beta2,
+                     double stepSize, double inverseRootCorrection2, double epsilon, double decay) {
+        double oneMinusBeta1 = 1 - beta1;
+        double oneMinusBeta2 = 1 - beta2;
+        DoubleVector zero = DoubleVector.zero(DOUBLES);
+        int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            DoubleVector weight = load(weights, i);
+            DoubleVector gradient = DoubleVector.fromArray(DOUBLES, gradients, i).mul(gradientScale).add(weight.mul(lambda));
+
+            DoubleVector mW = load(m, i).mul(beta1).add(gradient.mul(oneMinusBeta1));
+            DoubleVector vW = load(v, i).mul(beta2).add(gradient.mul(oneMinusBeta2).mul(gradient));
+            store(mW, m, i);
+            store(vW, v, i);
+
+            DoubleVector step = mW.mul(stepSize).div(vW.sqrt().mul(inverseRootCorrection2).add(epsilon));
+            store(weight.sub(step).sub(weight.mul(decay)), weights, i);
+
+            zero.intoArray(gradients, i);
+        }
+        for (; i < length; i++) {
+            double weight = weights[i];
+            double gradient = gradients[i] * gradientScale + lambda * weight;
+            double mW = beta1 * m[i] + oneMinusBeta1 * gradient;
+            double vW = beta2 * v[i] + oneMinusBeta2 * gradient * gradient;
+            m[i] = (float)mW;
+            v[i] = (float)vW;
+            weights[i] = (float)(weight - stepSize * mW / (Math.sqrt(vW) * inverseRootCorrection2 + epsilon) - decay * weight);
+            gradients[i] = 0;
+        }
+    }
+
+    // Load LANES floats widened to doubles
+    private static DoubleVector load(float[] array, int offset) {
+        return (DoubleVector)FloatVector.fromArray(FLOATS, array, offset).convertShape(VectorOperators.F2D, DOUBLES, 0);
+    }
+
+    // Store a vector of doubles rounded to floats
+    private static void store(DoubleVector vector, float[] array, int offset) {
+        ((FloatVector)vector.convertShape(VectorOperators.D2F, FLOATS, 0)).intoArray(array, offset);
+    }
+
+    // Part of a byte vector widened to ints, sign extended or zero extended
+    private static IntVector signed(ByteVector vector, int part) {
+        return (IntVector)vector.convertShape(VectorOperators.B2I, INTS, part);
+    }
+
+    private static IntVector unsigned(ByteVector vector, int part) {
+        return signed(vector, part).and(0xFF);
+    }
+
+    // Add up the lanes in a fixed order so results don't depend on how reduction is compiled
+    private static double sumLanes(DoubleVector vector) {
+        double sum = 0;
+        for (int lane = 0; lane < LANES; lane++) {
+            sum += vector.lane(lane);
+        }
+        return sum;
+    }
+}
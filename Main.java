@@ -1,5 +1,4 @@
 import java.io.IOException;
-import java.util.function.Function;
 import javax.swing.JFrame;
 
 import ActivationFunctions.*;
@@ -7,6 +6,7 @@ import CostFunctions.*;
 import Data.*;
 import Data.MNIST.*;
 import Models.*;
+import Optimizers.*;
 
 public class Main {
     public static void main(String[] args) throws IOException {
@@ -18,8 +18,8 @@ public class Main {
         // Load the model with highest accuracy
         NeuralNetwork model = NetworkSaver.loadNetwork("Models\\SavedModels\\mnistNetwork.ser");
 
-        // Read test data
-        ImageDataPoint[] testData = MnistReader.readData("Data\\MNIST\\ByteData\\t10k-images.idx3-ubyte", "Data\\MNIST\\ByteData\\t10k-labels.idx1-ubyte", 10);
+        // Map test data
+        IdxDataset testData = MnistReader.openDataset("Data\\MNIST\\ByteData\\t10k-images.idx3-ubyte", "Data\\MNIST\\ByteData\\t10k-labels.idx1-ubyte", 10);
 
         // Create model trainer and test model
         ModelTrainer trainer = new ModelTrainer(model, null, false);
@@ -36,18 +36,21 @@ public class Main {
     // Create a new model and train it on the MNIST dataset
     public static void createAndTrainModel() throws IOException {
         // Create new model
-        NeuralNetwork model = new NeuralNetwork(new int[] {784, 512, 10}, new LeakyReLU(), new Softmax(), new CrossEntropy(), 0.0001, 0.9, 0.999, 0.2);
-
-        // Read train and test data
-        ImageDataPoint[] trainData = MnistReader.readData("Data\\MNIST\\ByteData\\train-images.idx3-ubyte", "Data\\MNIST\\ByteData\\train-labels.idx1-ubyte", 10);
-        ImageDataPoint[] testData = MnistReader.readData("Data\\MNIST\\ByteData\\t10k-images.idx3-ubyte", "Data\\MNIST\\ByteData\\t10k-labels.idx1-ubyte", 10);
-
-        // Create model trainer
-        Function<DataPoint, Void> processFunction = p -> {
-            ((ImageDataPoint)p).transformDrawingRandom();
-            return null;
-        };
-        ModelTrainer trainer = new ModelTrainer(model, processFunction, true);
+        NeuralNetwork model = new NeuralNetwork(new int[] {784, 512, 10}, new LeakyReLU(), new Softmax(), new CrossEntropy(), new Adam(0.0001, 0.9, 0.999), 0.2);
+
+        // Map train and test data
+        IdxDataset trainData = MnistReader.openDataset("Data\\MNIST\\ByteData\\train-images.idx3-ubyte", "Data\\MNIST\\ByteData\\train-labels.idx1-ubyte", 10);
+        IdxDataset testData = MnistReader.openDataset("Data\\MNIST\\ByteData\\t10k-images.idx3-ubyte", "Data\\MNIST\\ByteData\\t10k-labels.idx1-ubyte", 10);
+
+        // Create model trainer, with batches augmented on background threads
+        ModelTrainer trainer = new ModelTrainer(model, null, true);
+        trainer.setAugmentation(new ImageAugmentation(28, 28));
+        trainer.setPrefetchBatches(4);
+        trainer.setPrefetchWorkers(2);
+
+        // Checkpoint every 200 batches; an interrupted run continues with trainer.resume(trainData, "mnistCheckpoint.nnm")
+        trainer.setCheckpointFile("mnistCheckpoint.nnm");
+        trainer.setCheckpointInterval(200);
         TrainingGraph graph = trainer.getGraph();
 
         // Create graph JFrame
@@ -68,7 +71,7 @@ public class Main {
         System.out.println("Cost: " + costAccuracy[0] + " | Accuracy: " + costAccuracy[1]);
 
         // Save network
-        String filename = "newMnistNetworkTest.ser";
+        String filename = "newMnistNetworkTest.nnm";
         NetworkSaver.saveNetwork(model, filename);
 
         MnistDrawer drawer = new MnistDrawer(model);
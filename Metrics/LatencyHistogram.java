@@ -0,0 +1,133 @@
+package Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histogram of latencies in nanoseconds with log-linear buckets: every power of two is split into
+// SUB_BUCKETS buckets, so any recorded value is known to within about 6%
+// Recording is lock-free and allocation-free, and can happen on any number of threads at once
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Enough buckets for any positive long
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Add one latency
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    // Values below SUB_BUCKETS get a bucket each; above that the top SUB_BUCKET_BITS + 1 bits pick the bucket
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // Smallest value that falls in a bucket
+    private static long bucketStart(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    // Largest value that falls in a bucket
+    private static long bucketEnd(int bucket) {
+        return (bucket + 1 < NUM_BUCKETS) ? bucketStart(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    // Latency below which fraction of the recorded latencies fall, 0 if nothing was recorded
+    // Reported as the top of its bucket, but never above the largest latency recorded
+    public long getPercentile(double fraction) {
+        long numValues = count.get();
+        if (numValues == 0) return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(fraction * numValues));
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(bucketEnd(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // Copy of the current counts
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            copy.counts.set(bucket, counts.get(bucket));
+        }
+        copy.count.set(count.get());
+        copy.total.set(total.get());
+        copy.max.set(max.get());
+        return copy;
+    }
+
+    // Latencies recorded in this histogram but not in an earlier copy of it
+    // The exact maximum of the difference isn't known; it is the top of its highest bucket
+    public LatencyHistogram minus(LatencyHistogram earlier) {
+        LatencyHistogram difference = new LatencyHistogram();
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            difference.counts.set(bucket, counts.get(bucket) - earlier.counts.get(bucket));
+        }
+        difference.count.set(count.get() - earlier.count.get());
+        difference.total.set(total.get() - earlier.total.get());
+
+        // Never above the largest latency recorded overall
+        long differenceMax = 0;
+        for (int bucket = NUM_BUCKETS - 1; bucket >= 0; bucket--) {
+            if (difference.counts.get(bucket) > 0) {
+                differenceMax = Math.min(bucketEnd(bucket), getMax());
+                break;
+            }
+        }
+        difference.max.set(differenceMax);
+        return difference;
+    }
+
+    public void reset() {
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    // Getters
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long numValues = count.get();
+        return (numValues == 0) ? 0 : (double)total.get() / numValues;
+    }
+}
@@ -0,0 +1,170 @@
+package Metrics;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+// Training listener that writes metrics as CSV or JSON Lines
+// A "batch" row is written every batchInterval batches covering the batches since the last one,
+// an "epoch" row after every epoch covering the whole epoch with its costs and accuracies,
+// and a "total" row covering the whole run once training stops
+// Times are in milliseconds and per-phase latencies are given as count, mean, p50, p99 and max
+public class MetricsReporter implements TrainingListener, AutoCloseable {
+
+    public enum Format { CSV, JSON }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final PrintWriter out;
+    private final Format format;
+    private final int batchInterval;
+
+    // Snapshots the next batch and epoch rows are measured from, null to measure from the start of the run
+    private MetricsSnapshot lastBatch;
+    private MetricsSnapshot lastEpoch;
+    private long batchesSinceRow;
+
+    // Write to a file; a batch interval of 0 writes only epoch and total rows
+    public MetricsReporter(String filename, Format format, int batchInterval) throws IOException {
+        this(new BufferedWriter(new FileWriter(filename)), format, batchInterval);
+    }
+
+    public MetricsReporter(Writer writer, Format format, int batchInterval) {
+        this.out = new PrintWriter(writer);
+        this.format = format;
+        this.batchInterval = Math.max(0, batchInterval);
+        if (format == Format.CSV) {
+            writeHeader();
+        }
+    }
+
+    public void batchFinished(int epoch, int batch, TrainingMetrics metrics) {
+        if (batchInterval == 0 || ++batchesSinceRow < batchInterval) {
+            return;
+        }
+        MetricsSnapshot now = metrics.snapshot();
+        writeRow("batch", since(now, lastBatch), null);
+        lastBatch = now;
+        batchesSinceRow = 0;
+    }
+
+    public void epochFinished(int epoch, double trainCost, double validationCost, double trainAccuracy, double validationAccuracy, TrainingMetrics metrics) {
+        MetricsSnapshot now = metrics.snapshot();
+        writeRow("epoch", since(now, lastEpoch), new double[] { trainCost, validationCost, trainAccuracy, validationAccuracy });
+        lastEpoch = now;
+        out.flush();
+    }
+
+    // The trainer resets its metrics when a run starts, so the next run is measured from scratch
+    public void trainingFinished(TrainingMetrics metrics) {
+        writeRow("total", metrics.snapshot(), null);
+        out.flush();
+        lastBatch = null;
+        lastEpoch = null;
+        batchesSinceRow = 0;
+    }
+
+    public void close() {
+        out.close();
+    }
+
+    private static MetricsSnapshot since(MetricsSnapshot now, MetricsSnapshot earlier) {
+        return (earlier != null) ? now.minus(earlier) : now;
+    }
+
+    private void writeHeader() {
+        StringBuilder line = new StringBuilder("event,time_ms,epoch,batch,samples,samples_per_sec,alloc_bytes_per_batch,gc_count,gc_time_ms");
+        for (Phase phase : PHASES) {
+            String name = phase.getLabel();
+            line.append(',').append(name).append("_count,").append(name).append("_mean_ms,").append(name).append("_p50_ms,")
+                    .append(name).append("_p99_ms,").append(name).append("_max_ms");
+        }
+        line.append(",train_cost,validation_cost,train_accuracy,validation_accuracy");
+        out.println(line);
+    }
+
+    // Evaluation results are null for rows that aren't after an epoch
+    private void writeRow(String event, MetricsSnapshot snapshot, double[] evaluation) {
+        StringBuilder line = new StringBuilder();
+        if (format == Format.CSV) {
+            line.append(event);
+            for (Object value : values(snapshot)) {
+                String text = String.valueOf(value);
+                line.append(',').append(text.equals("null") ? "" : text);
+            }
+            for (int i = 0; i < 4; i++) {
+                line.append(',');
+                if (evaluation != null) {
+                    String text = format(evaluation[i]);
+                    line.append(text.equals("null") ? "" : text);
+                }
+            }
+        } else {
+            line.append("{\"event\":\"").append(event).append('"');
+            String[] keys = { "time_ms", "epoch", "batch", "samples", "samples_per_sec", "alloc_bytes_per_batch", "gc_count", "gc_time_ms" };
+            Object[] values = values(snapshot);
+            for (int i = 0; i < keys.length; i++) {
+                line.append(",\"").append(keys[i]).append("\":").append(values[i]);
+            }
+            line.append(",\"phases\":{");
+            for (Phase phase : PHASES) {
+                LatencyHistogram histogram = snapshot.getHistogram(phase);
+                if (phase.ordinal() > 0) {
+                    line.append(',');
+                }
+                line.append('"').append(phase.getLabel()).append("\":{\"count\":").append(histogram.getCount())
+                        .append(",\"mean_ms\":").append(millis(histogram.getMean()))
+                        .append(",\"p50_ms\":").append(millis(histogram.getPercentile(0.5)))
+                        .append(",\"p99_ms\":").append(millis(histogram.getPercentile(0.99)))
+                        .append(",\"max_ms\":").append(millis(histogram.getMax())).append('}');
+            }
+            line.append('}');
+            if (evaluation != null) {
+                line.append(",\"train_cost\":").append(format(evaluation[0]))
+                        .append(",\"validation_cost\":").append(format(evaluation[1]))
+                        .append(",\"train_accuracy\":").append(format(evaluation[2]))
+                        .append(",\"validation_accuracy\":").append(format(evaluation[3]));
+            }
+            line.append('}');
+        }
+        out.println(line);
+    }
+
+    // Values of a row in CSV column order, up to the evaluation results
+    private static Object[] values(MetricsSnapshot snapshot) {
+        Object[] values = new Object[8 + PHASES.length * 5];
+        values[0] = snapshot.getTimeMillis();
+        values[1] = snapshot.getEpoch();
+        values[2] = snapshot.getBatch();
+        values[3] = snapshot.getSamples();
+        values[4] = format(snapshot.getSamplesPerSecond());
+        values[5] = format(snapshot.getAllocatedBytesPerBatch());
+        values[6] = snapshot.getGcCount();
+        values[7] = snapshot.getGcTimeMillis();
+        for (Phase phase : PHASES) {
+            LatencyHistogram histogram = snapshot.getHistogram(phase);
+            int column = 8 + phase.ordinal() * 5;
+            values[column] = histogram.getCount();
+            values[column + 1] = millis(histogram.getMean());
+            values[column + 2] = millis(histogram.getPercentile(0.5));
+            values[column + 3] = millis(histogram.getPercentile(0.99));
+            values[column + 4] = millis(histogram.getMax());
+        }
+        return values;
+    }
+
+    private static String millis(double nanos) {
+        return format(nanos / 1e6);
+    }
+
+    // JSON has no NaN or infinity
+    private static String format(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+}
@@ -0,0 +1,88 @@
+package Metrics;
+
+// Training metrics at one moment, which don't change as training goes on
+// Subtracting an earlier snapshot gives the metrics of the time in between
+public class MetricsSnapshot {
+
+    private final long timeMillis;
+    private final int epoch;
+    private final int batch;
+    private final long samples;
+    private final long batches;
+    private final long stepNanos;
+    private final long allocatedBytes;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final LatencyHistogram[] histograms;
+
+    MetricsSnapshot(long timeMillis, int epoch, int batch, long samples, long batches, long stepNanos,
+            long allocatedBytes, long gcCount, long gcTimeMillis, LatencyHistogram[] histograms) {
+        this.timeMillis = timeMillis;
+        this.epoch = epoch;
+        this.batch = batch;
+        this.samples = samples;
+        this.batches = batches;
+        this.stepNanos = stepNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.histograms = histograms;
+    }
+
+    // Metrics of what happened since an earlier snapshot, positioned at this one
+    public MetricsSnapshot minus(MetricsSnapshot earlier) {
+        LatencyHistogram[] differences = new LatencyHistogram[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            differences[i] = histograms[i].minus(earlier.histograms[i]);
+        }
+        return new MetricsSnapshot(timeMillis, epoch, batch, samples - earlier.samples, batches - earlier.batches,
+                stepNanos - earlier.stepNanos, allocatedBytes - earlier.allocatedBytes,
+                gcCount - earlier.gcCount, gcTimeMillis - earlier.gcTimeMillis, differences);
+    }
+
+    // Training throughput, counting only the time spent in training steps
+    public double getSamplesPerSecond() {
+        return (stepNanos == 0) ? 0 : samples / (stepNanos / 1e9);
+    }
+
+    public double getAllocatedBytesPerBatch() {
+        return (batches == 0) ? 0 : (double)allocatedBytes / batches;
+    }
+
+    // Getters
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+}
@@ -0,0 +1,22 @@
+package Metrics;
+
+// The parts of a training step whose latencies are recorded
+public enum Phase {
+    DATA("data"),                 // Getting the batch's inputs: processing and gathering them, or waiting for the loader
+    AUGMENTATION("augmentation"), // Assembling and augmenting a batch on a loader thread, alongside training
+    FORWARD("forward"),           // Forward propagation
+    BACKWARD("backward"),         // Back propagation and gradient accumulation
+    OPTIMIZER("optimizer"),       // Summing the threads' gradients and updating weights and biases
+    EVALUATION("evaluation");     // Evaluating the model on the test data after an epoch
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    // Lower case name used in reports
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,106 @@
+package Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Throughput, latency and batch sizes of served predictions
+// Recorded by the batching threads and read from any thread
+public class PredictionMetrics implements PredictionMetricsMXBean {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    // Throughput is measured from here
+    private volatile long startNanos = System.nanoTime();
+
+    // Name this is registered under with the platform MBean server, or null
+    private ObjectName registeredName;
+
+    // Count a batch of predictions that all finished now
+    public void batchFinished(int batchSize) {
+        requests.add(batchSize);
+        batches.increment();
+    }
+
+    // Count a batch of predictions that failed; they aren't counted as requests
+    public void batchFailed(int batchSize) {
+        failedRequests.add(batchSize);
+        batches.increment();
+    }
+
+    // Add the latency of one request
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public void reset() {
+        latency.reset();
+        requests.reset();
+        failedRequests.reset();
+        batches.reset();
+        startNanos = System.nanoTime();
+    }
+
+    // Make these metrics visible through JMX as NeuralNetwork:type=PredictionMetrics,name=<name>
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        ObjectName objectName = new ObjectName("NeuralNetwork:type=PredictionMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    // Getters, also the MBean's attributes
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    // Requests finished per second since the metrics were created or reset
+    public double getRequestsPerSecond() {
+        long nanos = System.nanoTime() - startNanos;
+        return (nanos <= 0) ? 0 : requests.sum() / (nanos / 1e9);
+    }
+
+    public double getMeanBatchSize() {
+        long numBatches = batches.sum();
+        return (numBatches == 0) ? 0 : (double)(requests.sum() + failedRequests.sum()) / numBatches;
+    }
+
+    public double getLatencyMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    public double getLatencyP50Millis() {
+        return latency.getPercentile(0.5) / 1e6;
+    }
+
+    public double getLatencyP99Millis() {
+        return latency.getPercentile(0.99) / 1e6;
+    }
+
+    public double getLatencyMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+}
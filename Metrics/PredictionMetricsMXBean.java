@@ -0,0 +1,27 @@
+package Metrics;
+
+// Prediction server metrics as seen through JMX; latencies are in milliseconds from a request
+// being queued to its outputs being ready
+public interface PredictionMetricsMXBean {
+
+    long getRequests();
+
+    long getFailedRequests();
+
+    long getBatches();
+
+    double getRequestsPerSecond();
+
+    double getMeanBatchSize();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    // Start counting again from zero
+    void reset();
+}
@@ -0,0 +1,18 @@
+package Metrics;
+
+// Receives progress and metrics from a ModelTrainer as it trains
+// Called on the training thread, so implementations should return quickly
+public interface TrainingListener {
+
+    // After every batch's weights and biases were updated; epoch and batch count from 0
+    default void batchFinished(int epoch, int batch, TrainingMetrics metrics) {
+    }
+
+    // After every epoch was evaluated, counting from 0 as in batchFinished; accuracies are percentages
+    default void epochFinished(int epoch, double trainCost, double validationCost, double trainAccuracy, double validationAccuracy, TrainingMetrics metrics) {
+    }
+
+    // Once training stopped, whether it finished, stopped early or failed
+    default void trainingFinished(TrainingMetrics metrics) {
+    }
+}
@@ -0,0 +1,217 @@
+package Metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Latencies of every phase of training, throughput, allocation and garbage collection time
+// The trainer records into it as it goes; it can be read from any thread at any time,
+// or copied into a MetricsSnapshot to compare against later
+public class TrainingMetrics implements TrainingMetricsMXBean {
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+
+    // Totals over the training steps so far; stepNanos is their wall clock time
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder stepNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    // Position of the last finished batch
+    private volatile int epoch;
+    private volatile int batch;
+
+    // Garbage collector totals when counting started
+    private volatile long gcCountBase;
+    private volatile long gcTimeBase;
+
+    // Name this is registered under with the platform MBean server, or null
+    private ObjectName registeredName;
+
+    public TrainingMetrics() {
+        for (Phase phase : PHASES) {
+            histograms[phase.ordinal()] = new LatencyHistogram();
+        }
+        reset();
+    }
+
+    // Add the latency of one phase
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    // Count a finished training step of numSamples points that took nanos in total
+    public void batchFinished(int epoch, int batch, int numSamples, long nanos) {
+        samples.add(numSamples);
+        batches.increment();
+        stepNanos.add(nanos);
+        this.epoch = epoch;
+        this.batch = batch;
+    }
+
+    // Count bytes allocated for training, on whichever thread
+    public void addAllocatedBytes(long bytes) {
+        allocatedBytes.add(bytes);
+    }
+
+    // Bytes the calling thread has allocated so far, or 0 if the JVM can't tell
+    // Differences of two calls on the same thread give the allocation in between
+    public static long threadAllocatedBytes() {
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)THREAD_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // Copy of the current values
+    public MetricsSnapshot snapshot() {
+        LatencyHistogram[] copies = new LatencyHistogram[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            copies[i] = histograms[i].copy();
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), epoch, batch, samples.sum(), batches.sum(), stepNanos.sum(),
+                allocatedBytes.sum(), totalGcCount() - gcCountBase, totalGcTimeMillis() - gcTimeBase, copies);
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        samples.reset();
+        batches.reset();
+        stepNanos.reset();
+        allocatedBytes.reset();
+        epoch = 0;
+        batch = 0;
+        gcCountBase = totalGcCount();
+        gcTimeBase = totalGcTimeMillis();
+    }
+
+    // Make these metrics visible through JMX as NeuralNetwork:type=TrainingMetrics,name=<name>
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("NeuralNetwork:type=TrainingMetrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    // Sums over every garbage collector; collectors that can't tell report -1 and are skipped
+    private static long totalGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long totalGcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    // Getters, also the MBean's attributes
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+
+    public long getBatchesCompleted() {
+        return batches.sum();
+    }
+
+    public long getSamplesCompleted() {
+        return samples.sum();
+    }
+
+    // Training throughput, counting only the time spent in training steps
+    public double getSamplesPerSecond() {
+        long nanos = stepNanos.sum();
+        return (nanos == 0) ? 0 : samples.sum() / (nanos / 1e9);
+    }
+
+    public double getAllocatedBytesPerBatch() {
+        long numBatches = batches.sum();
+        return (numBatches == 0) ? 0 : (double)allocatedBytes.sum() / numBatches;
+    }
+
+    public long getGcCount() {
+        return totalGcCount() - gcCountBase;
+    }
+
+    public long getGcTimeMillis() {
+        return totalGcTimeMillis() - gcTimeBase;
+    }
+
+    public String[] getPhaseNames() {
+        String[] names = new String[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            names[i] = PHASES[i].getLabel();
+        }
+        return names;
+    }
+
+    public long[] getPhaseCounts() {
+        long[] counts = new long[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            counts[i] = histograms[i].getCount();
+        }
+        return counts;
+    }
+
+    public double[] getPhaseMeanMillis() {
+        double[] means = new double[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            means[i] = histograms[i].getMean() / 1e6;
+        }
+        return means;
+    }
+
+    public double[] getPhaseP50Millis() {
+        return getPhasePercentileMillis(0.5);
+    }
+
+    public double[] getPhaseP99Millis() {
+        return getPhasePercentileMillis(0.99);
+    }
+
+    public double[] getPhaseMaxMillis() {
+        double[] maxima = new double[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            maxima[i] = histograms[i].getMax() / 1e6;
+        }
+        return maxima;
+    }
+
+    private double[] getPhasePercentileMillis(double fraction) {
+        double[] percentiles = new double[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            percentiles[i] = histograms[i].getPercentile(fraction) / 1e6;
+        }
+        return percentiles;
+    }
+}
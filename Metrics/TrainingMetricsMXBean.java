@@ -0,0 +1,37 @@
+package Metrics;
+
+// Training metrics as seen through JMX, for example in JConsole or VisualVM
+// Phase arrays are in the order of getPhaseNames; latencies are in milliseconds
+public interface TrainingMetricsMXBean {
+
+    int getEpoch();
+
+    int getBatch();
+
+    long getBatchesCompleted();
+
+    long getSamplesCompleted();
+
+    double getSamplesPerSecond();
+
+    double getAllocatedBytesPerBatch();
+
+    long getGcCount();
+
+    long getGcTimeMillis();
+
+    String[] getPhaseNames();
+
+    long[] getPhaseCounts();
+
+    double[] getPhaseMeanMillis();
+
+    double[] getPhaseP50Millis();
+
+    double[] getPhaseP99Millis();
+
+    double[] getPhaseMaxMillis();
+
+    // Start counting again from zero
+    void reset();
+}
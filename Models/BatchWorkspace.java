@@ -0,0 +1,72 @@
+package Models;
+
+import java.util.Random;
+
+// Buffers for propagating a mini-batch through every layer of a network
+public class BatchWorkspace {
+
+    private final LayerBuffers[] layerBuffers;
+    private final boolean training;
+    private int capacity;
+
+    // Random numbers for dropout masks, so workers don't contend on a shared generator
+    private final Random random = new Random();
+
+    public BatchWorkspace(FeedForward_Layer[] layers, int capacity) {
+        this(layers, capacity, false);
+    }
+
+    // With ownGradients, gradients are accumulated here instead of in the layers
+    public BatchWorkspace(FeedForward_Layer[] layers, int capacity, boolean ownGradients) {
+        this(layers, capacity, true, ownGradients);
+    }
+
+    private BatchWorkspace(FeedForward_Layer[] layers, int capacity, boolean training, boolean ownGradients) {
+        this.capacity = capacity;
+        this.training = training;
+        layerBuffers = new LayerBuffers[layers.length];
+        for (int layer = 0; layer < layers.length; layer++) {
+            layerBuffers[layer] = new LayerBuffers(layers[layer].getInDim(), layers[layer].getOutDim(), capacity, training, ownGradients);
+        }
+    }
+
+    // Workspace for predictions only, with just the values and outputs of every layer
+    public static BatchWorkspace forInference(FeedForward_Layer[] layers, int capacity) {
+        return new BatchWorkspace(layers, capacity, false, false);
+    }
+
+    // Grow every layer's buffers if the batch doesn't fit
+    public void ensureCapacity(int batchSize) {
+        if (batchSize <= capacity) return;
+
+        capacity = batchSize;
+        for (LayerBuffers buffers : layerBuffers) {
+            buffers.ensureCapacity(batchSize);
+        }
+    }
+
+    // Whether the buffers are shaped for these layers and accumulate gradients the given way
+    public boolean fits(FeedForward_Layer[] layers, boolean ownGradients) {
+        if (layers.length != layerBuffers.length) return false;
+        for (int layer = 0; layer < layers.length; layer++) {
+            if (!layerBuffers[layer].fits(layers[layer].getInDim(), layers[layer].getOutDim(), ownGradients)) return false;
+        }
+        return true;
+    }
+
+    public LayerBuffers getLayerBuffers(int layer) {
+        return layerBuffers[layer];
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public boolean isForTraining() {
+        return training;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
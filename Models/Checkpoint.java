@@ -0,0 +1,107 @@
+package Models;
+
+// Everything needed to continue a training run exactly where it left off
+// The model is a private copy, so a checkpoint can be written while training goes on
+public class Checkpoint {
+
+    // Weights, biases, optimizer and optimizer state
+    final NeuralNetwork network;
+
+    // Training settings, checked against the dataset when resuming
+    long seed;
+    int batchSize;
+    int numEpochs;
+    double testSplitRatio;
+    int trainSize;
+    int testSize;
+
+    // Position of the next batch to train; batch 0 of an epoch means it hasn't been shuffled yet
+    int epoch;
+    int batch;
+
+    // Order of the training points, as shuffled for the current epoch
+    int[] order;
+
+    // Cost and correct guesses of the current epoch's batches so far
+    double trainCost;
+    int numCorrect;
+
+    // Early stopping
+    double bestTestCost;
+    int epochsWithoutImprovement;
+
+    // Copy of the TrainingData epoch history; the first numEpochData entries are used
+    // The per-batch history isn't kept, a resumed run's batch series starts where it resumed
+    boolean useAccuracy;
+    int numEpochData;
+    double[] trainingCost = new double[0];
+    double[] validationCost = new double[0];
+    double[] trainingAccuracy = new double[0];
+    double[] validationAccuracy = new double[0];
+
+    Checkpoint(NeuralNetwork network) {
+        this.network = network;
+    }
+
+    // Copy the model's state into this checkpoint's network
+    void captureModel(NeuralNetwork model) {
+        model.copyStateTo(network);
+    }
+
+    // Copy the order, reusing the array when it fits
+    void captureOrder(int[] order) {
+        if (this.order == null || this.order.length != order.length) {
+            this.order = new int[order.length];
+        }
+        System.arraycopy(order, 0, this.order, 0, order.length);
+    }
+
+    // Copy the epoch history, reusing the arrays when they fit
+    void captureTrainingData(TrainingData trainingData) {
+        useAccuracy = trainingData.useAccuracy();
+        numEpochData = trainingData.getNumEpochs();
+        if (trainingCost.length < numEpochData) {
+            int capacity = Math.max(numEpochData, trainingCost.length * 2);
+            trainingCost = new double[capacity];
+            validationCost = new double[capacity];
+            trainingAccuracy = new double[capacity];
+            validationAccuracy = new double[capacity];
+        }
+        trainingData.getTrainingCost().copyTo(trainingCost, numEpochData);
+        trainingData.getValidationCost().copyTo(validationCost, numEpochData);
+        if (useAccuracy) {
+            trainingData.getTrainingAccuracy().copyTo(trainingAccuracy, numEpochData);
+            trainingData.getValidationAccuracy().copyTo(validationAccuracy, numEpochData);
+        }
+    }
+
+    // Rebuild the epoch history
+    TrainingData restoreTrainingData() {
+        TrainingData trainingData = new TrainingData(useAccuracy);
+        for (int i = 0; i < numEpochData; i++) {
+            if (useAccuracy) {
+                trainingData.addEpochData(trainingCost[i], validationCost[i], trainingAccuracy[i], validationAccuracy[i]);
+            } else {
+                trainingData.addEpochData(trainingCost[i], validationCost[i]);
+            }
+        }
+        return trainingData;
+    }
+
+    // Getters
+    public NeuralNetwork getNetwork() {
+        return network;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
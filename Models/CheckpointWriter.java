@@ -0,0 +1,178 @@
+package Models;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Writes checkpoints to disk on a background thread
+// There are two checkpoint buffers: the training thread fills one while the other is being written,
+// so taking a checkpoint costs a copy of the state and never waits for the disk
+// If a new checkpoint is taken before the previous one started writing, the older one is skipped
+// Files are written next to the target and moved over it, so a crash never leaves a partial checkpoint
+public class CheckpointWriter implements AutoCloseable {
+
+    private final Path path;
+    private final Path tempPath;
+    private final Checkpoint[] buffers;
+    private final Thread writer;
+
+    // Guards everything below
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private Checkpoint pending;
+    private Checkpoint writing;
+    private boolean closed;
+    private int numWritten;
+
+    public CheckpointWriter(String filePath, NeuralNetwork model) {
+        path = Paths.get(filePath);
+        tempPath = Paths.get(filePath + ".tmp");
+        buffers = new Checkpoint[] { new Checkpoint(model.createEmptyCopy()), new Checkpoint(model.createEmptyCopy()) };
+
+        writer = new Thread(this::work, "checkpoint-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Record the settings of the run being checkpointed in both buffers
+    public void setRun(long seed, int batchSize, int numEpochs, double testSplitRatio, int trainSize, int testSize) {
+        lock.lock();
+        try {
+            for (Checkpoint buffer : buffers) {
+                buffer.seed = seed;
+                buffer.batchSize = batchSize;
+                buffer.numEpochs = numEpochs;
+                buffer.testSplitRatio = testSplitRatio;
+                buffer.trainSize = trainSize;
+                buffer.testSize = testSize;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Get a buffer to fill with the current state, then hand it back with publish
+    // Only one thread may take checkpoints
+    public Checkpoint acquire() {
+        lock.lock();
+        try {
+            Checkpoint free = (buffers[0] != writing) ? buffers[0] : buffers[1];
+            if (pending == free) {
+                pending = null;
+            }
+            return free;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queue a filled buffer for writing
+    // Dropped once the writer has stopped
+    public void publish(Checkpoint checkpoint) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            pending = checkpoint;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Wait for the queued checkpoint to be written, then stop the writer thread
+    public void close() {
+        lock.lock();
+        try {
+            while (pending != null || writing != null) {
+                changed.awaitUninterruptibly();
+            }
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // If the thread dies of an Error, the writer stops and drops what is queued, so close() doesn't wait on it
+    private void work() {
+        try {
+            writeCheckpoints();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                pending = null;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void writeCheckpoints() {
+        while (true) {
+            Checkpoint checkpoint;
+            lock.lock();
+            try {
+                while (pending == null && !closed) {
+                    changed.awaitUninterruptibly();
+                }
+                if (pending == null) {
+                    return;
+                }
+                checkpoint = pending;
+                writing = checkpoint;
+                pending = null;
+            } finally {
+                lock.unlock();
+            }
+
+            // A failed write is reported and training carries on; the last good checkpoint stays in place
+            try {
+                ModelFile.write(checkpoint, tempPath.toString());
+                move();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Checkpoint failed: " + e);
+            } finally {
+                lock.lock();
+                try {
+                    writing = null;
+                    numWritten++;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void move() throws IOException {
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Number of checkpoints written or attempted so far
+    public int getNumWritten() {
+        lock.lock();
+        try {
+            return numWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getFilePath() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package Models;
+
+// Minimum and maximum of consecutive runs of a series' values, few enough to draw at any length
+// Catches up with new values incrementally; once every bucket is used, neighbouring buckets are
+// merged so each covers twice as many values, so memory and drawing time stay bounded
+// Spikes survive decimation since each bucket keeps its extremes
+class DecimatedSeries {
+
+    private static final int MAX_BUCKETS = 4096;
+
+    private final DoubleSeries series;
+    private final double[] min = new double[MAX_BUCKETS];
+    private final double[] max = new double[MAX_BUCKETS];
+    private int valuesPerBucket = 1;
+    private int numValues;
+
+    DecimatedSeries(DoubleSeries series) {
+        this.series = series;
+    }
+
+    // Fold in values up to count, which must not be more than the series' size
+    void update(int count) {
+        for (int i = numValues; i < count; i++) {
+            double value = series.get(i);
+            int bucket = i / valuesPerBucket;
+            if (bucket == MAX_BUCKETS) {
+                mergeBuckets();
+                bucket = i / valuesPerBucket;
+            }
+            if (i % valuesPerBucket == 0) {
+                min[bucket] = value;
+                max[bucket] = value;
+            } else {
+                min[bucket] = Math.min(min[bucket], value);
+                max[bucket] = Math.max(max[bucket], value);
+            }
+        }
+        numValues = Math.max(numValues, count);
+    }
+
+    // Halve the number of buckets; only happens when all of them are full
+    private void mergeBuckets() {
+        for (int i = 0; i < MAX_BUCKETS / 2; i++) {
+            min[i] = Math.min(min[2 * i], min[2 * i + 1]);
+            max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+        }
+        valuesPerBucket *= 2;
+    }
+
+    int getNumBuckets() {
+        return (numValues + valuesPerBucket - 1) / valuesPerBucket;
+    }
+
+    // Index of the series' first value in a bucket
+    int getFirstIndex(int bucket) {
+        return bucket * valuesPerBucket;
+    }
+
+    // Index of the series' last value in a bucket
+    int getLastIndex(int bucket) {
+        return Math.min(numValues, (bucket + 1) * valuesPerBucket) - 1;
+    }
+
+    double getMin(int bucket) {
+        return min[bucket];
+    }
+
+    double getMax(int bucket) {
+        return max[bucket];
+    }
+
+    DoubleSeries getSeries() {
+        return series;
+    }
+}
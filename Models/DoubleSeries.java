@@ -0,0 +1,65 @@
+package Models;
+
+import java.util.Arrays;
+
+// Growable list of doubles with one writer and any number of readers on other threads
+// Values are never changed once added, and the array only grows by copying, so a reader
+// that reads size() first can read every value below it without locking
+public class DoubleSeries {
+
+    // Both volatile: a reader that sees a size also sees an array holding that many values
+    private volatile double[] values;
+    private volatile int size;
+
+    public DoubleSeries() {
+        this(16);
+    }
+
+    public DoubleSeries(int capacity) {
+        values = new double[Math.max(1, capacity)];
+    }
+
+    // Append a value; only one thread may add
+    public void add(double value) {
+        double[] array = values;
+        int count = size;
+        if (count == array.length) {
+            array = Arrays.copyOf(array, count * 2);
+            values = array;
+        }
+        array[count] = value;
+        size = count + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    // Copy the first count values into dest
+    public void copyTo(double[] dest, int count) {
+        System.arraycopy(values, 0, dest, 0, count);
+    }
+
+    public double[] toArray() {
+        int count = size;
+        return Arrays.copyOf(values, count);
+    }
+
+    // Largest of the first count values, 0 if there are none
+    public double max(int count) {
+        if (count == 0) return 0;
+        double[] array = values;
+        double max = array[0];
+        for (int i = 1; i < count; i++) {
+            max = Math.max(max, array[i]);
+        }
+        return max;
+    }
+}
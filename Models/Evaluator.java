@@ -0,0 +1,73 @@
+package Models;
+
+import Data.Dataset;
+
+// Single-threaded evaluation of anything that predicts in batches, for the tools that compare a
+// network with a compressed version of it
+class Evaluator {
+
+    // Rows predicted at once
+    static final int BATCH_SIZE = 256;
+
+    interface BatchPredictor {
+        double[] predictBatch(double[] inputs, int inputOffset, int batchSize);
+    }
+
+    interface Cost {
+        double cost(double[] expectedOutputs, double[] calculatedOutputs);
+    }
+
+    // Returns array with 3 values: {cost, accuracy, nanoseconds}
+    // The data is evaluated twice and the second run timed, so every network is measured with compiled kernels
+    static double[] evaluateTimed(Dataset testData, int outputSize, Cost cost, BatchPredictor predictor) {
+        evaluate(testData, outputSize, cost, predictor);
+        long start = System.nanoTime();
+        double[] result = evaluate(testData, outputSize, cost, predictor);
+        return new double[] {result[0], result[1], System.nanoTime() - start};
+    }
+
+    // Predict testData in batches, summing costs in data order
+    // Returns array with 2 values: {cost, accuracy}, like ModelTrainer.evaluateModel
+    static double[] evaluate(Dataset testData, int outputSize, Cost cost, BatchPredictor predictor) {
+        int size = testData.size();
+        int inputSize = testData.getInputSize();
+        int batchSize = Math.min(BATCH_SIZE, size);
+        double[] inputs = new double[batchSize * inputSize];
+        double[] expectedOutputs = new double[outputSize];
+        double[] outputs = new double[outputSize];
+
+        double totalCost = 0;
+        int numCorrect = 0;
+        for (int start = 0; start < size; start += batchSize) {
+            int count = Math.min(batchSize, size - start);
+            for (int row = 0; row < count; row++) {
+                testData.copyInputsTo(start + row, inputs, row * inputSize);
+            }
+            double[] batchOutputs = predictor.predictBatch(inputs, 0, count);
+
+            for (int row = 0; row < count; row++) {
+                testData.copyOutputsTo(start + row, expectedOutputs, 0);
+                System.arraycopy(batchOutputs, row * outputSize, outputs, 0, outputSize);
+                totalCost += cost.cost(expectedOutputs, outputs);
+
+                int realLabel = testData.hasLabels() ? testData.getLabel(start + row) : getLabel(expectedOutputs);
+                if (getLabel(outputs) == realLabel) {
+                    numCorrect++;
+                }
+            }
+        }
+
+        return new double[] {totalCost / size, (double)numCorrect / size * 100};
+    }
+
+    // Get the label with highest output value
+    private static int getLabel(double[] outputs) {
+        int label = 0;
+        for (int i = 1; i < outputs.length; i++) {
+            if (outputs[i] > outputs[label]) {
+                label = i;
+            }
+        }
+        return label;
+    }
+}
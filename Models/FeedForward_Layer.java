@@ -1,25 +1,56 @@
 package Models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.Softmax;
 import CostFunctions.CostFunction;
+import CostFunctions.CrossEntropy;
+import Kernels.MatrixKernels;
+import Kernels.SparseRows;
+import Optimizers.Optimizer;
 
 public class FeedForward_Layer implements Serializable {
     
     // Serial ID
     private static final long serialVersionUID = 6529685098267757692L;
 
+    // Scattering gradient updates costs more per nonzero input than gathering weights in the
+    // forward pass, so the gradients only use the sparse kernels below this fraction of the threshold
+    private static final double SPARSE_GRADIENT_RATIO = 0.6;
+
+    // Pruned layers with at most this fraction of nonzero weights predict through the sparse weight kernels
+    // Gathering inputs for each weight only beats the dense SIMD kernels well below half density
+    private static final double SPARSE_WEIGHT_DENSITY = 0.2;
+
     // values is before activations, outputs is after
     private double[] values;
     private double[] outputs;
     private double[] nodeError;
     private double[] dropoutMask;
 
-    // weights[i][j] goes from input node i to this layer node j
-    private double[][] weights;
-    private double[][] gradientW;
+    // Scratch space for activation derivatives
+    private transient double[] derivative;
+
+    // Number of input nodes and nodes in this layer
+    private int inDim;
+    private int outDim;
+
+    // Storage precision of the weights and their optimizer state
+    private Precision precision;
+
+    // Weight matrices are stored flat, one row per node in this layer:
+    // weightBuffer[j * inDim + i] goes from input node i to this layer node j
+    // Single precision layers keep weights and weight state in the float buffers and leave the
+    // double ones null; gradients are always accumulated in double
+    private double[] weightBuffer;
+    private float[] floatWeightBuffer;
+    private double[] gradientWBuffer;
 
     // biases[i] goes to this layer node i
     private double[] biases;
@@ -28,35 +59,69 @@ public class FeedForward_Layer implements Serializable {
     // L2 regularization parameter lambda
     private double lambda;
 
-    // ADAM parameters
-    private final double epsilon = 1e-8; // Tiny value to avoid division by 0
-    private double[][] mW; // First moment for weights
-    private double[][] vW; // Second moment for weights
-    private double[] mB; // First moment for biases
-    private double[] vB; // Second moment for biases
+    // Optimizer state, such as ADAM's moments: weightState[k] holds one value per weight, laid out
+    // like the weights and in their precision, and biasState[k] one value per bias
+    // Allocated by allocateOptimizerState for the optimizer of the network
+    private double[][] weightState = new double[0][];
+    private float[][] floatWeightState = new float[0][];
+    private double[][] biasState = new double[0][];
 
     private ActivationFunction activation;
 
+    // Inputs with at most this fraction of nonzeros skip the zero inputs in the forward pass, and in the
+    // weight gradients below SPARSE_GRADIENT_RATIO of it; 0 always uses the dense kernels
+    // Set by the network for its input layer
+    private transient double sparseInputThreshold;
+
+    // The last single set of inputs as an index/value list, created on first use
+    private transient SparseRows sparseInput;
+
+    // Indices of weights removed by pruning, which are kept at zero through training; null if none are
+    private transient int[] prunedWeights;
+
+    // Nonzero weights of a pruned layer as index/value lists, one row per node, for predictions
+    // Built on first use after the weights change
+    private transient volatile SparseRows sparseWeights;
+
+    // Activate with the approximations in FastMath instead of the exact functions; set by the network
+    private transient boolean fastActivations;
+
     public FeedForward_Layer(int inDim, int outDim, ActivationFunction activationFunction) {
+        this(inDim, outDim, activationFunction, Precision.DOUBLE);
+    }
+
+    public FeedForward_Layer(int inDim, int outDim, ActivationFunction activationFunction, Precision precision) {
+        this(inDim, outDim, activationFunction, precision, true);
+    }
+
+    // Constructor for layers whose weights are filled in afterwards, such as when loading a model file
+    FeedForward_Layer(int inDim, int outDim, ActivationFunction activationFunction, Precision precision, boolean randomize) {
 
         // Initialize array sizes
         values = new double[outDim];
         outputs = new double[outDim];
         nodeError = new double[outDim];
         dropoutMask = new double[outDim];
+        derivative = new double[outDim];
+
+        this.inDim = inDim;
+        this.outDim = outDim;
 
-        weights = new double[inDim][outDim];
-        gradientW = new double[inDim][outDim];
-        mW = new double[inDim][outDim];
-        vW = new double[inDim][outDim];
+        this.precision = precision;
+        if (precision == Precision.FLOAT) {
+            floatWeightBuffer = new float[outDim * inDim];
+        } else {
+            weightBuffer = new double[outDim * inDim];
+        }
+        gradientWBuffer = new double[outDim * inDim];
 
         biases = new double[outDim];
         gradientB = new double[outDim];
-        mB = new double[outDim];
-        vB = new double[outDim];
 
         // Initialize weights with Kaiming He initialization
-        randomizeWeights();
+        if (randomize) {
+            randomizeWeights();
+        }
 
         this.activation = activationFunction;
     }
@@ -64,24 +129,41 @@ public class FeedForward_Layer implements Serializable {
 
     private void randomizeWeights() {
         Random rnd = new Random();
-        for (int inNode = 0; inNode < weights.length; inNode++) {
-            for (int outNode = 0; outNode < weights[inNode].length; outNode++) {
-                weights[inNode][outNode] = rnd.nextGaussian() * Math.sqrt(2.0 / weights.length);
+        for (int i = 0; i < outDim * inDim; i++) {
+            double weight = rnd.nextGaussian() * Math.sqrt(2.0 / inDim);
+            if (precision == Precision.FLOAT) {
+                floatWeightBuffer[i] = (float)weight;
+            } else {
+                weightBuffer[i] = weight;
             }
         }
     }
 
     // Feed inputs through the layer and output an array of outputs
+    // The returned array is reused by the next call
     public double[] forwardPropagate(double[] inputs, boolean training, double dropoutRate) {
-        
-        // Reset values array
-        values = new double[values.length];
+        return forwardPropagate(inputs, training, dropoutRate, ThreadLocalRandom.current());
+    }
+
+    // Feed inputs through the layer, drawing the dropout mask from random when training
+    public double[] forwardPropagate(double[] inputs, boolean training, double dropoutRate, Random random) {
+        SparseRows weights = training ? null : getSparseWeights();
+        SparseRows sparse = (weights != null) ? null : compressInputs(inputs, sparseInputThreshold);
 
         // Feed values through weights and biases
-        for (int outNode = 0; outNode < values.length; outNode++) {
-            for (int inNode = 0; inNode < inputs.length; inNode++) {
-                // Add input * weight to values
-                values[outNode] += inputs[inNode] * weights[inNode][outNode];
+        for (int outNode = 0; outNode < outDim; outNode++) {
+            if (weights != null) {
+                values[outNode] = MatrixKernels.dot(weights, outNode, inputs, 0);
+            } else if (sparse != null) {
+                if (precision == Precision.FLOAT) {
+                    values[outNode] = MatrixKernels.dot(sparse, 0, floatWeightBuffer, outNode * inDim);
+                } else {
+                    values[outNode] = MatrixKernels.dot(sparse, 0, weightBuffer, outNode * inDim);
+                }
+            } else if (precision == Precision.FLOAT) {
+                values[outNode] = MatrixKernels.dot(inputs, 0, floatWeightBuffer, outNode * inDim, inDim);
+            } else {
+                values[outNode] = MatrixKernels.dot(inputs, 0, weightBuffer, outNode * inDim, inDim);
             }
             // Add bias to values
             values[outNode] += biases[outNode];
@@ -89,42 +171,97 @@ public class FeedForward_Layer implements Serializable {
 
         // Apply dropout mask
         if (training) {
-            applyDropout(dropoutRate);
+            applyDropout(dropoutRate, random);
             for (int outNode = 0; outNode < values.length; outNode++) {
                 values[outNode] *= dropoutMask[outNode];
             }
         }
 
         // Activate values to relay to outputs
-        outputs = activation.fArray(values);
+        activate(values, outputs, 1);
 
         return outputs;
     }
 
-    private void applyDropout(double dropoutRate) {
+    // Compress one set of inputs if it is sparse enough for the sparse kernels, otherwise return null
+    private SparseRows compressInputs(double[] inputs, double threshold) {
+        if (threshold <= 0) return null;
+
+        if (sparseInput == null) {
+            sparseInput = new SparseRows(inDim);
+        }
+        sparseInput.compress(inputs, 0, 1, threshold);
+        return sparseInput.isDenseRow(0) ? null : sparseInput;
+    }
+
+    // Compress a batch of inputs into the buffers, or return null if no row is sparse enough
+    private SparseRows compressInputs(double[] inputs, int inputOffset, int batchSize, double threshold, LayerBuffers buffers) {
+        if (threshold <= 0) return null;
+
+        if (buffers.sparseInputs == null) {
+            buffers.sparseInputs = new SparseRows(inDim);
+        }
+        buffers.sparseInputs.compress(inputs, inputOffset, batchSize, threshold);
+        return (buffers.sparseInputs.getNumSparseRows() > 0) ? buffers.sparseInputs : null;
+    }
+
+    // Compress a batch for the weight gradients if the batch as a whole is sparse enough, otherwise return null
+    // The sparse and dense gradient kernels add up every element in the same order, so unlike the forward
+    // pass they give identical results and the whole batch can go through one of them
+    // The forward pass's lists for this batch are reused if it compressed every row, and otherwise give a
+    // lower bound on the nonzeros, since each row it left dense has more than the threshold; failing that
+    // the nonzeros are counted first, so batches too dense for the sparse kernel are never compressed
+    private SparseRows compressGradientInputs(double[] inputs, int inputOffset, int batchSize, LayerBuffers buffers) {
+        double threshold = sparseInputThreshold * SPARSE_GRADIENT_RATIO;
+        if (threshold <= 0) return null;
+
+        long maxNonZeros = (long)(threshold * batchSize * inDim);
+        SparseRows forward = buffers.sparseInputs;
+        if (forward != null && forward.isCompressedFrom(inputs, inputOffset, batchSize)) {
+            int numDenseRows = batchSize - forward.getNumSparseRows();
+            if (numDenseRows == 0) {
+                return (forward.getNumNonZeros() <= maxNonZeros) ? forward : null;
+            }
+            long denseRowNonZeros = (long)(sparseInputThreshold * inDim) + 1;
+            if (forward.getNumNonZeros() + numDenseRows * denseRowNonZeros > maxNonZeros) {
+                return null;
+            }
+        }
+        if (SparseRows.countNonZeros(inputs, inputOffset, batchSize * inDim, maxNonZeros) > maxNonZeros) {
+            return null;
+        }
+        return compressInputs(inputs, inputOffset, batchSize, 1, buffers);
+    }
+
+    private void applyDropout(double dropoutRate, Random random) {
         // Dropout mask where 1/(1-dropoutRate) scales the outputs during training
         double scale = 1.0 / (1.0 - dropoutRate);
 
         for (int i = 0; i < dropoutMask.length; i++) {
-            dropoutMask[i] = (Math.random() < dropoutRate) ? 0.0 : scale;
+            dropoutMask[i] = (random.nextDouble() < dropoutRate) ? 0.0 : scale;
         }
     }
 
     // Back propagate and fill up node errors
-    public double[] backPropagateHiddenLayer(double[] nextLayerError, double[][] nextLayerWeights) {
+    public double[] backPropagateHiddenLayer(double[] nextLayerError, FeedForward_Layer nextLayer) {
 
         // Reset node error array
-        nodeError = new double[nodeError.length];
+        Arrays.fill(nodeError, 0);
 
         // Calculate node errors for this layer
-        double[] activationDerivative = activation.dfArray(values);
+        activation.dfArray(values, outputs, derivative);
 
-        // inNode refers to the inNode for the next layer, not this one (same with outNode)
-        for (int inNode = 0; inNode < values.length; inNode++) {
-            for (int outNode = 0; outNode < nextLayerError.length; outNode++) {
-                nodeError[inNode] += nextLayerError[outNode] * nextLayerWeights[inNode][outNode];
+        // Walk the next layer's weight rows so the inner loop stays contiguous
+        // outNode refers to the node in the next layer, inNode to the node in this one
+        for (int outNode = 0; outNode < nextLayerError.length; outNode++) {
+            if (nextLayer.precision == Precision.FLOAT) {
+                MatrixKernels.axpy(nextLayerError[outNode], nextLayer.floatWeightBuffer, outNode * outDim, nodeError, 0, outDim);
+            } else {
+                MatrixKernels.axpy(nextLayerError[outNode], nextLayer.weightBuffer, outNode * outDim, nodeError, 0, outDim);
             }
-            nodeError[inNode] *= activationDerivative[inNode];
+        }
+        for (int inNode = 0; inNode < outDim; inNode++) {
+            nodeError[inNode] *= derivative[inNode];
         }
 
         // Returns this layer's node errors
@@ -134,65 +271,633 @@ public class FeedForward_Layer implements Serializable {
     // Back propagate and fill up node errors
     public double[] backPropagateOutputLayer(double[] expectedOutputs, CostFunction costFunction) {
 
+        // Softmax with cross entropy simplifies to outputs - expected
+        if (isSoftmaxCrossEntropy(costFunction)) {
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                nodeError[outNode] = outputs[outNode] - expectedOutputs[outNode];
+            }
+            return nodeError;
+        }
+
         // Calculate node errors for the output layer
-        double[] activationDerivative = activation.dfArray(values);
+        activation.dfArray(values, outputs, derivative);
 
         for (int outNode = 0; outNode < values.length; outNode++) {
             double costFunctionDerivative = costFunction.dcost(expectedOutputs[outNode], outputs[outNode]);
-            nodeError[outNode] = costFunctionDerivative * activationDerivative[outNode];
+            nodeError[outNode] = costFunctionDerivative * derivative[outNode];
         }
 
         // Returns this layer's node errors
         return nodeError;
     }
 
+    // Back propagate through the output layer with the expected output given as a class label
+    public double[] backPropagateOutputLayer(int label, CostFunction costFunction) {
+
+        // Softmax with cross entropy simplifies to outputs - one hot label
+        if (isSoftmaxCrossEntropy(costFunction)) {
+            System.arraycopy(outputs, 0, nodeError, 0, outDim);
+            nodeError[label] -= 1;
+            return nodeError;
+        }
+
+        activation.dfArray(values, outputs, derivative);
+        for (int outNode = 0; outNode < outDim; outNode++) {
+            double expected = (outNode == label) ? 1 : 0;
+            nodeError[outNode] = costFunction.dcost(expected, outputs[outNode]) * derivative[outNode];
+        }
+        return nodeError;
+    }
+
     // Update gradients after backpropagation
     public void updateGradients(double[] inputs) {
+        SparseRows sparse = compressInputs(inputs, sparseInputThreshold * SPARSE_GRADIENT_RATIO);
         for (int outNode = 0; outNode < values.length; outNode++) {
-            for (int inNode = 0; inNode < inputs.length; inNode++) {
-                gradientW[inNode][outNode] += inputs[inNode] * nodeError[outNode];
+            if (sparse != null) {
+                MatrixKernels.axpy(nodeError[outNode], sparse, 0, gradientWBuffer, outNode * inDim);
+            } else {
+                MatrixKernels.axpy(nodeError[outNode], inputs, 0, gradientWBuffer, outNode * inDim, inDim);
             }
             gradientB[outNode] += nodeError[outNode];
         }
     }
 
-    // Update weights and biases with ADAM optimization
-    public void updateWeightsAndBiases(double learningRate, double beta1, double beta2, double batchSize, int numBatches) {
-        for (int outNode = 0; outNode < values.length; outNode++) {
-            for (int inNode = 0; inNode < weights.length; inNode++) {
-                // Update the first moment estimate
-                mW[inNode][outNode] = beta1 * mW[inNode][outNode] + (1 - beta1) * gradientW[inNode][outNode] / batchSize;
+    // Feed a batch of inputs (batchSize rows of inDim values) through the layer
+    // Returns the outputs buffer, holding batchSize rows of outDim values
+    public double[] forwardBatch(double[] inputs, int inputOffset, int batchSize, boolean training, double dropoutRate, LayerBuffers buffers, Random random) {
+        SparseRows weights = training ? null : getSparseWeights();
+        if (weights != null) {
+            // The inputs aren't compressed, so lists from an earlier batch mustn't be taken for them
+            if (buffers.sparseInputs != null) {
+                buffers.sparseInputs.clear();
+            }
+            MatrixKernels.multiplyTransposed(inputs, inputOffset, weights, buffers.values, 0, batchSize);
+            return finishForwardBatch(batchSize, training, dropoutRate, buffers, random);
+        }
 
-                // Update the second moment estimate
-                vW[inNode][outNode] = beta2 * vW[inNode][outNode] + (1 - beta2) * (gradientW[inNode][outNode] / batchSize) * (gradientW[inNode][outNode] / batchSize);
+        SparseRows sparse = compressInputs(inputs, inputOffset, batchSize, sparseInputThreshold, buffers);
+        if (sparse != null) {
+            return forwardBatch(sparse, training, dropoutRate, buffers, random);
+        }
 
-                // Compute bias-corrected estimates
-                double mW_hat = mW[inNode][outNode] / (1 - Math.pow(beta1, numBatches));
-                double vW_hat = vW[inNode][outNode] / (1 - Math.pow(beta2, numBatches));
+        // values = inputs * weights^T
+        if (precision == Precision.FLOAT) {
+            MatrixKernels.multiplyTransposed(inputs, inputOffset, floatWeightBuffer, buffers.values, 0, batchSize, outDim, inDim);
+        } else {
+            MatrixKernels.multiplyTransposed(inputs, inputOffset, weightBuffer, buffers.values, 0, batchSize, outDim, inDim);
+        }
+        return finishForwardBatch(batchSize, training, dropoutRate, buffers, random);
+    }
 
-                // Update weights
-                weights[inNode][outNode] = weights[inNode][outNode] - learningRate * (mW_hat / (Math.sqrt(vW_hat) + epsilon) + lambda * weights[inNode][outNode]);
+    // Feed a batch of inputs given as index/value lists through the layer
+    public double[] forwardBatch(SparseRows inputs, boolean training, double dropoutRate, LayerBuffers buffers, Random random) {
+        if (precision == Precision.FLOAT) {
+            MatrixKernels.multiplyTransposed(inputs, floatWeightBuffer, buffers.values, 0, outDim);
+        } else {
+            MatrixKernels.multiplyTransposed(inputs, weightBuffer, buffers.values, 0, outDim);
+        }
+        return finishForwardBatch(inputs.getNumRows(), training, dropoutRate, buffers, random);
+    }
 
-                // Reset gradient
-                gradientW[inNode][outNode] = 0;
+    // Add biases to every row of values, apply dropout and activate
+    private double[] finishForwardBatch(int batchSize, boolean training, double dropoutRate, LayerBuffers buffers, Random random) {
+        double[] batchValues = buffers.values;
+        for (int row = 0; row < batchSize; row++) {
+            int offset = row * outDim;
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                batchValues[offset + outNode] += biases[outNode];
             }
+        }
 
-            // Update the first moment estimate
-            mB[outNode] = beta1 * mB[outNode] + (1 - beta1) * gradientB[outNode] / batchSize;
-    
-            // Update the second moment estimate
-            vB[outNode] = beta2 * vB[outNode] + (1 - beta2) * (gradientB[outNode] / batchSize) * (gradientB[outNode] / batchSize);
+        // Apply dropout mask
+        if (training) {
+            double[] mask = buffers.dropoutMask;
+            double scale = 1.0 / (1.0 - dropoutRate);
+            for (int i = 0; i < batchSize * outDim; i++) {
+                mask[i] = (random.nextDouble() < dropoutRate) ? 0.0 : scale;
+                batchValues[i] *= mask[i];
+            }
+        }
+
+        // Activate values to relay to outputs
+        activate(batchValues, buffers.outputs, batchSize);
 
-            // Compute bias-corrected estimates
-            double mB_hat = mB[outNode] / (1 - Math.pow(beta1, numBatches));
-            double vB_hat = vB[outNode] / (1 - Math.pow(beta2, numBatches));
+        return buffers.outputs;
+    }
 
-            // Update biases
-            biases[outNode] = biases[outNode] - learningRate * mB_hat / (Math.sqrt(vB_hat) + epsilon);
+    // Back propagate a batch through the output layer and fill up node errors
+    public double[] backwardBatch(double[] expectedOutputs, int expectedOffset, int batchSize, CostFunction costFunction, LayerBuffers buffers) {
+        double[] batchError = buffers.nodeError;
+        double[] batchOutputs = buffers.outputs;
 
-            // Reset gradient
-            gradientB[outNode] = 0;
+        // Softmax with cross entropy simplifies to outputs - expected
+        if (isSoftmaxCrossEntropy(costFunction)) {
+            for (int i = 0; i < batchSize * outDim; i++) {
+                batchError[i] = batchOutputs[i] - expectedOutputs[expectedOffset + i];
+            }
+            return batchError;
         }
+
+        activation.dfBatch(buffers.values, batchOutputs, batchError, batchSize, outDim);
+        for (int i = 0; i < batchSize * outDim; i++) {
+            batchError[i] *= costFunction.dcost(expectedOutputs[expectedOffset + i], batchOutputs[i]);
+        }
+
+        return batchError;
+    }
+
+    // Back propagate a batch through the output layer with one class label per row
+    public double[] backwardBatch(int[] labels, int labelOffset, int batchSize, CostFunction costFunction, LayerBuffers buffers) {
+        double[] batchError = buffers.nodeError;
+        double[] batchOutputs = buffers.outputs;
+
+        // Softmax with cross entropy simplifies to outputs - one hot label
+        if (isSoftmaxCrossEntropy(costFunction)) {
+            System.arraycopy(batchOutputs, 0, batchError, 0, batchSize * outDim);
+            for (int row = 0; row < batchSize; row++) {
+                batchError[row * outDim + labels[labelOffset + row]] -= 1;
+            }
+            return batchError;
+        }
+
+        activation.dfBatch(buffers.values, batchOutputs, batchError, batchSize, outDim);
+        for (int row = 0; row < batchSize; row++) {
+            int label = labels[labelOffset + row];
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                int i = row * outDim + outNode;
+                double expected = (outNode == label) ? 1 : 0;
+                batchError[i] *= costFunction.dcost(expected, batchOutputs[i]);
+            }
+        }
+
+        return batchError;
+    }
+
+    // Softmax outputs with a cross entropy cost have the combined derivative outputs - expected,
+    // which skips the derivative of softmax and the division in the cost derivative that
+    // gives up when an output reaches 0 or 1
+    private boolean isSoftmaxCrossEntropy(CostFunction costFunction) {
+        return activation instanceof Softmax && costFunction instanceof CrossEntropy;
+    }
+
+    // Activate batchSize rows of values into outputs, approximately in fast mode
+    private void activate(double[] values, double[] outputs, int batchSize) {
+        if (fastActivations) {
+            activation.fBatchFast(values, outputs, batchSize, outDim);
+        } else {
+            activation.fBatch(values, outputs, batchSize, outDim);
+        }
+    }
+
+    // Back propagate a batch through a hidden layer using the next layer's node errors
+    public double[] backwardBatch(FeedForward_Layer nextLayer, LayerBuffers nextBuffers, int batchSize, LayerBuffers buffers) {
+        double[] batchError = buffers.nodeError;
+        double[] derivative = buffers.derivative;
+
+        // error = nextError * nextWeights, then scale by the activation derivative
+        if (nextLayer.precision == Precision.FLOAT) {
+            MatrixKernels.multiply(nextBuffers.nodeError, 0, nextLayer.floatWeightBuffer, batchError, 0, batchSize, outDim, nextLayer.outDim);
+        } else {
+            MatrixKernels.multiply(nextBuffers.nodeError, 0, nextLayer.weightBuffer, batchError, 0, batchSize, outDim, nextLayer.outDim);
+        }
+        activation.dfBatch(buffers.values, buffers.outputs, derivative, batchSize, outDim);
+        for (int i = 0; i < batchSize * outDim; i++) {
+            batchError[i] *= derivative[i];
+        }
+
+        return batchError;
+    }
+
+    // Accumulate gradients for a whole batch after backpropagation
+    // Goes into the buffers' own gradients if they have them, otherwise into this layer's
+    public void updateGradientsBatch(double[] inputs, int inputOffset, int batchSize, LayerBuffers buffers) {
+        double[] batchError = buffers.nodeError;
+        double[] targetW = buffers.hasOwnGradients() ? buffers.gradientW : gradientWBuffer;
+        double[] targetB = buffers.hasOwnGradients() ? buffers.gradientB : gradientB;
+
+        // gradient += error^T * inputs
+        SparseRows sparse = compressGradientInputs(inputs, inputOffset, batchSize, buffers);
+        if (sparse != null) {
+            MatrixKernels.multiplyTransposedAdd(batchError, 0, sparse, targetW, outDim);
+        } else {
+            MatrixKernels.multiplyTransposedAdd(batchError, 0, inputs, inputOffset, targetW, outDim, inDim, batchSize);
+        }
+        addBiasGradients(batchSize, buffers, targetB);
+    }
+
+    // Accumulate gradients for a batch whose inputs were given as index/value lists
+    public void updateGradientsBatch(SparseRows inputs, LayerBuffers buffers) {
+        double[] targetW = buffers.hasOwnGradients() ? buffers.gradientW : gradientWBuffer;
+        double[] targetB = buffers.hasOwnGradients() ? buffers.gradientB : gradientB;
+
+        MatrixKernels.multiplyTransposedAdd(buffers.nodeError, 0, inputs, targetW, outDim);
+        addBiasGradients(inputs.getNumRows(), buffers, targetB);
+    }
+
+    private void addBiasGradients(int batchSize, LayerBuffers buffers, double[] targetB) {
+        double[] batchError = buffers.nodeError;
+        for (int row = 0; row < batchSize; row++) {
+            int offset = row * outDim;
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                targetB[outNode] += batchError[offset + outNode];
+            }
+        }
+    }
+
+    // Add a worker's gradients for nodes fromNode until toNode into this layer's, then clear them
+    public void addGradients(LayerBuffers buffers, int fromNode, int toNode) {
+        double[] workerW = buffers.gradientW;
+        double[] workerB = buffers.gradientB;
+
+        for (int i = fromNode * inDim; i < toNode * inDim; i++) {
+            gradientWBuffer[i] += workerW[i];
+            workerW[i] = 0;
+        }
+        for (int outNode = fromNode; outNode < toNode; outNode++) {
+            gradientB[outNode] += workerB[outNode];
+            workerB[outNode] = 0;
+        }
+    }
+
+    // Update weights and biases from the accumulated gradients with the optimizer, clearing the gradients
+    // The optimizer's startStep must have been called for this step
+    public void updateWeightsAndBiases(Optimizer optimizer) {
+        allocateOptimizerState(optimizer.getNumStateBuffers());
+        if (precision == Precision.FLOAT) {
+            optimizer.updateWeights(floatWeightBuffer, gradientWBuffer, floatWeightState, floatWeightBuffer.length, lambda);
+        } else {
+            optimizer.updateWeights(weightBuffer, gradientWBuffer, weightState, weightBuffer.length, lambda);
+        }
+        optimizer.updateBiases(biases, gradientB, biasState, outDim);
+        zeroPrunedWeights();
+        sparseWeights = null;
+    }
+
+    // Prune the sparsity fraction of weights with the smallest magnitudes, setting them and their
+    // optimizer state to zero; they stay zero through later training
+    // Weights pruned before stay pruned, so the sparsity never goes down
+    public void pruneMagnitude(double sparsity) {
+        if (sparsity < 0 || sparsity > 1) {
+            throw new IllegalArgumentException("Sparsity must be between 0 and 1, got " + sparsity);
+        }
+        int numWeights = outDim * inDim;
+        int numPruned = Math.max((int)Math.round(sparsity * numWeights), getNumPrunedWeights());
+        if (numPruned == 0) return;
+
+        // Weights below the threshold are pruned, then ones equal to it until there are enough
+        // Weights pruned before rank below every magnitude, so they stay pruned even where other
+        // weights are zero too and the ties would otherwise go by index
+        double[] magnitudes = new double[numWeights];
+        for (int i = 0; i < numWeights; i++) {
+            magnitudes[i] = Math.abs(getWeightAt(i));
+        }
+        if (prunedWeights != null) {
+            for (int i : prunedWeights) {
+                magnitudes[i] = -1;
+            }
+        }
+        double[] sorted = magnitudes.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[numPruned - 1];
+        int numBelow = 0;
+        while (numBelow < numPruned && sorted[numBelow] < threshold) {
+            numBelow++;
+        }
+
+        int[] pruned = new int[numPruned];
+        int count = 0;
+        int numEqual = numPruned - numBelow;
+        for (int i = 0; i < numWeights; i++) {
+            if (magnitudes[i] < threshold) {
+                pruned[count++] = i;
+            } else if (magnitudes[i] == threshold && numEqual > 0) {
+                pruned[count++] = i;
+                numEqual--;
+            }
+        }
+        prunedWeights = pruned;
+
+        zeroPrunedWeights();
+        for (int k = 0; k < weightState.length; k++) {
+            for (int i : pruned) {
+                weightState[k][i] = 0;
+            }
+        }
+        for (int k = 0; k < floatWeightState.length; k++) {
+            for (int i : pruned) {
+                floatWeightState[k][i] = 0;
+            }
+        }
+        sparseWeights = null;
+    }
+
+    // Indices of the pruned weights in increasing order, or null if none are pruned; not to be modified
+    int[] getPrunedWeights() {
+        return prunedWeights;
+    }
+
+    // Restore the pruning mask of a saved layer, zeroing the weights it lists
+    void setPrunedWeights(int[] pruned) {
+        prunedWeights = pruned;
+        zeroPrunedWeights();
+        sparseWeights = null;
+    }
+
+    private void zeroPrunedWeights() {
+        if (prunedWeights == null) return;
+
+        for (int i : prunedWeights) {
+            if (precision == Precision.FLOAT) {
+                floatWeightBuffer[i] = 0;
+            } else {
+                weightBuffer[i] = 0;
+            }
+        }
+    }
+
+    // The nonzero weights as index/value lists if the layer is pruned enough for the sparse kernels, otherwise null
+    SparseRows getSparseWeights() {
+        if (getNumPrunedWeights() < (1 - SPARSE_WEIGHT_DENSITY) * outDim * inDim) {
+            return null;
+        }
+        SparseRows result = sparseWeights;
+        if (result == null) {
+            result = new SparseRows(inDim);
+            int[] rowIndices = new int[inDim];
+            double[] rowValues = new double[inDim];
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                int count = 0;
+                for (int inNode = 0; inNode < inDim; inNode++) {
+                    double weight = getWeightAt(outNode * inDim + inNode);
+                    if (weight != 0) {
+                        rowIndices[count] = inNode;
+                        rowValues[count] = weight;
+                        count++;
+                    }
+                }
+                result.addRow(rowIndices, rowValues, count);
+            }
+            sparseWeights = result;
+        }
+        return result;
+    }
+
+    // Keep only the nodes listed in keep, in that order, with their weights, biases and optimizer state
+    // The next layer must keep the same inputs with keepInputs
+    void keepNodes(int[] keep) {
+        double[] prunedMask = getPrunedMask();
+        int newOutDim = keep.length;
+
+        if (precision == Precision.FLOAT) {
+            floatWeightBuffer = selectRows(floatWeightBuffer, keep, inDim);
+            for (int k = 0; k < floatWeightState.length; k++) {
+                floatWeightState[k] = selectRows(floatWeightState[k], keep, inDim);
+            }
+        } else {
+            weightBuffer = selectRows(weightBuffer, keep, inDim);
+            for (int k = 0; k < weightState.length; k++) {
+                weightState[k] = selectRows(weightState[k], keep, inDim);
+            }
+        }
+        gradientWBuffer = selectRows(gradientWBuffer, keep, inDim);
+        biases = selectRows(biases, keep, 1);
+        gradientB = selectRows(gradientB, keep, 1);
+        for (int k = 0; k < biasState.length; k++) {
+            biasState[k] = selectRows(biasState[k], keep, 1);
+        }
+
+        outDim = newOutDim;
+        values = new double[outDim];
+        outputs = new double[outDim];
+        nodeError = new double[outDim];
+        dropoutMask = new double[outDim];
+        derivative = new double[outDim];
+        setPrunedMask((prunedMask == null) ? null : selectRows(prunedMask, keep, inDim));
+    }
+
+    // Keep only the inputs listed in keep, in that order, after the previous layer kept those nodes
+    void keepInputs(int[] keep) {
+        double[] prunedMask = getPrunedMask();
+
+        if (precision == Precision.FLOAT) {
+            floatWeightBuffer = selectColumns(floatWeightBuffer, keep, inDim);
+            for (int k = 0; k < floatWeightState.length; k++) {
+                floatWeightState[k] = selectColumns(floatWeightState[k], keep, inDim);
+            }
+        } else {
+            weightBuffer = selectColumns(weightBuffer, keep, inDim);
+            for (int k = 0; k < weightState.length; k++) {
+                weightState[k] = selectColumns(weightState[k], keep, inDim);
+            }
+        }
+        gradientWBuffer = selectColumns(gradientWBuffer, keep, inDim);
+
+        int oldInDim = inDim;
+        inDim = keep.length;
+        sparseInput = null;
+        setPrunedMask((prunedMask == null) ? null : selectColumns(prunedMask, keep, oldInDim));
+    }
+
+    // The pruned weights as 1 in a mask laid out like the weights, or null if none are pruned
+    private double[] getPrunedMask() {
+        if (prunedWeights == null) return null;
+
+        double[] mask = new double[outDim * inDim];
+        for (int i : prunedWeights) {
+            mask[i] = 1;
+        }
+        return mask;
+    }
+
+    private void setPrunedMask(double[] mask) {
+        prunedWeights = null;
+        sparseWeights = null;
+        if (mask == null) return;
+
+        int count = 0;
+        for (double value : mask) {
+            if (value != 0) count++;
+        }
+        prunedWeights = new int[count];
+        count = 0;
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i] != 0) {
+                prunedWeights[count++] = i;
+            }
+        }
+    }
+
+    // Rows keep[0], keep[1], ... of a matrix with rows of rowLength values
+    private static double[] selectRows(double[] matrix, int[] keep, int rowLength) {
+        double[] selected = new double[keep.length * rowLength];
+        for (int row = 0; row < keep.length; row++) {
+            System.arraycopy(matrix, keep[row] * rowLength, selected, row * rowLength, rowLength);
+        }
+        return selected;
+    }
+
+    private static float[] selectRows(float[] matrix, int[] keep, int rowLength) {
+        float[] selected = new float[keep.length * rowLength];
+        for (int row = 0; row < keep.length; row++) {
+            System.arraycopy(matrix, keep[row] * rowLength, selected, row * rowLength, rowLength);
+        }
+        return selected;
+    }
+
+    // Columns keep[0], keep[1], ... of a matrix with rows of rowLength values
+    private static double[] selectColumns(double[] matrix, int[] keep, int rowLength) {
+        int numRows = matrix.length / rowLength;
+        double[] selected = new double[numRows * keep.length];
+        for (int row = 0; row < numRows; row++) {
+            for (int column = 0; column < keep.length; column++) {
+                selected[row * keep.length + column] = matrix[row * rowLength + keep[column]];
+            }
+        }
+        return selected;
+    }
+
+    private static float[] selectColumns(float[] matrix, int[] keep, int rowLength) {
+        int numRows = matrix.length / rowLength;
+        float[] selected = new float[numRows * keep.length];
+        for (int row = 0; row < numRows; row++) {
+            for (int column = 0; column < keep.length; column++) {
+                selected[row * keep.length + column] = matrix[row * rowLength + keep[column]];
+            }
+        }
+        return selected;
+    }
+
+    // Give every parameter numBuffers zeroed state values, unless the layer already has that many
+    public void allocateOptimizerState(int numBuffers) {
+        if (biasState.length == numBuffers) return;
+
+        weightState = new double[0][];
+        floatWeightState = new float[0][];
+        if (precision == Precision.FLOAT) {
+            floatWeightState = new float[numBuffers][outDim * inDim];
+        } else {
+            weightState = new double[numBuffers][outDim * inDim];
+        }
+        biasState = new double[numBuffers][outDim];
+    }
+
+    // Convert the weights and their optimizer state to another precision
+    public void setPrecision(Precision precision) {
+        if (precision == this.precision) return;
+
+        if (precision == Precision.FLOAT) {
+            floatWeightBuffer = toFloat(weightBuffer);
+            floatWeightState = new float[weightState.length][];
+            for (int k = 0; k < weightState.length; k++) {
+                floatWeightState[k] = toFloat(weightState[k]);
+            }
+            weightBuffer = null;
+            weightState = new double[0][];
+        } else {
+            weightBuffer = toDouble(floatWeightBuffer);
+            weightState = new double[floatWeightState.length][];
+            for (int k = 0; k < floatWeightState.length; k++) {
+                weightState[k] = toDouble(floatWeightState[k]);
+            }
+            floatWeightBuffer = null;
+            floatWeightState = new float[0][];
+        }
+        this.precision = precision;
+        sparseWeights = null;
+    }
+
+    private static float[] toFloat(double[] array) {
+        float[] converted = new float[array.length];
+        for (int i = 0; i < array.length; i++) {
+            converted[i] = (float)array[i];
+        }
+        return converted;
+    }
+
+    private static double[] toDouble(float[] array) {
+        double[] converted = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            converted[i] = array[i];
+        }
+        return converted;
+    }
+
+    // Read the current layout and networks saved before weights were flattened
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        values = (double[])fields.get("values", null);
+        outputs = (double[])fields.get("outputs", null);
+        nodeError = (double[])fields.get("nodeError", null);
+        dropoutMask = (double[])fields.get("dropoutMask", null);
+
+        biases = (double[])fields.get("biases", null);
+        gradientB = (double[])fields.get("gradientB", null);
+
+        lambda = fields.get("lambda", 0.0);
+        activation = (ActivationFunction)fields.get("activation", null);
+        derivative = new double[biases.length];
+
+        if (fields.getObjectStreamClass().getField("weights") == null) {
+            inDim = fields.get("inDim", 0);
+            outDim = fields.get("outDim", 0);
+            precision = (Precision)fields.get("precision", Precision.DOUBLE);
+            weightBuffer = (double[])fields.get("weightBuffer", null);
+            floatWeightBuffer = (float[])fields.get("floatWeightBuffer", null);
+            gradientWBuffer = (double[])fields.get("gradientWBuffer", null);
+            weightState = (double[][])fields.get("weightState", null);
+            floatWeightState = (float[][])fields.get("floatWeightState", null);
+            biasState = (double[][])fields.get("biasState", null);
+        } else {
+            // Legacy layout was weights[inNode][outNode], with ADAM's moments in their own fields
+            precision = Precision.DOUBLE;
+            double[][] weights = (double[][])fields.get("weights", null);
+            inDim = weights.length;
+            outDim = biases.length;
+            weightBuffer = flatten(weights);
+            gradientWBuffer = flatten((double[][])fields.get("gradientW", null));
+            weightState = new double[][] { flatten((double[][])fields.get("mW", null)), flatten((double[][])fields.get("vW", null)) };
+            floatWeightState = new float[0][];
+            biasState = new double[][] { (double[])fields.get("mB", null), (double[])fields.get("vB", null) };
+        }
+    }
+
+    // Copy weights, biases, lambda and optimizer state into a layer of the same size and precision
+    void copyStateTo(FeedForward_Layer dest) {
+        if (dest.inDim != inDim || dest.outDim != outDim || dest.precision != precision) {
+            throw new IllegalArgumentException("Cannot copy a " + inDim + "x" + outDim + " " + precision + " layer into a "
+                    + dest.inDim + "x" + dest.outDim + " " + dest.precision + " layer");
+        }
+        dest.allocateOptimizerState(biasState.length);
+        if (precision == Precision.FLOAT) {
+            System.arraycopy(floatWeightBuffer, 0, dest.floatWeightBuffer, 0, floatWeightBuffer.length);
+            for (int k = 0; k < floatWeightState.length; k++) {
+                System.arraycopy(floatWeightState[k], 0, dest.floatWeightState[k], 0, floatWeightBuffer.length);
+            }
+        } else {
+            System.arraycopy(weightBuffer, 0, dest.weightBuffer, 0, weightBuffer.length);
+            for (int k = 0; k < weightState.length; k++) {
+                System.arraycopy(weightState[k], 0, dest.weightState[k], 0, weightBuffer.length);
+            }
+        }
+        System.arraycopy(biases, 0, dest.biases, 0, outDim);
+        for (int k = 0; k < biasState.length; k++) {
+            System.arraycopy(biasState[k], 0, dest.biasState[k], 0, outDim);
+        }
+        dest.lambda = lambda;
+        dest.prunedWeights = prunedWeights;
+        dest.sparseWeights = null;
+    }
+
+    // Convert a legacy [inNode][outNode] matrix to the flat [outNode * inDim + inNode] layout
+    private double[] flatten(double[][] matrix) {
+        double[] buffer = new double[outDim * inDim];
+        for (int inNode = 0; inNode < inDim; inNode++) {
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                buffer[outNode * inDim + inNode] = matrix[inNode][outNode];
+            }
+        }
+        return buffer;
     }
 
     // Getters and Setters
@@ -204,10 +909,78 @@ public class FeedForward_Layer implements Serializable {
         return outputs;
     }
 
+    public double[] getNodeError() {
+        return nodeError;
+    }
+
+    // Returns a copy of the weights as weights[i][j], from input node i to this layer node j
     public double[][] getWeights() {
+        double[][] weights = new double[inDim][outDim];
+        for (int outNode = 0; outNode < outDim; outNode++) {
+            for (int inNode = 0; inNode < inDim; inNode++) {
+                weights[inNode][outNode] = getWeight(inNode, outNode);
+            }
+        }
         return weights;
     }
 
+    public double getWeight(int inNode, int outNode) {
+        if (precision == Precision.FLOAT) {
+            return floatWeightBuffer[outNode * inDim + inNode];
+        }
+        return weightBuffer[outNode * inDim + inNode];
+    }
+
+    public void setWeight(int inNode, int outNode, double weight) {
+        if (precision == Precision.FLOAT) {
+            floatWeightBuffer[outNode * inDim + inNode] = (float)weight;
+        } else {
+            weightBuffer[outNode * inDim + inNode] = weight;
+        }
+        sparseWeights = null;
+    }
+
+    // Weight at index of the flat weightBuffer layout
+    private double getWeightAt(int index) {
+        return (precision == Precision.FLOAT) ? floatWeightBuffer[index] : weightBuffer[index];
+    }
+
+    // Number of weights removed by pruning
+    public int getNumPrunedWeights() {
+        return (prunedWeights == null) ? 0 : prunedWeights.length;
+    }
+
+    // Number of weights that aren't zero
+    public int getNumNonZeroWeights() {
+        int count = 0;
+        for (int i = 0; i < outDim * inDim; i++) {
+            if (getWeightAt(i) != 0) count++;
+        }
+        return count;
+    }
+
+    // Returns the backing weight array, laid out as weightBuffer[outNode * inDim + inNode]
+    // Null for single precision layers, which use getFloatWeightBuffer
+    public double[] getWeightBuffer() {
+        return weightBuffer;
+    }
+
+    public float[] getFloatWeightBuffer() {
+        return floatWeightBuffer;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public int getInDim() {
+        return inDim;
+    }
+
+    public int getOutDim() {
+        return outDim;
+    }
+
     public double[] getBiases() {
         return biases;
     }
@@ -220,8 +993,42 @@ public class FeedForward_Layer implements Serializable {
         this.lambda = lambda;
     }
 
-    public double getEpsilon() {
-        return epsilon;
+    public double getSparseInputThreshold() {
+        return sparseInputThreshold;
+    }
+
+    public void setSparseInputThreshold(double sparseInputThreshold) {
+        this.sparseInputThreshold = sparseInputThreshold;
+    }
+
+    public boolean isFastActivations() {
+        return fastActivations;
+    }
+
+    public void setFastActivations(boolean fastActivations) {
+        this.fastActivations = fastActivations;
+    }
+
+    // Gradients accumulated since the last update, laid out like the weights and biases
+    double[] getGradientWBuffer() {
+        return gradientWBuffer;
+    }
+
+    double[] getGradientB() {
+        return gradientB;
+    }
+
+    // Optimizer state, for saving and restoring it
+    double[][] getWeightState() {
+        return weightState;
+    }
+
+    float[][] getFloatWeightState() {
+        return floatWeightState;
+    }
+
+    double[][] getBiasState() {
+        return biasState;
     }
 
     public ActivationFunction getActivation() {
@@ -0,0 +1,308 @@
+package Models;
+
+import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.FastMath;
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.ReLU;
+import ActivationFunctions.SiLU;
+import ActivationFunctions.Sigmoid;
+import ActivationFunctions.Softmax;
+import ActivationFunctions.Tanh;
+import Kernels.MatrixKernels;
+import Kernels.SparseRows;
+
+// Immutable inference-only graph of a NeuralNetwork, created with NeuralNetwork.freeze()
+//
+// Only copies of the weights and biases are kept: no gradients, optimizer state, dropout masks or
+// per-sample buffers. Each layer adds its biases and activates in one pass over its outputs, with the
+// loop specialized for its activation function instead of calling it per value
+// Layers frozen in fast activation mode keep using the approximations in FastMath
+// Intermediate outputs are planned into two buffers that layers take turns writing, since a layer's
+// outputs are only read by the next one; predict through a FrozenSession, which owns them
+public class FrozenNetwork {
+
+    // Activations the fused bias and activation pass is specialized for, with the FastMath versions
+    // picked once when freezing so the loops don't test for them per value
+    // Any other activation function gets its biases added, then its own fBatch or fBatchFast
+    enum Activation { IDENTITY, RELU, LEAKY_RELU, SIGMOID, FAST_SIGMOID, TANH, FAST_TANH, SILU, FAST_SILU, SOFTMAX, FAST_SOFTMAX, OTHER }
+
+    private final Layer[] layers;
+
+    // Inputs with at most this fraction of nonzeros skip the zero inputs in the first layer
+    private final double sparseInputThreshold;
+
+    // Widest output of the layers writing each of the two buffers: layer l writes buffer l % 2
+    private final int[] bufferWidths = new int[2];
+
+    FrozenNetwork(NeuralNetwork model) {
+        FeedForward_Layer[] trainingLayers = model.getLayers();
+        layers = new Layer[trainingLayers.length];
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer] = new Layer(trainingLayers[layer]);
+            bufferWidths[layer % 2] = Math.max(bufferWidths[layer % 2], layers[layer].outDim);
+        }
+        sparseInputThreshold = model.getSparseInputThreshold();
+    }
+
+    // Create a session for predicting on one thread without allocating
+    public FrozenSession createSession() {
+        return new FrozenSession(this);
+    }
+
+    // Feed batchSize rows of inputs through every layer using the session's buffers
+    // Returns the buffer holding batchSize rows of outputs
+    double[] forwardBatch(double[] inputs, int inputOffset, int batchSize, double[][] buffers, SparseRows sparseInputs) {
+        double[] layerInputs = inputs;
+        int layerOffset = inputOffset;
+        for (int layer = 0; layer < layers.length; layer++) {
+            double[] outputs = buffers[layer % 2];
+            SparseRows sparse = null;
+            if (layer == 0 && sparseInputThreshold > 0 && layers[0].sparseWeights == null) {
+                sparseInputs.compress(inputs, inputOffset, batchSize, sparseInputThreshold);
+                sparse = (sparseInputs.getNumSparseRows() > 0) ? sparseInputs : null;
+            }
+            layers[layer].forwardBatch(layerInputs, layerOffset, sparse, batchSize, outputs);
+            layerInputs = outputs;
+            layerOffset = 0;
+        }
+        return layerInputs;
+    }
+
+    // Bytes taken by the weights and biases of every layer
+    public long getParameterBytes() {
+        long bytes = 0;
+        for (Layer layer : layers) {
+            if (layer.sparseWeights != null) {
+                bytes += 12L * layer.sparseWeights.getNumNonZeros() + 4L * (layer.outDim + 1);
+            } else if (layer.floatWeights != null) {
+                bytes += 4L * layer.floatWeights.length;
+            } else {
+                bytes += 8L * layer.weights.length;
+            }
+            bytes += 8L * layer.outDim;
+        }
+        return bytes;
+    }
+
+    // Getters
+    public int getInputSize() {
+        return layers[0].inDim;
+    }
+
+    public int getOutputSize() {
+        return layers[layers.length - 1].outDim;
+    }
+
+    int getBufferWidth(int buffer) {
+        return bufferWidths[buffer];
+    }
+
+    // Weights and biases of one layer, in the layout and precision the layer had when frozen
+    private static class Layer {
+        private final int inDim;
+        private final int outDim;
+
+        // Exactly one of these holds the weights: the nonzeros of a pruned layer, or the full matrix
+        // laid out like FeedForward_Layer's weightBuffer
+        private final SparseRows sparseWeights;
+        private final double[] weights;
+        private final float[] floatWeights;
+
+        private final double[] biases;
+        private final Activation kind;
+        private final ActivationFunction activation;
+        private final double slope;
+        private final boolean fast;
+
+        Layer(FeedForward_Layer layer) {
+            inDim = layer.getInDim();
+            outDim = layer.getOutDim();
+
+            sparseWeights = layer.getSparseWeights();
+            if (sparseWeights != null) {
+                weights = null;
+                floatWeights = null;
+            } else if (layer.getPrecision() == Precision.FLOAT) {
+                weights = null;
+                floatWeights = layer.getFloatWeightBuffer().clone();
+            } else {
+                weights = layer.getWeightBuffer().clone();
+                floatWeights = null;
+            }
+            biases = layer.getBiases().clone();
+
+            activation = layer.getActivation();
+            fast = layer.isFastActivations();
+            kind = activationKind(activation, fast);
+            slope = (activation instanceof LeakyReLU) ? ((LeakyReLU)activation).getSlope() : 0;
+        }
+
+        // Subclasses of the known activations may behave differently, so only the exact classes are specialized
+        private static Activation activationKind(ActivationFunction activation, boolean fast) {
+            Class<?> type = activation.getClass();
+            if (type == ActivationFunction.class) return Activation.IDENTITY;
+            if (type == ReLU.class) return Activation.RELU;
+            if (type == LeakyReLU.class) return Activation.LEAKY_RELU;
+            if (type == Sigmoid.class) return fast ? Activation.FAST_SIGMOID : Activation.SIGMOID;
+            if (type == Tanh.class) return fast ? Activation.FAST_TANH : Activation.TANH;
+            if (type == SiLU.class) return fast ? Activation.FAST_SILU : Activation.SILU;
+            if (type == Softmax.class) return fast ? Activation.FAST_SOFTMAX : Activation.SOFTMAX;
+            return Activation.OTHER;
+        }
+
+        void forwardBatch(double[] inputs, int inputOffset, SparseRows sparseInputs, int batchSize, double[] outputs) {
+
+            // outputs = inputs * weights^T
+            if (sparseWeights != null) {
+                MatrixKernels.multiplyTransposed(inputs, inputOffset, sparseWeights, outputs, 0, batchSize);
+            } else if (sparseInputs != null) {
+                if (floatWeights != null) {
+                    MatrixKernels.multiplyTransposed(sparseInputs, floatWeights, outputs, 0, outDim);
+                } else {
+                    MatrixKernels.multiplyTransposed(sparseInputs, weights, outputs, 0, outDim);
+                }
+            } else if (floatWeights != null) {
+                MatrixKernels.multiplyTransposed(inputs, inputOffset, floatWeights, outputs, 0, batchSize, outDim, inDim);
+            } else {
+                MatrixKernels.multiplyTransposed(inputs, inputOffset, weights, outputs, 0, batchSize, outDim, inDim);
+            }
+
+            addBiasAndActivate(outputs, batchSize);
+        }
+
+        // Add the biases and activate in place, one pass per row
+        private void addBiasAndActivate(double[] values, int batchSize) {
+            switch (kind) {
+                case IDENTITY:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            values[offset + i] += biases[i];
+                        }
+                    }
+                    break;
+                case RELU:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            double x = values[offset + i] + biases[i];
+                            values[offset + i] = (x > 0) ? x : 0;
+                        }
+                    }
+                    break;
+                case LEAKY_RELU:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            double x = values[offset + i] + biases[i];
+                            values[offset + i] = (x > 0) ? x : x * slope;
+                        }
+                    }
+                    break;
+                case SIGMOID:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            double x = values[offset + i] + biases[i];
+                            values[offset + i] = 1 / (1 + Math.exp(-x));
+                        }
+                    }
+                    break;
+                case FAST_SIGMOID:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            values[offset + i] = FastMath.sigmoid(values[offset + i] + biases[i]);
+                        }
+                    }
+                    break;
+                case TANH:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            values[offset + i] = Math.tanh(values[offset + i] + biases[i]);
+                        }
+                    }
+                    break;
+                case FAST_TANH:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            values[offset + i] = FastMath.tanh(values[offset + i] + biases[i]);
+                        }
+                    }
+                    break;
+                case SILU:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            double x = values[offset + i] + biases[i];
+                            values[offset + i] = x * (1 / (1 + Math.exp(-x)));
+                        }
+                    }
+                    break;
+                case FAST_SILU:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            values[offset + i] = FastMath.silu(values[offset + i] + biases[i]);
+                        }
+                    }
+                    break;
+                case SOFTMAX:
+                    // The row maximum is found while adding biases and subtracted before exponentiating
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        double max = addBiasesAndMax(values, offset);
+                        double expSum = 0;
+                        for (int i = offset; i < offset + outDim; i++) {
+                            values[i] = Math.exp(values[i] - max);
+                            expSum += values[i];
+                        }
+                        for (int i = offset; i < offset + outDim; i++) {
+                            values[i] /= expSum;
+                        }
+                    }
+                    break;
+                case FAST_SOFTMAX:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        double max = addBiasesAndMax(values, offset);
+                        double expSum = 0;
+                        for (int i = offset; i < offset + outDim; i++) {
+                            values[i] = FastMath.exp(values[i] - max);
+                            expSum += values[i];
+                        }
+                        double inverse = 1 / expSum;
+                        for (int i = offset; i < offset + outDim; i++) {
+                            values[i] *= inverse;
+                        }
+                    }
+                    break;
+                default:
+                    for (int row = 0; row < batchSize; row++) {
+                        int offset = row * outDim;
+                        for (int i = 0; i < outDim; i++) {
+                            values[offset + i] += biases[i];
+                        }
+                    }
+                    if (fast) {
+                        activation.fBatchFast(values, values, batchSize, outDim);
+                    } else {
+                        activation.fBatch(values, values, batchSize, outDim);
+                    }
+            }
+        }
+
+        // Add the biases to the row at offset and return its largest value
+        private double addBiasesAndMax(double[] values, int offset) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < outDim; i++) {
+                double x = values[offset + i] + biases[i];
+                values[offset + i] = x;
+                max = Math.max(max, x);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Models;
+
+import Kernels.SparseRows;
+
+// Runs predictions on a frozen network with its own preallocated buffers
+// Any number of sessions can predict at once, but a single session must only be used by one thread at a time
+public class FrozenSession {
+
+    private final FrozenNetwork model;
+
+    // The two buffers layers take turns writing, each capacity rows of its widest layer
+    private final double[][] buffers = new double[2][];
+    private int capacity;
+
+    // First layer inputs as index/value lists
+    private final SparseRows sparseInputs;
+
+    // Output of the last single prediction
+    private final double[] output;
+
+    public FrozenSession(FrozenNetwork model) {
+        this(model, 1);
+    }
+
+    // capacity is the batch size the buffers are first sized for; they grow if needed
+    public FrozenSession(FrozenNetwork model, int capacity) {
+        this.model = model;
+        allocate(capacity);
+        sparseInputs = new SparseRows(model.getInputSize());
+        output = new double[model.getOutputSize()];
+    }
+
+    // Predict the outputs for one set of inputs
+    // Returns a buffer owned by the session, overwritten by the next prediction
+    public double[] predict(double[] inputs) {
+        double[] outputs = predictBatch(inputs, 0, 1);
+        System.arraycopy(outputs, 0, output, 0, output.length);
+        return output;
+    }
+
+    // Predict the outputs for one set of inputs into dest
+    public void predict(double[] inputs, double[] dest) {
+        double[] outputs = predictBatch(inputs, 0, 1);
+        System.arraycopy(outputs, 0, dest, 0, output.length);
+    }
+
+    // Predict batchSize rows of inputs starting at inputOffset
+    // Returns a buffer owned by the session holding batchSize rows of outputs
+    public double[] predictBatch(double[] inputs, int inputOffset, int batchSize) {
+        if (batchSize > capacity) {
+            allocate(batchSize);
+        }
+        return model.forwardBatch(inputs, inputOffset, batchSize, buffers, sparseInputs);
+    }
+
+    // Predict the most likely label for one set of inputs
+    public int predictLabel(double[] inputs) {
+        double[] outputs = predict(inputs);
+        int label = 0;
+        for (int i = 1; i < outputs.length; i++) {
+            if (outputs[i] > outputs[label]) {
+                label = i;
+            }
+        }
+        return label;
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        for (int buffer = 0; buffer < 2; buffer++) {
+            buffers[buffer] = new double[capacity * model.getBufferWidth(buffer)];
+        }
+    }
+
+    public FrozenNetwork getModel() {
+        return model;
+    }
+}
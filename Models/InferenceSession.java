@@ -0,0 +1,85 @@
+package Models;
+
+import Kernels.SparseRows;
+
+// Runs predictions on a network with its own preallocated buffers
+// Never touches the layers' training state, so any number of sessions can predict at once,
+// but a single session must only be used by one thread at a time
+// Only the values and outputs of every layer are kept, none of the buffers training needs
+public class InferenceSession {
+
+    private final NeuralNetwork model;
+    private final BatchWorkspace workspace;
+
+    // Output of the last single prediction
+    private final double[] output;
+
+    // Index/value list of the last sparse single prediction, created on first use
+    private SparseRows sparseInput;
+
+    public InferenceSession(NeuralNetwork model) {
+        this(model, 1);
+    }
+
+    // capacity is the batch size the buffers are first sized for; they grow if needed
+    public InferenceSession(NeuralNetwork model, int capacity) {
+        this.model = model;
+        workspace = model.createInferenceWorkspace(capacity);
+        output = new double[model.getOutputSize()];
+    }
+
+    // Predict the outputs for one set of inputs
+    // Returns a buffer owned by the session, overwritten by the next prediction
+    public double[] predict(double[] inputs) {
+        double[] outputs = model.forwardBatch(inputs, 0, 1, false, workspace);
+        System.arraycopy(outputs, 0, output, 0, output.length);
+        return output;
+    }
+
+    // Predict the outputs for one set of inputs into dest
+    public void predict(double[] inputs, double[] dest) {
+        double[] outputs = model.forwardBatch(inputs, 0, 1, false, workspace);
+        System.arraycopy(outputs, 0, dest, 0, output.length);
+    }
+
+    // Predict the outputs for one set of inputs given as count increasing column indices and their values
+    // Returns a buffer owned by the session, overwritten by the next prediction
+    public double[] predict(int[] indices, double[] values, int count) {
+        if (sparseInput == null) {
+            sparseInput = new SparseRows(model.getInputSize());
+        }
+        sparseInput.clear();
+        sparseInput.addRow(indices, values, count);
+        double[] outputs = model.forwardBatch(sparseInput, false, workspace);
+        System.arraycopy(outputs, 0, output, 0, output.length);
+        return output;
+    }
+
+    // Predict a batch of inputs given as index/value lists
+    // Returns a buffer owned by the session holding one row of outputs per input row
+    public double[] predictBatch(SparseRows inputs) {
+        return model.forwardBatch(inputs, false, workspace);
+    }
+
+    // Predict batchSize rows of inputs starting at inputOffset
+    // Returns a buffer owned by the session holding batchSize rows of outputs
+    public double[] predictBatch(double[] inputs, int inputOffset, int batchSize) {
+        return model.forwardBatch(inputs, inputOffset, batchSize, false, workspace);
+    }
+
+    // Predict the most likely label for one set of inputs
+    public int predictLabel(double[] inputs) {
+        double[] outputs = predict(inputs);
+        int label = 0;
+        for (int i = 1; i < outputs.length; i++) {
+            if (outputs[i] > outputs[label]) {
+                label = i;
+            }
+        }
+        return label;
+    }
+
+    public NeuralNetwork getModel() {
+        return model;
+    }
+}
@@ -0,0 +1,95 @@
+package Models;
+
+import Kernels.SparseRows;
+
+// Activations and errors of one layer for a whole mini-batch
+// Each array holds one row of outDim values per data point in the batch
+// Buffers for predictions only have values and outputs; the error, dropout and derivative buffers are null
+public class LayerBuffers {
+
+    private final int inDim;
+    private final int outDim;
+    private final boolean training;
+    private int capacity;
+
+    // values is before activations, outputs is after
+    double[] values;
+    double[] outputs;
+    double[] nodeError;
+    double[] dropoutMask;
+
+    // Scratch space for activation derivatives
+    double[] derivative;
+
+    // Private gradient accumulators, laid out like the layer's own
+    // Only allocated for workers that train on part of a batch in parallel
+    double[] gradientW;
+    double[] gradientB;
+
+    // The batch's inputs as index/value lists, for input layers with sparse inputs
+    // Created by the layer on first use
+    SparseRows sparseInputs;
+
+    public LayerBuffers(int inDim, int outDim, int capacity, boolean ownGradients) {
+        this(inDim, outDim, capacity, true, ownGradients);
+    }
+
+    LayerBuffers(int inDim, int outDim, int capacity, boolean training, boolean ownGradients) {
+        this.inDim = inDim;
+        this.outDim = outDim;
+        this.training = training;
+        allocate(capacity);
+
+        if (ownGradients) {
+            gradientW = new double[outDim * inDim];
+            gradientB = new double[outDim];
+        }
+    }
+
+    // Grow the buffers if the batch doesn't fit
+    public void ensureCapacity(int batchSize) {
+        if (batchSize > capacity) {
+            allocate(batchSize);
+        }
+    }
+
+    boolean fits(int inDim, int outDim, boolean ownGradients) {
+        return inDim == this.inDim && outDim == this.outDim && ownGradients == hasOwnGradients();
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        values = new double[capacity * outDim];
+        outputs = new double[capacity * outDim];
+        if (training) {
+            nodeError = new double[capacity * outDim];
+            dropoutMask = new double[capacity * outDim];
+            derivative = new double[capacity * outDim];
+        }
+    }
+
+    // Getters
+    public double[] getValues() {
+        return values;
+    }
+
+    public double[] getOutputs() {
+        return outputs;
+    }
+
+    public double[] getNodeError() {
+        return nodeError;
+    }
+
+    public boolean isForTraining() {
+        return training;
+    }
+
+    public boolean hasOwnGradients() {
+        return gradientW != null;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
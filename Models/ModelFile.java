@@ -0,0 +1,567 @@
+package Models;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import ActivationFunctions.ActivationFunction;
+import CostFunctions.CostFunction;
+import Optimizers.Optimizer;
+
+// Compact binary model format
+//
+// Everything is little endian, and every block starts on an 8 byte boundary so the weights
+// can be bulk read as double or float buffers, or straight out of a memory mapped file:
+//
+//   header     int magic ("NNMF"), int version, int flags, int weight bytes (4 or 8), int layer count,
+//              int state buffer count, double dropout rate, string cost function class, string optimizer class,
+//              int hyperparameter count, int 0, double hyperparameters (see Optimizer.getHyperparameters)
+//   per layer  int inDim, int outDim, double lambda, string activation function class
+//   per layer  weights [outDim * inDim] as float or double, in weightBuffer order, then double biases [outDim]
+//   optional   per layer optimizer state, if flags has OPTIMIZER_STATE: every weight state buffer
+//              (weight precision), then every bias state buffer (double)
+//   optional   training position of a checkpoint, if flags has TRAINING_STATE (see writeTrainingState)
+//   optional   per layer pruning mask, if flags has PRUNED_WEIGHTS: int count, int 0, then the increasing
+//              indices [count] of the pruned weights in weightBuffer order
+//   trailer    long CRC32 of every byte before it
+//
+// Strings are an int byte count followed by UTF-8 bytes
+public class ModelFile {
+
+    // "NNMF" when read as bytes
+    public static final int MAGIC_NUMBER = 0x464D4E4E;
+    public static final int VERSION = 1;
+
+    // Header flags
+    public static final int OPTIMIZER_STATE = 1;
+    public static final int TRAINING_STATE = 2;
+    public static final int PRUNED_WEIGHTS = 4;
+
+    // Size of the buffer used for writing
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    // Save the network, with its optimizer state if includeOptimizerState is set
+    public static void write(NeuralNetwork network, String filePath, boolean includeOptimizerState) throws IOException {
+        write(network, filePath, includeOptimizerState ? OPTIMIZER_STATE : 0, null);
+    }
+
+    // Save a checkpoint; it can also be loaded with read as a plain network
+    public static void write(Checkpoint checkpoint, String filePath) throws IOException {
+        write(checkpoint.network, filePath, OPTIMIZER_STATE | TRAINING_STATE, checkpoint);
+    }
+
+    private static void write(NeuralNetwork network, String filePath, int flags, Checkpoint checkpoint) throws IOException {
+        boolean includeOptimizerState = (flags & OPTIMIZER_STATE) != 0;
+        FeedForward_Layer[] layers = network.getLayers();
+        Precision precision = network.getPrecision();
+        for (FeedForward_Layer layer : layers) {
+            if (layer.getPrunedWeights() != null) {
+                flags |= PRUNED_WEIGHTS;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+
+            // Header
+            out.putInt(MAGIC_NUMBER);
+            out.putInt(VERSION);
+            out.putInt(flags);
+            out.putInt(precision == Precision.FLOAT ? 4 : 8);
+            out.putInt(layers.length);
+            out.putInt(network.getOptimizer().getNumStateBuffers());
+            out.putDouble(network.getDropoutRate());
+            out.putString(network.getCostFunction().getClass().getName());
+            out.putString(network.getOptimizer().getClass().getName());
+            out.align();
+            double[] hyperparameters = network.getOptimizer().getHyperparameters();
+            out.putInt(hyperparameters.length);
+            out.putInt(0);
+            out.putDoubles(hyperparameters);
+
+            for (FeedForward_Layer layer : layers) {
+                out.putInt(layer.getInDim());
+                out.putInt(layer.getOutDim());
+                out.putDouble(layer.getLambda());
+                out.putString(layer.getActivation().getClass().getName());
+                out.align();
+            }
+
+            // Weights and biases
+            for (FeedForward_Layer layer : layers) {
+                if (precision == Precision.FLOAT) {
+                    out.putFloats(layer.getFloatWeightBuffer());
+                } else {
+                    out.putDoubles(layer.getWeightBuffer());
+                }
+                out.putDoubles(layer.getBiases());
+            }
+
+            // Optimizer state
+            if (includeOptimizerState) {
+                for (FeedForward_Layer layer : layers) {
+                    if (precision == Precision.FLOAT) {
+                        for (float[] state : layer.getFloatWeightState()) {
+                            out.putFloats(state);
+                        }
+                    } else {
+                        for (double[] state : layer.getWeightState()) {
+                            out.putDoubles(state);
+                        }
+                    }
+                    for (double[] state : layer.getBiasState()) {
+                        out.putDoubles(state);
+                    }
+                }
+            }
+
+            if (checkpoint != null) {
+                writeTrainingState(out, checkpoint);
+            }
+
+            // Pruning masks, so pruned weights stay zero and use the sparse kernels after loading
+            if ((flags & PRUNED_WEIGHTS) != 0) {
+                for (FeedForward_Layer layer : layers) {
+                    int[] pruned = layer.getPrunedWeights();
+                    if (pruned == null) {
+                        pruned = new int[0];
+                    }
+                    out.putInt(pruned.length);
+                    out.putInt(0);
+                    out.putInts(pruned);
+                }
+            }
+
+            out.finish();
+        }
+    }
+
+    // Load a network saved with write
+    // Throws IOException if the file is not a model file, is truncated or fails its checksum
+    public static NeuralNetwork read(String filePath) throws IOException {
+        return read(filePath, false).network;
+    }
+
+    // Load a checkpoint saved with write
+    public static Checkpoint readCheckpoint(String filePath) throws IOException {
+        return read(filePath, true);
+    }
+
+    private static Checkpoint read(String filePath, boolean needTrainingState) throws IOException {
+        ByteBuffer in = readFile(filePath);
+        int fileSize = in.limit();
+        if (fileSize < 64 || in.getInt(0) != MAGIC_NUMBER) {
+            throw new IOException(filePath + " is not a model file");
+        }
+        int version = in.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(filePath + " has unsupported model format version " + version);
+        }
+
+        // Check the whole file before trusting any sizes in it
+        CRC32 crc = new CRC32();
+        ByteBuffer contents = in.duplicate();
+        contents.limit(fileSize - 8);
+        crc.update(contents);
+        if (crc.getValue() != in.getLong(fileSize - 8)) {
+            throw new IOException(filePath + " is corrupt: checksum mismatch");
+        }
+        in.limit(fileSize - 8);
+
+        try {
+            return parse(in, filePath, needTrainingState);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(filePath + " is truncated");
+        }
+    }
+
+    private static Checkpoint parse(ByteBuffer in, String filePath, boolean needTrainingState) throws IOException {
+
+        // Header
+        in.position(8);
+        int flags = in.getInt();
+        int weightBytes = in.getInt();
+        int numLayers = in.getInt();
+        int numStateBuffers = in.getInt();
+        double dropoutRate = in.getDouble();
+        CostFunction costFunction = newInstance(getString(in), CostFunction.class);
+        Optimizer optimizer = newInstance(getString(in), Optimizer.class);
+        align(in);
+        int numHyperparameters = in.getInt();
+        in.getInt();
+        if (numHyperparameters != optimizer.getHyperparameters().length) {
+            throw new IOException(filePath + " has " + numHyperparameters + " hyperparameters for " + optimizer.getClass().getSimpleName());
+        }
+        double[] hyperparameters = new double[numHyperparameters];
+        getDoubles(in, hyperparameters);
+        optimizer.setHyperparameters(hyperparameters);
+        if (numStateBuffers != optimizer.getNumStateBuffers()) {
+            throw new IOException(filePath + " has " + numStateBuffers + " state buffers for " + optimizer.getClass().getSimpleName());
+        }
+
+        if (weightBytes != 4 && weightBytes != 8) {
+            throw new IOException(filePath + " has unsupported weight size " + weightBytes);
+        }
+        if (numLayers <= 0) {
+            throw new IOException(filePath + " has no layers");
+        }
+        Precision precision = (weightBytes == 4) ? Precision.FLOAT : Precision.DOUBLE;
+
+        FeedForward_Layer[] layers = new FeedForward_Layer[numLayers];
+        for (int layer = 0; layer < numLayers; layer++) {
+            int inDim = in.getInt();
+            int outDim = in.getInt();
+            double lambda = in.getDouble();
+            ActivationFunction activation = newInstance(getString(in), ActivationFunction.class);
+            align(in);
+
+            if (inDim <= 0 || outDim <= 0 || (layer > 0 && inDim != layers[layer - 1].getOutDim())) {
+                throw new IOException(filePath + " has invalid dimensions for layer " + layer);
+            }
+            layers[layer] = new FeedForward_Layer(inDim, outDim, activation, precision, false);
+            layers[layer].setLambda(lambda);
+        }
+
+        // Weights and biases
+        for (FeedForward_Layer layer : layers) {
+            if (precision == Precision.FLOAT) {
+                getFloats(in, layer.getFloatWeightBuffer());
+            } else {
+                getDoubles(in, layer.getWeightBuffer());
+            }
+            getDoubles(in, layer.getBiases());
+        }
+
+        // Optimizer state, which starts at zero when the file has none
+        NeuralNetwork network = new NeuralNetwork(layers, costFunction, optimizer, dropoutRate);
+        if ((flags & OPTIMIZER_STATE) != 0) {
+            for (FeedForward_Layer layer : layers) {
+                if (precision == Precision.FLOAT) {
+                    for (float[] state : layer.getFloatWeightState()) {
+                        getFloats(in, state);
+                    }
+                } else {
+                    for (double[] state : layer.getWeightState()) {
+                        getDoubles(in, state);
+                    }
+                }
+                for (double[] state : layer.getBiasState()) {
+                    getDoubles(in, state);
+                }
+            }
+        }
+
+        Checkpoint checkpoint = new Checkpoint(network);
+        if (needTrainingState && (flags & TRAINING_STATE) == 0) {
+            throw new IOException(filePath + " is a model file without training state, not a checkpoint");
+        }
+        if ((flags & TRAINING_STATE) != 0) {
+            readTrainingState(in, checkpoint);
+        }
+
+        if ((flags & PRUNED_WEIGHTS) != 0) {
+            for (int layer = 0; layer < numLayers; layer++) {
+                readPrunedWeights(in, layers[layer], filePath, layer);
+            }
+        }
+        return checkpoint;
+    }
+
+    // Training state section:
+    //   long seed, int batch size, int epoch count, double test split ratio, int train size, int test size,
+    //   int epoch, int batch, double train cost, int correct count, int epochs without improvement,
+    //   double best test cost, int useAccuracy, int history length, int 0, int order length,
+    //   int order [order length], then doubles training cost, validation cost and, with useAccuracy,
+    //   training accuracy and validation accuracy, each [history length]
+    private static void writeTrainingState(Writer out, Checkpoint checkpoint) throws IOException {
+        out.putLong(checkpoint.seed);
+        out.putInt(checkpoint.batchSize);
+        out.putInt(checkpoint.numEpochs);
+        out.putDouble(checkpoint.testSplitRatio);
+        out.putInt(checkpoint.trainSize);
+        out.putInt(checkpoint.testSize);
+        out.putInt(checkpoint.epoch);
+        out.putInt(checkpoint.batch);
+        out.putDouble(checkpoint.trainCost);
+        out.putInt(checkpoint.numCorrect);
+        out.putInt(checkpoint.epochsWithoutImprovement);
+        out.putDouble(checkpoint.bestTestCost);
+        out.putInt(checkpoint.useAccuracy ? 1 : 0);
+        out.putInt(checkpoint.numEpochData);
+        out.putInt(0);
+        out.putInt(checkpoint.order.length);
+        out.putInts(checkpoint.order);
+
+        int length = checkpoint.numEpochData;
+        out.putDoubles(checkpoint.trainingCost, length);
+        out.putDoubles(checkpoint.validationCost, length);
+        if (checkpoint.useAccuracy) {
+            out.putDoubles(checkpoint.trainingAccuracy, length);
+            out.putDoubles(checkpoint.validationAccuracy, length);
+        }
+    }
+
+    private static void readTrainingState(ByteBuffer in, Checkpoint checkpoint) throws IOException {
+        checkpoint.seed = in.getLong();
+        checkpoint.batchSize = in.getInt();
+        checkpoint.numEpochs = in.getInt();
+        checkpoint.testSplitRatio = in.getDouble();
+        checkpoint.trainSize = in.getInt();
+        checkpoint.testSize = in.getInt();
+        checkpoint.epoch = in.getInt();
+        checkpoint.batch = in.getInt();
+        checkpoint.trainCost = in.getDouble();
+        checkpoint.numCorrect = in.getInt();
+        checkpoint.epochsWithoutImprovement = in.getInt();
+        checkpoint.bestTestCost = in.getDouble();
+        checkpoint.useAccuracy = in.getInt() != 0;
+        int length = in.getInt();
+        in.getInt();
+        int orderLength = in.getInt();
+        if (length < 0 || orderLength != checkpoint.trainSize) {
+            throw new IOException("Invalid training state");
+        }
+        checkpoint.numEpochData = length;
+
+        checkpoint.order = new int[orderLength];
+        in.asIntBuffer().get(checkpoint.order);
+        in.position(in.position() + orderLength * 4);
+        align(in);
+
+        checkpoint.trainingCost = new double[length];
+        checkpoint.validationCost = new double[length];
+        checkpoint.trainingAccuracy = new double[length];
+        checkpoint.validationAccuracy = new double[length];
+        getDoubles(in, checkpoint.trainingCost);
+        getDoubles(in, checkpoint.validationCost);
+        if (checkpoint.useAccuracy) {
+            getDoubles(in, checkpoint.trainingAccuracy);
+            getDoubles(in, checkpoint.validationAccuracy);
+        }
+    }
+
+    private static void readPrunedWeights(ByteBuffer in, FeedForward_Layer layer, String filePath, int layerIndex) throws IOException {
+        int count = in.getInt();
+        in.getInt();
+        int numWeights = layer.getOutDim() * layer.getInDim();
+        if (count < 0 || count > numWeights) {
+            throw new IOException(filePath + " has an invalid pruning mask for layer " + layerIndex);
+        }
+        int[] pruned = new int[count];
+        in.asIntBuffer().get(pruned);
+        in.position(in.position() + count * 4);
+        align(in);
+
+        for (int i = 0; i < count; i++) {
+            if (pruned[i] < 0 || pruned[i] >= numWeights || (i > 0 && pruned[i] <= pruned[i - 1])) {
+                throw new IOException(filePath + " has an invalid pruning mask for layer " + layerIndex);
+            }
+        }
+        if (count > 0) {
+            layer.setPrunedWeights(pruned);
+        }
+    }
+
+    // Check whether a file starts with the model file magic number
+    public static boolean isModelFile(String filePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC_NUMBER;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // The whole file is read with one bulk read rather than mapped, since a mapped file can't be
+    // replaced until the mapping is collected on some platforms, and checkpoints replace their file
+    static ByteBuffer readFile(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " is too large for a model file");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int)channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    static String getString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Activation and cost functions are stored by class name and need a no argument constructor
+    // The class is only initialized once it is known to be of the expected type, so a file can't run
+    // the static initializer of an arbitrary class
+    static <T> T newInstance(String className, Class<T> type) throws IOException {
+        try {
+            Class<?> c = Class.forName(className, false, ModelFile.class.getClassLoader());
+            if (!type.isAssignableFrom(c)) {
+                throw new IOException(className + " is not a " + type.getSimpleName());
+            }
+            return type.cast(c.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot create " + className + ": " + e);
+        }
+    }
+
+    static void getDoubles(ByteBuffer in, double[] dest) {
+        in.asDoubleBuffer().get(dest);
+        in.position(in.position() + dest.length * 8);
+    }
+
+    private static void getFloats(ByteBuffer in, float[] dest) {
+        in.asFloatBuffer().get(dest);
+        in.position(in.position() + dest.length * 4);
+        align(in);
+    }
+
+    static void align(ByteBuffer in) {
+        in.position((in.position() + 7) & ~7);
+    }
+
+    // Buffered little endian writer that keeps a running checksum and byte count
+    static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long position;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+            position += 8;
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (byte b : bytes) {
+                ensure(1);
+                buffer.put(b);
+            }
+            position += bytes.length;
+        }
+
+        void putDoubles(double[] values) throws IOException {
+            putDoubles(values, values.length);
+        }
+
+        // Write the first length values
+        void putDoubles(double[] values, int length) throws IOException {
+            int i = 0;
+            while (i < length) {
+                ensure(8);
+                int count = Math.min(buffer.remaining() / 8, length - i);
+                buffer.asDoubleBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * 8);
+                i += count;
+            }
+            position += (long)length * 8;
+        }
+
+        void putInts(int[] values) throws IOException {
+            int i = 0;
+            while (i < values.length) {
+                ensure(4);
+                int count = Math.min(buffer.remaining() / 4, values.length - i);
+                buffer.asIntBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * 4);
+                i += count;
+            }
+            position += (long)values.length * 4;
+            align();
+        }
+
+        void putBytes(byte[] values) throws IOException {
+            int i = 0;
+            while (i < values.length) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), values.length - i);
+                buffer.put(values, i, count);
+                i += count;
+            }
+            position += values.length;
+            align();
+        }
+
+        void putFloats(float[] values) throws IOException {
+            int i = 0;
+            while (i < values.length) {
+                ensure(4);
+                int count = Math.min(buffer.remaining() / 4, values.length - i);
+                buffer.asFloatBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * 4);
+                i += count;
+            }
+            position += (long)values.length * 4;
+            align();
+        }
+
+        // Pad with zeros to the next 8 byte boundary
+        void align() throws IOException {
+            while ((position & 7) != 0) {
+                ensure(1);
+                buffer.put((byte)0);
+                position++;
+            }
+        }
+
+        // Write the checksum trailer and everything still buffered
+        void finish() throws IOException {
+            flush();
+            ensure(8);
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
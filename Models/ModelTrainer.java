@@ -1,10 +1,24 @@
 package Models;
 
+import java.io.IOException;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import Data.Augmentation;
+import Data.Batch;
 import Data.DataPoint;
-import java.util.List;
+import Data.DataPointDataset;
+import Data.Dataset;
+import Data.PrefetchingBatchLoader;
+import Metrics.Phase;
+import Metrics.TrainingListener;
+import Metrics.TrainingMetrics;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.management.JMException;
 
 public class ModelTrainer {
     
@@ -14,6 +28,82 @@ public class ModelTrainer {
 
     private int patience = 5; // Number of epochs to wait before early stopping
 
+    // Number of points predicted at once during evaluation
+    private static final int EVALUATION_BATCH_SIZE = 256;
+
+    // Propagate each mini batch as one matrix rather than point by point
+    private boolean batchExecution = true;
+
+    // Number of threads each mini batch is split across
+    private int parallelism = 1;
+    private ForkJoinPool pool;
+
+    // Seed for shuffling and for the dropout masks of every chunk of every batch
+    private long seed = new Random().nextLong();
+
+    // Random transformation applied to training inputs as batches are assembled
+    private Augmentation augmentation;
+
+    // Number of batches assembled ahead on background threads and the number of threads doing it
+    // With no batches ahead and no augmentation, batches are assembled on the training threads
+    private int prefetchBatches = 0;
+    private int prefetchWorkers = 1;
+    private PrefetchingBatchLoader loader;
+
+    // Checkpoints are written to checkpointFile in the background every checkpointInterval batches
+    // and after every epoch; an interval of 0 only checkpoints after epochs, and no file turns them off
+    private String checkpointFile;
+    private int checkpointInterval = 0;
+    private CheckpointWriter checkpointWriter;
+
+    // Phase latencies, throughput, allocation and GC time, reset at the start of every run
+    private final TrainingMetrics metrics = new TrainingMetrics();
+    private final List<TrainingListener> listeners = new ArrayList<>();
+
+    // Name the metrics are registered under with JMX while training, null to not register them
+    private String metricsName;
+
+    // Thread train was called on; allocation on other threads is counted where it happens
+    private Thread trainingThread;
+
+    // Reusable batch matrices, and single point arrays and dropout random for point by point training
+    private Batch batch;
+    private double[] pointInputs;
+    private double[] pointExpected;
+    private final Random pointRandom = new Random();
+
+    // One workspace, per-row scratch arrays and result slot per chunk of a batch
+    // Kept between runs while they fit the network, since parallel workspaces hold a copy of every gradient
+    private BatchWorkspace[] workspaces;
+    private double[][] rowExpected;
+    private double[][] rowOutputs;
+    private double[] chunkCost;
+    private int[] chunkCorrect;
+
+    // Time each chunk of the last batch spent gathering, forward and back propagating
+    // The chunks run side by side, so the slowest one is the latency of the phase
+    private long[] chunkGatherNanos;
+    private long[] chunkForwardNanos;
+    private long[] chunkBackwardNanos;
+    private int numTimedChunks;
+    private long addGradientsNanos;
+
+    // Cost and number of correct guesses of the last propagated batch
+    private double batchCost;
+    private int batchCorrect;
+
+    // Mini batch being split across the pool, read by the chunk tasks
+    private Batch stepBatch;
+    private Dataset stepSource;
+    private int[] stepOrder;
+    private int stepStart;
+    private int stepUpdates;
+    private int stepChunks;
+
+    // Tasks run on the pool for every batch, built once for their task count so batches don't allocate them
+    private RangeTask chunkTasks;
+    private RangeTask addGradientsTasks;
+
     // Constructor
     public ModelTrainer(NeuralNetwork model, Function<DataPoint, Void> processFunction, boolean generateGraph) {
         this.model = model;
@@ -25,76 +115,262 @@ public class ModelTrainer {
     }
 
     public TrainingData train(DataPoint[] data, int batchSize, int numEpochs, double testSplitRatio) {
+        return train(new DataPointDataset(data), batchSize, numEpochs, testSplitRatio);
+    }
+
+    // Train on any dataset; the process function can only be used with a DataPointDataset
+    public TrainingData train(Dataset data, int batchSize, int numEpochs, double testSplitRatio) {
+        return train(data, batchSize, numEpochs, testSplitRatio, null);
+    }
+
+    public TrainingData resume(DataPoint[] data, String checkpointFile) throws IOException {
+        return resume(new DataPointDataset(data), checkpointFile);
+    }
+
+    // Continue a run from a checkpoint taken while training on the same data
+    // The model takes the checkpoint's weights, optimizer and optimizer state, and the run continues with the
+    // checkpoint's seed and settings exactly as it would have without stopping
+    public TrainingData resume(Dataset data, String checkpointFile) throws IOException {
+        Checkpoint checkpoint = ModelFile.readCheckpoint(checkpointFile);
+        int testSize = (int) (data.size() * checkpoint.testSplitRatio);
+        if (data.size() - testSize != checkpoint.trainSize || testSize != checkpoint.testSize) {
+            throw new IllegalArgumentException("Checkpoint was taken with " + checkpoint.trainSize + " training and "
+                    + checkpoint.testSize + " test points, but the data has " + (data.size() - testSize) + " and " + testSize);
+        }
+
+        model.setPrecision(checkpoint.getNetwork().getPrecision());
+        model.setOptimizer(checkpoint.getNetwork().getOptimizer());
+        checkpoint.getNetwork().copyStateTo(model);
+        seed = checkpoint.seed;
+        return train(data, checkpoint.batchSize, checkpoint.numEpochs, checkpoint.testSplitRatio, checkpoint);
+    }
+
+    // Prune the model's weights up to targetSparsity in numCycles equal steps, fine-tuning for epochsPerCycle
+    // epochs after each step so the remaining weights can make up for the pruned ones
+    // Returns the training data of the last cycle
+    public TrainingData pruneAndFineTune(Dataset data, double targetSparsity, int numCycles, int epochsPerCycle, int batchSize, double testSplitRatio) {
+        TrainingData trainingData = null;
+        for (int cycle = 1; cycle <= numCycles; cycle++) {
+            Pruner.pruneMagnitude(model, targetSparsity * cycle / numCycles);
+            trainingData = train(data, batchSize, epochsPerCycle, testSplitRatio);
+        }
+        return trainingData;
+    }
+
+    // Remove up to the fraction of every hidden layer's nodes in numCycles equal steps, fine-tuning after each step
+    public TrainingData pruneNodesAndFineTune(Dataset data, double fraction, int numCycles, int epochsPerCycle, int batchSize, double testSplitRatio) {
+        TrainingData trainingData = null;
+        double removed = 0;
+        for (int cycle = 1; cycle <= numCycles; cycle++) {
+            // Each step prunes a fraction of the nodes left, so convert the fraction of the original nodes
+            double target = fraction * cycle / numCycles;
+            Pruner.pruneNodes(model, 1 - (1 - target) / (1 - removed));
+            removed = target;
+            trainingData = train(data, batchSize, epochsPerCycle, testSplitRatio);
+        }
+        return trainingData;
+    }
+
+    // Train from the start, or from a checkpoint if resumeFrom isn't null
+    private TrainingData train(Dataset data, int batchSize, int numEpochs, double testSplitRatio, Checkpoint resumeFrom) {
+        if (processFunction != null && !(data instanceof DataPointDataset)) {
+            throw new IllegalArgumentException("A process function needs a DataPointDataset, got " + data.getClass().getSimpleName());
+        }
+
+        metrics.reset();
+        trainingThread = Thread.currentThread();
+        chunkGatherNanos = new long[parallelism];
+        chunkForwardNanos = new long[parallelism];
+        chunkBackwardNanos = new long[parallelism];
+        if (metricsName != null) {
+            try {
+                metrics.registerMBean(metricsName);
+            } catch (JMException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        // Threads for splitting batches, shut down once training is done
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        try {
+            return trainEpochs(data, batchSize, numEpochs, testSplitRatio, resumeFrom);
+        } finally {
+            for (TrainingListener listener : listeners) {
+                listener.trainingFinished(metrics);
+            }
+            if (metricsName != null) {
+                try {
+                    metrics.unregisterMBean();
+                } catch (JMException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+            if (loader != null) {
+                loader.close();
+                loader = null;
+            }
+            if (checkpointWriter != null) {
+                checkpointWriter.close();
+                checkpointWriter = null;
+            }
+        }
+    }
+
+    private TrainingData trainEpochs(Dataset data, int batchSize, int numEpochs, double testSplitRatio, Checkpoint resumeFrom) {
 
         // Hold all training info in TrainingData object
-        TrainingData trainingData = new TrainingData(true);
+        TrainingData trainingData = (resumeFrom != null) ? resumeFrom.restoreTrainingData() : new TrainingData(true);
         if (graph != null)
             graph.setTrainingData(trainingData);
         
         // Split data into training and test sets
-        DataPoint[][] trainTestSplit = createTrainTestSplit(data, testSplitRatio);
-        DataPoint[] trainData = trainTestSplit[0];
-        DataPoint[] testData = trainTestSplit[1];
+        Dataset[] trainTestSplit = createTrainTestSplit(data, testSplitRatio);
+        Dataset trainData = trainTestSplit[0];
+        Dataset testData = trainTestSplit[1];
+
+        // Order the training points are visited in, shuffled again every epoch
+        int[] order;
+        if (resumeFrom != null) {
+            order = Arrays.copyOf(resumeFrom.order, resumeFrom.order.length);
+        } else {
+            order = new int[trainData.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        }
+
+        // Background threads assemble and augment batches ahead of training
+        if (prefetchBatches > 0 || augmentation != null) {
+            loader = new PrefetchingBatchLoader(trainData, batchSize, prefetchBatches + 1, prefetchWorkers, augmentation, processFunction, seed);
+            loader.setMetrics(metrics);
+        }
 
-        // Initialize mini batches array
-        DataPoint[][] miniBatches;
+        // Checkpoints are copied on this thread and written on another
+        if (checkpointFile != null) {
+            checkpointWriter = new CheckpointWriter(checkpointFile, model);
+            checkpointWriter.setRun(seed, batchSize, numEpochs, testSplitRatio, trainData.size(), testData.size());
+        }
 
         // Early stopping
         double bestTestCost = Double.MAX_VALUE;
         int epochsWithoutImprovement = 0;
 
-        // Initial epoch 0 evaluation
-        double[] initialEvaluation = evaluateModel(testData);
-        double initialTestCost = initialEvaluation[0];
-        double initialTestAccuracy = initialEvaluation[1];
-        System.out.printf("Epoch: %d, Validation Cost: %.5f, Validation Accuracy: %.2f%%%n", 0, initialTestCost, initialTestAccuracy);
-        
-        trainingData.addEpochData(initialTestCost, initialTestCost, initialTestAccuracy, initialTestAccuracy);
+        // Position to start from, part way through an epoch when resuming
+        int firstEpoch = 0;
+        int firstBatch = 0;
+        double resumedTrainCost = 0;
+        int resumedCorrect = 0;
+
+        if (resumeFrom == null) {
+            // Initial epoch 0 evaluation
+            long evaluationStart = System.nanoTime();
+            double[] initialEvaluation = evaluateModel(testData);
+            metrics.record(Phase.EVALUATION, System.nanoTime() - evaluationStart);
+            double initialTestCost = initialEvaluation[0];
+            double initialTestAccuracy = initialEvaluation[1];
+            System.out.printf("Epoch: %d, Validation Cost: %.5f, Validation Accuracy: %.2f%%%n", 0, initialTestCost, initialTestAccuracy);
+            
+            trainingData.addEpochData(initialTestCost, initialTestCost, initialTestAccuracy, initialTestAccuracy);
+        } else {
+            bestTestCost = resumeFrom.bestTestCost;
+            epochsWithoutImprovement = resumeFrom.epochsWithoutImprovement;
+            firstEpoch = resumeFrom.epoch;
+            firstBatch = resumeFrom.batch;
+            resumedTrainCost = resumeFrom.trainCost;
+            resumedCorrect = resumeFrom.numCorrect;
+            System.out.printf("Resuming at epoch %d, batch %d%n", firstEpoch + 1, firstBatch);
+
+            // The checkpoint may have been taken after the last epoch
+            if (epochsWithoutImprovement >= patience) {
+                System.out.println("Early stopping triggered.");
+                return trainingData;
+            }
+        }
         
-        if (graph != null)
-            graph.repaint();
+        // Batches are added to the history as they finish; the graph picks them up on its own
+        int numBatches = (order.length + batchSize - 1) / batchSize; // Handle last batch if not full
+        trainingData.startBatchData(numBatches, firstEpoch * numBatches + firstBatch);
 
         // Loop over all data numEpochs times
-        for (int epoch = 0; epoch < numEpochs; epoch++) {
+        for (int epoch = firstEpoch; epoch < numEpochs; epoch++) {
 
-            // Create mini batches with data
-            miniBatches = createMiniBatches(trainData, batchSize, true);
-            int numBatches = miniBatches.length;
+            // Shuffle with a seed derived from the epoch; batches are consecutive runs of order
+            // An epoch resumed part way through was already shuffled
+            int startBatch = (epoch == firstEpoch) ? firstBatch : 0;
+            if (startBatch == 0) {
+                shuffle(order, new Random(mixSeed(seed + epoch)));
+            }
+            if (loader != null) {
+                loader.startEpoch(order, epoch, startBatch);
+            }
 
             // Track cost and accuracy of each epoch
-            double trainCost = 0;
-            int numCorrect = 0;
-
-            for (int batch = 0; batch < numBatches; batch++) {
-
-                for (int pointIndex = 0; pointIndex < miniBatches[batch].length; pointIndex++) {
-
-                    DataPoint point = miniBatches[batch][pointIndex];
-
-                    // Process data point if applicable
+            double trainCost = (epoch == firstEpoch) ? resumedTrainCost : 0;
+            int numCorrect = (epoch == firstEpoch) ? resumedCorrect : 0;
+
+            for (int batch = startBatch; batch < numBatches; batch++) {
+
+                int start = batch * batchSize;
+                int count = Math.min(batchSize, order.length - start);
+                long stepStart = System.nanoTime();
+                long allocatedStart = TrainingMetrics.threadAllocatedBytes();
+
+                // Take an assembled batch, or gather it while propagating
+                Batch miniBatch;
+                Dataset source = null;
+                if (loader != null) {
+                    miniBatch = takeBatch();
+                } else {
+                    // Process data points if applicable
                     if (processFunction != null) {
-                        processFunction.apply(point);
+                        DataPointDataset points = (DataPointDataset)trainData;
+                        for (int i = start; i < start + count; i++) {
+                            processFunction.apply(points.getDataPoint(order[i]));
+                        }
                     }
-                    
-                    // Forward and back propagate data
-                    double[] expectedOutputs = point.getOutputs();
-                    double[] outputs = model.forwardPropagate(point.getInputs(), true);
-                    model.backPropagate(point.getInputs(), expectedOutputs);
-
-                    // Update cost
-                    trainCost += model.getCost(point.getOutputs(), outputs);
-
-                    // Update accuracy
-                    int guessedLabel = getLabel(outputs);
-                    int realLabel = getLabel(expectedOutputs);
-                    if (realLabel == guessedLabel)
-                        numCorrect++;
-                        
+                    miniBatch = getBatch(batchSize, trainData.getInputSize(), trainData.getOutputSize());
+                    miniBatch.setSize(count);
+                    source = trainData;
                 }
+                long dataNanos = System.nanoTime() - stepStart;
 
-                // Update weights and biases
+                // Forward and back propagate data
                 int numUpdates = epoch * numBatches + batch + 1;
+                if (batchExecution) {
+                    propagateBatch(miniBatch, source, order, start, numUpdates);
+                } else {
+                    propagatePointByPoint(miniBatch, source, order, start, numUpdates);
+                }
+                trainCost += batchCost;
+                numCorrect += batchCorrect;
+                trainingData.addBatchData(batchCost / count, (double)batchCorrect / count * 100);
+
+                if (loader != null) {
+                    loader.release(miniBatch);
+                }
+
+                // Update weights and biases
+                long optimizerStart = System.nanoTime();
                 model.updateWeightsAndBiases(batchSize, numUpdates);
+                long stepEnd = System.nanoTime();
+                recordBatch(dataNanos, stepEnd - optimizerStart);
+
+                // The checkpoint after the last batch is taken once the epoch is evaluated
+                if (checkpointWriter != null && checkpointInterval > 0 && numUpdates % checkpointInterval == 0 && batch + 1 < numBatches) {
+                    saveCheckpoint(trainingData, order, epoch, batch + 1, trainCost, numCorrect, bestTestCost, epochsWithoutImprovement);
+                }
+
+                metrics.addAllocatedBytes(TrainingMetrics.threadAllocatedBytes() - allocatedStart);
+                metrics.batchFinished(epoch, batch, count, System.nanoTime() - stepStart);
+                for (TrainingListener listener : listeners) {
+                    listener.batchFinished(epoch, batch, metrics);
+                }
             }
 
             // Learning rate decay
@@ -106,7 +382,9 @@ public class ModelTrainer {
             double trainAccuracy = (double)numCorrect / numDataPoints * 100;
 
             // Evaluate model on test data
+            long evaluationStart = System.nanoTime();
             double[] evaluation = evaluateModel(testData);
+            metrics.record(Phase.EVALUATION, System.nanoTime() - evaluationStart);
             double testCost = evaluation[0];
             double testAccuracy = evaluation[1];
             System.out.printf("Epoch: %d, Train Cost: %.5f, Validation Cost: %.5f, Train Accuracy: %.2f%%, Validation Accuracy: %.2f%%%n", 
@@ -114,8 +392,9 @@ public class ModelTrainer {
             
             // Add data to TrainingData
             trainingData.addEpochData(trainCost, testCost, trainAccuracy, testAccuracy);
-            if (graph != null)
-                graph.repaint();
+            for (TrainingListener listener : listeners) {
+                listener.epochFinished(epoch, trainCost, testCost, trainAccuracy, testAccuracy, metrics);
+            }
 
             // Early stopping check
             if (testCost < bestTestCost) {
@@ -125,6 +404,10 @@ public class ModelTrainer {
                 epochsWithoutImprovement++;
             }
 
+            if (checkpointWriter != null) {
+                saveCheckpoint(trainingData, order, epoch + 1, 0, 0, 0, bestTestCost, epochsWithoutImprovement);
+            }
+
             if (epochsWithoutImprovement >= patience) {
                 System.out.println("Early stopping triggered.");
                 break;
@@ -135,56 +418,413 @@ public class ModelTrainer {
         return trainingData;
     }
 
-    // Create mini batches from given data
-    private DataPoint[][] createMiniBatches(DataPoint[] data, int batchSize, boolean shuffle) {
-        if (shuffle) {
-            List<DataPoint> dataList = Arrays.asList(data);
-            Collections.shuffle(dataList);
-            data = dataList.toArray(new DataPoint[0]);
+    // Copy the training state into a free checkpoint buffer and queue it to be written
+    private void saveCheckpoint(TrainingData trainingData, int[] order, int epoch, int batch, double trainCost, int numCorrect,
+            double bestTestCost, int epochsWithoutImprovement) {
+        Checkpoint checkpoint = checkpointWriter.acquire();
+        checkpoint.captureModel(model);
+        checkpoint.captureOrder(order);
+        checkpoint.captureTrainingData(trainingData);
+        checkpoint.epoch = epoch;
+        checkpoint.batch = batch;
+        checkpoint.trainCost = trainCost;
+        checkpoint.numCorrect = numCorrect;
+        checkpoint.bestTestCost = bestTestCost;
+        checkpoint.epochsWithoutImprovement = epochsWithoutImprovement;
+        checkpointWriter.publish(checkpoint);
+    }
+
+    // Push a whole mini batch through the network as one matrix
+    // If source isn't null the batch is first gathered from the points order[start..start + size)
+    // With parallelism above 1 the batch is split into contiguous chunks, one per thread,
+    // and the chunk gradients are summed in chunk order so results don't depend on scheduling
+    private void propagateBatch(Batch miniBatch, Dataset source, int[] order, int start, int numUpdates) {
+        int batchSize = miniBatch.getSize();
+        int outputSize = miniBatch.getOutputSize();
+        int numChunks = Math.min(parallelism, batchSize);
+        boolean parallel = parallelism > 1;
+
+        if (workspaces == null || workspaces.length < numChunks || rowExpected[0].length != outputSize
+                || !workspaces[0].fits(model.getLayers(), parallel)) {
+            createWorkspaces(numChunks, batchSize, outputSize, parallel);
+        }
+
+        numTimedChunks = numChunks;
+        addGradientsNanos = 0;
+        if (!parallel) {
+            propagateChunk(miniBatch, source, order, start, 0, 0, batchSize, numUpdates);
+        } else {
+            stepBatch = miniBatch;
+            stepSource = source;
+            stepOrder = order;
+            stepStart = start;
+            stepUpdates = numUpdates;
+            stepChunks = numChunks;
+            if (chunkTasks == null || chunkTasks.size() != numChunks) {
+                chunkTasks = new RangeTask(this::propagateStepChunk, 0, numChunks);
+            }
+            chunkTasks.runOn(pool);
+
+            long addStart = System.nanoTime();
+            if (addGradientsTasks == null || addGradientsTasks.size() != parallelism) {
+                addGradientsTasks = new RangeTask(this::addGradientsPart, 0, parallelism);
+            }
+            addGradientsTasks.runOn(pool);
+            addGradientsNanos = System.nanoTime() - addStart;
+            stepBatch = null;
+            stepSource = null;
+            stepOrder = null;
+        }
+
+        // Combine cost and accuracy in chunk order
+        batchCost = 0;
+        batchCorrect = 0;
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            batchCost += chunkCost[chunk];
+            batchCorrect += chunkCorrect[chunk];
+        }
+    }
+
+    // Propagate one chunk of the mini batch being split across the pool
+    private void propagateStepChunk(int chunk) {
+        int batchSize = stepBatch.getSize();
+        int from = (int)((long)batchSize * chunk / stepChunks);
+        int to = (int)((long)batchSize * (chunk + 1) / stepChunks);
+        propagateChunk(stepBatch, stepSource, stepOrder, stepStart, chunk, from, to, stepUpdates);
+    }
+
+    // Sum one slice of every layer's chunk gradients into the layers
+    private void addGradientsPart(int part) {
+        model.addGradients(workspaces, stepChunks, part, parallelism);
+    }
+
+    // Forward and back propagate rows from until to of a mini batch with the chunk's workspace
+    // Batches with class labels back propagate from the labels instead of expected output rows
+    private void propagateChunk(Batch miniBatch, Dataset source, int[] order, int start, int chunk, int from, int to, int numUpdates) {
+        int inputSize = miniBatch.getInputSize();
+        int outputSize = miniBatch.getOutputSize();
+        int count = to - from;
+        boolean otherThread = Thread.currentThread() != trainingThread;
+        long allocatedStart = otherThread ? TrainingMetrics.threadAllocatedBytes() : 0;
+
+        // Gather inputs and expected outputs into row-major matrices
+        long gatherStart = System.nanoTime();
+        if (source != null) {
+            miniBatch.gather(source, order, start, from, to);
+        }
+        long forwardStart = System.nanoTime();
+        double[] batchInputs = miniBatch.getInputs();
+        double[] batchExpected = miniBatch.getExpected();
+        int[] batchLabels = miniBatch.getLabels();
+        boolean useLabels = miniBatch.hasLabels();
+
+        // Dropout masks depend only on the seed, update and chunk
+        BatchWorkspace workspace = workspaces[chunk];
+        workspace.getRandom().setSeed(dropoutSeed(numUpdates, chunk));
+
+        double[] outputs = model.forwardBatch(batchInputs, from * inputSize, count, true, workspace);
+        long backwardStart = System.nanoTime();
+        if (useLabels) {
+            model.backwardBatch(batchInputs, from * inputSize, batchLabels, from, count, workspace);
+        } else {
+            model.backwardBatch(batchInputs, from * inputSize, batchExpected, from * outputSize, count, workspace);
+        }
+        long backwardEnd = System.nanoTime();
+        chunkGatherNanos[chunk] = forwardStart - gatherStart;
+        chunkForwardNanos[chunk] = backwardStart - forwardStart;
+        chunkBackwardNanos[chunk] = backwardEnd - backwardStart;
+
+        // Update cost and accuracy
+        double[] expected = rowExpected[chunk];
+        double[] calculated = rowOutputs[chunk];
+        double cost = 0;
+        int correct = 0;
+        for (int row = 0; row < count; row++) {
+            int realLabel;
+            if (useLabels) {
+                realLabel = batchLabels[from + row];
+                Arrays.fill(expected, 0);
+                expected[realLabel] = 1;
+            } else {
+                System.arraycopy(batchExpected, (from + row) * outputSize, expected, 0, outputSize);
+                realLabel = getLabel(expected);
+            }
+            System.arraycopy(outputs, row * outputSize, calculated, 0, outputSize);
+            cost += model.getCost(expected, calculated);
+
+            if (getLabel(calculated) == realLabel)
+                correct++;
+        }
+        chunkCost[chunk] = cost;
+        chunkCorrect[chunk] = correct;
+
+        // Allocation on the training thread is counted over the whole step
+        if (otherThread) {
+            metrics.addAllocatedBytes(TrainingMetrics.threadAllocatedBytes() - allocatedStart);
         }
+    }
 
-        int numBatches = (data.length + batchSize - 1) / batchSize; // Handle last batch if not full
-        DataPoint[][] batches = new DataPoint[numBatches][];
-        for (int batch = 0; batch < numBatches; batch++) {
-            int start = batch * batchSize;
-            int end = Math.min(start + batchSize, data.length);
-            batches[batch] = Arrays.copyOfRange(data, start, end);
+    // Record the phase latencies of the last batch from its chunk times and the times taken on the training thread
+    private void recordBatch(long dataNanos, long updateNanos) {
+        long gather = 0, forward = 0, backward = 0;
+        for (int chunk = 0; chunk < numTimedChunks; chunk++) {
+            gather = Math.max(gather, chunkGatherNanos[chunk]);
+            forward = Math.max(forward, chunkForwardNanos[chunk]);
+            backward = Math.max(backward, chunkBackwardNanos[chunk]);
         }
+        metrics.record(Phase.DATA, dataNanos + gather);
+        metrics.record(Phase.FORWARD, forward);
+        metrics.record(Phase.BACKWARD, backward);
+        metrics.record(Phase.OPTIMIZER, addGradientsNanos + updateNanos);
+    }
 
-        return batches;
+    // Wait for the loader's next batch
+    private Batch takeBatch() {
+        try {
+            return loader.next();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a batch", e);
+        }
     }
 
-    // Split data into training and testing sets
-    private DataPoint[][] createTrainTestSplit(DataPoint[] data, double testSplitRatio) {
-        int testSize = (int) (data.length * testSplitRatio);
-        int trainSize = data.length - testSize;
-        DataPoint[] trainData = Arrays.copyOfRange(data, 0, trainSize);
-        DataPoint[] testData = Arrays.copyOfRange(data, trainSize, data.length);
-        return new DataPoint[][] { trainData, testData };
+    // Reuse the batch buffers between batches
+    private Batch getBatch(int batchSize, int inputSize, int outputSize) {
+        if (batch == null || !batch.fits(batchSize, inputSize, outputSize)) {
+            batch = new Batch(batchSize, inputSize, outputSize);
+        }
+        return batch;
+    }
+
+    // One workspace per chunk; without parallelism the chunk accumulates straight into the layers
+    private void createWorkspaces(int numChunks, int batchSize, int outputSize, boolean parallel) {
+        int capacity = (batchSize + numChunks - 1) / numChunks;
+        workspaces = new BatchWorkspace[numChunks];
+        rowExpected = new double[numChunks][outputSize];
+        rowOutputs = new double[numChunks][outputSize];
+        chunkCost = new double[numChunks];
+        chunkCorrect = new int[numChunks];
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            workspaces[chunk] = model.createWorkspace(capacity, parallel);
+        }
+    }
+
+    // Run task for every index below numTasks on a pool and wait for all of them
+    private static void runInParallel(ForkJoinPool pool, int numTasks, IntConsumer task) {
+        new RangeTask(task, 0, numTasks).runOn(pool);
+    }
+
+    // Splits a range of task indices in half until each half is a single task
+    // The halves are built once, so running the same tasks again allocates nothing
+    private static class RangeTask extends RecursiveAction {
+
+        // Serial ID
+        private static final long serialVersionUID = -4859923944678326097L;
+
+        private final IntConsumer task;
+        private final int from, to;
+        private final RangeTask left, right;
+
+        RangeTask(IntConsumer task, int from, int to) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                left = new RangeTask(task, from, mid);
+                right = new RangeTask(task, mid, to);
+            } else {
+                left = null;
+                right = null;
+            }
+        }
+
+        // Run every task on the pool and wait for all of them
+        void runOn(ForkJoinPool pool) {
+            reinitialize();
+            pool.invoke(this);
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        protected void compute() {
+            if (left == null) {
+                task.accept(from);
+                return;
+            }
+            left.reinitialize();
+            right.reinitialize();
+            invokeAll(left, right);
+        }
+    }
+
+    // Seed of the dropout masks for a chunk of the given update, so a run resumed from a checkpoint draws
+    // the same masks as one that never stopped
+    private long dropoutSeed(int numUpdates, int chunk) {
+        return mixSeed(seed + numUpdates * 0x9E3779B97F4A7C15L + chunk);
+    }
+
+    // Scramble a seed so nearby values give unrelated random streams (SplitMix64 finalizer)
+    private static long mixSeed(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Push the data points of a mini batch through the network one at a time
+    // If source isn't null the batch is first gathered from the points order[start..start + size)
+    private void propagatePointByPoint(Batch miniBatch, Dataset source, int[] order, int start, int numUpdates) {
+        int batchSize = miniBatch.getSize();
+        int inputSize = miniBatch.getInputSize();
+        int outputSize = miniBatch.getOutputSize();
+        if (pointInputs == null || pointInputs.length != inputSize || pointExpected.length != outputSize) {
+            pointInputs = new double[inputSize];
+            pointExpected = new double[outputSize];
+        }
+
+        long gatherStart = System.nanoTime();
+        if (source != null) {
+            miniBatch.gather(source, order, start, 0, batchSize);
+        }
+        boolean useLabels = miniBatch.hasLabels();
+        numTimedChunks = 1;
+        addGradientsNanos = 0;
+        chunkGatherNanos[0] = System.nanoTime() - gatherStart;
+        chunkForwardNanos[0] = 0;
+        chunkBackwardNanos[0] = 0;
+
+        // Dropout masks depend only on the seed and update, as in the batch path
+        pointRandom.setSeed(dropoutSeed(numUpdates, 0));
+
+        batchCost = 0;
+        batchCorrect = 0;
+        for (int row = 0; row < batchSize; row++) {
+            System.arraycopy(miniBatch.getInputs(), row * inputSize, pointInputs, 0, inputSize);
+
+            long forwardStart = System.nanoTime();
+            double[] outputs = model.forwardPropagate(pointInputs, true, pointRandom);
+            long backwardStart = System.nanoTime();
+            int realLabel;
+            if (useLabels) {
+                realLabel = miniBatch.getLabels()[row];
+                Arrays.fill(pointExpected, 0);
+                pointExpected[realLabel] = 1;
+                model.backPropagate(pointInputs, realLabel);
+            } else {
+                System.arraycopy(miniBatch.getExpected(), row * outputSize, pointExpected, 0, outputSize);
+                realLabel = getLabel(pointExpected);
+                model.backPropagate(pointInputs, pointExpected);
+            }
+            long backwardEnd = System.nanoTime();
+            chunkForwardNanos[0] += backwardStart - forwardStart;
+            chunkBackwardNanos[0] += backwardEnd - backwardStart;
+
+            // Update cost
+            batchCost += model.getCost(pointExpected, outputs);
+
+            // Update accuracy
+            int guessedLabel = getLabel(outputs);
+            if (realLabel == guessedLabel)
+                batchCorrect++;
+        }
+    }
+
+    // Shuffle an index order in place, visiting positions like Collections.shuffle
+    private static void shuffle(int[] order, Random random) {
+        for (int i = order.length; i > 1; i--) {
+            int j = random.nextInt(i);
+            int swap = order[i - 1];
+            order[i - 1] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    // Split data into training and testing sets, as views of data
+    private Dataset[] createTrainTestSplit(Dataset data, double testSplitRatio) {
+        int testSize = (int) (data.size() * testSplitRatio);
+        int trainSize = data.size() - testSize;
+        Dataset trainData = data.subset(0, trainSize);
+        Dataset testData = data.subset(trainSize, data.size());
+        return new Dataset[] { trainData, testData };
     }
 
     // Evaluate model performance on test data
     // Returns array with 2 values: {cost, accuracy}
+    // Runs in batches on every core; costs are summed in data order so the result
+    // is the same as evaluating one point at a time
     public double[] evaluateModel(DataPoint[] testData) {
+        return evaluateModel(new DataPointDataset(testData));
+    }
+
+    public double[] evaluateModel(Dataset testData) {
+        int size = testData.size();
+        ForkJoinPool evaluationPool = (pool != null) ? pool : ForkJoinPool.commonPool();
+        int numTasks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / EVALUATION_BATCH_SIZE));
+
+        double[] costs = new double[size];
+        int[] taskCorrect = new int[numTasks];
+
+        if (numTasks == 1) {
+            taskCorrect[0] = evaluateRange(testData, 0, size, costs);
+        } else {
+            runInParallel(evaluationPool, numTasks, task -> {
+                int from = (int)((long)size * task / numTasks);
+                int to = (int)((long)size * (task + 1) / numTasks);
+                taskCorrect[task] = evaluateRange(testData, from, to, costs);
+            });
+        }
+
         double totalCost = 0;
         int numCorrect = 0;
+        for (int i = 0; i < size; i++) {
+            totalCost += costs[i];
+        }
+        for (int task = 0; task < numTasks; task++) {
+            numCorrect += taskCorrect[task];
+        }
 
-        for (DataPoint point : testData) {
-            double[] expectedOutputs = point.getOutputs();
-            double[] outputs = model.forwardPropagate(point.getInputs(), false);
-            totalCost += model.getCost(expectedOutputs, outputs);
+        double accuracy = (double) numCorrect / size * 100;
+        double cost = totalCost / size;
 
-            int guessedLabel = getLabel(outputs);
-            int realLabel = getLabel(expectedOutputs);
-            if (realLabel == guessedLabel) {
-                numCorrect++;
+        return new double[] {cost, accuracy};
+    }
+
+    // Predict points from until to in batches, storing the cost of each point in costs
+    // Returns the number of correct guesses
+    private int evaluateRange(Dataset testData, int from, int to, double[] costs) {
+        int inputSize = model.getInputSize();
+        int outputSize = model.getOutputSize();
+        int batchSize = Math.min(EVALUATION_BATCH_SIZE, to - from);
+
+        // Predict through a session so evaluation never touches training state
+        InferenceSession session = new InferenceSession(model, batchSize);
+        double[] inputs = new double[batchSize * inputSize];
+        double[] expectedOutputs = new double[outputSize];
+        double[] outputs = new double[outputSize];
+
+        int numCorrect = 0;
+        for (int start = from; start < to; start += batchSize) {
+            int count = Math.min(batchSize, to - start);
+            for (int row = 0; row < count; row++) {
+                testData.copyInputsTo(start + row, inputs, row * inputSize);
             }
-        }
+            double[] batchOutputs = session.predictBatch(inputs, 0, count);
 
-        double accuracy = (double) numCorrect / testData.length * 100;
-        double cost = totalCost / testData.length;
+            for (int row = 0; row < count; row++) {
+                testData.copyOutputsTo(start + row, expectedOutputs, 0);
+                System.arraycopy(batchOutputs, row * outputSize, outputs, 0, outputSize);
+                costs[start + row] = model.getCost(expectedOutputs, outputs);
 
-        return new double[] {cost, accuracy};
+                int guessedLabel = getLabel(outputs);
+                int realLabel = testData.hasLabels() ? testData.getLabel(start + row) : getLabel(expectedOutputs);
+                if (realLabel == guessedLabel) {
+                    numCorrect++;
+                }
+            }
+        }
+        return numCorrect;
     }
 
     // Get the label with highest output value
@@ -215,6 +855,95 @@ public class ModelTrainer {
         this.processFunction = processFunction;
     }
 
+    public Augmentation getAugmentation() {
+        return augmentation;
+    }
+
+    public void setAugmentation(Augmentation augmentation) {
+        this.augmentation = augmentation;
+    }
+
+    public int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    public void setPrefetchBatches(int prefetchBatches) {
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    public int getPrefetchWorkers() {
+        return prefetchWorkers;
+    }
+
+    public void setPrefetchWorkers(int prefetchWorkers) {
+        this.prefetchWorkers = prefetchWorkers;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    // File to write checkpoints to during training, null for none
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    // Number of batches between checkpoints, 0 to only checkpoint after every epoch
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = Math.max(0, checkpointInterval);
+    }
+
+    public boolean isBatchExecution() {
+        return batchExecution;
+    }
+
+    public void setBatchExecution(boolean batchExecution) {
+        this.batchExecution = batchExecution;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Number of threads to split each mini batch across, 1 to train on the calling thread
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // Metrics of the current run, or of the last one once training is done
+    public TrainingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void addTrainingListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTrainingListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    // Register the metrics with JMX as NeuralNetwork:type=TrainingMetrics,name=<metricsName> while training, null to not
+    public void setMetricsName(String metricsName) {
+        this.metricsName = metricsName;
+    }
+
     public TrainingGraph getGraph() {
         return graph;
     }
@@ -1,44 +1,79 @@
 package Models;
 
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 // Class for saving and loading neural networks
+// Networks are saved in the binary ModelFile format; files written with Java serialization can still be loaded
 public class NetworkSaver {
-    
-    // Save neural network to a file
-    public static void saveNetwork(NeuralNetwork network, String filename) {
-        try {
-            FileOutputStream file = new FileOutputStream(filename);
-            ObjectOutputStream out = new ObjectOutputStream(file);
 
-            out.writeObject(network);
+    // Convert a serialized network file to the binary format
+    // Usage: NetworkSaver <network.ser> <network.nnm>
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: NetworkSaver <network.ser> <network.nnm>");
+            return;
+        }
+        if (convertNetwork(args[0], args[1])) {
+            System.out.println("Converted " + args[0] + " to " + args[1]);
+        }
+    }
 
-            out.close();
-            file.close();
+    // Save neural network to a file, including its optimizer state so training can continue
+    public static void saveNetwork(NeuralNetwork network, String filename) {
+        saveNetwork(network, filename, true);
+    }
+
+    // Save neural network to a file, with or without the optimizer state
+    public static void saveNetwork(NeuralNetwork network, String filename, boolean includeOptimizerState) {
+        try {
+            ModelFile.write(network, filename, includeOptimizerState);
         } catch (IOException e) {
             System.out.println(e.getMessage());
         }
     }
 
-    // Retrieve network from a file
+    // Retrieve network from a file in either format
     public static NeuralNetwork loadNetwork(String filename) {
         NeuralNetwork network = null;
         try {
-            FileInputStream file = new FileInputStream(filename);
-            ObjectInputStream in = new ObjectInputStream(file);
+            if (ModelFile.isModelFile(filename)) {
+                network = ModelFile.read(filename);
+            } else {
+                network = loadSerializedNetwork(filename);
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
 
-            network = (NeuralNetwork)in.readObject();
+        return network;
+    }
 
-            in.close();
-            file.close();
+    // Retrieve network from a file and convert it to the given precision
+    public static NeuralNetwork loadNetwork(String filename, Precision precision) {
+        NeuralNetwork network = loadNetwork(filename);
+        if (network != null) {
+            network.setPrecision(precision);
+        }
+        return network;
+    }
+
+    // Load a network saved with Java serialization and save it in the binary format
+    public static boolean convertNetwork(String serializedFilename, String filename) {
+        try {
+            ModelFile.write(loadSerializedNetwork(serializedFilename), filename, true);
+            return true;
         } catch (Exception e) {
             System.out.println(e.getMessage());
+            return false;
         }
+    }
 
-        return network;
+    // Retrieve network from a file written with Java serialization
+    private static NeuralNetwork loadSerializedNetwork(String filename) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
+            return (NeuralNetwork)in.readObject();
+        }
     }
 }
@@ -1,63 +1,149 @@
 package Models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
 import ActivationFunctions.ActivationFunction;
 import CostFunctions.CostFunction;
+import Kernels.SparseRows;
+import Optimizers.Adam;
+import Optimizers.Optimizer;
 
 public class NeuralNetwork implements Serializable {
     
     // Serial ID
     private static final long serialVersionUID = 6529685098267757691L;
 
+    // Input rows with at most this fraction of nonzeros take the sparse path through the first layer
+    // Around this density the sparse and dense kernels take about as long
+    public static final double DEFAULT_SPARSE_INPUT_THRESHOLD = 0.3;
+
     // Layers in the network
     private FeedForward_Layer[] layers;
 
     // Activation and cost functions of the layers
     private CostFunction costFunction;
 
-    // Learning rate of system
-    private double learningRate;
+    // Updates the weights and biases from their gradients, with the learning rate of the system
+    private Optimizer optimizer;
 
     // Dropout rate for regularization
     private double dropoutRate;
 
-    // ADAM parameters
-    private double beta1; // First moment decay
-    private double beta2; // Second moment decay
+    // Reusable buffers for batched propagation, created on first use
+    private transient BatchWorkspace workspace;
+
+    // Thread-safe predictions that leave the layers' training state alone, created on first use
+    private transient volatile Predictor predictor;
 
-    // Constructor
+    // Constructor for a network trained with ADAM
     public NeuralNetwork(int[] dim, ActivationFunction hiddenActivation, ActivationFunction outputActivation,
             CostFunction costFunction, double learningRate, double beta1, double beta2, double dropoutRate) {
+        this(dim, hiddenActivation, outputActivation, costFunction, new Adam(learningRate, beta1, beta2), dropoutRate, Precision.DOUBLE);
+    }
+
+    // Constructor for a network trained with ADAM, with the storage precision of the weights
+    public NeuralNetwork(int[] dim, ActivationFunction hiddenActivation, ActivationFunction outputActivation,
+            CostFunction costFunction, double learningRate, double beta1, double beta2, double dropoutRate, Precision precision) {
+        this(dim, hiddenActivation, outputActivation, costFunction, new Adam(learningRate, beta1, beta2), dropoutRate, precision);
+    }
+
+    // Constructor with any optimizer
+    public NeuralNetwork(int[] dim, ActivationFunction hiddenActivation, ActivationFunction outputActivation,
+            CostFunction costFunction, Optimizer optimizer, double dropoutRate) {
+        this(dim, hiddenActivation, outputActivation, costFunction, optimizer, dropoutRate, Precision.DOUBLE);
+    }
+
+    public NeuralNetwork(int[] dim, ActivationFunction hiddenActivation, ActivationFunction outputActivation,
+            CostFunction costFunction, Optimizer optimizer, double dropoutRate, Precision precision) {
+        this.costFunction = costFunction;
+        this.dropoutRate = dropoutRate;
+
+        createLayers(dim, hiddenActivation, outputActivation, precision);
+        setOptimizer(optimizer);
+        setSparseInputThreshold(DEFAULT_SPARSE_INPUT_THRESHOLD);
+    }
+
+    // Constructor for networks with existing layers, such as when loading a model file
+    NeuralNetwork(FeedForward_Layer[] layers, CostFunction costFunction, Optimizer optimizer, double dropoutRate) {
+        this.layers = layers;
         this.costFunction = costFunction;
-        this.learningRate = learningRate;
-        this.beta1 = beta1;
-        this.beta2 = beta2;
         this.dropoutRate = dropoutRate;
+        setOptimizer(optimizer);
+        setSparseInputThreshold(DEFAULT_SPARSE_INPUT_THRESHOLD);
+    }
 
-        createLayers(dim, hiddenActivation, outputActivation);
+    // Create a network of the same shape and settings whose weights are left at zero, to copy state into
+    NeuralNetwork createEmptyCopy() {
+        FeedForward_Layer[] copies = new FeedForward_Layer[layers.length];
+        for (int layer = 0; layer < layers.length; layer++) {
+            FeedForward_Layer original = layers[layer];
+            copies[layer] = new FeedForward_Layer(original.getInDim(), original.getOutDim(), original.getActivation(), original.getPrecision(), false);
+        }
+        return new NeuralNetwork(copies, costFunction, optimizer, dropoutRate);
+    }
+
+    // Copy the weights, biases and optimizer state of every layer into a network of the same shape
+    void copyStateTo(NeuralNetwork dest) {
+        if (dest.layers.length != layers.length) {
+            throw new IllegalArgumentException("Cannot copy a network with " + layers.length + " layers into one with " + dest.layers.length);
+        }
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer].copyStateTo(dest.layers[layer]);
+        }
+    }
+
+    // Keep only the nodes of a hidden layer listed in keep, shrinking its weights and the next layer's inputs
+    // Sessions and predictors created before no longer match the network
+    void keepNodes(int layer, int[] keep) {
+        if (layer < 0 || layer >= layers.length - 1) {
+            throw new IllegalArgumentException("Only hidden layers can lose nodes, not layer " + layer + " of " + layers.length);
+        }
+        if (keep.length == 0) {
+            throw new IllegalArgumentException("Layer " + layer + " needs at least one node");
+        }
+        layers[layer].keepNodes(keep);
+        layers[layer + 1].keepInputs(keep);
+        workspace = null;
+        predictor = null;
     }
 
     // Propagate layers array with feed forward layers
-    private void createLayers(int[] dim, ActivationFunction hiddenActivation, ActivationFunction outputActivation) {
+    private void createLayers(int[] dim, ActivationFunction hiddenActivation, ActivationFunction outputActivation, Precision precision) {
         layers = new FeedForward_Layer[dim.length - 1];
 
         // Create hidden layers
         for (int layer = 0; layer < layers.length - 1; layer++) {
-            layers[layer] = new FeedForward_Layer(dim[layer], dim[layer + 1], hiddenActivation);
+            layers[layer] = new FeedForward_Layer(dim[layer], dim[layer + 1], hiddenActivation, precision);
         }
 
         // Create final layer with output activation
-        layers[layers.length - 1] = new FeedForward_Layer(dim[layers.length - 1], dim[layers.length], outputActivation);
+        layers[layers.length - 1] = new FeedForward_Layer(dim[layers.length - 1], dim[layers.length], outputActivation, precision);
     }
 
     // Forward propagate inputs through layers and return the output
+    // Predictions (training == false) are thread-safe and return a new array
     public double[] forwardPropagate(double[] inputs, boolean training) {
+        return forwardPropagate(inputs, training, ThreadLocalRandom.current());
+    }
+
+    // Feed inputs through the network, drawing the dropout masks from random when training
+    public double[] forwardPropagate(double[] inputs, boolean training, Random random) {
+        if (!training) {
+            double[] outputs = new double[getOutputSize()];
+            getPredictor().predict(inputs, outputs);
+            return outputs;
+        }
+
         for (int layer = 0; layer < layers.length - 1; layer++) {
-            inputs = layers[layer].forwardPropagate(inputs, training, dropoutRate);
+            inputs = layers[layer].forwardPropagate(inputs, training, dropoutRate, random);
         }
 
         // Final layer
-        double[] outputs = layers[layers.length - 1].forwardPropagate(inputs, training, 0);
+        double[] outputs = layers[layers.length - 1].forwardPropagate(inputs, training, 0, random);
 
         return outputs;
     }
@@ -65,22 +151,214 @@ public class NeuralNetwork implements Serializable {
     // Back propagate error through layers and update gradients
     public void backPropagate(double[] inputs, double[] expectedOutputs) {
         // Final layer
-        double[] error = layers[layers.length - 1].backPropagateOutputLayer(expectedOutputs, costFunction);
+        layers[layers.length - 1].backPropagateOutputLayer(expectedOutputs, costFunction);
+        backPropagateFromOutput(inputs);
+    }
+
+    // Back propagate with the expected output given as a class label instead of a one hot array
+    public void backPropagate(double[] inputs, int label) {
+        // Final layer
+        layers[layers.length - 1].backPropagateOutputLayer(label, costFunction);
+        backPropagateFromOutput(inputs);
+    }
+
+    // Update gradients of the final layer, then back propagate its error through the hidden layers
+    private void backPropagateFromOutput(double[] inputs) {
+        double[] error = layers[layers.length - 1].getNodeError();
         double[] prevLayerOutputs = (layers.length == 1) ? inputs : layers[layers.length - 2].getOutputs();
         layers[layers.length - 1].updateGradients(prevLayerOutputs);
 
         // Hidden layers
         for (int layer = layers.length - 2; layer >= 0; layer--) {
-            error = layers[layer].backPropagateHiddenLayer(error, layers[layer + 1].getWeights());
+            error = layers[layer].backPropagateHiddenLayer(error, layers[layer + 1]);
             prevLayerOutputs = (layer == 0) ? inputs : layers[layer - 1].getOutputs();
             layers[layer].updateGradients(prevLayerOutputs);
         }
     }
 
-    // Update all weights and biases with ADAM optimizer
-    public void updateWeightsAndBiases(int batchSize, int numBatches) {
+    // Forward propagate a batch of inputs, stored as batchSize rows of input values
+    // Returns a buffer holding batchSize rows of outputs, which is reused by the next call
+    public double[] forwardBatch(double[] inputs, int batchSize, boolean training) {
+        return forwardBatch(inputs, 0, batchSize, training, getWorkspace(batchSize));
+    }
+
+    // Forward propagate batchSize rows of inputs starting at inputOffset, using the given workspace
+    public double[] forwardBatch(double[] inputs, int inputOffset, int batchSize, boolean training, BatchWorkspace workspace) {
+        checkTraining(training, workspace);
+        workspace.ensureCapacity(batchSize);
+
+        double[] layerInputs = inputs;
+        int layerOffset = inputOffset;
         for (int layer = 0; layer < layers.length; layer++) {
-            layers[layer].updateWeightsAndBiases(learningRate, beta1, beta2, batchSize, numBatches);
+            double layerDropout = (layer < layers.length - 1) ? dropoutRate : 0;
+            layerInputs = layers[layer].forwardBatch(layerInputs, layerOffset, batchSize, training, layerDropout, workspace.getLayerBuffers(layer), workspace.getRandom());
+            layerOffset = 0;
+        }
+
+        return layerInputs;
+    }
+
+    // Forward propagate a batch of inputs given as index/value lists, one row per data point
+    public double[] forwardBatch(SparseRows inputs, boolean training) {
+        return forwardBatch(inputs, training, getWorkspace(inputs.getNumRows()));
+    }
+
+    public double[] forwardBatch(SparseRows inputs, boolean training, BatchWorkspace workspace) {
+        checkTraining(training, workspace);
+        int batchSize = inputs.getNumRows();
+        workspace.ensureCapacity(batchSize);
+
+        double layerDropout = (layers.length > 1) ? dropoutRate : 0;
+        double[] layerInputs = layers[0].forwardBatch(inputs, training, layerDropout, workspace.getLayerBuffers(0), workspace.getRandom());
+        for (int layer = 1; layer < layers.length; layer++) {
+            layerDropout = (layer < layers.length - 1) ? dropoutRate : 0;
+            layerInputs = layers[layer].forwardBatch(layerInputs, 0, batchSize, training, layerDropout, workspace.getLayerBuffers(layer), workspace.getRandom());
+        }
+
+        return layerInputs;
+    }
+
+    // Back propagate the error of the last forwardBatch call and accumulate gradients
+    public void backwardBatch(double[] inputs, double[] expectedOutputs, int batchSize) {
+        backwardBatch(inputs, 0, expectedOutputs, 0, batchSize, getWorkspace(batchSize));
+    }
+
+    // Back propagate the error of the last forwardBatch call on the given workspace
+    public void backwardBatch(double[] inputs, int inputOffset, double[] expectedOutputs, int expectedOffset, int batchSize, BatchWorkspace workspace) {
+        checkTraining(true, workspace);
+        int last = layers.length - 1;
+        layers[last].backwardBatch(expectedOutputs, expectedOffset, batchSize, costFunction, workspace.getLayerBuffers(last));
+        backwardFromOutput(inputs, inputOffset, null, batchSize, workspace);
+    }
+
+    // Back propagate the error of the last forwardBatch call on index/value list inputs
+    public void backwardBatch(SparseRows inputs, double[] expectedOutputs, int expectedOffset, BatchWorkspace workspace) {
+        checkTraining(true, workspace);
+        int last = layers.length - 1;
+        layers[last].backwardBatch(expectedOutputs, expectedOffset, inputs.getNumRows(), costFunction, workspace.getLayerBuffers(last));
+        backwardFromOutput(null, 0, inputs, inputs.getNumRows(), workspace);
+    }
+
+    public void backwardBatch(SparseRows inputs, int[] labels, int labelOffset, BatchWorkspace workspace) {
+        checkTraining(true, workspace);
+        int last = layers.length - 1;
+        layers[last].backwardBatch(labels, labelOffset, inputs.getNumRows(), costFunction, workspace.getLayerBuffers(last));
+        backwardFromOutput(null, 0, inputs, inputs.getNumRows(), workspace);
+    }
+
+    // Back propagate with one class label per row instead of one hot expected outputs
+    public void backwardBatch(double[] inputs, int[] labels, int batchSize) {
+        backwardBatch(inputs, 0, labels, 0, batchSize, getWorkspace(batchSize));
+    }
+
+    public void backwardBatch(double[] inputs, int inputOffset, int[] labels, int labelOffset, int batchSize, BatchWorkspace workspace) {
+        checkTraining(true, workspace);
+        int last = layers.length - 1;
+        layers[last].backwardBatch(labels, labelOffset, batchSize, costFunction, workspace.getLayerBuffers(last));
+        backwardFromOutput(inputs, inputOffset, null, batchSize, workspace);
+    }
+
+    // Accumulate gradients of the final layer, then back propagate its error through the hidden layers
+    // The inputs are either dense rows or, when sparseInputs isn't null, index/value lists
+    private void backwardFromOutput(double[] inputs, int inputOffset, SparseRows sparseInputs, int batchSize, BatchWorkspace workspace) {
+
+        // Final layer
+        int last = layers.length - 1;
+        LayerBuffers buffers = workspace.getLayerBuffers(last);
+        if (last == 0) {
+            updateInputLayerGradients(inputs, inputOffset, sparseInputs, batchSize, buffers);
+        } else {
+            layers[last].updateGradientsBatch(workspace.getLayerBuffers(last - 1).getOutputs(), 0, batchSize, buffers);
+        }
+
+        // Hidden layers
+        for (int layer = last - 1; layer >= 0; layer--) {
+            buffers = workspace.getLayerBuffers(layer);
+            layers[layer].backwardBatch(layers[layer + 1], workspace.getLayerBuffers(layer + 1), batchSize, buffers);
+            if (layer == 0) {
+                updateInputLayerGradients(inputs, inputOffset, sparseInputs, batchSize, buffers);
+            } else {
+                layers[layer].updateGradientsBatch(workspace.getLayerBuffers(layer - 1).getOutputs(), 0, batchSize, buffers);
+            }
+        }
+    }
+
+    private void updateInputLayerGradients(double[] inputs, int inputOffset, SparseRows sparseInputs, int batchSize, LayerBuffers buffers) {
+        if (sparseInputs != null) {
+            layers[0].updateGradientsBatch(sparseInputs, buffers);
+        } else {
+            layers[0].updateGradientsBatch(inputs, inputOffset, batchSize, buffers);
+        }
+    }
+
+    // Create buffers for propagating batches of up to capacity data points
+    // Workspaces with their own gradients let several threads train on one batch at once
+    public BatchWorkspace createWorkspace(int capacity, boolean ownGradients) {
+        return new BatchWorkspace(layers, capacity, ownGradients);
+    }
+
+    // Create buffers for predicting batches of up to capacity points, without any training buffers
+    public BatchWorkspace createInferenceWorkspace(int capacity) {
+        return BatchWorkspace.forInference(layers, capacity);
+    }
+
+    // Add the gradients of the first count workspaces into the layers, in workspace order
+    // Nodes of each layer are split into numParts slices so slices can be reduced in parallel
+    public void addGradients(BatchWorkspace[] workspaces, int count, int part, int numParts) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            int outDim = layers[layer].getOutDim();
+            int fromNode = (int)((long)outDim * part / numParts);
+            int toNode = (int)((long)outDim * (part + 1) / numParts);
+            for (int i = 0; i < count; i++) {
+                layers[layer].addGradients(workspaces[i].getLayerBuffers(layer), fromNode, toNode);
+            }
+        }
+    }
+
+    private static void checkTraining(boolean training, BatchWorkspace workspace) {
+        if (training && !workspace.isForTraining()) {
+            throw new IllegalArgumentException("Cannot train with a workspace created for inference");
+        }
+    }
+
+    private BatchWorkspace getWorkspace(int batchSize) {
+        if (workspace == null) {
+            workspace = new BatchWorkspace(layers, batchSize);
+        }
+        workspace.ensureCapacity(batchSize);
+        return workspace;
+    }
+
+    // Create a session for predicting on one thread without allocating
+    public InferenceSession createSession() {
+        return new InferenceSession(this);
+    }
+
+    // Copy the weights and biases into an immutable inference-only graph
+    // Later training doesn't change the frozen network
+    public FrozenNetwork freeze() {
+        return new FrozenNetwork(this);
+    }
+
+    // Shared thread-safe predictor for this network
+    public Predictor getPredictor() {
+        Predictor result = predictor;
+        if (result == null) {
+            synchronized (this) {
+                if (predictor == null) {
+                    predictor = new Predictor(this);
+                }
+                result = predictor;
+            }
+        }
+        return result;
+    }
+
+    // Update all weights and biases with the optimizer; numUpdates counts the updates so far, including this one
+    public void updateWeightsAndBiases(int batchSize, int numUpdates) {
+        optimizer.startStep(numUpdates, batchSize);
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer].updateWeightsAndBiases(optimizer);
         }
     }
 
@@ -88,4 +366,93 @@ public class NeuralNetwork implements Serializable {
     public double getCost(double[] expectedOutputs, double[] calculatedOutputs) {
         return costFunction.cost(expectedOutputs, calculatedOutputs);
     }
+
+    // Convert every layer's weights and optimizer state to another precision
+    public void setPrecision(Precision precision) {
+        for (FeedForward_Layer layer : layers) {
+            layer.setPrecision(precision);
+        }
+    }
+
+    // Getters
+    public Precision getPrecision() {
+        return layers[0].getPrecision();
+    }
+
+    public int getInputSize() {
+        return layers[0].getInDim();
+    }
+
+    public int getOutputSize() {
+        return layers[layers.length - 1].getOutDim();
+    }
+
+    // Fraction of nonzero inputs up to which the first layer uses the sparse kernels; 0 turns them off
+    public double getSparseInputThreshold() {
+        return layers[0].getSparseInputThreshold();
+    }
+
+    public void setSparseInputThreshold(double sparseInputThreshold) {
+        layers[0].setSparseInputThreshold(sparseInputThreshold);
+    }
+
+    // Whether Sigmoid, Tanh, SiLU and Softmax layers activate with the approximations in FastMath,
+    // within 1e-10 of the exact functions; off by default and not saved with the model
+    public boolean isFastActivations() {
+        return layers[0].isFastActivations();
+    }
+
+    public void setFastActivations(boolean fastActivations) {
+        for (FeedForward_Layer layer : layers) {
+            layer.setFastActivations(fastActivations);
+        }
+    }
+
+    public CostFunction getCostFunction() {
+        return costFunction;
+    }
+
+    public double getLearningRate() {
+        return optimizer.getLearningRate();
+    }
+
+    public void setLearningRate(double learningRate) {
+        optimizer.setLearningRate(learningRate);
+    }
+
+    public double getDropoutRate() {
+        return dropoutRate;
+    }
+
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    // Switch optimizers; layers get fresh state when the new one keeps a different number of values per parameter
+    public void setOptimizer(Optimizer optimizer) {
+        this.optimizer = optimizer;
+        for (FeedForward_Layer layer : layers) {
+            layer.allocateOptimizerState(optimizer.getNumStateBuffers());
+        }
+    }
+
+    FeedForward_Layer[] getLayers() {
+        return layers;
+    }
+
+    // Networks saved before optimizers were separate carried ADAM's settings themselves
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+
+        layers = (FeedForward_Layer[])fields.get("layers", null);
+        costFunction = (CostFunction)fields.get("costFunction", null);
+        dropoutRate = fields.get("dropoutRate", 0.0);
+
+        if (fields.getObjectStreamClass().getField("optimizer") != null) {
+            optimizer = (Optimizer)fields.get("optimizer", null);
+        } else {
+            optimizer = new Adam(fields.get("learningRate", 0.0), fields.get("beta1", 0.0), fields.get("beta2", 0.0));
+        }
+        setSparseInputThreshold(DEFAULT_SPARSE_INPUT_THRESHOLD);
+    }
 }
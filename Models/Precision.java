@@ -0,0 +1,9 @@
+package Models;
+
+// Storage precision of a network's weights and optimizer state
+// Activations, gradients and sums are always kept in double precision, so with ADAM a FLOAT layer
+// takes 20 bytes per weight (float weight and moments, double gradient) against 32 for DOUBLE
+public enum Precision {
+    DOUBLE,
+    FLOAT
+}
@@ -0,0 +1,119 @@
+package Models;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Thread-safe predictions backed by a fixed pool of inference sessions
+// At most poolSize predictions run at once; further callers wait until a session is returned
+// Sessions are created on first need up to the pool size, then borrowed and returned without
+// allocating, so once the pool has warmed up, concurrent predictions allocate nothing
+public class Predictor {
+
+    private final NeuralNetwork model;
+
+    // Idle sessions; empty slots are null
+    private final AtomicReferenceArray<InferenceSession> idle;
+
+    // One permit per session, held while predicting
+    private final Semaphore permits;
+
+    // Sessions created so far, never more than the pool size
+    private final AtomicInteger numCreated = new AtomicInteger();
+
+    public Predictor(NeuralNetwork model) {
+        this(model, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    // poolSize is how many sessions are created at most, and so how many predictions run at once
+    public Predictor(NeuralNetwork model, int poolSize) {
+        this.model = model;
+        idle = new AtomicReferenceArray<>(Math.max(1, poolSize));
+        permits = new Semaphore(idle.length());
+    }
+
+    // Predict the outputs for one set of inputs into dest
+    public void predict(double[] inputs, double[] dest) {
+        InferenceSession session = borrow();
+        try {
+            session.predict(inputs, dest);
+        } finally {
+            release(session);
+        }
+    }
+
+    // Predict the outputs for one set of inputs given as count column indices and their values into dest
+    public void predict(int[] indices, double[] values, int count, double[] dest) {
+        InferenceSession session = borrow();
+        try {
+            double[] outputs = session.predict(indices, values, count);
+            System.arraycopy(outputs, 0, dest, 0, outputs.length);
+        } finally {
+            release(session);
+        }
+    }
+
+    // Predict batchSize rows of inputs into dest, batchSize rows of outputs
+    public void predictBatch(double[] inputs, int batchSize, double[] dest) {
+        InferenceSession session = borrow();
+        try {
+            double[] outputs = session.predictBatch(inputs, 0, batchSize);
+            System.arraycopy(outputs, 0, dest, 0, batchSize * model.getOutputSize());
+        } finally {
+            release(session);
+        }
+    }
+
+    // Predict the most likely label for one set of inputs
+    public int predictLabel(double[] inputs) {
+        InferenceSession session = borrow();
+        try {
+            return session.predictLabel(inputs);
+        } finally {
+            release(session);
+        }
+    }
+
+    // Wait for a permit, then take an idle session, or create one if the pool isn't full yet
+    // With a permit held, fewer than poolSize other callers hold sessions, so once all are created
+    // one is idle or about to be put back
+    private InferenceSession borrow() {
+        permits.acquireUninterruptibly();
+        int slots = idle.length();
+        int start = (int)(Thread.currentThread().getId() % slots);
+        while (true) {
+            for (int i = 0; i < slots; i++) {
+                InferenceSession session = idle.getAndSet((start + i) % slots, null);
+                if (session != null) {
+                    return session;
+                }
+            }
+            int created = numCreated.get();
+            if (created < slots && numCreated.compareAndSet(created, created + 1)) {
+                return new InferenceSession(model);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // Put a session back in an empty slot, which there always is for it, then free its permit
+    private void release(InferenceSession session) {
+        int slots = idle.length();
+        int start = (int)(Thread.currentThread().getId() % slots);
+        for (int i = 0; i < slots; i++) {
+            if (idle.compareAndSet((start + i) % slots, null, session)) {
+                break;
+            }
+        }
+        permits.release();
+    }
+
+    // Sessions created so far
+    int getNumSessions() {
+        return numCreated.get();
+    }
+
+    public NeuralNetwork getModel() {
+        return model;
+    }
+}
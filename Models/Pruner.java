@@ -0,0 +1,202 @@
+package Models;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import Data.Dataset;
+import Data.MNIST.IdxDataset;
+import Data.MNIST.MnistReader;
+
+// Pruning of trained networks, either of single weights or of whole hidden nodes
+//
+// Magnitude pruning zeroes the weights with the smallest magnitudes and keeps them at zero through later
+// training; layers left with at most 20% of their weights predict through sparse kernels that skip the zeros
+// Node pruning removes the hidden nodes with the smallest weights going in and out of them, shrinking
+// the layer and the next layer's inputs so the dense kernels do less work
+//
+// Pruning masks are saved with the model and in checkpoints, so pruned weights stay zero and keep using
+// the sparse kernels after loading or resuming
+public class Pruner {
+
+    // Prune a trained MNIST network, optionally fine-tune it, save it and compare it with the original on the test set
+    // Usage: Pruner <model file> <pruned model file> <MNIST directory> <weights|nodes> <fraction> [fine-tuning cycles] [epochs per cycle]
+    // Fine-tuning prunes in equal steps up to the fraction, training on the training set after each step
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.out.println("Usage: Pruner <model file> <pruned model file> <MNIST directory> <weights|nodes> <fraction> [fine-tuning cycles] [epochs per cycle]");
+            return;
+        }
+        NeuralNetwork model = NetworkSaver.loadNetwork(args[0]);
+        if (model == null) {
+            return;
+        }
+        boolean pruneNodes = args[3].equals("nodes");
+        double fraction = Double.parseDouble(args[4]);
+        int numCycles = (args.length > 5) ? Integer.parseInt(args[5]) : 0;
+        int epochsPerCycle = (args.length > 6) ? Integer.parseInt(args[6]) : 1;
+
+        NeuralNetwork pruned = copy(model);
+        if (numCycles > 0) {
+            IdxDataset trainData = MnistReader.openDataset(new File(args[2], "train-images.idx3-ubyte").getPath(),
+                    new File(args[2], "train-labels.idx1-ubyte").getPath(), 10);
+            ModelTrainer trainer = new ModelTrainer(pruned, null, false);
+            if (pruneNodes) {
+                trainer.pruneNodesAndFineTune(trainData, fraction, numCycles, epochsPerCycle, 50, 0.05);
+            } else {
+                trainer.pruneAndFineTune(trainData, fraction, numCycles, epochsPerCycle, 50, 0.05);
+            }
+        } else if (pruneNodes) {
+            pruneNodes(pruned, fraction);
+        } else {
+            pruneMagnitude(pruned, fraction);
+        }
+        NetworkSaver.saveNetwork(pruned, args[1], false);
+
+        IdxDataset testData = MnistReader.openDataset(new File(args[2], "t10k-images.idx3-ubyte").getPath(),
+                new File(args[2], "t10k-labels.idx1-ubyte").getPath(), 10);
+        System.out.println(compare(model, pruned, testData));
+    }
+
+    // Prune the sparsity fraction of the weights with the smallest magnitudes in every layer
+    public static void pruneMagnitude(NeuralNetwork model, double sparsity) {
+        for (FeedForward_Layer layer : model.getLayers()) {
+            layer.pruneMagnitude(sparsity);
+        }
+    }
+
+    // Remove the fraction of nodes of every hidden layer with the smallest product of the L2 norms of
+    // their incoming and outgoing weights, keeping at least one node per layer
+    // Sessions and predictors created before no longer match the network
+    public static void pruneNodes(NeuralNetwork model, double fraction) {
+        if (fraction < 0 || fraction >= 1) {
+            throw new IllegalArgumentException("Fraction of nodes pruned must be at least 0 and below 1, got " + fraction);
+        }
+        FeedForward_Layer[] layers = model.getLayers();
+        for (int layer = 0; layer < layers.length - 1; layer++) {
+            int outDim = layers[layer].getOutDim();
+            int numKept = Math.max(1, outDim - (int)Math.round(fraction * outDim));
+            if (numKept == outDim) continue;
+
+            double[] scores = nodeScores(layers[layer], layers[layer + 1]);
+            double[] sorted = scores.clone();
+            Arrays.sort(sorted);
+            double threshold = sorted[outDim - numKept];
+
+            // Nodes above the threshold are kept, then ones equal to it until there are enough
+            int numAbove = 0;
+            for (double score : scores) {
+                if (score > threshold) numAbove++;
+            }
+            int numEqual = numKept - numAbove;
+            int[] keep = new int[numKept];
+            int count = 0;
+            for (int node = 0; node < outDim; node++) {
+                if (scores[node] > threshold) {
+                    keep[count++] = node;
+                } else if (scores[node] == threshold && numEqual > 0) {
+                    keep[count++] = node;
+                    numEqual--;
+                }
+            }
+            model.keepNodes(layer, keep);
+        }
+    }
+
+    private static double[] nodeScores(FeedForward_Layer layer, FeedForward_Layer nextLayer) {
+        int inDim = layer.getInDim();
+        int outDim = layer.getOutDim();
+        double[] incoming = new double[outDim];
+        double[] outgoing = new double[outDim];
+        for (int node = 0; node < outDim; node++) {
+            for (int inNode = 0; inNode < inDim; inNode++) {
+                double weight = layer.getWeight(inNode, node);
+                incoming[node] += weight * weight;
+            }
+        }
+        for (int nextNode = 0; nextNode < nextLayer.getOutDim(); nextNode++) {
+            for (int node = 0; node < outDim; node++) {
+                double weight = nextLayer.getWeight(node, nextNode);
+                outgoing[node] += weight * weight;
+            }
+        }
+
+        double[] scores = new double[outDim];
+        for (int node = 0; node < outDim; node++) {
+            scores[node] = Math.sqrt(incoming[node] * outgoing[node]);
+        }
+        return scores;
+    }
+
+    // Copy of a network with the same weights and optimizer state, to prune while keeping the original
+    public static NeuralNetwork copy(NeuralNetwork model) {
+        NeuralNetwork copy = model.createEmptyCopy();
+        model.copyStateTo(copy);
+        copy.setSparseInputThreshold(model.getSparseInputThreshold());
+        copy.setFastActivations(model.isFastActivations());
+        return copy;
+    }
+
+    // Evaluate a network and its pruned version on the same data, one thread each
+    public static Comparison compare(NeuralNetwork original, NeuralNetwork pruned, Dataset testData) {
+        InferenceSession session = new InferenceSession(original, Evaluator.BATCH_SIZE);
+        double[] originalResult = Evaluator.evaluateTimed(testData, original.getOutputSize(), original::getCost, session::predictBatch);
+        InferenceSession prunedSession = new InferenceSession(pruned, Evaluator.BATCH_SIZE);
+        double[] prunedResult = Evaluator.evaluateTimed(testData, pruned.getOutputSize(), pruned::getCost, prunedSession::predictBatch);
+        return new Comparison(originalResult, prunedResult, original, pruned);
+    }
+
+    // Cost, accuracy, evaluation time and weight counts of a network and its pruned version
+    public static class Comparison {
+        public final double originalCost, originalAccuracy;
+        public final double prunedCost, prunedAccuracy;
+        public final long originalNanos, prunedNanos;
+        public final long originalWeights, prunedWeights;
+        public final long originalNonZeros, prunedNonZeros;
+
+        // original and pruned are {cost, accuracy, nanoseconds}
+        Comparison(double[] original, double[] pruned, NeuralNetwork originalModel, NeuralNetwork prunedModel) {
+            this.originalCost = original[0];
+            this.originalAccuracy = original[1];
+            this.originalNanos = (long)original[2];
+            this.prunedCost = pruned[0];
+            this.prunedAccuracy = pruned[1];
+            this.prunedNanos = (long)pruned[2];
+
+            long weights = 0, nonZeros = 0;
+            for (FeedForward_Layer layer : originalModel.getLayers()) {
+                weights += (long)layer.getOutDim() * layer.getInDim();
+                nonZeros += layer.getNumNonZeroWeights();
+            }
+            this.originalWeights = weights;
+            this.originalNonZeros = nonZeros;
+
+            weights = 0;
+            nonZeros = 0;
+            for (FeedForward_Layer layer : prunedModel.getLayers()) {
+                weights += (long)layer.getOutDim() * layer.getInDim();
+                nonZeros += layer.getNumNonZeroWeights();
+            }
+            this.prunedWeights = weights;
+            this.prunedNonZeros = nonZeros;
+        }
+
+        // Accuracy of the pruned network minus that of the original, in percentage points
+        public double getAccuracyDelta() {
+            return prunedAccuracy - originalAccuracy;
+        }
+
+        public double getSpeedup() {
+            return (double)originalNanos / Math.max(1, prunedNanos);
+        }
+
+        public String toString() {
+            return String.format("Original: cost %.5f | accuracy %.2f%% | %.1f ms | %d weights, %d nonzero%n"
+                    + "Pruned: cost %.5f | accuracy %.2f%% | %.1f ms | %d weights, %d nonzero%n"
+                    + "Accuracy delta: %+.2f%% | Speedup: %.2fx",
+                    originalCost, originalAccuracy, originalNanos / 1e6, originalWeights, originalNonZeros,
+                    prunedCost, prunedAccuracy, prunedNanos / 1e6, prunedWeights, prunedNonZeros,
+                    getAccuracyDelta(), getSpeedup());
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package Models;
+
+import ActivationFunctions.ActivationFunction;
+import Kernels.MatrixKernels;
+
+// One layer of a QuantizedNetwork, with 8-bit weights and inputs multiplied in 32-bit integers
+//
+// Weights are symmetric with one scale per node: weight = weights[j * inDim + i] * weightScales[j]
+// Inputs are unsigned with a zero point: input = inputScale * (q - inputZeroPoint), q in 0..255
+// With a calibrated range every row uses the stored scale and zero point; otherwise each row is
+// quantized over its own range as it comes in
+// The integer sums are scaled back to double before adding the biases and activating
+public class QuantizedLayer {
+
+    // Most inputs whose 255 * 127 products still add up within an int
+    public static final int MAX_IN_DIM = 65000;
+
+    private final int inDim;
+    private final int outDim;
+
+    // Weights laid out one row per node like FeedForward_Layer's weightBuffer
+    private final byte[] weights;
+    private final double[] weightScales;
+
+    // Sum of each node's quantized weights, to take the input zero point back out of the sums
+    private final int[] weightSums;
+
+    private final double[] biases;
+    private final ActivationFunction activation;
+
+    // Input quantization, only used when calibrated
+    private final boolean calibrated;
+    private final double inputScale;
+    private final int inputZeroPoint;
+
+    QuantizedLayer(int inDim, int outDim, byte[] weights, double[] weightScales, double[] biases, ActivationFunction activation,
+            boolean calibrated, double inputScale, int inputZeroPoint) {
+        if (inDim > MAX_IN_DIM) {
+            throw new IllegalArgumentException("Cannot quantize a layer with " + inDim + " inputs, the sums would overflow above " + MAX_IN_DIM);
+        }
+        this.inDim = inDim;
+        this.outDim = outDim;
+        this.weights = weights;
+        this.weightScales = weightScales;
+        this.biases = biases;
+        this.activation = activation;
+        this.calibrated = calibrated;
+        this.inputScale = inputScale;
+        this.inputZeroPoint = inputZeroPoint;
+
+        weightSums = new int[outDim];
+        for (int outNode = 0; outNode < outDim; outNode++) {
+            int sum = 0;
+            for (int inNode = 0; inNode < inDim; inNode++) {
+                sum += weights[outNode * inDim + inNode];
+            }
+            weightSums[outNode] = sum;
+        }
+    }
+
+    // Quantize a trained layer; without calibration inputMin and inputMax are ignored
+    static QuantizedLayer quantize(FeedForward_Layer layer, boolean calibrated, double inputMin, double inputMax) {
+        int inDim = layer.getInDim();
+        int outDim = layer.getOutDim();
+        byte[] weights = new byte[outDim * inDim];
+        double[] weightScales = new double[outDim];
+
+        // Each node's largest weight maps to 127
+        for (int outNode = 0; outNode < outDim; outNode++) {
+            double maxAbs = 0;
+            for (int inNode = 0; inNode < inDim; inNode++) {
+                maxAbs = Math.max(maxAbs, Math.abs(layer.getWeight(inNode, outNode)));
+            }
+            double scale = (maxAbs > 0) ? maxAbs / 127 : 1;
+            for (int inNode = 0; inNode < inDim; inNode++) {
+                long q = Math.round(layer.getWeight(inNode, outNode) / scale);
+                weights[outNode * inDim + inNode] = (byte)Math.max(-127, Math.min(127, q));
+            }
+            weightScales[outNode] = scale;
+        }
+
+        double inputScale = inputScale(inputMin, inputMax);
+        int inputZeroPoint = zeroPoint(inputMin, inputScale);
+        return new QuantizedLayer(inDim, outDim, weights, weightScales, layer.getBiases().clone(), layer.getActivation(),
+                calibrated, inputScale, inputZeroPoint);
+    }
+
+    // Feed batchSize rows of inputs through the layer
+    // Returns the outputs buffer, holding batchSize rows of outDim values
+    public double[] forwardBatch(double[] inputs, int inputOffset, int batchSize, Buffers buffers) {
+        buffers.ensureCapacity(batchSize);
+        quantizeInputs(inputs, inputOffset, batchSize, buffers);
+
+        // sums = quantized inputs * quantized weights^T
+        int[] sums = buffers.sums;
+        MatrixKernels.multiplyTransposed(buffers.inputs, 0, weights, sums, 0, batchSize, outDim, inDim);
+
+        // values = inputScale * weightScale * (sum - inputZeroPoint * weightSum) + bias
+        double[] outputs = buffers.outputs;
+        for (int row = 0; row < batchSize; row++) {
+            int offset = row * outDim;
+            double rowScale = buffers.rowScales[row];
+            int rowZeroPoint = buffers.rowZeroPoints[row];
+            for (int outNode = 0; outNode < outDim; outNode++) {
+                int sum = sums[offset + outNode] - rowZeroPoint * weightSums[outNode];
+                outputs[offset + outNode] = rowScale * weightScales[outNode] * sum + biases[outNode];
+            }
+        }
+
+        activation.fBatch(outputs, outputs, batchSize, outDim);
+        return outputs;
+    }
+
+    private void quantizeInputs(double[] inputs, int inputOffset, int batchSize, Buffers buffers) {
+        byte[] quantized = buffers.inputs;
+        for (int row = 0; row < batchSize; row++) {
+            int offset = inputOffset + row * inDim;
+            double scale = inputScale;
+            int zeroPoint = inputZeroPoint;
+            if (!calibrated) {
+                double min = 0, max = 0;
+                for (int i = offset; i < offset + inDim; i++) {
+                    min = Math.min(min, inputs[i]);
+                    max = Math.max(max, inputs[i]);
+                }
+                scale = inputScale(min, max);
+                zeroPoint = zeroPoint(min, scale);
+            }
+            buffers.rowScales[row] = scale;
+            buffers.rowZeroPoints[row] = zeroPoint;
+
+            // Values outside a calibrated range are clamped to it
+            double inverse = 1 / scale;
+            int dest = row * inDim;
+            for (int i = 0; i < inDim; i++) {
+                long q = Math.round(inputs[offset + i] * inverse) + zeroPoint;
+                quantized[dest + i] = (byte)Math.max(0, Math.min(255, q));
+            }
+        }
+    }
+
+    // The range always includes 0 so zero inputs stay exactly zero
+    private static double inputScale(double min, double max) {
+        double range = Math.max(max, 0) - Math.min(min, 0);
+        return (range > 0) ? range / 255 : 1;
+    }
+
+    private static int zeroPoint(double min, double scale) {
+        return (int)Math.max(0, Math.min(255, Math.round(-Math.min(min, 0) / scale)));
+    }
+
+    // Getters
+    public int getInDim() {
+        return inDim;
+    }
+
+    public int getOutDim() {
+        return outDim;
+    }
+
+    // Returns the backing weight array, laid out as weights[outNode * inDim + inNode]
+    public byte[] getWeights() {
+        return weights;
+    }
+
+    public double[] getWeightScales() {
+        return weightScales;
+    }
+
+    public double[] getBiases() {
+        return biases;
+    }
+
+    public ActivationFunction getActivation() {
+        return activation;
+    }
+
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+
+    public double getInputScale() {
+        return inputScale;
+    }
+
+    public int getInputZeroPoint() {
+        return inputZeroPoint;
+    }
+
+    // Quantized inputs, integer sums and outputs of one layer for a batch
+    public static class Buffers {
+
+        private final int inDim;
+        private final int outDim;
+        private int capacity;
+
+        byte[] inputs;
+        int[] sums;
+        double[] outputs;
+
+        // Scale and zero point each row of inputs was quantized with
+        double[] rowScales;
+        int[] rowZeroPoints;
+
+        public Buffers(int inDim, int outDim, int capacity) {
+            this.inDim = inDim;
+            this.outDim = outDim;
+            allocate(capacity);
+        }
+
+        // Grow the buffers if the batch doesn't fit
+        public void ensureCapacity(int batchSize) {
+            if (batchSize > capacity) {
+                allocate(batchSize);
+            }
+        }
+
+        private void allocate(int capacity) {
+            this.capacity = capacity;
+            inputs = new byte[capacity * inDim];
+            sums = new int[capacity * outDim];
+            outputs = new double[capacity * outDim];
+            rowScales = new double[capacity];
+            rowZeroPoints = new int[capacity];
+        }
+
+        public double[] getOutputs() {
+            return outputs;
+        }
+    }
+}
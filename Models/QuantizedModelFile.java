@@ -0,0 +1,164 @@
+package Models;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import ActivationFunctions.ActivationFunction;
+import CostFunctions.CostFunction;
+
+// Binary format for quantized networks, laid out like ModelFile: little endian, blocks on 8 byte boundaries
+//
+//   header     int magic ("NNQF"), int version, int layer count, int 0, string cost function class
+//   per layer  int inDim, int outDim, int calibrated (0 or 1), int input zero point, double input scale,
+//              string activation function class
+//   per layer  byte weights [outDim * inDim] in weights order, then double weight scales [outDim]
+//              and double biases [outDim]
+//   trailer    long CRC32 of every byte before it
+//
+// Strings are an int byte count followed by UTF-8 bytes
+public class QuantizedModelFile {
+
+    // "NNQF" when read as bytes
+    public static final int MAGIC_NUMBER = 0x46514E4E;
+    public static final int VERSION = 1;
+
+    public static void write(QuantizedNetwork network, String filePath) throws IOException {
+        QuantizedLayer[] layers = network.getLayers();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ModelFile.Writer out = new ModelFile.Writer(channel);
+
+            // Header
+            out.putInt(MAGIC_NUMBER);
+            out.putInt(VERSION);
+            out.putInt(layers.length);
+            out.putInt(0);
+            out.putString(network.getCostFunction().getClass().getName());
+            out.align();
+
+            for (QuantizedLayer layer : layers) {
+                out.putInt(layer.getInDim());
+                out.putInt(layer.getOutDim());
+                out.putInt(layer.isCalibrated() ? 1 : 0);
+                out.putInt(layer.getInputZeroPoint());
+                out.putDouble(layer.getInputScale());
+                out.putString(layer.getActivation().getClass().getName());
+                out.align();
+            }
+
+            // Weights, scales and biases
+            for (QuantizedLayer layer : layers) {
+                out.putBytes(layer.getWeights());
+                out.putDoubles(layer.getWeightScales());
+                out.putDoubles(layer.getBiases());
+            }
+
+            out.finish();
+        }
+    }
+
+    // Load a network saved with write
+    // Throws IOException if the file is not a quantized model file, is truncated or fails its checksum
+    public static QuantizedNetwork read(String filePath) throws IOException {
+        ByteBuffer in = ModelFile.readFile(filePath);
+        int fileSize = in.limit();
+        if (fileSize < 32 || in.getInt(0) != MAGIC_NUMBER) {
+            throw new IOException(filePath + " is not a quantized model file");
+        }
+        int version = in.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(filePath + " has unsupported quantized model format version " + version);
+        }
+
+        // Check the whole file before trusting any sizes in it
+        CRC32 crc = new CRC32();
+        ByteBuffer contents = in.duplicate();
+        contents.limit(fileSize - 8);
+        crc.update(contents);
+        if (crc.getValue() != in.getLong(fileSize - 8)) {
+            throw new IOException(filePath + " is corrupt: checksum mismatch");
+        }
+        in.limit(fileSize - 8);
+
+        try {
+            return parse(in, filePath);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(filePath + " is truncated");
+        }
+    }
+
+    private static QuantizedNetwork parse(ByteBuffer in, String filePath) throws IOException {
+
+        // Header
+        in.position(8);
+        int numLayers = in.getInt();
+        in.getInt();
+        CostFunction costFunction = ModelFile.newInstance(ModelFile.getString(in), CostFunction.class);
+        ModelFile.align(in);
+        if (numLayers <= 0) {
+            throw new IOException(filePath + " has no layers");
+        }
+
+        int[] inDims = new int[numLayers];
+        int[] outDims = new int[numLayers];
+        boolean[] calibrated = new boolean[numLayers];
+        int[] inputZeroPoints = new int[numLayers];
+        double[] inputScales = new double[numLayers];
+        ActivationFunction[] activations = new ActivationFunction[numLayers];
+        for (int layer = 0; layer < numLayers; layer++) {
+            inDims[layer] = in.getInt();
+            outDims[layer] = in.getInt();
+            calibrated[layer] = in.getInt() != 0;
+            inputZeroPoints[layer] = in.getInt();
+            inputScales[layer] = in.getDouble();
+            activations[layer] = ModelFile.newInstance(ModelFile.getString(in), ActivationFunction.class);
+            ModelFile.align(in);
+
+            if (inDims[layer] <= 0 || inDims[layer] > QuantizedLayer.MAX_IN_DIM || outDims[layer] <= 0
+                    || (layer > 0 && inDims[layer] != outDims[layer - 1])) {
+                throw new IOException(filePath + " has invalid dimensions for layer " + layer);
+            }
+            if (inputZeroPoints[layer] < 0 || inputZeroPoints[layer] > 255 || !(inputScales[layer] > 0)) {
+                throw new IOException(filePath + " has invalid input quantization for layer " + layer);
+            }
+        }
+
+        // Weights, scales and biases
+        QuantizedLayer[] layers = new QuantizedLayer[numLayers];
+        for (int layer = 0; layer < numLayers; layer++) {
+            if ((long)outDims[layer] * inDims[layer] > in.remaining()) {
+                throw new IOException(filePath + " is truncated");
+            }
+            byte[] weights = new byte[outDims[layer] * inDims[layer]];
+            in.get(weights);
+            ModelFile.align(in);
+            double[] weightScales = new double[outDims[layer]];
+            double[] biases = new double[outDims[layer]];
+            ModelFile.getDoubles(in, weightScales);
+            ModelFile.getDoubles(in, biases);
+
+            layers[layer] = new QuantizedLayer(inDims[layer], outDims[layer], weights, weightScales, biases, activations[layer],
+                    calibrated[layer], inputScales[layer], inputZeroPoints[layer]);
+        }
+
+        return new QuantizedNetwork(layers, costFunction);
+    }
+
+    // Check whether a file starts with the quantized model file magic number
+    public static boolean isQuantizedModelFile(String filePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC_NUMBER;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
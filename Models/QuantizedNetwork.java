@@ -0,0 +1,63 @@
+package Models;
+
+import CostFunctions.CostFunction;
+
+// Inference-only network with 8-bit weights, created from a trained NeuralNetwork by Quantizer
+// Weights take an eighth of the memory of a double network, and the layers multiply in 32-bit integers
+// The network never changes after it is created; predict through a QuantizedSession
+public class QuantizedNetwork {
+
+    private final QuantizedLayer[] layers;
+    private final CostFunction costFunction;
+
+    QuantizedNetwork(QuantizedLayer[] layers, CostFunction costFunction) {
+        this.layers = layers;
+        this.costFunction = costFunction;
+    }
+
+    // Create a session for predicting on one thread without allocating
+    public QuantizedSession createSession() {
+        return new QuantizedSession(this);
+    }
+
+    // Return the cost
+    public double getCost(double[] expectedOutputs, double[] calculatedOutputs) {
+        return costFunction.cost(expectedOutputs, calculatedOutputs);
+    }
+
+    // Bytes taken by the weights, scales and biases of every layer
+    public long getParameterBytes() {
+        long bytes = 0;
+        for (QuantizedLayer layer : layers) {
+            bytes += (long)layer.getOutDim() * layer.getInDim() + 16L * layer.getOutDim();
+        }
+        return bytes;
+    }
+
+    // Getters
+    public int getInputSize() {
+        return layers[0].getInDim();
+    }
+
+    public int getOutputSize() {
+        return layers[layers.length - 1].getOutDim();
+    }
+
+    public CostFunction getCostFunction() {
+        return costFunction;
+    }
+
+    // Whether every layer's input range was calibrated on sample data
+    public boolean isCalibrated() {
+        for (QuantizedLayer layer : layers) {
+            if (!layer.isCalibrated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    QuantizedLayer[] getLayers() {
+        return layers;
+    }
+}
@@ -0,0 +1,84 @@
+package Models;
+
+// Runs predictions on a quantized network with its own preallocated buffers
+// Any number of sessions can predict at once, but a single session must only be used by one thread at a time
+public class QuantizedSession {
+
+    private final QuantizedNetwork model;
+    private final QuantizedLayer.Buffers[] layerBuffers;
+    private int capacity;
+
+    // Output of the last single prediction
+    private final double[] output;
+
+    public QuantizedSession(QuantizedNetwork model) {
+        this(model, 1);
+    }
+
+    // capacity is the batch size the buffers are first sized for; they grow if needed
+    public QuantizedSession(QuantizedNetwork model, int capacity) {
+        this.model = model;
+        this.capacity = capacity;
+        QuantizedLayer[] layers = model.getLayers();
+        layerBuffers = new QuantizedLayer.Buffers[layers.length];
+        for (int layer = 0; layer < layers.length; layer++) {
+            layerBuffers[layer] = new QuantizedLayer.Buffers(layers[layer].getInDim(), layers[layer].getOutDim(), capacity);
+        }
+        output = new double[model.getOutputSize()];
+    }
+
+    // Predict the outputs for one set of inputs
+    // Returns a buffer owned by the session, overwritten by the next prediction
+    public double[] predict(double[] inputs) {
+        double[] outputs = predictBatch(inputs, 0, 1);
+        System.arraycopy(outputs, 0, output, 0, output.length);
+        return output;
+    }
+
+    // Predict the outputs for one set of inputs into dest
+    public void predict(double[] inputs, double[] dest) {
+        double[] outputs = predictBatch(inputs, 0, 1);
+        System.arraycopy(outputs, 0, dest, 0, output.length);
+    }
+
+    // Predict batchSize rows of inputs starting at inputOffset
+    // Returns a buffer owned by the session holding batchSize rows of outputs
+    public double[] predictBatch(double[] inputs, int inputOffset, int batchSize) {
+        ensureCapacity(batchSize);
+
+        QuantizedLayer[] layers = model.getLayers();
+        double[] layerInputs = inputs;
+        int layerOffset = inputOffset;
+        for (int layer = 0; layer < layers.length; layer++) {
+            layerInputs = layers[layer].forwardBatch(layerInputs, layerOffset, batchSize, layerBuffers[layer]);
+            layerOffset = 0;
+        }
+        return layerInputs;
+    }
+
+    // Predict the most likely label for one set of inputs
+    public int predictLabel(double[] inputs) {
+        double[] outputs = predict(inputs);
+        int label = 0;
+        for (int i = 1; i < outputs.length; i++) {
+            if (outputs[i] > outputs[label]) {
+                label = i;
+            }
+        }
+        return label;
+    }
+
+    // Grow every layer's buffers if the batch doesn't fit
+    private void ensureCapacity(int batchSize) {
+        if (batchSize <= capacity) return;
+
+        capacity = batchSize;
+        for (QuantizedLayer.Buffers buffers : layerBuffers) {
+            buffers.ensureCapacity(batchSize);
+        }
+    }
+
+    public QuantizedNetwork getModel() {
+        return model;
+    }
+}
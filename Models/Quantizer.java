@@ -0,0 +1,166 @@
+package Models;
+
+import java.io.File;
+import java.io.IOException;
+
+import Data.DataPoint;
+import Data.DataPointDataset;
+import Data.Dataset;
+import Data.MNIST.IdxDataset;
+import Data.MNIST.MnistReader;
+
+// Post-training quantization of networks to 8-bit weights
+// Each node's weights get their own scale from its largest weight. Layer inputs are quantized either
+// over a range calibrated by running sample data through the double network, or, without
+// calibration, over each row's own range at prediction time
+public class Quantizer {
+
+    // Rows predicted at once when calibrating
+    private static final int BATCH_SIZE = 256;
+
+    // Quantize a trained MNIST network, save it and compare it with the original on the test set
+    // Usage: Quantizer <model file> <quantized model file> <MNIST directory> [calibration samples]
+    // Calibration samples are spread over the training set; 0 quantizes inputs per row instead
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: Quantizer <model file> <quantized model file> <MNIST directory> [calibration samples]");
+            return;
+        }
+        NeuralNetwork model = NetworkSaver.loadNetwork(args[0]);
+        if (model == null) {
+            return;
+        }
+        int numSamples = (args.length > 3) ? Integer.parseInt(args[3]) : 1000;
+
+        QuantizedNetwork quantized;
+        if (numSamples > 0) {
+            IdxDataset trainData = MnistReader.openDataset(new File(args[2], "train-images.idx3-ubyte").getPath(),
+                    new File(args[2], "train-labels.idx1-ubyte").getPath(), 10);
+            quantized = quantize(model, trainData, numSamples);
+        } else {
+            quantized = quantize(model);
+        }
+        QuantizedModelFile.write(quantized, args[1]);
+
+        IdxDataset testData = MnistReader.openDataset(new File(args[2], "t10k-images.idx3-ubyte").getPath(),
+                new File(args[2], "t10k-labels.idx1-ubyte").getPath(), 10);
+        System.out.println(compare(model, quantized, testData));
+        System.out.println("Model file: " + new File(args[0]).length() + " bytes | Quantized model file: " + new File(args[1]).length() + " bytes");
+    }
+
+    // Quantize the weights, with every layer's inputs quantized per row at prediction time
+    public static QuantizedNetwork quantize(NeuralNetwork model) {
+        FeedForward_Layer[] layers = model.getLayers();
+        QuantizedLayer[] quantized = new QuantizedLayer[layers.length];
+        for (int layer = 0; layer < layers.length; layer++) {
+            quantized[layer] = QuantizedLayer.quantize(layers[layer], false, 0, 0);
+        }
+        return new QuantizedNetwork(quantized, model.getCostFunction());
+    }
+
+    public static QuantizedNetwork quantize(NeuralNetwork model, DataPoint[] calibrationData, int numSamples) {
+        return quantize(model, new DataPointDataset(calibrationData), numSamples);
+    }
+
+    // Quantize the weights and calibrate every layer's input range on numSamples points spread evenly
+    // over calibrationData, as the smallest range holding every value seen
+    public static QuantizedNetwork quantize(NeuralNetwork model, Dataset calibrationData, int numSamples) {
+        FeedForward_Layer[] layers = model.getLayers();
+        numSamples = Math.min(numSamples, calibrationData.size());
+        if (numSamples <= 0) {
+            throw new IllegalArgumentException("Calibration needs at least one sample");
+        }
+
+        // Input range of each layer; layer l's inputs are layer l - 1's outputs
+        double[] min = new double[layers.length];
+        double[] max = new double[layers.length];
+
+        int inputSize = model.getInputSize();
+        int batchSize = Math.min(BATCH_SIZE, numSamples);
+        BatchWorkspace workspace = model.createInferenceWorkspace(batchSize);
+        double[] inputs = new double[batchSize * inputSize];
+        for (int start = 0; start < numSamples; start += batchSize) {
+            int count = Math.min(batchSize, numSamples - start);
+            for (int row = 0; row < count; row++) {
+                int index = (int)((long)(start + row) * calibrationData.size() / numSamples);
+                calibrationData.copyInputsTo(index, inputs, row * inputSize);
+            }
+            model.forwardBatch(inputs, 0, count, false, workspace);
+
+            updateRange(inputs, count * inputSize, min, max, 0);
+            for (int layer = 1; layer < layers.length; layer++) {
+                double[] outputs = workspace.getLayerBuffers(layer - 1).getOutputs();
+                updateRange(outputs, count * layers[layer].getInDim(), min, max, layer);
+            }
+        }
+
+        QuantizedLayer[] quantized = new QuantizedLayer[layers.length];
+        for (int layer = 0; layer < layers.length; layer++) {
+            quantized[layer] = QuantizedLayer.quantize(layers[layer], true, min[layer], max[layer]);
+        }
+        return new QuantizedNetwork(quantized, model.getCostFunction());
+    }
+
+    private static void updateRange(double[] values, int length, double[] min, double[] max, int layer) {
+        for (int i = 0; i < length; i++) {
+            min[layer] = Math.min(min[layer], values[i]);
+            max[layer] = Math.max(max[layer], values[i]);
+        }
+    }
+
+    // Evaluate a quantized network on test data
+    // Returns array with 2 values: {cost, accuracy}, like ModelTrainer.evaluateModel
+    public static double[] evaluate(QuantizedNetwork model, Dataset testData) {
+        QuantizedSession session = new QuantizedSession(model, Evaluator.BATCH_SIZE);
+        return Evaluator.evaluate(testData, model.getOutputSize(), model::getCost, session::predictBatch);
+    }
+
+    // Evaluate the double network and its quantized version on the same data, one thread each
+    public static Comparison compare(NeuralNetwork model, QuantizedNetwork quantized, Dataset testData) {
+        InferenceSession session = new InferenceSession(model, Evaluator.BATCH_SIZE);
+        double[] original = Evaluator.evaluateTimed(testData, model.getOutputSize(), model::getCost, session::predictBatch);
+        QuantizedSession quantizedSession = new QuantizedSession(quantized, Evaluator.BATCH_SIZE);
+        double[] result = Evaluator.evaluateTimed(testData, quantized.getOutputSize(), quantized::getCost, quantizedSession::predictBatch);
+        return new Comparison(original, result, model, quantized);
+    }
+
+    // Cost, accuracy and evaluation time of a network and its quantized version
+    public static class Comparison {
+        public final double originalCost, originalAccuracy;
+        public final double quantizedCost, quantizedAccuracy;
+        public final long originalNanos, quantizedNanos;
+        public final long originalBytes, quantizedBytes;
+
+        // original and quantized are {cost, accuracy, nanoseconds}
+        Comparison(double[] original, double[] quantized, NeuralNetwork model, QuantizedNetwork quantizedModel) {
+            this.originalCost = original[0];
+            this.originalAccuracy = original[1];
+            this.originalNanos = (long)original[2];
+            this.quantizedCost = quantized[0];
+            this.quantizedAccuracy = quantized[1];
+            this.quantizedNanos = (long)quantized[2];
+
+            long bytes = 0;
+            int weightBytes = (model.getPrecision() == Precision.FLOAT) ? 4 : 8;
+            for (FeedForward_Layer layer : model.getLayers()) {
+                bytes += (long)layer.getOutDim() * layer.getInDim() * weightBytes + 8L * layer.getOutDim();
+            }
+            this.originalBytes = bytes;
+            this.quantizedBytes = quantizedModel.getParameterBytes();
+        }
+
+        // Accuracy of the quantized network minus that of the original, in percentage points
+        public double getAccuracyDelta() {
+            return quantizedAccuracy - originalAccuracy;
+        }
+
+        public String toString() {
+            return String.format("Original: cost %.5f | accuracy %.2f%% | %.1f ms | %d parameter bytes%n"
+                    + "Quantized: cost %.5f | accuracy %.2f%% | %.1f ms | %d parameter bytes%n"
+                    + "Accuracy delta: %+.2f%% | Speedup: %.2fx",
+                    originalCost, originalAccuracy, originalNanos / 1e6, originalBytes,
+                    quantizedCost, quantizedAccuracy, quantizedNanos / 1e6, quantizedBytes,
+                    getAccuracyDelta(), (double)originalNanos / Math.max(1, quantizedNanos));
+        }
+    }
+}
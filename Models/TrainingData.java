@@ -1,49 +1,86 @@
 package Models;
 
-import java.util.List;
-import java.util.ArrayList;
-
+// Cost and accuracy history of a training run, per epoch and per batch
+// The trainer adds to it while graphs read it on other threads: the series only grow, and the
+// number of epochs and batches are published after every series has its value, so readers
+// that go by getNumEpochs and getNumBatches see the same points in every series
 public class TrainingData {
     
     // Cost
-    private List<Double> trainingCost;
-    private List<Double> validationCost;
+    private DoubleSeries trainingCost;
+    private DoubleSeries validationCost;
 
     // Accuracy
     private boolean useAccuracy;
-    private List<Double> trainingAccuracy;
-    private List<Double> validationAccuracy;
+    private DoubleSeries trainingAccuracy;
+    private DoubleSeries validationAccuracy;
+
+    // Cost and accuracy of every training batch, per point
+    private DoubleSeries batchCost;
+    private DoubleSeries batchAccuracy;
+
+    // Batches per epoch and the number of batches trained before the first one in the series
+    private volatile int batchesPerEpoch;
+    private volatile int firstBatch;
+
+    private volatile int numEpochs;
+    private volatile int numBatches;
 
     public TrainingData(boolean useAccuracy) {
 
-        trainingCost = new ArrayList<Double>();
-        validationCost = new ArrayList<Double>();
+        trainingCost = new DoubleSeries();
+        validationCost = new DoubleSeries();
 
         this.useAccuracy = useAccuracy;
         if (useAccuracy) {
-            trainingAccuracy = new ArrayList<Double>();
-            validationAccuracy = new ArrayList<Double>();
+            trainingAccuracy = new DoubleSeries();
+            validationAccuracy = new DoubleSeries();
         }
+
+        batchCost = new DoubleSeries();
+        batchAccuracy = new DoubleSeries();
     }
 
     // Add data
     public void addEpochData(double trainingCost, double validationCost) {
         this.trainingCost.add(trainingCost);
         this.validationCost.add(validationCost);
+        numEpochs = this.trainingCost.size();
     }
 
     public void addEpochData(double trainingCost, double validationCost, double trainingAccuracy, double validationAccuracy) {
-        addEpochData(trainingCost, validationCost);
+        this.trainingCost.add(trainingCost);
+        this.validationCost.add(validationCost);
         this.trainingAccuracy.add(trainingAccuracy);
         this.validationAccuracy.add(validationAccuracy);
+        numEpochs = this.trainingCost.size();
+    }
+
+    // Set where the batch series starts, before adding batches; a run resumed part way through
+    // training starts its batch series at the batch it resumed from
+    public void startBatchData(int batchesPerEpoch, int firstBatch) {
+        this.batchesPerEpoch = batchesPerEpoch;
+        this.firstBatch = firstBatch;
+    }
+
+    public void addBatchData(double cost, double accuracy) {
+        batchCost.add(cost);
+        batchAccuracy.add(accuracy);
+        numBatches = batchCost.size();
+    }
+
+    // Position of a batch in the series on the epoch axis, where epoch point e is at e
+    // The last batch of the first epoch is at 1, where the epoch's evaluation is
+    public double getBatchPosition(int batch) {
+        return (double)(firstBatch + batch + 1) / batchesPerEpoch;
     }
 
     // Getters
-    public List<Double> getTrainingCost() {
+    public DoubleSeries getTrainingCost() {
         return trainingCost;
     }
 
-    public List<Double> getValidationCost() {
+    public DoubleSeries getValidationCost() {
         return validationCost;
     }
 
@@ -51,15 +88,31 @@ public class TrainingData {
         return useAccuracy;
     }
 
-    public List<Double> getTrainingAccuracy() {
+    public DoubleSeries getTrainingAccuracy() {
         return trainingAccuracy;
     }
 
-    public List<Double> getValidationAccuracy() {
+    public DoubleSeries getValidationAccuracy() {
         return validationAccuracy;
     }
 
+    public DoubleSeries getBatchCost() {
+        return batchCost;
+    }
+
+    public DoubleSeries getBatchAccuracy() {
+        return batchAccuracy;
+    }
+
     public int getNumEpochs() {
-        return trainingCost.size();
+        return numEpochs;
+    }
+
+    public int getNumBatches() {
+        return numBatches;
+    }
+
+    public int getBatchesPerEpoch() {
+        return batchesPerEpoch;
     }
 }
@@ -1,10 +1,15 @@
 package Models;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import java.awt.*;
 import java.awt.geom.*;
-import java.util.List;
 
+// Plots a TrainingData's cost and accuracy per epoch, and per batch underneath
+// Training never waits for the graph: a timer on the event thread checks for new points and
+// repaints at most once per refresh interval, and batch series are decimated to a few thousand
+// min/max buckets that are extended incrementally, so painting stays fast with millions of batches
 public class TrainingGraph extends JPanel {
 
     // Constants for graph labels
@@ -29,8 +34,27 @@ public class TrainingGraph extends JPanel {
     private static final Color VALIDATION_COST_COLOR = Color.BLUE;
     private static final Color TRAINING_ACCURACY_COLOR = Color.RED;
     private static final Color VALIDATION_ACCURACY_COLOR = Color.BLUE;
+    private static final Color BATCH_COST_COLOR = new Color(255, 0, 0, 80);
+    private static final Color BATCH_ACCURACY_COLOR = new Color(255, 0, 0, 80);
+
+    // Minimum spacing between epoch ticks and dots, and gap between labels, in pixels
+    private static final int MIN_TICK_SPACING = 4;
+    private static final int MIN_LABEL_GAP = 16;
+    private static final int MIN_DOT_SPACING = RADIUS * 4;
 
     private TrainingData trainingData;
+    private DecimatedSeries batchCost;
+    private DecimatedSeries batchAccuracy;
+
+    // Draw the per-batch series underneath the epoch series
+    private boolean showBatches = true;
+
+    // Checks for new points every refreshInterval milliseconds while the graph is showing
+    private final Timer refreshTimer = new Timer(250, e -> refreshIfChanged());
+
+    // Numbers of points the current paint draws, read once so every series shows the same points
+    private int numEpochs;
+    private int numBatches;
 
     @Override
     protected void paintComponent(Graphics g) {
@@ -43,6 +67,9 @@ public class TrainingGraph extends JPanel {
         int halfWidth = width / 2;
 
         if (trainingData == null) return;
+        numEpochs = trainingData.getNumEpochs();
+        numBatches = showBatches ? trainingData.getNumBatches() : 0;
+        if (numEpochs == 0) return;
 
         // Draw Cost Graph
         drawGraphBox(graph, 0, 0, halfWidth, height);
@@ -89,14 +116,19 @@ public class TrainingGraph extends JPanel {
     }
 
     private void drawTicks(Graphics2D graph, int xStart, int yStart, int width, int height, boolean isCost) {
-        int numEpochs = trainingData.getNumEpochs();
-        double horizontalScale = (numEpochs > 1) ? ((double) (width - 2 * MARGIN) / (numEpochs - 1)) : 0;
-
-        // Epoch ticks
-        for (int i = 0; i < numEpochs; i++) {
+        int numTicks = (int) getAxisLength() + 1;
+        double horizontalScale = getHorizontalScale(width);
+
+        // Epoch ticks, labelled only as often as the labels fit
+        int labelWidth = getFontMetrics(getFont()).stringWidth(Integer.toString(numTicks - 1)) + MIN_LABEL_GAP;
+        int tickStep = getEpochStep(MIN_TICK_SPACING, horizontalScale);
+        int labelStep = Math.max(tickStep, getEpochStep(labelWidth, horizontalScale));
+        for (int i = 0; i < numTicks; i += tickStep) {
             double x = xStart + MARGIN + i * horizontalScale;
             graph.drawLine((int) x, yStart + height - MARGIN - TICK_LENGTH / 2, (int) x, yStart + height - MARGIN + TICK_LENGTH / 2);
-            drawCenteredString(graph, Integer.toString(i), (int) x, yStart + height - MARGIN + MARGIN / 3 + getFontMetrics(getFont()).getAscent() / 2);
+            if (i % labelStep == 0) {
+                drawCenteredString(graph, Integer.toString(i), (int) x, yStart + height - MARGIN + MARGIN / 3 + getFontMetrics(getFont()).getAscent() / 2);
+            }
         }
 
         // Y axis ticks
@@ -107,6 +139,19 @@ public class TrainingGraph extends JPanel {
         }
     }
 
+    // Smallest step of 1, 2 or 5 times a power of 10 epochs that is at least minSpacing pixels wide
+    private static int getEpochStep(double minSpacing, double horizontalScale) {
+        int step = 1;
+        while (true) {
+            for (int multiple : new int[] { 1, 2, 5 }) {
+                if (step * multiple * horizontalScale >= minSpacing) {
+                    return step * multiple;
+                }
+            }
+            step *= 10;
+        }
+    }
+
     private void drawYAxisTicks(Graphics2D graph, int xStart, int yStart, int height, double xOffset, double labelInterval, double maxHeight, boolean isCost) {
         int numYLabels = (int) (maxHeight / labelInterval);
         double verticalScale = (double) (height - 2 * MARGIN) / maxHeight;
@@ -120,57 +165,130 @@ public class TrainingGraph extends JPanel {
     }
 
     private void drawCostPlot(Graphics2D graph, int xStart, int yStart, int width, int height) {
-        List<Double> trainingCost = trainingData.getTrainingCost();
-        List<Double> validationCost = trainingData.getValidationCost();
-        int numEpochs = trainingData.getNumEpochs();
-        double horizontalScale = (double) (width - 2 * MARGIN) / (numEpochs - 1);
+        double horizontalScale = getHorizontalScale(width);
         double costVerticalScale = (double) (height - 2 * MARGIN) / getMaxCost();
 
-        drawPlot(graph, trainingCost, TRAINING_COST_COLOR, xStart, yStart, width, height, horizontalScale, costVerticalScale);
-        drawPlot(graph, validationCost, VALIDATION_COST_COLOR, xStart, yStart, width, height, horizontalScale, costVerticalScale);
+        drawBatchPlot(graph, batchCost, BATCH_COST_COLOR, xStart, yStart, width, height, horizontalScale, costVerticalScale);
+        drawPlot(graph, trainingData.getTrainingCost(), TRAINING_COST_COLOR, xStart, yStart, width, height, horizontalScale, costVerticalScale);
+        drawPlot(graph, trainingData.getValidationCost(), VALIDATION_COST_COLOR, xStart, yStart, width, height, horizontalScale, costVerticalScale);
     }
 
     private void drawAccuracyPlot(Graphics2D graph, int xStart, int yStart, int width, int height) {
-        List<Double> trainingAccuracy = trainingData.getTrainingAccuracy();
-        List<Double> validationAccuracy = trainingData.getValidationAccuracy();
-        int numEpochs = trainingData.getNumEpochs();
-        double horizontalScale = (double) (width - 2 * MARGIN) / (numEpochs - 1);
+        double horizontalScale = getHorizontalScale(width);
         double accuracyVerticalScale = (double) (height - 2 * MARGIN) / 100;
 
-        drawPlot(graph, trainingAccuracy, TRAINING_ACCURACY_COLOR, xStart, yStart, width, height, horizontalScale, accuracyVerticalScale);
-        drawPlot(graph, validationAccuracy, VALIDATION_ACCURACY_COLOR, xStart, yStart, width, height, horizontalScale, accuracyVerticalScale);
+        drawBatchPlot(graph, batchAccuracy, BATCH_ACCURACY_COLOR, xStart, yStart, width, height, horizontalScale, accuracyVerticalScale);
+        drawPlot(graph, trainingData.getTrainingAccuracy(), TRAINING_ACCURACY_COLOR, xStart, yStart, width, height, horizontalScale, accuracyVerticalScale);
+        drawPlot(graph, trainingData.getValidationAccuracy(), VALIDATION_ACCURACY_COLOR, xStart, yStart, width, height, horizontalScale, accuracyVerticalScale);
     }
 
-    private void drawPlot(Graphics2D graph, List<Double> data, Color color, int xStart, int yStart, int width, int height, double horizontalScale, double verticalScale) {
-        // If no data, don't draw
-        if (data.size() == 0) return;
-        
-        // All points except the last one
+    // Draw an epoch series as one line, with a dot on every point while the dots don't overlap
+    private void drawPlot(Graphics2D graph, DoubleSeries data, Color color, int xStart, int yStart, int width, int height, double horizontalScale, double verticalScale) {
         graph.setPaint(color);
-        int numEpochs = trainingData.getNumEpochs();
-        for (int i = 0; i < numEpochs - 1; i++) {
-            double x1 = xStart + MARGIN + i * horizontalScale;
-            double y1 = yStart + height - MARGIN - data.get(i) * verticalScale;
-            double x2 = xStart + MARGIN + (i + 1) * horizontalScale;
-            double y2 = yStart + height - MARGIN - data.get(i + 1) * verticalScale;
-            graph.fill(new Ellipse2D.Double(x1 - RADIUS, y1 - RADIUS, RADIUS * 2, RADIUS * 2));
-            graph.draw(new Line2D.Double(x1, y1, x2, y2));
+        boolean drawDots = horizontalScale >= MIN_DOT_SPACING;
+        Path2D.Double line = new Path2D.Double();
+        for (int i = 0; i < numEpochs; i++) {
+            double x = xStart + MARGIN + i * horizontalScale;
+            double y = yStart + height - MARGIN - data.get(i) * verticalScale;
+            if (i == 0) {
+                line.moveTo(x, y);
+            } else {
+                line.lineTo(x, y);
+            }
+            if (drawDots || i == numEpochs - 1) {
+                graph.fill(new Ellipse2D.Double(x - RADIUS, y - RADIUS, RADIUS * 2, RADIUS * 2));
+            }
         }
-
-        // Final point
-        double x = xStart + MARGIN + (numEpochs - 1) * horizontalScale;
-        double y = yStart + height - MARGIN - data.get(numEpochs - 1) * verticalScale;
-        graph.fill(new Ellipse2D.Double(x - RADIUS, y - RADIUS, RADIUS * 2, RADIUS * 2));
+        graph.draw(line);
         graph.setPaint(Color.BLACK);
     }
 
+    // Draw a batch series clipped to the plot: as a line while there are fewer buckets than pixel columns,
+    // otherwise as one bar per pixel column from the column's lowest to highest value, stretched to
+    // meet the previous bar so the series stays connected
+    private void drawBatchPlot(Graphics2D graph, DecimatedSeries data, Color color, int xStart, int yStart, int width, int height, double horizontalScale, double verticalScale) {
+        if (numBatches == 0) return;
+        data.update(numBatches);
+        int numBuckets = data.getNumBuckets();
+
+        Graphics2D plot = (Graphics2D) graph.create();
+        plot.clipRect(xStart + MARGIN, yStart + MARGIN, width - 2 * MARGIN, height - 2 * MARGIN);
+        plot.setPaint(color);
+
+        if (numBuckets <= width - 2 * MARGIN) {
+            Path2D.Double path = new Path2D.Double();
+            for (int bucket = 0; bucket < numBuckets; bucket++) {
+                int middle = (data.getFirstIndex(bucket) + data.getLastIndex(bucket)) / 2;
+                double x = xStart + MARGIN + trainingData.getBatchPosition(middle) * horizontalScale;
+                double yMax = yStart + height - MARGIN - data.getMax(bucket) * verticalScale;
+                double yMin = yStart + height - MARGIN - data.getMin(bucket) * verticalScale;
+                if (bucket == 0) {
+                    path.moveTo(x, yMax);
+                } else {
+                    path.lineTo(x, yMax);
+                }
+                path.lineTo(x, yMin);
+            }
+            plot.draw(path);
+        } else {
+            plot.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            int column = Integer.MIN_VALUE;
+            double columnMin = 0;
+            double columnMax = 0;
+            double previousMin = Double.NaN;
+            double previousMax = Double.NaN;
+            for (int bucket = 0; bucket <= numBuckets; bucket++) {
+                int x = Integer.MAX_VALUE;
+                if (bucket < numBuckets) {
+                    int middle = (data.getFirstIndex(bucket) + data.getLastIndex(bucket)) / 2;
+                    x = (int) (xStart + MARGIN + trainingData.getBatchPosition(middle) * horizontalScale);
+                }
+
+                // Draw the finished column once the buckets move past it
+                if (x != column && column != Integer.MIN_VALUE) {
+                    double top = columnMax;
+                    double bottom = columnMin;
+                    if (!Double.isNaN(previousMin)) {
+                        top = Math.max(top, previousMin);
+                        bottom = Math.min(bottom, previousMax);
+                    }
+                    int yTop = (int) (yStart + height - MARGIN - top * verticalScale);
+                    int yBottom = (int) (yStart + height - MARGIN - bottom * verticalScale);
+                    plot.fillRect(column, yTop, 1, yBottom - yTop + 1);
+                    previousMin = columnMin;
+                    previousMax = columnMax;
+                }
+                if (bucket == numBuckets) break;
+
+                if (x != column) {
+                    column = x;
+                    columnMin = data.getMin(bucket);
+                    columnMax = data.getMax(bucket);
+                } else {
+                    columnMin = Math.min(columnMin, data.getMin(bucket));
+                    columnMax = Math.max(columnMax, data.getMax(bucket));
+                }
+            }
+        }
+        plot.dispose();
+    }
+
+    // Epochs the horizontal axis covers, at least 1; a batch series may run past the last epoch point
+    private double getAxisLength() {
+        double length = numEpochs - 1;
+        if (numBatches > 0) {
+            length = Math.max(length, trainingData.getBatchPosition(numBatches - 1));
+        }
+        return Math.max(1, length);
+    }
+
+    private double getHorizontalScale(int width) {
+        return (width - 2 * MARGIN) / getAxisLength();
+    }
+
+    // Batch costs are left out, so early spikes don't flatten the epoch plot; they are clipped instead
     private double getMaxCost() {
-        List<Double> trainingCost = trainingData.getTrainingCost();
-        List<Double> validationCost = trainingData.getValidationCost();
-        return Math.max(
-                trainingCost.stream().max(Double::compare).orElse(0.0),
-                validationCost.stream().max(Double::compare).orElse(0.0)
-        );
+        return Math.max(trainingData.getTrainingCost().max(numEpochs), trainingData.getValidationCost().max(numEpochs));
     }
 
     private void drawLegend(Graphics2D graph, int xStart, int yStart, int width, int legendMargin, boolean isCost) {
@@ -181,17 +299,22 @@ public class TrainingGraph extends JPanel {
         String[] labels;
         Color[] colors;
         if (isCost) {
-            labels = new String[] { "Training Cost", "Validation Cost" };
-            colors = new Color[] { TRAINING_COST_COLOR, VALIDATION_COST_COLOR };
+            labels = new String[] { "Training Cost", "Validation Cost", "Batch Cost" };
+            colors = new Color[] { TRAINING_COST_COLOR, VALIDATION_COST_COLOR, BATCH_COST_COLOR };
         } else {
-            labels = new String[] { "Training Accuracy", "Validation Accuracy" };
-            colors = new Color[] { TRAINING_ACCURACY_COLOR, VALIDATION_ACCURACY_COLOR };
+            labels = new String[] { "Training Accuracy", "Validation Accuracy", "Batch Accuracy" };
+            colors = new Color[] { TRAINING_ACCURACY_COLOR, VALIDATION_ACCURACY_COLOR, BATCH_ACCURACY_COLOR };
         }
+        int numItems = (numBatches > 0) ? 3 : 2;
 
         int boxHeight = 20;
         int boxMargin = 5;
-        int legendWidth = Math.max(metrics.stringWidth(labels[0]), metrics.stringWidth(labels[1])) + boxMargin * 3 + boxHeight;
-        int legendHeight = boxHeight * 2 + boxMargin * 3;
+        int labelWidth = 0;
+        for (int i = 0; i < numItems; i++) {
+            labelWidth = Math.max(labelWidth, metrics.stringWidth(labels[i]));
+        }
+        int legendWidth = labelWidth + boxMargin * 3 + boxHeight;
+        int legendHeight = boxHeight * numItems + boxMargin * (numItems + 1);
         int legendX = xStart + width - MARGIN - legendWidth - legendMargin;
         int legendY = yStart + MARGIN + legendMargin;
         
@@ -204,7 +327,7 @@ public class TrainingGraph extends JPanel {
 
         // Draw the legend items
         int itemY = legendY + boxMargin;
-        for (int i = 0; i < labels.length; i++) {
+        for (int i = 0; i < numItems; i++) {
             graph.setPaint(colors[i]);
             graph.fillRect(legendX + boxMargin, itemY, boxHeight, boxHeight);
             graph.setPaint(Color.BLACK);
@@ -230,8 +353,57 @@ public class TrainingGraph extends JPanel {
         graph.setTransform(transform);
     }
 
+    // Repaint if points were added since the last paint
+    private void refreshIfChanged() {
+        if (trainingData != null && (trainingData.getNumEpochs() != numEpochs || (showBatches && trainingData.getNumBatches() != numBatches))) {
+            repaint();
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    // Can be called from any thread; the graph's fields are only touched on the event thread
     public void setTrainingData(TrainingData trainingData) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> setTrainingData(trainingData));
+            return;
+        }
         this.trainingData = trainingData;
+        batchCost = new DecimatedSeries(trainingData.getBatchCost());
+        batchAccuracy = new DecimatedSeries(trainingData.getBatchAccuracy());
         repaint(); // Trigger a repaint when new data is set
     }
+
+    // Getters and setters
+    public TrainingData getTrainingData() {
+        return trainingData;
+    }
+
+    public boolean isShowBatches() {
+        return showBatches;
+    }
+
+    public void setShowBatches(boolean showBatches) {
+        this.showBatches = showBatches;
+        repaint();
+    }
+
+    public int getRefreshInterval() {
+        return refreshTimer.getDelay();
+    }
+
+    // Milliseconds between checks for new points, so at most this many repaints per second come from training
+    public void setRefreshInterval(int refreshInterval) {
+        refreshTimer.setDelay(refreshInterval);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package Optimizers;
+
+import Kernels.MatrixKernels;
+
+// ADAM, with lambda as decay outside the adaptive step:
+// w -= learningRate * (mHat / (sqrt(vHat) + epsilon) + lambda * w)
+// With setL2InMoments lambda * w is added to the gradient instead, so the moments scale it like the rest
+// The bias corrections are folded into the step size once per step:
+// w -= learningRate / (1 - beta1^t) * m / (sqrt(v) / sqrt(1 - beta2^t) + epsilon)
+public class Adam extends Optimizer {
+
+    // Serial ID
+    private static final long serialVersionUID = -2794517204473913588L;
+
+    protected double beta1; // First moment decay
+    protected double beta2; // Second moment decay
+    protected double epsilon; // Tiny value to avoid division by 0
+    protected boolean l2InMoments; // Add lambda * w to the gradient rather than decaying w after the step
+
+    // Constants of the current step
+    private transient double gradientScale;
+    private transient double stepSize;
+    private transient double inverseRootCorrection2;
+
+    public Adam() {
+        this(0.001, 0.9, 0.999);
+    }
+
+    public Adam(double learningRate, double beta1, double beta2) {
+        this(learningRate, beta1, beta2, 1e-8);
+    }
+
+    public Adam(double learningRate, double beta1, double beta2, double epsilon) {
+        super(learningRate);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    // First and second moments
+    public int getNumStateBuffers() {
+        return 2;
+    }
+
+    public void startStep(int step, int batchSize) {
+        gradientScale = 1.0 / batchSize;
+        stepSize = learningRate / (1 - Math.pow(beta1, step));
+        inverseRootCorrection2 = 1 / Math.sqrt(1 - Math.pow(beta2, step));
+    }
+
+    public void updateWeights(double[] weights, double[] gradients, double[][] state, int length, double lambda) {
+        MatrixKernels.adam(weights, state[0], state[1], gradients, length, gradientScale, l2InMoments ? lambda : 0,
+                beta1, beta2, stepSize, inverseRootCorrection2, epsilon, getDecayStep(lambda));
+    }
+
+    public void updateWeights(float[] weights, double[] gradients, float[][] state, int length, double lambda) {
+        MatrixKernels.adam(weights, state[0], state[1], gradients, length, gradientScale, l2InMoments ? lambda : 0,
+                beta1, beta2, stepSize, inverseRootCorrection2, epsilon, getDecayStep(lambda));
+    }
+
+    public void updateBiases(double[] biases, double[] gradients, double[][] state, int length) {
+        MatrixKernels.adam(biases, state[0], state[1], gradients, length, gradientScale, 0, beta1, beta2,
+                stepSize, inverseRootCorrection2, epsilon, 0);
+    }
+
+    // Fraction of every weight removed each step apart from the gradient, none for ADAM
+    protected double getWeightDecayStep() {
+        return 0;
+    }
+
+    // Fraction of every weight removed each step, including lambda unless it's in the moments
+    private double getDecayStep(double lambda) {
+        return getWeightDecayStep() + (l2InMoments ? 0 : learningRate * lambda);
+    }
+
+    // {learning rate, beta1, beta2, epsilon, 1 if lambda is in the moments else 0}
+    public double[] getHyperparameters() {
+        return new double[] { learningRate, beta1, beta2, epsilon, l2InMoments ? 1 : 0 };
+    }
+
+    public void setHyperparameters(double[] hyperparameters) {
+        learningRate = hyperparameters[0];
+        beta1 = hyperparameters[1];
+        beta2 = hyperparameters[2];
+        epsilon = hyperparameters[3];
+        l2InMoments = hyperparameters[4] != 0;
+    }
+
+    // Getters and setters
+    public double getBeta1() {
+        return beta1;
+    }
+
+    public void setBeta1(double beta1) {
+        this.beta1 = beta1;
+    }
+
+    public double getBeta2() {
+        return beta2;
+    }
+
+    public void setBeta2(double beta2) {
+        this.beta2 = beta2;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    public boolean isL2InMoments() {
+        return l2InMoments;
+    }
+
+    public void setL2InMoments(boolean l2InMoments) {
+        this.l2InMoments = l2InMoments;
+    }
+}
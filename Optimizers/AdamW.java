@@ -0,0 +1,48 @@
+package Optimizers;
+
+// ADAM with decoupled weight decay: after the ADAM step every weight also shrinks by
+// learningRate * weightDecay * w, independently of the gradient history
+// Biases aren't decayed
+public class AdamW extends Adam {
+
+    // Serial ID
+    private static final long serialVersionUID = 7342061837905515146L;
+
+    private double weightDecay;
+
+    public AdamW() {
+        this(0.001, 0.9, 0.999, 0.01);
+    }
+
+    public AdamW(double learningRate, double beta1, double beta2, double weightDecay) {
+        this(learningRate, beta1, beta2, 1e-8, weightDecay);
+    }
+
+    public AdamW(double learningRate, double beta1, double beta2, double epsilon, double weightDecay) {
+        super(learningRate, beta1, beta2, epsilon);
+        this.weightDecay = weightDecay;
+    }
+
+    protected double getWeightDecayStep() {
+        return learningRate * weightDecay;
+    }
+
+    // {learning rate, beta1, beta2, epsilon, 1 if lambda is in the moments else 0, weight decay}
+    public double[] getHyperparameters() {
+        return new double[] { learningRate, beta1, beta2, epsilon, l2InMoments ? 1 : 0, weightDecay };
+    }
+
+    public void setHyperparameters(double[] hyperparameters) {
+        super.setHyperparameters(hyperparameters);
+        weightDecay = hyperparameters[5];
+    }
+
+    // Getters and setters
+    public double getWeightDecay() {
+        return weightDecay;
+    }
+
+    public void setWeightDecay(double weightDecay) {
+        this.weightDecay = weightDecay;
+    }
+}
@@ -0,0 +1,81 @@
+package Optimizers;
+
+// Gradient descent with momentum:
+// velocity = momentum * velocity + gradient / batchSize + lambda * w, then w -= learningRate * velocity
+public class Momentum extends Optimizer {
+
+    // Serial ID
+    private static final long serialVersionUID = 5288149536029747203L;
+
+    private double momentum;
+
+    // One over the batch size, for the current step
+    private transient double gradientScale;
+
+    public Momentum() {
+        this(0.01, 0.9);
+    }
+
+    public Momentum(double learningRate, double momentum) {
+        super(learningRate);
+        this.momentum = momentum;
+    }
+
+    public int getNumStateBuffers() {
+        return 1;
+    }
+
+    public void startStep(int step, int batchSize) {
+        gradientScale = 1.0 / batchSize;
+    }
+
+    public void updateWeights(double[] weights, double[] gradients, double[][] state, int length, double lambda) {
+        double[] velocity = state[0];
+        for (int i = 0; i < length; i++) {
+            double v = momentum * velocity[i] + gradients[i] * gradientScale + lambda * weights[i];
+            velocity[i] = v;
+            weights[i] -= learningRate * v;
+            gradients[i] = 0;
+        }
+    }
+
+    public void updateWeights(float[] weights, double[] gradients, float[][] state, int length, double lambda) {
+        float[] velocity = state[0];
+        for (int i = 0; i < length; i++) {
+            double weight = weights[i];
+            double v = momentum * velocity[i] + gradients[i] * gradientScale + lambda * weight;
+            velocity[i] = (float)v;
+            weights[i] = (float)(weight - learningRate * v);
+            gradients[i] = 0;
+        }
+    }
+
+    public void updateBiases(double[] biases, double[] gradients, double[][] state, int length) {
+        double[] velocity = state[0];
+        for (int i = 0; i < length; i++) {
+            double v = momentum * velocity[i] + gradients[i] * gradientScale;
+            velocity[i] = v;
+            biases[i] -= learningRate * v;
+            gradients[i] = 0;
+        }
+    }
+
+    // {learning rate, momentum}
+    public double[] getHyperparameters() {
+        return new double[] { learningRate, momentum };
+    }
+
+    public void setHyperparameters(double[] hyperparameters) {
+        learningRate = hyperparameters[0];
+        momentum = hyperparameters[1];
+    }
+
+    // Getters and setters
+    public double getMomentum() {
+        return momentum;
+    }
+
+    public void setMomentum(double momentum) {
+        this.momentum = momentum;
+    }
+}
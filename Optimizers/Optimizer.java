@@ -0,0 +1,50 @@
+package Optimizers;
+
+import java.io.Serializable;
+
+// Updates parameters from the gradients summed over a mini batch
+// startStep is called once per update with everything that only depends on the step, then every
+// layer's weights and biases are updated in one pass each, which also clears their gradients
+// State such as momentum is kept by the layers, getNumStateBuffers values per parameter, in the
+// precision of the parameters
+public abstract class Optimizer implements Serializable {
+
+    // Serial ID
+    private static final long serialVersionUID = 3081729408262845165L;
+
+    protected double learningRate;
+
+    protected Optimizer(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    // Number of state values kept per parameter
+    public abstract int getNumStateBuffers();
+
+    // Compute the constants of update step number step (counting from 1) for batches of batchSize points
+    public abstract void startStep(int step, int batchSize);
+
+    // Update length weights with L2 regularization lambda, then clear their gradients
+    public abstract void updateWeights(double[] weights, double[] gradients, double[][] state, int length, double lambda);
+
+    // Same update for single precision weights and state, computed in double
+    public abstract void updateWeights(float[] weights, double[] gradients, float[][] state, int length, double lambda);
+
+    // Update length biases, which are never regularized, then clear their gradients
+    public abstract void updateBiases(double[] biases, double[] gradients, double[][] state, int length);
+
+    // Hyperparameters as an array, starting with the learning rate, for saving
+    // Every optimizer has a constructor without arguments so it can be created and given them back
+    public abstract double[] getHyperparameters();
+
+    public abstract void setHyperparameters(double[] hyperparameters);
+
+    // Getters and setters
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+}
@@ -0,0 +1,60 @@
+package Optimizers;
+
+// Plain stochastic gradient descent: w -= learningRate * (gradient / batchSize + lambda * w)
+public class SGD extends Optimizer {
+
+    // Serial ID
+    private static final long serialVersionUID = -4411739207632961520L;
+
+    // Learning rate over the batch size, for the current step
+    private transient double stepSize;
+
+    public SGD() {
+        this(0.01);
+    }
+
+    public SGD(double learningRate) {
+        super(learningRate);
+    }
+
+    public int getNumStateBuffers() {
+        return 0;
+    }
+
+    public void startStep(int step, int batchSize) {
+        stepSize = learningRate / batchSize;
+    }
+
+    public void updateWeights(double[] weights, double[] gradients, double[][] state, int length, double lambda) {
+        double decay = learningRate * lambda;
+        for (int i = 0; i < length; i++) {
+            weights[i] = weights[i] - (stepSize * gradients[i] + decay * weights[i]);
+            gradients[i] = 0;
+        }
+    }
+
+    public void updateWeights(float[] weights, double[] gradients, float[][] state, int length, double lambda) {
+        double decay = learningRate * lambda;
+        for (int i = 0; i < length; i++) {
+            double weight = weights[i];
+            weights[i] = (float)(weight - (stepSize * gradients[i] + decay * weight));
+            gradients[i] = 0;
+        }
+    }
+
+    public void updateBiases(double[] biases, double[] gradients, double[][] state, int length) {
+        for (int i = 0; i < length; i++) {
+            biases[i] -= stepSize * gradients[i];
+            gradients[i] = 0;
+        }
+    }
+
+    // {learning rate}
+    public double[] getHyperparameters() {
+        return new double[] { learningRate };
+    }
+
+    public void setHyperparameters(double[] hyperparameters) {
+        learningRate = hyperparameters[0];
+    }
+}
@@ -0,0 +1,229 @@
+package Serving;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import Metrics.PredictionMetrics;
+import Models.InferenceSession;
+import Models.NeuralNetwork;
+
+// Coalesces predictions from many threads into batches that go through one batched forward pass
+// A batch is flushed once it holds maxBatchSize requests, or maxDelayMicros after its first request
+// was queued, whichever comes first; with a delay of 0 a batch takes whatever queued up while the
+// previous one ran, so batches only grow under load
+// Callers block until their outputs are ready, parked rather than holding a platform thread busy,
+// which suits virtual threads
+public class MicroBatcher implements AutoCloseable {
+
+    private final NeuralNetwork model;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final PredictionMetrics metrics = new PredictionMetrics();
+
+    // Guards the queue and closed
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Request> queue = new ArrayDeque<>();
+    private boolean closed;
+
+    private final Thread[] workers;
+
+    // One prediction waiting for its batch
+    private static class Request {
+        final double[] inputs;
+        final double[] dest;
+        final Thread waiter = Thread.currentThread();
+        final long queuedNanos = System.nanoTime();
+        volatile boolean done;
+        Throwable failure;
+
+        Request(double[] inputs, double[] dest) {
+            this.inputs = inputs;
+            this.dest = dest;
+        }
+    }
+
+    public MicroBatcher(NeuralNetwork model, int maxBatchSize, long maxDelayMicros) {
+        this(model, maxBatchSize, maxDelayMicros, 1);
+    }
+
+    // numWorkers threads each run their own batches with their own inference session
+    public MicroBatcher(NeuralNetwork model, int maxBatchSize, long maxDelayMicros, int numWorkers) {
+        if (maxBatchSize < 1 || maxDelayMicros < 0 || numWorkers < 1) {
+            throw new IllegalArgumentException("Need a batch size and workers of at least 1 and a delay of at least 0, got "
+                    + maxBatchSize + ", " + numWorkers + " and " + maxDelayMicros);
+        }
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayMicros * 1000;
+
+        workers = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Thread(this::work, "micro-batcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // Predict the outputs for one set of inputs into dest, waiting for the batch it joins
+    // inputs must not change until this returns
+    public void predict(double[] inputs, double[] dest) {
+        if (inputs.length != model.getInputSize() || dest.length < model.getOutputSize()) {
+            throw new IllegalArgumentException("Expected " + model.getInputSize() + " inputs and room for " + model.getOutputSize()
+                    + " outputs, got " + inputs.length + " and " + dest.length);
+        }
+        Request request = new Request(inputs, dest);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Batcher is closed");
+            }
+            queue.addLast(request);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        // Interrupts don't abandon the request, since a worker may already be writing dest
+        boolean interrupted = false;
+        while (!request.done) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (request.failure instanceof RuntimeException) {
+            throw (RuntimeException)request.failure;
+        }
+        if (request.failure instanceof Error) {
+            throw (Error)request.failure;
+        }
+        if (request.failure != null) {
+            throw new IllegalStateException("Prediction failed", request.failure);
+        }
+    }
+
+    // Stop taking requests; queued requests are still predicted
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        int inputSize = model.getInputSize();
+        int outputSize = model.getOutputSize();
+        InferenceSession session = new InferenceSession(model, maxBatchSize);
+        double[] batchInputs = new double[maxBatchSize * inputSize];
+        Request[] batch = new Request[maxBatchSize];
+
+        while (true) {
+            int batchSize = takeBatch(batch);
+            if (batchSize == 0) {
+                return;
+            }
+
+            try {
+                for (int row = 0; row < batchSize; row++) {
+                    System.arraycopy(batch[row].inputs, 0, batchInputs, row * inputSize, inputSize);
+                }
+                double[] outputs = session.predictBatch(batchInputs, 0, batchSize);
+                for (int row = 0; row < batchSize; row++) {
+                    System.arraycopy(outputs, row * outputSize, batch[row].dest, 0, outputSize);
+                }
+                metrics.batchFinished(batchSize);
+            } catch (Throwable e) {
+                // Errors too, or their callers would wait forever; the worker goes on with the next batch
+                for (int row = 0; row < batchSize; row++) {
+                    batch[row].failure = e;
+                }
+                metrics.batchFailed(batchSize);
+            }
+
+            long now = System.nanoTime();
+            for (int row = 0; row < batchSize; row++) {
+                Request request = batch[row];
+                batch[row] = null;
+                metrics.recordLatency(now - request.queuedNanos);
+                request.done = true;
+                LockSupport.unpark(request.waiter);
+            }
+        }
+    }
+
+    // Wait for a batch to fill or its delay to pass and move it into batch
+    // Returns 0 once the batcher is closed and nothing is queued
+    private int takeBatch(Request[] batch) {
+        lock.lock();
+        try {
+            while (true) {
+                while (queue.isEmpty()) {
+                    if (closed) {
+                        return 0;
+                    }
+                    changed.awaitUninterruptibly();
+                }
+
+                // Wait for more requests until the first one has waited long enough
+                long deadline = queue.peekFirst().queuedNanos + maxDelayNanos;
+                while (queue.size() < maxBatchSize && !closed && !queue.isEmpty()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        changed.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+
+                // Another worker may have taken them meanwhile
+                int batchSize = Math.min(queue.size(), maxBatchSize);
+                if (batchSize == 0) {
+                    continue;
+                }
+                for (int i = 0; i < batchSize; i++) {
+                    batch[i] = queue.pollFirst();
+                }
+                if (!queue.isEmpty()) {
+                    changed.signalAll();
+                }
+                return batchSize;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Getters
+    public PredictionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public NeuralNetwork getModel() {
+        return model;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxDelayMicros() {
+        return maxDelayNanos / 1000;
+    }
+}
@@ -0,0 +1,341 @@
+package Serving;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import Metrics.PredictionMetrics;
+import Models.NetworkSaver;
+import Models.NeuralNetwork;
+
+// Embedded HTTP server for predictions, on the JDK's built-in server
+// Every exchange is handled on its own virtual thread where the JDK has them (21 and later), otherwise
+// on a cached pool of platform threads; concurrent requests are coalesced by a MicroBatcher
+//
+// POST /predict    inputs as text, numbers separated by commas or whitespace, optionally in [ ]
+//                  returns {"label":<most likely output>,"outputs":[...]}
+//                  with Content-Type application/octet-stream, inputs and outputs are big-endian doubles instead
+// GET  /metrics    throughput, latency and batch sizes as JSON, also registered with JMX
+// GET  /model      input and output sizes as JSON
+public class PredictionServer implements AutoCloseable {
+
+    private static final String BINARY_TYPE = "application/octet-stream";
+
+    // Longest close waits for requests in flight to finish
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private final MicroBatcher batcher;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int inputSize;
+    private final int outputSize;
+
+    // Guards numActive and closing; close waits on idle for the requests in flight
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private int numActive;
+    private boolean closing;
+
+    // Serve on localhost; port 0 picks a free port, see getPort
+    public PredictionServer(NeuralNetwork model, int port, int maxBatchSize, long maxDelayMicros) throws IOException {
+        this(model, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxBatchSize, maxDelayMicros);
+    }
+
+    public PredictionServer(NeuralNetwork model, InetSocketAddress address, int maxBatchSize, long maxDelayMicros) throws IOException {
+        inputSize = model.getInputSize();
+        outputSize = model.getOutputSize();
+        batcher = new MicroBatcher(model, maxBatchSize, maxDelayMicros);
+        executor = createExecutor();
+
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/predict", tracked(this::handlePredict));
+        server.createContext("/metrics", tracked(this::handleMetrics));
+        server.createContext("/model", tracked(this::handleModel));
+    }
+
+    // Serve a saved model until the process is stopped
+    // Usage: PredictionServer <model file> [port] [max batch size] [max delay in microseconds]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PredictionServer <model file> [port] [max batch size] [max delay in microseconds]");
+            return;
+        }
+        NeuralNetwork model = NetworkSaver.loadNetwork(args[0]);
+        if (model == null) {
+            return;
+        }
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 8080;
+        int maxBatchSize = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+        long maxDelayMicros = (args.length > 3) ? Long.parseLong(args[3]) : 200;
+
+        PredictionServer server = new PredictionServer(model, port, maxBatchSize, maxDelayMicros);
+        try {
+            server.getMetrics().registerMBean("port-" + server.getPort());
+        } catch (JMException e) {
+            System.out.println(e.getMessage());
+        }
+        server.start();
+        System.out.println("Serving " + args[0] + " on http://localhost:" + server.getPort() + "/predict");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Refuse new requests, finish the requests in flight and stop the server and the batcher
+    // Requests still running after STOP_DELAY_SECONDS have their connections closed
+    // The server's own stop delay isn't used, since on JDK 17 it waits out the whole delay
+    // whenever no exchange is running
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            long remaining = TimeUnit.SECONDS.toNanos(STOP_DELAY_SECONDS);
+            while (numActive > 0 && remaining > 0) {
+                remaining = idle.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        server.stop(0);
+        batcher.close();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            batcher.getMetrics().unregisterMBean();
+        } catch (JMException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // A virtual thread per task where available, found reflectively so the code still runs on older JDKs
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "prediction-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Count the requests a handler is running, and refuse new ones once closing
+    private HttpHandler tracked(HttpHandler handler) {
+        return exchange -> {
+            boolean refused;
+            lock.lock();
+            try {
+                refused = closing;
+                if (!refused) {
+                    numActive++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (refused) {
+                try {
+                    sendText(exchange, 503, "Server is closing");
+                } finally {
+                    exchange.close();
+                }
+                return;
+            }
+            try {
+                handler.handle(exchange);
+            } finally {
+                lock.lock();
+                try {
+                    if (--numActive == 0) {
+                        idle.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, 405, "Use POST");
+                return;
+            }
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            boolean binary = contentType != null && contentType.startsWith(BINARY_TYPE);
+            byte[] body = readBody(exchange.getRequestBody());
+
+            double[] inputs;
+            try {
+                inputs = binary ? parseBinary(body) : parseText(new String(body, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+
+            double[] outputs = new double[outputSize];
+            batcher.predict(inputs, outputs);
+
+            if (binary) {
+                ByteBuffer response = ByteBuffer.allocate(outputSize * Double.BYTES);
+                for (double output : outputs) {
+                    response.putDouble(output);
+                }
+                send(exchange, 200, BINARY_TYPE, response.array());
+            } else {
+                StringBuilder json = new StringBuilder("{\"label\":").append(getLabel(outputs)).append(",\"outputs\":[");
+                for (int i = 0; i < outputSize; i++) {
+                    if (i > 0) json.append(',');
+                    json.append(outputs[i]);
+                }
+                json.append("]}");
+                sendJson(exchange, 200, json.toString());
+            }
+        } catch (RuntimeException e) {
+            sendText(exchange, 500, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            PredictionMetrics metrics = batcher.getMetrics();
+            String json = String.format(Locale.ROOT,
+                    "{\"requests\":%d,\"failed_requests\":%d,\"batches\":%d,\"requests_per_sec\":%.3f,\"mean_batch_size\":%.3f,"
+                    + "\"latency_mean_ms\":%.4f,\"latency_p50_ms\":%.4f,\"latency_p99_ms\":%.4f,\"latency_max_ms\":%.4f}",
+                    metrics.getRequests(), metrics.getFailedRequests(), metrics.getBatches(), metrics.getRequestsPerSecond(),
+                    metrics.getMeanBatchSize(), metrics.getLatencyMeanMillis(), metrics.getLatencyP50Millis(),
+                    metrics.getLatencyP99Millis(), metrics.getLatencyMaxMillis());
+            sendJson(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleModel(HttpExchange exchange) throws IOException {
+        try {
+            sendJson(exchange, 200, "{\"input_size\":" + inputSize + ",\"output_size\":" + outputSize
+                    + ",\"max_batch_size\":" + batcher.getMaxBatchSize() + ",\"max_delay_us\":" + batcher.getMaxDelayMicros() + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Numbers separated by commas, whitespace or brackets
+    private double[] parseText(String body) {
+        String[] tokens = body.trim().split("[\\s,\\[\\]]+");
+        double[] inputs = new double[inputSize];
+        int count = 0;
+        for (String token : tokens) {
+            if (token.isEmpty()) continue;
+            if (count == inputSize) {
+                throw new IllegalArgumentException("Expected " + inputSize + " inputs, got more");
+            }
+            try {
+                inputs[count++] = Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + token);
+            }
+        }
+        if (count != inputSize) {
+            throw new IllegalArgumentException("Expected " + inputSize + " inputs, got " + count);
+        }
+        return inputs;
+    }
+
+    private double[] parseBinary(byte[] body) {
+        if (body.length != inputSize * Double.BYTES) {
+            throw new IllegalArgumentException("Expected " + inputSize * Double.BYTES + " bytes of inputs, got " + body.length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        double[] inputs = new double[inputSize];
+        for (int i = 0; i < inputSize; i++) {
+            inputs[i] = buffer.getDouble();
+        }
+        return inputs;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Index of the highest output
+    private static int getLabel(double[] outputs) {
+        int label = 0;
+        for (int i = 1; i < outputs.length; i++) {
+            if (outputs[i] > outputs[label]) {
+                label = i;
+            }
+        }
+        return label;
+    }
+
+    // Getters
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public PredictionMetrics getMetrics() {
+        return batcher.getMetrics();
+    }
+
+    public MicroBatcher getBatcher() {
+        return batcher;
+    }
+
+    // Number of requests being handled
+    int getNumActive() {
+        lock.lock();
+        try {
+            return numActive;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ActivationFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The approximations in FastMath and the fast activation kernels built on them, checked against the exact
+// functions to the bounds FastMath documents
+public class FastMathTest {
+
+    private static final int ROWS = 10000;
+    private static final int LENGTH = 10;
+
+    // Sweeps past both ends of the range where exp is approximated, so the exact fallback is covered too
+    @Test
+    public void expWithinRelativeBound() {
+        double maxError = 0;
+        for (double x = -720; x <= 720; x += 0.000713) {
+            double exact = Math.exp(x);
+            if (exact > 0 && !Double.isInfinite(exact)) {
+                maxError = Math.max(maxError, Math.abs(FastMath.exp(x) - exact) / exact);
+            } else {
+                assertEquals(exact, FastMath.exp(x), "exp(" + x + ")");
+            }
+        }
+        assertTrue(maxError <= FastMath.MAX_EXP_RELATIVE_ERROR, "exp relative error " + maxError);
+        assertTrue(Double.isNaN(FastMath.exp(Double.NaN)));
+    }
+
+    @Test
+    public void functionsWithinBound() {
+        double sigmoidError = 0, tanhError = 0, siluError = 0;
+        for (double x = -720; x <= 720; x += 0.000713) {
+            sigmoidError = Math.max(sigmoidError, Math.abs(FastMath.sigmoid(x) - 1 / (1 + Math.exp(-x))));
+            tanhError = Math.max(tanhError, Math.abs(FastMath.tanh(x) - Math.tanh(x)));
+            siluError = Math.max(siluError, Math.abs(FastMath.silu(x) - x / (1 + Math.exp(-x))));
+        }
+        assertTrue(sigmoidError <= FastMath.MAX_ACTIVATION_ERROR, "sigmoid error " + sigmoidError);
+        assertTrue(tanhError <= FastMath.MAX_ACTIVATION_ERROR, "tanh error " + tanhError);
+        assertTrue(siluError <= FastMath.MAX_ACTIVATION_ERROR, "silu error " + siluError);
+    }
+
+    @Test
+    public void fastBatchesWithinBound() {
+        double[] values = randomValues();
+        double[] exact = new double[values.length];
+        double[] fast = new double[values.length];
+        for (ActivationFunction activation : activations()) {
+            activation.fBatch(values, exact, ROWS, LENGTH);
+            activation.fBatchFast(values, fast, ROWS, LENGTH);
+            assertWithinBound(exact, fast, activation.getClass().getSimpleName() + ".fBatchFast");
+        }
+    }
+
+    // Derivatives from the cached activations of the forward pass against evaluating the derivative again
+    @Test
+    public void derivativesFromOutputsWithinBound() {
+        double[] values = randomValues();
+        double[] outputs = new double[values.length];
+        double[] exact = new double[values.length];
+        double[] fromOutputs = new double[values.length];
+        for (ActivationFunction activation : activations()) {
+            activation.fBatch(values, outputs, ROWS, LENGTH);
+            activation.dfBatch(values, exact, ROWS, LENGTH);
+            activation.dfBatch(values, outputs, fromOutputs, ROWS, LENGTH);
+            assertWithinBound(exact, fromOutputs, activation.getClass().getSimpleName() + ".dfBatch");
+        }
+    }
+
+    private static ActivationFunction[] activations() {
+        return new ActivationFunction[] { new Sigmoid(), new Tanh(), new SiLU(), new Softmax() };
+    }
+
+    // Rows of a softmax sized like MNIST outputs, spread wide enough to saturate every activation
+    private static double[] randomValues() {
+        Random random = new Random(42);
+        double[] values = new double[ROWS * LENGTH];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 20;
+        }
+        return values;
+    }
+
+    private static void assertWithinBound(double[] expected, double[] actual, String name) {
+        double maxError = 0;
+        for (int i = 0; i < expected.length; i++) {
+            maxError = Math.max(maxError, Math.abs(actual[i] - expected[i]));
+        }
+        assertTrue(maxError <= FastMath.MAX_ACTIVATION_ERROR, name + " error " + maxError);
+    }
+}
@@ -0,0 +1,282 @@
+package Kernels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Checks the vector backend against the scalar loops on random inputs, with lengths that leave
+// tails after every vector width and offsets that aren't aligned
+// Elementwise and 8-bit kernels must match exactly; dot products may only differ by the rounding of
+// their different summation order
+public class KernelBackendTest {
+
+    private static final int[] LENGTHS = { 0, 1, 3, 7, 9, 15, 17, 31, 33, 63, 65, 127, 513, 787 };
+    private static final int MAX_OFFSET = 5;
+
+    private final KernelBackend scalar = new ScalarKernels();
+    private final KernelBackend vector = new VectorKernels();
+    private final Random random = new Random(42);
+
+    @Test
+    public void dotMatchesScalarWithinRounding() {
+        for (int length : LENGTHS) {
+            int aOffset = random.nextInt(MAX_OFFSET), bOffset = random.nextInt(MAX_OFFSET);
+            double[] a = randomDoubles(aOffset + length);
+            double[] b = randomDoubles(bOffset + length);
+            float[] bFloat = randomFloats(bOffset + length);
+
+            assertClose(scalar.dot(a, aOffset, b, bOffset, length), vector.dot(a, aOffset, b, bOffset, length),
+                    dotTolerance(a, aOffset, b, bOffset, length), "dot, length " + length);
+            assertClose(scalar.dot(a, aOffset, bFloat, bOffset, length), vector.dot(a, aOffset, bFloat, bOffset, length),
+                    dotTolerance(a, aOffset, toDoubles(bFloat), bOffset, length), "float dot, length " + length);
+        }
+    }
+
+    // dot4 has to sum each row exactly like dot in the same backend, so batched and single predictions agree
+    @Test
+    public void dot4MatchesDot() {
+        for (KernelBackend backend : new KernelBackend[] { scalar, vector }) {
+            for (int length : LENGTHS) {
+                int aOffset = random.nextInt(MAX_OFFSET), bOffset = random.nextInt(MAX_OFFSET);
+                int bStride = length + random.nextInt(3);
+                double[] a = randomDoubles(aOffset + length);
+                double[] b = randomDoubles(bOffset + 4 * bStride);
+                float[] bFloat = randomFloats(bOffset + 4 * bStride);
+                double[] c = new double[6];
+                double[] cFloat = new double[6];
+
+                backend.dot4(a, aOffset, b, bOffset, bStride, length, c, 1);
+                backend.dot4(a, aOffset, bFloat, bOffset, bStride, length, cFloat, 2);
+                for (int r = 0; r < 4; r++) {
+                    String message = backend.getName() + " row " + r + ", length " + length;
+                    assertEquals(backend.dot(a, aOffset, b, bOffset + r * bStride, length), c[1 + r], 0, "dot4 " + message);
+                    assertEquals(backend.dot(a, aOffset, bFloat, bOffset + r * bStride, length), cFloat[2 + r], 0, "float dot4 " + message);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dot4MatchesScalarWithinRounding() {
+        for (int length : LENGTHS) {
+            int bStride = length + 1;
+            double[] a = randomDoubles(length);
+            double[] b = randomDoubles(4 * bStride);
+            float[] bFloat = randomFloats(4 * bStride);
+            double[] expected = new double[4];
+            double[] actual = new double[4];
+            scalar.dot4(a, 0, b, 0, bStride, length, expected, 0);
+            vector.dot4(a, 0, b, 0, bStride, length, actual, 0);
+            for (int r = 0; r < 4; r++) {
+                assertClose(expected[r], actual[r], dotTolerance(a, 0, b, r * bStride, length), "dot4 row " + r + ", length " + length);
+            }
+
+            scalar.dot4(a, 0, bFloat, 0, bStride, length, expected, 0);
+            vector.dot4(a, 0, bFloat, 0, bStride, length, actual, 0);
+            for (int r = 0; r < 4; r++) {
+                assertClose(expected[r], actual[r], dotTolerance(a, 0, toDoubles(bFloat), r * bStride, length),
+                        "float dot4 row " + r + ", length " + length);
+            }
+        }
+    }
+
+    @Test
+    public void axpyMatchesScalarExactly() {
+        for (int length : LENGTHS) {
+            int xOffset = random.nextInt(MAX_OFFSET), yOffset = random.nextInt(MAX_OFFSET);
+            double alpha = random.nextGaussian();
+            double[] x = randomDoubles(xOffset + length);
+            float[] xFloat = randomFloats(xOffset + length);
+            double[] y = randomDoubles(yOffset + length + 2);
+
+            double[] expected = y.clone();
+            double[] actual = y.clone();
+            scalar.axpy(alpha, x, xOffset, expected, yOffset, length);
+            vector.axpy(alpha, x, xOffset, actual, yOffset, length);
+            assertArrayEquals(expected, actual, "axpy, length " + length);
+
+            expected = y.clone();
+            actual = y.clone();
+            scalar.axpy(alpha, xFloat, xOffset, expected, yOffset, length);
+            vector.axpy(alpha, xFloat, xOffset, actual, yOffset, length);
+            assertArrayEquals(expected, actual, "float axpy, length " + length);
+        }
+    }
+
+    @Test
+    public void axpy4MatchesScalarExactly() {
+        for (int length : LENGTHS) {
+            int xOffset = random.nextInt(MAX_OFFSET), yOffset = random.nextInt(MAX_OFFSET);
+            int xStride = length + random.nextInt(3);
+            double[] alphas = randomDoubles(4);
+            double[] x = randomDoubles(xOffset + 4 * xStride);
+            float[] xFloat = randomFloats(xOffset + 4 * xStride);
+            double[] y = randomDoubles(yOffset + length + 2);
+
+            double[] expected = y.clone();
+            double[] actual = y.clone();
+            scalar.axpy4(alphas[0], alphas[1], alphas[2], alphas[3], x, xOffset, xStride, expected, yOffset, length);
+            vector.axpy4(alphas[0], alphas[1], alphas[2], alphas[3], x, xOffset, xStride, actual, yOffset, length);
+            assertArrayEquals(expected, actual, "axpy4, length " + length);
+
+            expected = y.clone();
+            actual = y.clone();
+            scalar.axpy4(alphas[0], alphas[1], alphas[2], alphas[3], xFloat, xOffset, xStride, expected, yOffset, length);
+            vector.axpy4(alphas[0], alphas[1], alphas[2], alphas[3], xFloat, xOffset, xStride, actual, yOffset, length);
+            assertArrayEquals(expected, actual, "float axpy4, length " + length);
+        }
+    }
+
+    // axpy4 has to add the four rows in the order four axpy calls would
+    @Test
+    public void axpy4MatchesAxpy() {
+        for (KernelBackend backend : new KernelBackend[] { scalar, vector }) {
+            for (int length : LENGTHS) {
+                int xStride = length + 2;
+                double[] alphas = randomDoubles(4);
+                double[] x = randomDoubles(4 * xStride);
+                double[] y = randomDoubles(length);
+
+                double[] expected = y.clone();
+                double[] actual = y.clone();
+                for (int r = 0; r < 4; r++) {
+                    backend.axpy(alphas[r], x, r * xStride, expected, 0, length);
+                }
+                backend.axpy4(alphas[0], alphas[1], alphas[2], alphas[3], x, 0, xStride, actual, 0, length);
+                assertArrayEquals(expected, actual, backend.getName() + ", length " + length);
+            }
+        }
+    }
+
+    @Test
+    public void int8KernelsMatchScalarExactly() {
+        for (int length : LENGTHS) {
+            int aOffset = random.nextInt(MAX_OFFSET), bOffset = random.nextInt(MAX_OFFSET);
+            int bStride = length + random.nextInt(3);
+            byte[] a = randomBytes(aOffset + length);
+            byte[] b = randomBytes(bOffset + 4 * bStride);
+
+            assertEquals(scalar.dotInt8(a, aOffset, b, bOffset, length), vector.dotInt8(a, aOffset, b, bOffset, length),
+                    "dotInt8, length " + length);
+
+            int[] expected = new int[5];
+            int[] actual = new int[5];
+            scalar.dot4Int8(a, aOffset, b, bOffset, bStride, length, expected, 1);
+            vector.dot4Int8(a, aOffset, b, bOffset, bStride, length, actual, 1);
+            assertArrayEquals(expected, actual, "dot4Int8, length " + length);
+        }
+    }
+
+    // The largest sums the 8-bit kernels promise not to overflow
+    @Test
+    public void int8KernelsMatchAtExtremes() {
+        int length = 65000;
+        byte[] a = new byte[length];
+        byte[] b = new byte[length];
+        Arrays.fill(a, (byte)255);
+        Arrays.fill(b, (byte)127);
+        assertEquals(255 * 127 * length, scalar.dotInt8(a, 0, b, 0, length));
+        assertEquals(255 * 127 * length, vector.dotInt8(a, 0, b, 0, length));
+
+        Arrays.fill(b, (byte)-128);
+        assertEquals(scalar.dotInt8(a, 0, b, 0, length), vector.dotInt8(a, 0, b, 0, length));
+    }
+
+    @Test
+    public void adamMatchesScalarExactly() {
+        for (int length : LENGTHS) {
+            double[] weights = randomDoubles(length);
+            double[] m = randomDoubles(length);
+            double[] v = randomPositive(length);
+            double[] gradients = randomDoubles(length);
+            for (double decay : new double[] { 0, 1e-4 }) {
+                double[] expectedW = weights.clone(), expectedM = m.clone(), expectedV = v.clone(), expectedG = gradients.clone();
+                double[] actualW = weights.clone(), actualM = m.clone(), actualV = v.clone(), actualG = gradients.clone();
+                scalar.adam(expectedW, expectedM, expectedV, expectedG, length, 0.02, 1e-3, 0.9, 0.999, 1e-3, 1.3, 1e-8, decay);
+                vector.adam(actualW, actualM, actualV, actualG, length, 0.02, 1e-3, 0.9, 0.999, 1e-3, 1.3, 1e-8, decay);
+                assertArrayEquals(expectedW, actualW, "adam weights, length " + length);
+                assertArrayEquals(expectedM, actualM, "adam m, length " + length);
+                assertArrayEquals(expectedV, actualV, "adam v, length " + length);
+                assertArrayEquals(expectedG, actualG, "adam gradients, length " + length);
+            }
+        }
+    }
+
+    @Test
+    public void floatAdamMatchesScalarExactly() {
+        for (int length : LENGTHS) {
+            float[] weights = randomFloats(length);
+            float[] m = randomFloats(length);
+            float[] v = toFloats(randomPositive(length));
+            double[] gradients = randomDoubles(length);
+            float[] expectedW = weights.clone(), expectedM = m.clone(), expectedV = v.clone();
+            float[] actualW = weights.clone(), actualM = m.clone(), actualV = v.clone();
+            double[] expectedG = gradients.clone(), actualG = gradients.clone();
+            scalar.adam(expectedW, expectedM, expectedV, expectedG, length, 0.02, 1e-3, 0.9, 0.999, 1e-3, 1.3, 1e-8, 1e-4);
+            vector.adam(actualW, actualM, actualV, actualG, length, 0.02, 1e-3, 0.9, 0.999, 1e-3, 1.3, 1e-8, 1e-4);
+            assertArrayEquals(expectedW, actualW, "float adam weights, length " + length);
+            assertArrayEquals(expectedM, actualM, "float adam m, length " + length);
+            assertArrayEquals(expectedV, actualV, "float adam v, length " + length);
+            assertArrayEquals(expectedG, actualG, "float adam gradients, length " + length);
+        }
+    }
+
+    // Reordering a sum of length products changes it by at most about length ulps of the sum of their magnitudes
+    private static double dotTolerance(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double magnitude = 0;
+        for (int i = 0; i < length; i++) {
+            magnitude += Math.abs(a[aOffset + i] * b[bOffset + i]);
+        }
+        return 2 * (length + 1) * Math.ulp(magnitude);
+    }
+
+    private static void assertClose(double expected, double actual, double tolerance, String message) {
+        assertTrue(Math.abs(expected - actual) <= tolerance,
+                message + ": expected " + expected + " but was " + actual + ", tolerance " + tolerance);
+    }
+
+    private double[] randomDoubles(int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = random.nextGaussian();
+        }
+        return array;
+    }
+
+    private double[] randomPositive(int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = random.nextDouble();
+        }
+        return array;
+    }
+
+    private float[] randomFloats(int length) {
+        return toFloats(randomDoubles(length));
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] array = new byte[length];
+        random.nextBytes(array);
+        return array;
+    }
+
+    private static float[] toFloats(double[] values) {
+        float[] array = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            array[i] = (float)values[i];
+        }
+        return array;
+    }
+
+    private static double[] toDoubles(float[] values) {
+        double[] array = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            array[i] = values[i];
+        }
+        return array;
+    }
+}
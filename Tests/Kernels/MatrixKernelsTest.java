@@ -0,0 +1,44 @@
+package Kernels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Checks the blocked matrix products against plain loops, with sizes that leave tails after the
+// four-row groups and the row blocks
+public class MatrixKernelsTest {
+
+    private final Random random = new Random(17);
+
+    // Unsigned inputs of 128 and above read as negative bytes, so a kernel that forgets to mask them
+    // gets every sum wrong
+    @Test
+    public void int8MultiplyMatchesReferenceForHighInputs() {
+        int m = 5, n = 39;
+        for (int k : new int[] { 1, 17, 300 }) {
+            int aOffset = 3, cOffset = 2;
+            byte[] a = new byte[aOffset + m * k];
+            for (int i = aOffset; i < a.length; i++) {
+                a[i] = (byte)(128 + random.nextInt(128));
+            }
+            byte[] b = new byte[n * k];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = (byte)(random.nextInt(256) - 128);
+            }
+
+            int[] c = new int[cOffset + m * n];
+            MatrixKernels.multiplyTransposed(a, aOffset, b, c, cOffset, m, n, k);
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < n; j++) {
+                    int expected = 0;
+                    for (int p = 0; p < k; p++) {
+                        expected += (a[aOffset + i * k + p] & 0xFF) * b[j * k + p];
+                    }
+                    assertEquals(expected, c[cOffset + i * n + j], "row " + i + ", column " + j + ", k " + k);
+                }
+            }
+        }
+    }
+}
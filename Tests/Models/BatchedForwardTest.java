@@ -0,0 +1,45 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Optimizers.Adam;
+
+// Predictions for a batch must be bit-identical to predicting each row on its own, in both precisions and
+// with dense or sparse inputs, since the batched kernels sum each row exactly like the single ones
+public class BatchedForwardTest {
+
+    private static final int BATCH_SIZE = 37;
+
+    @Test
+    public void batchedForwardMatchesPerSample() {
+        for (Precision precision : Precision.values()) {
+            for (double density : new double[] { 1, 0.1 }) {
+                Random random = new Random(42);
+                NeuralNetwork model = new NeuralNetwork(new int[] { 101, 67, 10 }, new LeakyReLU(), new Softmax(),
+                        new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0, precision);
+                double[] inputs = new double[BATCH_SIZE * 101];
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = (random.nextDouble() < density) ? random.nextGaussian() : 0;
+                }
+
+                double[] batched = model.forwardBatch(inputs, BATCH_SIZE, false).clone();
+                double[] sample = new double[101];
+                for (int row = 0; row < BATCH_SIZE; row++) {
+                    System.arraycopy(inputs, row * 101, sample, 0, 101);
+                    double[] outputs = model.forwardPropagate(sample, false);
+                    for (int i = 0; i < 10; i++) {
+                        assertEquals(outputs[i], batched[row * 10 + i], 0,
+                                precision + " density " + density + ", row " + row + ", output " + i);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Sigmoid;
+import CostFunctions.MeanSquaredError;
+import Optimizers.Adam;
+
+// One batched training step against the point-by-point path it replaced: backwardBatch and the batched
+// gradient kernels must accumulate bit-identical gradients to backPropagate on every sample, since both
+// add the rows in the same order with the same elementwise kernels, so the updates match exactly too
+public class BatchedTrainingTest {
+
+    private static final int[] SHAPE = { 101, 67, 10 };
+    private static final int BATCH_SIZE = 37;
+
+    @Test
+    public void batchedStepMatchesPointByPoint() {
+        for (Precision precision : Precision.values()) {
+            for (double density : new double[] { 1, 0.1 }) {
+                String message = precision + " density " + density;
+                Random random = new Random(42);
+                NeuralNetwork pointByPoint = new NeuralNetwork(SHAPE, new LeakyReLU(), new Sigmoid(),
+                        new MeanSquaredError(), new Adam(0.001, 0.9, 0.999), 0, precision);
+                for (FeedForward_Layer layer : pointByPoint.getLayers()) {
+                    layer.setLambda(1e-4);
+                }
+                NeuralNetwork batched = Pruner.copy(pointByPoint);
+
+                double[] inputs = new double[BATCH_SIZE * SHAPE[0]];
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = (random.nextDouble() < density) ? random.nextGaussian() : 0;
+                }
+                int outputSize = SHAPE[SHAPE.length - 1];
+                double[] expected = new double[BATCH_SIZE * outputSize];
+                for (int row = 0; row < BATCH_SIZE; row++) {
+                    expected[row * outputSize + random.nextInt(outputSize)] = 1;
+                }
+
+                double[] sample = new double[SHAPE[0]];
+                double[] expectedSample = new double[outputSize];
+                for (int row = 0; row < BATCH_SIZE; row++) {
+                    System.arraycopy(inputs, row * SHAPE[0], sample, 0, SHAPE[0]);
+                    System.arraycopy(expected, row * outputSize, expectedSample, 0, outputSize);
+                    pointByPoint.forwardPropagate(sample, true);
+                    pointByPoint.backPropagate(sample, expectedSample);
+                }
+                batched.forwardBatch(inputs, BATCH_SIZE, true);
+                batched.backwardBatch(inputs, expected, BATCH_SIZE);
+
+                FeedForward_Layer[] layers = pointByPoint.getLayers();
+                FeedForward_Layer[] batchedLayers = batched.getLayers();
+                for (int layer = 0; layer < layers.length; layer++) {
+                    assertArrayEquals(layers[layer].getGradientWBuffer(), batchedLayers[layer].getGradientWBuffer(),
+                            0, message + ", weight gradients of layer " + layer);
+                    assertArrayEquals(layers[layer].getGradientB(), batchedLayers[layer].getGradientB(),
+                            0, message + ", bias gradients of layer " + layer);
+                }
+
+                pointByPoint.updateWeightsAndBiases(BATCH_SIZE, 1);
+                batched.updateWeightsAndBiases(BATCH_SIZE, 1);
+                for (int layer = 0; layer < layers.length; layer++) {
+                    FeedForward_Layer a = layers[layer], b = batchedLayers[layer];
+                    for (int inNode = 0; inNode < a.getInDim(); inNode++) {
+                        for (int outNode = 0; outNode < a.getOutDim(); outNode++) {
+                            assertEquals(a.getWeight(inNode, outNode), b.getWeight(inNode, outNode), 0,
+                                    message + ", layer " + layer + " weight " + inNode + "->" + outNode);
+                        }
+                    }
+                    assertArrayEquals(a.getBiases(), b.getBiases(), 0, message + ", biases of layer " + layer);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void trainerUsesBatchedPathByDefault() {
+        NeuralNetwork model = new NeuralNetwork(SHAPE, new LeakyReLU(), new Sigmoid(),
+                new MeanSquaredError(), new Adam(0.001, 0.9, 0.999), 0);
+        assertTrue(new ModelTrainer(model, null, false).isBatchExecution());
+    }
+}
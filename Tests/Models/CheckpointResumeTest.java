@@ -0,0 +1,96 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Data.DataPoint;
+import Metrics.TrainingListener;
+import Metrics.TrainingMetrics;
+import Optimizers.Adam;
+
+// A run stopped part way and resumed from its last checkpoint must end with the same weights as one
+// that never stopped, in both execution modes; dropout masks are seeded from the run's seed and update
+public class CheckpointResumeTest {
+
+    private static final int[] SHAPE = { 20, 16, 3 };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void resumedBatchRunMatchesUninterruptedRun() throws IOException {
+        checkResume(true);
+    }
+
+    @Test
+    public void resumedPointByPointRunMatchesUninterruptedRun() throws IOException {
+        checkResume(false);
+    }
+
+    private void checkResume(boolean batchExecution) throws IOException {
+        DataPoint[] data = randomData(200, new Random(3));
+        NeuralNetwork uninterrupted = new NeuralNetwork(SHAPE, new LeakyReLU(), new Softmax(), new CrossEntropy(),
+                new Adam(0.01, 0.9, 0.999), 0.2);
+        NeuralNetwork interrupted = Pruner.copy(uninterrupted);
+        String checkpointFile = dir.resolve("run.fmnn").toString();
+
+        // 180 training points in batches of 20 give 9 updates per epoch; stop after update 14, which
+        // leaves the checkpoint taken after update 12, part way through the second epoch
+        ModelTrainer trainer = newTrainer(interrupted, batchExecution);
+        trainer.setCheckpointFile(checkpointFile);
+        trainer.setCheckpointInterval(4);
+        trainer.addTrainingListener(new TrainingListener() {
+            @Override
+            public void batchFinished(int epoch, int batch, TrainingMetrics metrics) {
+                if (epoch == 1 && batch == 4) {
+                    throw new IllegalStateException("stopped");
+                }
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> trainer.train(data, 20, 3, 0.1));
+
+        Checkpoint checkpoint = ModelFile.readCheckpoint(checkpointFile);
+        assertEquals(1, checkpoint.getEpoch());
+        assertEquals(3, checkpoint.getBatch());
+
+        NeuralNetwork resumed = Pruner.copy(uninterrupted);
+        newTrainer(resumed, batchExecution).resume(data, checkpointFile);
+        newTrainer(uninterrupted, batchExecution).train(data, 20, 3, 0.1);
+
+        FeedForward_Layer[] a = uninterrupted.getLayers(), b = resumed.getLayers();
+        for (int layer = 0; layer < a.length; layer++) {
+            assertArrayEquals(a[layer].getWeightBuffer(), b[layer].getWeightBuffer(), "weights of layer " + layer);
+            assertArrayEquals(a[layer].getBiases(), b[layer].getBiases(), "biases of layer " + layer);
+        }
+    }
+
+    private static ModelTrainer newTrainer(NeuralNetwork model, boolean batchExecution) {
+        ModelTrainer trainer = new ModelTrainer(model, null, false);
+        trainer.setSeed(11);
+        trainer.setBatchExecution(batchExecution);
+        return trainer;
+    }
+
+    private static DataPoint[] randomData(int size, Random random) {
+        DataPoint[] data = new DataPoint[size];
+        for (int i = 0; i < size; i++) {
+            double[] inputs = new double[SHAPE[0]];
+            for (int j = 0; j < inputs.length; j++) {
+                inputs[j] = random.nextGaussian();
+            }
+            double[] outputs = new double[SHAPE[SHAPE.length - 1]];
+            outputs[random.nextInt(outputs.length)] = 1;
+            data[i] = new DataPoint(inputs, outputs);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,110 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.ReLU;
+import ActivationFunctions.SiLU;
+import ActivationFunctions.Sigmoid;
+import ActivationFunctions.Softmax;
+import ActivationFunctions.Tanh;
+import CostFunctions.MeanSquaredError;
+import Optimizers.Adam;
+
+// The fused bias and activation loops of a frozen network must give what the training layers give,
+// for every activation they are specialized for, in fast mode, and with pruned and single precision weights
+// The one exception is exact tanh, which uses Math.tanh instead of Tanh's ratio of exponentials,
+// since that overflows past |x| = 709; the two differ by rounding
+public class FrozenNetworkTest {
+
+    private static final int[] SHAPE = { 24, 20, 12, 6 };
+    private static final int BATCH_SIZE = 9;
+
+    // A subclass isn't specialized, so it goes through its own fBatch
+    private static class ScaledTanh extends Tanh {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double f(double x) {
+            return 2 * Math.tanh(x);
+        }
+
+        @Override
+        public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+            for (int i = 0; i < batchSize * length; i++) {
+                dest[i] = f(x[i]);
+            }
+        }
+
+        @Override
+        public void fBatchFast(double[] x, double[] dest, int batchSize, int length) {
+            fBatch(x, dest, batchSize, length);
+        }
+    }
+
+    private static ActivationFunction[] activations() {
+        return new ActivationFunction[] { new ActivationFunction(), new ReLU(), new LeakyReLU(), new Sigmoid(), new Tanh(),
+                new SiLU(), new Softmax(), new ScaledTanh() };
+    }
+
+    @Test
+    public void frozenMatchesSessionForEveryActivation() {
+        for (ActivationFunction activation : activations()) {
+            for (boolean fast : new boolean[] { false, true }) {
+                NeuralNetwork network = newNetwork(activation, Precision.DOUBLE, new Random(1));
+                network.setFastActivations(fast);
+                double tolerance = (activation.getClass() == Tanh.class && !fast) ? 1e-15 : 0;
+                assertFrozenMatches(network, tolerance, activation.getClass().getSimpleName() + (fast ? ", fast" : ""));
+            }
+        }
+    }
+
+    @Test
+    public void frozenMatchesSessionForPrunedAndFloatLayers() {
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork network = newNetwork(new LeakyReLU(), precision, new Random(2));
+            assertFrozenMatches(network, 0, precision.toString());
+
+            // Pruned past the density where the sparse weight kernels take over
+            Pruner.pruneMagnitude(network, 0.9);
+            assertNotNull(network.getLayers()[0].getSparseWeights());
+            assertFrozenMatches(network, 0, precision + ", pruned");
+        }
+    }
+
+    private static void assertFrozenMatches(NeuralNetwork network, double tolerance, String name) {
+        Random random = new Random(3);
+        double[] inputs = new double[BATCH_SIZE * SHAPE[0]];
+        for (int i = 0; i < inputs.length; i++) {
+            // Some rows sparse enough for the sparse input kernels
+            boolean sparseRow = (i / SHAPE[0]) % 3 == 0;
+            inputs[i] = (sparseRow && random.nextInt(4) != 0) ? 0 : random.nextGaussian();
+        }
+        double[] expected = new InferenceSession(network, BATCH_SIZE).predictBatch(inputs, 0, BATCH_SIZE).clone();
+        double[] actual = network.freeze().createSession().predictBatch(inputs, 0, BATCH_SIZE);
+        assertArrayEquals(expected, Arrays.copyOf(actual, expected.length), tolerance, name);
+    }
+
+    private static NeuralNetwork newNetwork(ActivationFunction activation, Precision precision, Random random) {
+        NeuralNetwork network = new NeuralNetwork(SHAPE, activation, activation, new MeanSquaredError(),
+                new Adam(0.001, 0.9, 0.999), 0, precision);
+        for (FeedForward_Layer layer : network.getLayers()) {
+            for (int outNode = 0; outNode < layer.getOutDim(); outNode++) {
+                for (int inNode = 0; inNode < layer.getInDim(); inNode++) {
+                    layer.setWeight(inNode, outNode, random.nextGaussian() * Math.sqrt(2.0 / layer.getInDim()));
+                }
+            }
+            double[] biases = layer.getBiases();
+            for (int i = 0; i < biases.length; i++) {
+                biases[i] = random.nextGaussian() * 0.1;
+            }
+        }
+        return network;
+    }
+}
@@ -0,0 +1,108 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Sigmoid;
+import CostFunctions.MeanSquaredError;
+import Optimizers.AdamW;
+
+// A network written and read back must equal the original: shape, settings, weights, biases and,
+// when saved, the optimizer state
+public class ModelFileTest {
+
+    private static final int[] SHAPE = { 12, 9, 5 };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readGivesWrittenNetwork() throws IOException {
+        for (Precision precision : Precision.values()) {
+            NeuralNetwork network = trainedNetwork(precision);
+            String file = dir.resolve(precision + ".fmnn").toString();
+            ModelFile.write(network, file, true);
+            assertTrue(ModelFile.isModelFile(file));
+
+            NeuralNetwork read = ModelFile.read(file);
+            assertEquals(precision, read.getPrecision());
+            assertEquals(network.getDropoutRate(), read.getDropoutRate());
+            assertEquals(network.getCostFunction().getClass(), read.getCostFunction().getClass());
+            assertEquals(network.getOptimizer().getClass(), read.getOptimizer().getClass());
+            assertArrayEquals(network.getOptimizer().getHyperparameters(), read.getOptimizer().getHyperparameters());
+
+            FeedForward_Layer[] a = network.getLayers(), b = read.getLayers();
+            assertEquals(a.length, b.length);
+            for (int layer = 0; layer < a.length; layer++) {
+                String name = precision + " layer " + layer;
+                assertEquals(a[layer].getInDim(), b[layer].getInDim(), name);
+                assertEquals(a[layer].getOutDim(), b[layer].getOutDim(), name);
+                assertEquals(a[layer].getLambda(), b[layer].getLambda(), name);
+                assertEquals(a[layer].getActivation().getClass(), b[layer].getActivation().getClass(), name);
+                assertArrayEquals(a[layer].getWeightBuffer(), b[layer].getWeightBuffer(), name);
+                assertArrayEquals(a[layer].getFloatWeightBuffer(), b[layer].getFloatWeightBuffer(), name);
+                assertArrayEquals(a[layer].getBiases(), b[layer].getBiases(), name);
+                assertArrayEquals(a[layer].getWeightState(), b[layer].getWeightState(), name);
+                assertArrayEquals(a[layer].getFloatWeightState(), b[layer].getFloatWeightState(), name);
+                assertArrayEquals(a[layer].getBiasState(), b[layer].getBiasState(), name);
+            }
+        }
+    }
+
+    @Test
+    public void readWithoutOptimizerStateKeepsWeights() throws IOException {
+        NeuralNetwork network = trainedNetwork(Precision.DOUBLE);
+        String file = dir.resolve("weights.fmnn").toString();
+        ModelFile.write(network, file, false);
+
+        NeuralNetwork read = ModelFile.read(file);
+        FeedForward_Layer[] a = network.getLayers(), b = read.getLayers();
+        for (int layer = 0; layer < a.length; layer++) {
+            assertArrayEquals(a[layer].getWeightBuffer(), b[layer].getWeightBuffer(), "layer " + layer);
+            assertArrayEquals(a[layer].getBiases(), b[layer].getBiases(), "layer " + layer);
+        }
+    }
+
+    @Test
+    public void readRejectsCorruptFile() throws IOException {
+        String file = dir.resolve("corrupt.fmnn").toString();
+        ModelFile.write(trainedNetwork(Precision.DOUBLE), file, true);
+        byte[] bytes = Files.readAllBytes(Path.of(file));
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(Path.of(file), bytes);
+
+        assertThrows(IOException.class, () -> ModelFile.read(file));
+    }
+
+    // A network with a few optimizer steps behind it, so its weights and moments are all in use
+    private static NeuralNetwork trainedNetwork(Precision precision) {
+        NeuralNetwork network = new NeuralNetwork(SHAPE, new LeakyReLU(), new Sigmoid(), new MeanSquaredError(),
+                new AdamW(0.01, 0.9, 0.999, 0.01), 0.1, precision);
+        for (FeedForward_Layer layer : network.getLayers()) {
+            layer.setLambda(1e-4);
+        }
+        Random random = new Random(5);
+        double[] inputs = new double[4 * SHAPE[0]];
+        double[] expected = new double[4 * SHAPE[SHAPE.length - 1]];
+        for (int step = 1; step <= 3; step++) {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = random.nextGaussian();
+            }
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = random.nextDouble();
+            }
+            network.forwardBatch(inputs, 4, true);
+            network.backwardBatch(inputs, expected, 4);
+            network.updateWeightsAndBiases(4, step);
+        }
+        return network;
+    }
+}
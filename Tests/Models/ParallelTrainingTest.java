@@ -0,0 +1,61 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Data.DataPoint;
+import Optimizers.Adam;
+
+// Training split across threads must not depend on scheduling: dropout masks are seeded per chunk and
+// update, and chunk gradients are summed in chunk order, so the same seed gives the same weights
+public class ParallelTrainingTest {
+
+    private static final int[] SHAPE = { 30, 24, 4 };
+
+    @Test
+    public void sameSeedGivesSameWeights() {
+        DataPoint[] data = randomData(300, new Random(42));
+        NeuralNetwork first = new NeuralNetwork(SHAPE, new LeakyReLU(), new Softmax(), new CrossEntropy(),
+                new Adam(0.01, 0.9, 0.999), 0.2);
+        NeuralNetwork second = Pruner.copy(first);
+
+        for (int parallelism : new int[] { 2, 3, 4 }) {
+            train(first, data, parallelism);
+            train(second, data, parallelism);
+            FeedForward_Layer[] a = first.getLayers(), b = second.getLayers();
+            for (int layer = 0; layer < a.length; layer++) {
+                assertArrayEquals(a[layer].getWeightBuffer(), b[layer].getWeightBuffer(),
+                        "weights of layer " + layer + " with parallelism " + parallelism);
+                assertArrayEquals(a[layer].getBiases(), b[layer].getBiases(),
+                        "biases of layer " + layer + " with parallelism " + parallelism);
+            }
+        }
+    }
+
+    private static void train(NeuralNetwork model, DataPoint[] data, int parallelism) {
+        ModelTrainer trainer = new ModelTrainer(model, null, false);
+        trainer.setSeed(7);
+        trainer.setParallelism(parallelism);
+        trainer.train(data, 25, 2, 0.1);
+    }
+
+    private static DataPoint[] randomData(int size, Random random) {
+        DataPoint[] data = new DataPoint[size];
+        for (int i = 0; i < size; i++) {
+            double[] inputs = new double[SHAPE[0]];
+            for (int j = 0; j < inputs.length; j++) {
+                inputs[j] = random.nextGaussian();
+            }
+            double[] outputs = new double[SHAPE[SHAPE.length - 1]];
+            outputs[random.nextInt(outputs.length)] = 1;
+            data[i] = new DataPoint(inputs, outputs);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,76 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Optimizers.Adam;
+
+public class PredictorTest {
+
+    private static final int POOL_SIZE = 3;
+    private static final int NUM_THREADS = 16;
+    private static final int NUM_PREDICTIONS = 500;
+
+    // Many more callers than sessions: every prediction matches a session's own, and the pool never grows
+    @Test
+    public void concurrentPredictionsShareABoundedPool() throws Exception {
+        NeuralNetwork model = new NeuralNetwork(new int[] { 20, 16, 5 }, new LeakyReLU(), new Softmax(),
+                new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0);
+        Random random = new Random(42);
+        double[][] inputs = new double[NUM_PREDICTIONS][20];
+        double[][] expected = new double[NUM_PREDICTIONS][];
+        InferenceSession session = new InferenceSession(model);
+        for (int i = 0; i < NUM_PREDICTIONS; i++) {
+            for (int j = 0; j < 20; j++) {
+                inputs[i][j] = random.nextGaussian();
+            }
+            expected[i] = session.predict(inputs[i]).clone();
+        }
+
+        Predictor predictor = new Predictor(model, POOL_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < NUM_THREADS; thread++) {
+                int first = thread;
+                futures.add(executor.submit(() -> {
+                    double[] dest = new double[5];
+                    for (int i = first; i < NUM_PREDICTIONS; i += NUM_THREADS) {
+                        predictor.predict(inputs[i], dest);
+                        assertArrayEquals(expected[i], dest, "prediction " + i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(predictor.getNumSessions() <= POOL_SIZE, predictor.getNumSessions() + " sessions");
+    }
+
+    @Test
+    public void inferenceWorkspacesCannotTrain() {
+        NeuralNetwork model = new NeuralNetwork(new int[] { 4, 3 }, new LeakyReLU(), new Softmax(),
+                new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0);
+        BatchWorkspace workspace = model.createInferenceWorkspace(2);
+        assertNull(workspace.getLayerBuffers(0).getNodeError());
+        assertThrows(IllegalArgumentException.class, () -> model.forwardBatch(new double[8], 0, 2, true, workspace));
+        double[] inputs = { 1, -2, 3, -4 };
+        double[] expected = new InferenceSession(model).predict(inputs).clone();
+        assertArrayEquals(expected, Arrays.copyOf(model.forwardBatch(inputs, 0, 1, false, workspace), 3));
+    }
+}
@@ -0,0 +1,200 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Sigmoid;
+import CostFunctions.MeanSquaredError;
+import Optimizers.Adam;
+
+public class PruningTest {
+
+    private static final int[] SHAPE = { 16, 12, 8, 4 };
+
+    @TempDir
+    Path dir;
+
+    // Weights that became zero without being pruned tie with the pruned ones; the earlier mask must
+    // win the tie whatever the index order
+    @Test
+    public void pruneMagnitudeKeepsEarlierMask() {
+        FeedForward_Layer layer = newNetwork(Precision.DOUBLE, new Random(1)).getLayers()[0];
+        layer.pruneMagnitude(0.25);
+        int[] first = layer.getPrunedWeights().clone();
+        assertEquals(Math.round(0.25 * 16 * 12), first.length);
+
+        // Zero every unpruned weight before the last pruned one
+        int numZeroed = 0;
+        for (int i = 0; i < first[first.length - 1]; i++) {
+            if (Arrays.binarySearch(first, i) < 0) {
+                layer.setWeight(i % 16, i / 16, 0);
+                numZeroed++;
+            }
+        }
+        assertTrue(numZeroed > 0);
+
+        layer.pruneMagnitude(0.25);
+        assertArrayEquals(first, layer.getPrunedWeights());
+
+        layer.pruneMagnitude(0.5);
+        int[] second = layer.getPrunedWeights();
+        assertEquals(Math.round(0.5 * 16 * 12), second.length);
+        for (int i : first) {
+            assertTrue(Arrays.binarySearch(second, i) >= 0, "weight " + i + " left the mask");
+        }
+    }
+
+    @Test
+    public void prunedWeightsStayZeroAfterUpdates() {
+        for (Precision precision : Precision.values()) {
+            Random random = new Random(2);
+            NeuralNetwork network = newNetwork(precision, random);
+            Pruner.pruneMagnitude(network, 0.6);
+            FeedForward_Layer[] layers = network.getLayers();
+            double[][] before = new double[layers.length][];
+            for (int layer = 0; layer < layers.length; layer++) {
+                before[layer] = weights(layers[layer]);
+            }
+
+            train(network, random, 3);
+            for (int layer = 0; layer < layers.length; layer++) {
+                double[] after = weights(layers[layer]);
+                int[] pruned = layers[layer].getPrunedWeights();
+                int numChanged = 0;
+                for (int i = 0; i < after.length; i++) {
+                    if (Arrays.binarySearch(pruned, i) >= 0) {
+                        assertEquals(0, after[i], precision + " layer " + layer + " weight " + i);
+                    } else if (after[i] != before[layer][i]) {
+                        numChanged++;
+                    }
+                }
+                // Weights from a node with all its inputs pruned may not move, but the rest train
+                assertTrue(numChanged > (after.length - pruned.length) / 2, precision + " layer " + layer + " barely trained");
+            }
+        }
+    }
+
+    // Removing nodes whose outgoing weights are zero leaves the outputs unchanged
+    @Test
+    public void pruneNodesShrinksShapes() {
+        Random random = new Random(3);
+        NeuralNetwork network = newNetwork(Precision.DOUBLE, random);
+        FeedForward_Layer[] layers = network.getLayers();
+        for (int node : new int[] { 1, 4, 7, 10 }) {
+            for (int nextNode = 0; nextNode < layers[1].getOutDim(); nextNode++) {
+                layers[1].setWeight(node, nextNode, 0);
+            }
+        }
+        layers[0].pruneMagnitude(0.3);
+        double[] input = new double[SHAPE[0]];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextGaussian();
+        }
+        double[] expected = new InferenceSession(network).predict(input).clone();
+        double[][] oldWeights = { weights(layers[0]), weights(layers[1]) };
+        int[] oldMask = layers[0].getPrunedWeights().clone();
+
+        int[] keep = { 0, 2, 3, 5, 6, 8, 9, 11 };
+        network.keepNodes(0, keep);
+        assertEquals(keep.length, layers[0].getOutDim());
+        assertEquals(keep.length, layers[1].getInDim());
+        assertEquals(keep.length * SHAPE[0], layers[0].getWeightBuffer().length);
+        assertEquals(keep.length, layers[0].getBiases().length);
+        assertEquals(SHAPE[2] * keep.length, layers[1].getWeightBuffer().length);
+        for (int k = 0; k < keep.length; k++) {
+            for (int inNode = 0; inNode < SHAPE[0]; inNode++) {
+                int oldIndex = keep[k] * SHAPE[0] + inNode;
+                assertEquals(oldWeights[0][oldIndex], layers[0].getWeight(inNode, k));
+                assertEquals(Arrays.binarySearch(oldMask, oldIndex) >= 0,
+                        Arrays.binarySearch(layers[0].getPrunedWeights(), k * SHAPE[0] + inNode) >= 0);
+            }
+            for (int nextNode = 0; nextNode < SHAPE[2]; nextNode++) {
+                assertEquals(oldWeights[1][nextNode * SHAPE[1] + keep[k]], layers[1].getWeight(k, nextNode));
+            }
+        }
+        assertArrayEquals(expected, new InferenceSession(network).predict(input), 1e-12);
+
+        // Pruner picks the nodes itself and keeps at least one per layer
+        Pruner.pruneNodes(network, 0.5);
+        assertEquals(4, layers[0].getOutDim());
+        assertEquals(4, layers[1].getInDim());
+        assertEquals(4, layers[1].getOutDim());
+        assertEquals(4, layers[2].getInDim());
+        assertEquals(SHAPE[3], layers[2].getOutDim());
+        train(network, random, 1);
+    }
+
+    @Test
+    public void maskSurvivesModelFile() throws IOException {
+        Random random = new Random(4);
+        NeuralNetwork network = newNetwork(Precision.FLOAT, random);
+        Pruner.pruneMagnitude(network, 0.7);
+        train(network, random, 1);
+        String file = dir.resolve("pruned.fmnn").toString();
+        ModelFile.write(network, file, true);
+
+        NeuralNetwork read = ModelFile.read(file);
+        FeedForward_Layer[] a = network.getLayers(), b = read.getLayers();
+        for (int layer = 0; layer < a.length; layer++) {
+            assertArrayEquals(a[layer].getPrunedWeights(), b[layer].getPrunedWeights(), "layer " + layer);
+        }
+
+        // The loaded mask still holds the pruned weights at zero through training
+        train(read, random, 2);
+        for (FeedForward_Layer layer : b) {
+            double[] weights = weights(layer);
+            for (int i : layer.getPrunedWeights()) {
+                assertEquals(0, weights[i]);
+            }
+        }
+    }
+
+    private static NeuralNetwork newNetwork(Precision precision, Random random) {
+        NeuralNetwork network = new NeuralNetwork(SHAPE, new LeakyReLU(), new Sigmoid(), new MeanSquaredError(),
+                new Adam(0.01, 0.9, 0.999), 0, precision);
+        for (FeedForward_Layer layer : network.getLayers()) {
+            for (int outNode = 0; outNode < layer.getOutDim(); outNode++) {
+                for (int inNode = 0; inNode < layer.getInDim(); inNode++) {
+                    layer.setWeight(inNode, outNode, random.nextGaussian() * Math.sqrt(2.0 / layer.getInDim()));
+                }
+            }
+        }
+        return network;
+    }
+
+    // Optimizer steps on random batches
+    private static void train(NeuralNetwork network, Random random, int numSteps) {
+        int batchSize = 8;
+        double[] inputs = new double[batchSize * network.getInputSize()];
+        double[] expected = new double[batchSize * network.getOutputSize()];
+        for (int step = 1; step <= numSteps; step++) {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = random.nextGaussian();
+            }
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = random.nextDouble();
+            }
+            network.forwardBatch(inputs, batchSize, true);
+            network.backwardBatch(inputs, expected, batchSize);
+            network.updateWeightsAndBiases(batchSize, step);
+        }
+    }
+
+    private static double[] weights(FeedForward_Layer layer) {
+        double[] weights = new double[layer.getOutDim() * layer.getInDim()];
+        for (int outNode = 0; outNode < layer.getOutDim(); outNode++) {
+            for (int inNode = 0; inNode < layer.getInDim(); inNode++) {
+                weights[outNode * layer.getInDim() + inNode] = layer.getWeight(inNode, outNode);
+            }
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,150 @@
+package Models;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Data.DataPoint;
+import Optimizers.Adam;
+
+public class QuantizerTest {
+
+    private static final int[] SHAPE = { 64, 32, 10 };
+
+    // Largest difference between a quantized and a double softmax output
+    // Inputs and weights each round to within half of one of 255 steps over their range; over 200 random
+    // networks of this shape the differences stayed below 0.008, calibrated or not
+    private static final double OUTPUT_TOLERANCE = 0.015;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void quantizedOutputsCloseToDouble() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            NeuralNetwork model = newModel(random);
+            DataPoint[] test = randomData(100, random);
+
+            // Calibrated on the points it predicts, since values outside the calibrated range are clamped
+            QuantizedNetwork calibrated = Quantizer.quantize(model, test, test.length);
+            QuantizedNetwork uncalibrated = Quantizer.quantize(model);
+            assertTrue(calibrated.isCalibrated());
+            assertFalse(uncalibrated.isCalibrated());
+            assertMaxDifference(model, calibrated, test, "calibrated, seed " + seed);
+            assertMaxDifference(model, uncalibrated, test, "uncalibrated, seed " + seed);
+        }
+    }
+
+    // Each node's largest weight maps to 127 and every weight is within half a step of its original
+    @Test
+    public void weightsWithinHalfAStep() {
+        NeuralNetwork model = newModel(new Random(2));
+        FeedForward_Layer layer = model.getLayers()[0];
+        QuantizedLayer quantized = Quantizer.quantize(model).getLayers()[0];
+        byte[] weights = quantized.getWeights();
+        double[] scales = quantized.getWeightScales();
+        for (int outNode = 0; outNode < layer.getOutDim(); outNode++) {
+            int maxAbs = 0;
+            for (int inNode = 0; inNode < layer.getInDim(); inNode++) {
+                byte q = weights[outNode * layer.getInDim() + inNode];
+                maxAbs = Math.max(maxAbs, Math.abs(q));
+                assertEquals(layer.getWeight(inNode, outNode), q * scales[outNode], scales[outNode] / 2 + 1e-12,
+                        "weight " + inNode + " of node " + outNode);
+            }
+            assertEquals(127, maxAbs, "node " + outNode);
+        }
+        assertArrayEquals(layer.getBiases(), quantized.getBiases());
+    }
+
+    // A saved network reads back with the same layers and predicts exactly the same outputs
+    @Test
+    public void roundTripThroughQuantizedModelFile() throws IOException {
+        Random random = new Random(3);
+        NeuralNetwork model = newModel(random);
+        DataPoint[] data = randomData(50, random);
+        QuantizedNetwork[] networks = { Quantizer.quantize(model, data, data.length), Quantizer.quantize(model) };
+        for (QuantizedNetwork network : networks) {
+            String file = dir.resolve(network.isCalibrated() ? "calibrated.fqnn" : "uncalibrated.fqnn").toString();
+            QuantizedModelFile.write(network, file);
+            assertTrue(QuantizedModelFile.isQuantizedModelFile(file));
+            assertFalse(ModelFile.isModelFile(file));
+
+            QuantizedNetwork read = QuantizedModelFile.read(file);
+            assertEquals(network.getCostFunction().getClass(), read.getCostFunction().getClass());
+            QuantizedLayer[] a = network.getLayers(), b = read.getLayers();
+            assertEquals(a.length, b.length);
+            for (int layer = 0; layer < a.length; layer++) {
+                String name = "layer " + layer + (network.isCalibrated() ? ", calibrated" : "");
+                assertEquals(a[layer].getInDim(), b[layer].getInDim(), name);
+                assertEquals(a[layer].getOutDim(), b[layer].getOutDim(), name);
+                assertArrayEquals(a[layer].getWeights(), b[layer].getWeights(), name);
+                assertArrayEquals(a[layer].getWeightScales(), b[layer].getWeightScales(), name);
+                assertArrayEquals(a[layer].getBiases(), b[layer].getBiases(), name);
+                assertEquals(a[layer].getActivation().getClass(), b[layer].getActivation().getClass(), name);
+                assertEquals(a[layer].isCalibrated(), b[layer].isCalibrated(), name);
+                assertEquals(a[layer].getInputScale(), b[layer].getInputScale(), name);
+                assertEquals(a[layer].getInputZeroPoint(), b[layer].getInputZeroPoint(), name);
+            }
+
+            QuantizedSession original = network.createSession();
+            QuantizedSession loaded = read.createSession();
+            for (DataPoint point : data) {
+                assertArrayEquals(original.predict(point.getInputs()).clone(), loaded.predict(point.getInputs()));
+            }
+        }
+    }
+
+    private static void assertMaxDifference(NeuralNetwork model, QuantizedNetwork quantized, DataPoint[] data, String name) {
+        InferenceSession session = new InferenceSession(model);
+        QuantizedSession quantizedSession = quantized.createSession();
+        double max = 0;
+        for (DataPoint point : data) {
+            double[] expected = session.predict(point.getInputs());
+            double[] actual = quantizedSession.predict(point.getInputs());
+            for (int i = 0; i < expected.length; i++) {
+                max = Math.max(max, Math.abs(actual[i] - expected[i]));
+            }
+        }
+        assertTrue(max < OUTPUT_TOLERANCE, name + ": largest difference " + max);
+    }
+
+    // Weights drawn like the network's own initialization, but from a seeded generator
+    private static NeuralNetwork newModel(Random random) {
+        NeuralNetwork model = new NeuralNetwork(SHAPE, new LeakyReLU(), new Softmax(), new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0);
+        for (FeedForward_Layer layer : model.getLayers()) {
+            double[] weights = layer.getWeightBuffer();
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = random.nextGaussian() * Math.sqrt(2.0 / layer.getInDim());
+            }
+            double[] biases = layer.getBiases();
+            for (int i = 0; i < biases.length; i++) {
+                biases[i] = random.nextGaussian() * 0.1;
+            }
+        }
+        return model;
+    }
+
+    // Pixel-like inputs in [0, 1], a third of them zero
+    private static DataPoint[] randomData(int size, Random random) {
+        DataPoint[] data = new DataPoint[size];
+        for (int i = 0; i < size; i++) {
+            double[] inputs = new double[SHAPE[0]];
+            for (int j = 0; j < inputs.length; j++) {
+                inputs[j] = (random.nextInt(3) == 0) ? 0 : random.nextDouble();
+            }
+            double[] outputs = new double[SHAPE[SHAPE.length - 1]];
+            outputs[random.nextInt(outputs.length)] = 1;
+            data[i] = new DataPoint(inputs, outputs);
+        }
+        return data;
+    }
+}
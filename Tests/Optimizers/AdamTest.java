@@ -0,0 +1,78 @@
+package Optimizers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// ADAM steps checked against the update written out one weight at a time
+public class AdamTest {
+
+    private static final int LENGTH = 37;
+    private static final int BATCH_SIZE = 10;
+    private static final double LAMBDA = 0.01;
+
+    // lambda decays the weights outside the adaptive step, like the training loop before optimizers
+    // were separate: w -= learningRate * (mHat / (sqrt(vHat) + epsilon) + lambda * w)
+    @Test
+    public void lambdaDecaysOutsideTheMoments() {
+        checkSteps(new Adam(0.01, 0.9, 0.999), false);
+    }
+
+    @Test
+    public void lambdaInMomentsActsAsL2() {
+        Adam adam = new Adam(0.01, 0.9, 0.999);
+        adam.setL2InMoments(true);
+        checkSteps(adam, true);
+    }
+
+    @Test
+    public void l2InMomentsIsAHyperparameter() {
+        Adam adam = new Adam(0.01, 0.9, 0.999);
+        adam.setL2InMoments(true);
+        Adam copy = new Adam();
+        copy.setHyperparameters(adam.getHyperparameters());
+        assertTrue(copy.isL2InMoments());
+
+        AdamW adamW = new AdamW(0.01, 0.9, 0.999, 0.05);
+        AdamW copyW = new AdamW();
+        copyW.setHyperparameters(adamW.getHyperparameters());
+        assertFalse(copyW.isL2InMoments());
+        assertEquals(0.05, copyW.getWeightDecay());
+    }
+
+    private static void checkSteps(Adam adam, boolean l2InMoments) {
+        Random random = new Random(42);
+        double[] weights = new double[LENGTH];
+        double[] expected = new double[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            weights[i] = random.nextGaussian();
+            expected[i] = weights[i];
+        }
+        double[][] state = { new double[LENGTH], new double[LENGTH] };
+        double[] m = new double[LENGTH];
+        double[] v = new double[LENGTH];
+        double[] gradients = new double[LENGTH];
+
+        for (int step = 1; step <= 3; step++) {
+            adam.startStep(step, BATCH_SIZE);
+            for (int i = 0; i < LENGTH; i++) {
+                gradients[i] = random.nextGaussian() * BATCH_SIZE;
+
+                double gradient = gradients[i] / BATCH_SIZE + (l2InMoments ? LAMBDA * expected[i] : 0);
+                m[i] = 0.9 * m[i] + 0.1 * gradient;
+                v[i] = 0.999 * v[i] + 0.001 * gradient * gradient;
+                double mHat = m[i] / (1 - Math.pow(0.9, step));
+                double vHat = v[i] / (1 - Math.pow(0.999, step));
+                double decay = l2InMoments ? 0 : LAMBDA * expected[i];
+                expected[i] -= 0.01 * (mHat / (Math.sqrt(vHat) + 1e-8) + decay);
+            }
+            adam.updateWeights(weights, gradients, state, LENGTH, LAMBDA);
+            for (int i = 0; i < LENGTH; i++) {
+                assertEquals(expected[i], weights[i], 1e-12, "step " + step + ", weight " + i);
+                assertEquals(0, gradients[i], "gradients are cleared");
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package Serving;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.ActivationFunction;
+import ActivationFunctions.LeakyReLU;
+import CostFunctions.MeanSquaredError;
+import Models.InferenceSession;
+import Models.NeuralNetwork;
+import Optimizers.Adam;
+
+public class MicroBatcherTest {
+
+    // Fails with an Error on NaN, which the batch path would otherwise carry through
+    private static class FailingActivation extends ActivationFunction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void fBatch(double[] x, double[] dest, int batchSize, int length) {
+            for (int i = 0; i < batchSize * length; i++) {
+                if (Double.isNaN(x[i])) {
+                    throw new AssertionError("NaN input");
+                }
+            }
+            super.fBatch(x, dest, batchSize, length);
+        }
+    }
+
+    // A batch failing with an Error reaches its callers instead of leaving them waiting,
+    // and the worker goes on with later batches
+    @Test
+    public void errorsReachCallersAndWorkerContinues() {
+        NeuralNetwork model = new NeuralNetwork(new int[] { 3, 4, 2 }, new LeakyReLU(), new FailingActivation(),
+                new MeanSquaredError(), new Adam(0.001, 0.9, 0.999), 0);
+        double[] inputs = { 0.5, -1, 2 };
+        double[] expected = new InferenceSession(model).predict(inputs).clone();
+
+        MicroBatcher batcher = new MicroBatcher(model, 4, 0);
+        try {
+            double[] dest = new double[2];
+            AssertionError error = assertThrows(AssertionError.class, () -> batcher.predict(new double[] { Double.NaN, 0, 0 }, dest));
+            assertEquals("NaN input", error.getMessage());
+            assertEquals(1, batcher.getMetrics().getFailedRequests());
+
+            batcher.predict(inputs, dest);
+            assertArrayEquals(expected, dest);
+        } finally {
+            batcher.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package Serving;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import ActivationFunctions.LeakyReLU;
+import ActivationFunctions.Softmax;
+import CostFunctions.CrossEntropy;
+import Models.InferenceSession;
+import Models.NeuralNetwork;
+import Optimizers.Adam;
+
+public class PredictionServerTest {
+
+    private static final int INPUT_SIZE = 12;
+    private static final int OUTPUT_SIZE = 4;
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_REQUESTS = 200;
+
+    // Text and binary requests from many threads at once are batched together, and every response
+    // matches a direct prediction of its own inputs
+    @Test
+    public void concurrentRequestsMatchDirectPredictions() throws Exception {
+        NeuralNetwork model = new NeuralNetwork(new int[] { INPUT_SIZE, 10, OUTPUT_SIZE }, new LeakyReLU(), new Softmax(),
+                new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0);
+        Random random = new Random(8);
+        double[][] inputs = new double[NUM_REQUESTS][INPUT_SIZE];
+        double[][] expected = new double[NUM_REQUESTS][];
+        InferenceSession session = new InferenceSession(model);
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            for (int j = 0; j < INPUT_SIZE; j++) {
+                inputs[i][j] = random.nextGaussian();
+            }
+            expected[i] = session.predict(inputs[i]).clone();
+        }
+
+        HttpClient client = HttpClient.newHttpClient();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        PredictionServer server = new PredictionServer(model, 0, 16, 500);
+        server.start();
+        try {
+            URI predict = URI.create("http://localhost:" + server.getPort() + "/predict");
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < NUM_THREADS; thread++) {
+                int first = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < NUM_REQUESTS; i += NUM_THREADS) {
+                        double[] outputs = (i % 2 == 0) ? postText(client, predict, inputs[i]) : postBinary(client, predict, inputs[i]);
+                        assertArrayEquals(expected[i], outputs, "request " + i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + server.getPort() + "/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.body().contains("\"requests\":" + NUM_REQUESTS + ","), metrics.body());
+            assertTrue(metrics.body().contains("\"failed_requests\":0,"), metrics.body());
+        } finally {
+            executor.shutdown();
+            server.close();
+        }
+    }
+
+    // A request still waiting for its batch when close is called gets its prediction
+    @Test
+    public void closeFinishesRequestsInFlight() throws Exception {
+        NeuralNetwork model = new NeuralNetwork(new int[] { INPUT_SIZE, OUTPUT_SIZE }, new LeakyReLU(), new Softmax(),
+                new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0);
+        double[] inputs = new double[INPUT_SIZE];
+        Arrays.fill(inputs, 0.5);
+        double[] expected = new InferenceSession(model).predict(inputs).clone();
+
+        // A lone request waits the full delay for its batch to fill
+        HttpClient client = HttpClient.newHttpClient();
+        PredictionServer server = new PredictionServer(model, 0, 16, 500_000);
+        server.start();
+        URI predict = URI.create("http://localhost:" + server.getPort() + "/predict");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<double[]> outputs = executor.submit(() -> postBinary(client, predict, inputs));
+            while (server.getNumActive() == 0) {
+                Thread.sleep(1);
+            }
+            server.close();
+            assertArrayEquals(expected, outputs.get());
+            assertEquals(0, server.getNumActive());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void malformedRequestsAreRejected() throws Exception {
+        NeuralNetwork model = new NeuralNetwork(new int[] { INPUT_SIZE, OUTPUT_SIZE }, new LeakyReLU(), new Softmax(),
+                new CrossEntropy(), new Adam(0.001, 0.9, 0.999), 0);
+        HttpClient client = HttpClient.newHttpClient();
+        PredictionServer server = new PredictionServer(model, 0, 16, 0);
+        server.start();
+        try {
+            URI predict = URI.create("http://localhost:" + server.getPort() + "/predict");
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(predict)
+                    .POST(HttpRequest.BodyPublishers.ofString("1, 2, x")).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, response.statusCode());
+            response = client.send(HttpRequest.newBuilder(predict).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(405, response.statusCode());
+        } finally {
+            server.close();
+        }
+    }
+
+    private static double[] postText(HttpClient client, URI uri, double[] inputs) throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < inputs.length; i++) {
+            if (i > 0) body.append(", ");
+            body.append(inputs[i]);
+        }
+        body.append(']');
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+
+        Matcher matcher = Pattern.compile("\"outputs\":\\[(.*)\\]").matcher(response.body());
+        assertTrue(matcher.find(), response.body());
+        String[] tokens = matcher.group(1).split(",");
+        double[] outputs = new double[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            outputs[i] = Double.parseDouble(tokens[i]);
+        }
+        return outputs;
+    }
+
+    private static double[] postBinary(HttpClient client, URI uri, double[] inputs) throws Exception {
+        ByteBuffer body = ByteBuffer.allocate(inputs.length * Double.BYTES);
+        for (double input : inputs) {
+            body.putDouble(input);
+        }
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.array())).build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+
+        ByteBuffer buffer = ByteBuffer.wrap(response.body());
+        double[] outputs = new double[buffer.remaining() / Double.BYTES];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = buffer.getDouble();
+        }
+        return outputs;
+    }
+}